@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.kura.cloud;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.KuraStoreException;
@@ -24,8 +26,10 @@ import org.osgi.annotation.versioning.ProviderType;
 /**
  * The CloudCallService provides helper methods to make a request/response conversation with the remote server.
  * The call methods deal with the logic required to build request messages and track the corresponding responses.
- * All call methods are synchronous; after a request is issued, the implementation will wait for the response
- * to arrive or a timeout occurs. The timeout interval used by the service is configurable as a property
+ * The call methods are synchronous; after a request is issued, the implementation will wait for the response
+ * to arrive or a timeout occurs. The callAsync methods return as soon as the request is issued and complete
+ * a future when the response arrives. Many requests can be outstanding at the same time.
+ * The timeout interval used by the service is configurable as a property
  * of the {@link DataTransportService}.
  * 
  * @noimplement This interface is not intended to be implemented by clients.
@@ -69,6 +73,48 @@ public interface CloudCallService {
     public KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload, int timeout)
             throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException;
 
+    /**
+     * Sends a local (to this device) request to a Cloudlet application
+     * with the given application ID without waiting for the response.
+     *
+     * @param appId
+     * @param appTopic
+     * @param appPayload
+     *            the application specific payload of an KuraRequestPayload.
+     * @param timeout
+     *            the time in milliseconds to wait for the response, 0 to wait indefinitely
+     * @return a future completed with the response, or completed exceptionally with a
+     *         {@link KuraTimeoutException} if the response does not arrive in time
+     * @throws KuraConnectException
+     * @throws KuraStoreException
+     * @throws KuraException
+     *             if the request cannot be issued
+     * @since 1.3
+     */
+    public CompletableFuture<KuraResponsePayload> callAsync(String appId, String appTopic, KuraPayload appPayload,
+            int timeout) throws KuraConnectException, KuraStoreException, KuraException;
+
+    /**
+     * Sends a request to a remote server or device identified by the specified deviceId
+     * and targeting the given application ID without waiting for the response.
+     *
+     * @param deviceId
+     * @param appId
+     * @param appTopic
+     * @param appPayload
+     * @param timeout
+     *            the time in milliseconds to wait for the response, 0 to wait indefinitely
+     * @return a future completed with the response, or completed exceptionally with a
+     *         {@link KuraTimeoutException} if the response does not arrive in time
+     * @throws KuraConnectException
+     * @throws KuraStoreException
+     * @throws KuraException
+     *             if the request cannot be issued
+     * @since 1.3
+     */
+    public CompletableFuture<KuraResponsePayload> callAsync(String deviceId, String appId, String appTopic,
+            KuraPayload appPayload, int timeout) throws KuraConnectException, KuraStoreException, KuraException;
+
     /**
      * Returns true if the underlying {@link DataService} is currently connected to the remote server.
      *
@@ -18,7 +18,10 @@ import org.osgi.annotation.versioning.ConsumerType;
  * Implementors of this interface will be able to handle {@link DataService}
  * events such as notifications of connection establishing, message arrival, etc.
  * <br>
- * All registered listeners are called synchronously by the {@link DataService} at the occurrence of the event.
+ * Connection events are delivered synchronously by the {@link DataService} at the occurrence of the event,
+ * after the message events that precede them.
+ * Message events (arrived, published and confirmed) may be delivered asynchronously, in order, by a thread
+ * owned by the {@link DataService}.
  * It expected that implementers of this interface do NOT perform long running tasks in the implementation of this
  * interface.
  *
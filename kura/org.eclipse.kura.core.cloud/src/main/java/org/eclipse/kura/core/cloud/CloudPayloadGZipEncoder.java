@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -18,17 +18,32 @@ import org.eclipse.kura.core.util.GZipUtil;
 public class CloudPayloadGZipEncoder implements CloudPayloadEncoder {
 
     private final CloudPayloadEncoder m_decorated;
+    private final int m_minSize;
 
     public CloudPayloadGZipEncoder(CloudPayloadEncoder decorated) {
+        this(decorated, 0);
+    }
+
+    /**
+     * @param decorated
+     *            the encoder of the uncompressed payload
+     * @param minSize
+     *            payloads shorter than this size are returned uncompressed without trying to compress them
+     */
+    public CloudPayloadGZipEncoder(CloudPayloadEncoder decorated, int minSize) {
         this.m_decorated = decorated;
+        this.m_minSize = minSize;
     }
 
     @Override
     public byte[] getBytes() throws IOException {
         byte[] source = this.m_decorated.getBytes();
-        byte[] compressed = GZipUtil.compress(source);
+        if (source.length < this.m_minSize) {
+            return source;
+        }
 
         // Return gzip compressed data only if shorter than uncompressed one
-        return compressed.length < source.length ? compressed : source;
+        byte[] compressed = GZipUtil.compress(source, source.length);
+        return compressed != null ? compressed : source;
     }
 }
@@ -24,6 +24,7 @@ import static org.eclipse.kura.core.cloud.CloudPayloadJsonFields.CloudPayloadJso
 import static org.eclipse.kura.core.cloud.CloudPayloadJsonFields.CloudPayloadJsonPositionFields.SPEED;
 import static org.eclipse.kura.core.cloud.CloudPayloadJsonFields.CloudPayloadJsonPositionFields.STATUS;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Date;
 
@@ -32,13 +33,11 @@ import org.eclipse.kura.message.KuraPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.eclipsesource.json.Json;
-import com.eclipsesource.json.JsonObject;
-import com.eclipsesource.json.JsonValue;
-
 /**
  * This class contains all the necessary methods that can be used to decode a Json payload into a {@link KuraPayload}.
- *
+ * <p>
+ * The UTF-8 encoded Json is parsed in a single pass and the {@link KuraPayload} is filled while parsing, without
+ * building an intermediate Json tree.
  */
 public class CloudPayloadJsonDecoder {
 
@@ -58,27 +57,28 @@ public class CloudPayloadJsonDecoder {
      * @return a {@link KuraPayload} that directly maps the received array.
      */
     public static KuraPayload buildFromByteArray(byte[] array) {
-        String stringJson = new String(array);
-        JsonObject json = Json.parse(stringJson).asObject();
-
         KuraPayload payload = new KuraPayload();
 
         try {
-            for (JsonObject.Member member : json) {
-                String name = member.getName();
-                JsonValue value = member.getValue();
-                if (SENTON.value().equalsIgnoreCase(name)) {
-                    decodeTimestamp(payload, value);
-                } else if (BODY.value().equalsIgnoreCase(name)) {
-                    decodeBody(payload, value);
-                } else if (POSITION.value().equalsIgnoreCase(name) && value.isObject()) {
-                    decodePosition(payload, value.asObject());
-                } else if (METRICS.value().equalsIgnoreCase(name) && value.isObject()) {
-                    decodeMetric(payload, value.asObject());
-                } else {
-                    throw new IllegalArgumentException("Unrecognized value");
-                }
+            JsonReader json = new JsonReader(array);
+            json.readObjectStart();
+            if (!json.readObjectEnd()) {
+                do {
+                    String name = json.readMemberName();
+                    if (SENTON.value().equalsIgnoreCase(name)) {
+                        decodeTimestamp(payload, json);
+                    } else if (BODY.value().equalsIgnoreCase(name)) {
+                        decodeBody(payload, json);
+                    } else if (POSITION.value().equalsIgnoreCase(name) && json.peek() == '{') {
+                        decodePosition(payload, json);
+                    } else if (METRICS.value().equalsIgnoreCase(name) && json.peek() == '{') {
+                        decodeMetric(payload, json);
+                    } else {
+                        throw new IllegalArgumentException("Unrecognized value");
+                    }
+                } while (json.readMemberSeparator());
             }
+            json.readEnd();
         } catch (Exception e) {
             logger.warn("Cannot parse Json", e);
             payload = new KuraPayload();
@@ -87,75 +87,336 @@ public class CloudPayloadJsonDecoder {
         return payload;
     }
 
-    private static void decodeTimestamp(KuraPayload payload, JsonValue timestampValue) {
-        if (timestampValue != null && timestampValue.isNumber()) {
-            long timestamp = timestampValue.asLong();
+    private static void decodeTimestamp(KuraPayload payload, JsonReader json) {
+        if (json.isNumber()) {
+            long timestamp = Long.parseLong(json.readNumber());
             payload.setTimestamp(new Date(timestamp));
+        } else {
+            json.skipValue();
         }
     }
 
-    private static void decodeBody(KuraPayload payload, JsonValue body) {
-        if (body != null && body.isString()) {
-            payload.setBody(Base64.getDecoder().decode(body.asString()));
+    private static void decodeBody(KuraPayload payload, JsonReader json) {
+        if (json.peek() == '"') {
+            payload.setBody(Base64.getDecoder().decode(json.readString()));
+        } else {
+            json.skipValue();
         }
     }
 
-    private static void decodePosition(KuraPayload payload, JsonObject positionObject) {
+    private static void decodePosition(KuraPayload payload, JsonReader json) {
         KuraPosition position = new KuraPosition();
 
         payload.setPosition(position);
-        for (JsonObject.Member member : positionObject) {
-            String name = member.getName();
-            JsonValue value = member.getValue();
-            if (LATITUDE.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setLatitude(value.asDouble());
-            } else if (LONGITUDE.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setLongitude(value.asDouble());
-            } else if (ALTITUDE.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setAltitude(value.asDouble());
-            } else if (HEADING.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setHeading(value.asDouble());
-            } else if (PRECISION.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setPrecision(value.asDouble());
-            } else if (SATELLITES.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setSatellites(value.asInt());
-            } else if (SPEED.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setSpeed(value.asDouble());
-            } else if (CloudPayloadJsonFields.CloudPayloadJsonPositionFields.TIMESTAMP.value().equalsIgnoreCase(name)
-                    && value.isNumber()) {
-                position.setTimestamp(new Date(value.asLong()));
-            } else if (STATUS.value().equalsIgnoreCase(name) && value.isNumber()) {
-                position.setStatus(value.asInt());
+        json.readObjectStart();
+        if (json.readObjectEnd()) {
+            return;
+        }
+        do {
+            String name = json.readMemberName();
+            if (!json.isNumber()) {
+                throw new IllegalArgumentException("Cannot parse position!");
+            }
+            String value = json.readNumber();
+            if (LATITUDE.value().equalsIgnoreCase(name)) {
+                position.setLatitude(Double.parseDouble(value));
+            } else if (LONGITUDE.value().equalsIgnoreCase(name)) {
+                position.setLongitude(Double.parseDouble(value));
+            } else if (ALTITUDE.value().equalsIgnoreCase(name)) {
+                position.setAltitude(Double.parseDouble(value));
+            } else if (HEADING.value().equalsIgnoreCase(name)) {
+                position.setHeading(Double.parseDouble(value));
+            } else if (PRECISION.value().equalsIgnoreCase(name)) {
+                position.setPrecision(Double.parseDouble(value));
+            } else if (SATELLITES.value().equalsIgnoreCase(name)) {
+                position.setSatellites(Integer.parseInt(value));
+            } else if (SPEED.value().equalsIgnoreCase(name)) {
+                position.setSpeed(Double.parseDouble(value));
+            } else if (CloudPayloadJsonFields.CloudPayloadJsonPositionFields.TIMESTAMP.value()
+                    .equalsIgnoreCase(name)) {
+                position.setTimestamp(new Date(Long.parseLong(value)));
+            } else if (STATUS.value().equalsIgnoreCase(name)) {
+                position.setStatus(Integer.parseInt(value));
             } else {
                 throw new IllegalArgumentException("Cannot parse position!");
             }
-        }
+        } while (json.readMemberSeparator());
     }
 
-    private static void decodeMetric(KuraPayload payload, JsonObject metricsObject) {
-        if (metricsObject == null) {
-            throw new IllegalArgumentException("Cannot parse metric object!");
+    private static void decodeMetric(KuraPayload payload, JsonReader json) {
+        json.readObjectStart();
+        if (json.readObjectEnd()) {
+            return;
         }
-
-        for (JsonObject.Member member : metricsObject) {
-            String name = member.getName();
-            JsonValue value = member.getValue();
+        do {
+            String name = json.readMemberName();
 
             Object javaValue;
-            if (value.isNumber()) {
+            byte next = json.peek();
+            if (json.isNumber()) {
+                String value = json.readNumber();
                 try {
-                    javaValue = value.asLong();
-                } catch (Exception e) {
-                    javaValue = value.asDouble();
+                    javaValue = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    javaValue = Double.parseDouble(value);
                 }
-            } else if (value.isBoolean()) {
-                javaValue = value.asBoolean();
-            } else if (value.isString()) {
-                javaValue = value.asString();
+            } else if (next == 't' || next == 'f') {
+                javaValue = json.readBoolean();
+            } else if (next == '"') {
+                javaValue = json.readString();
             } else {
                 throw new IllegalArgumentException("Unparsable metric");
             }
             payload.addMetric(name, javaValue);
+        } while (json.readMemberSeparator());
+    }
+
+    /**
+     * A minimal pull parser over UTF-8 encoded Json (RFC 7159). Any syntax error is reported as an
+     * {@link IllegalArgumentException}.
+     */
+    private static final class JsonReader {
+
+        private final byte[] buf;
+        private int pos;
+
+        JsonReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        /**
+         * Skips the whitespace and returns the first byte of the next token, without consuming it.
+         */
+        byte peek() {
+            skipWhitespace();
+            if (this.pos >= this.buf.length) {
+                throw error("Unexpected end of input");
+            }
+            return this.buf[this.pos];
+        }
+
+        boolean isNumber() {
+            byte next = peek();
+            return next == '-' || next >= '0' && next <= '9';
+        }
+
+        void readObjectStart() {
+            expect('{');
+        }
+
+        /**
+         * Consumes the end of an empty object, returns false if the object has members.
+         */
+        boolean readObjectEnd() {
+            if (peek() == '}') {
+                this.pos++;
+                return true;
+            }
+            return false;
+        }
+
+        String readMemberName() {
+            if (peek() != '"') {
+                throw error("Expected name");
+            }
+            String name = readString();
+            expect(':');
+            return name;
+        }
+
+        /**
+         * Consumes the separator after an object member, returns false if it is the end of the object.
+         */
+        boolean readMemberSeparator() {
+            byte next = peek();
+            this.pos++;
+            if (next == ',') {
+                return true;
+            } else if (next == '}') {
+                return false;
+            }
+            throw error("Expected ',' or '}'");
+        }
+
+        void readEnd() {
+            skipWhitespace();
+            if (this.pos < this.buf.length) {
+                throw error("Unexpected character");
+            }
+        }
+
+        boolean readBoolean() {
+            if (peek() == 't') {
+                readLiteral("true");
+                return true;
+            }
+            readLiteral("false");
+            return false;
+        }
+
+        /**
+         * Returns the text of the next number, as it appears in the Json.
+         */
+        String readNumber() {
+            int start = this.pos;
+            if (peek() == '-') {
+                this.pos++;
+            }
+            if (readByte() != '0') {
+                this.pos--;
+                if (readDigits() == 0) {
+                    throw error("Expected digit");
+                }
+            }
+            if (this.pos < this.buf.length && this.buf[this.pos] == '.') {
+                this.pos++;
+                if (readDigits() == 0) {
+                    throw error("Expected digit");
+                }
+            }
+            if (this.pos < this.buf.length && (this.buf[this.pos] == 'e' || this.buf[this.pos] == 'E')) {
+                this.pos++;
+                if (this.pos < this.buf.length && (this.buf[this.pos] == '+' || this.buf[this.pos] == '-')) {
+                    this.pos++;
+                }
+                if (readDigits() == 0) {
+                    throw error("Expected digit");
+                }
+            }
+            return new String(this.buf, start, this.pos - start, StandardCharsets.US_ASCII);
+        }
+
+        String readString() {
+            expect('"');
+            int start = this.pos;
+            StringBuilder builder = null;
+            while (true) {
+                byte b = readByte();
+                if (b == '"') {
+                    String segment = new String(this.buf, start, this.pos - 1 - start, StandardCharsets.UTF_8);
+                    return builder == null ? segment : builder.append(segment).toString();
+                } else if (b == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder();
+                    }
+                    builder.append(new String(this.buf, start, this.pos - 1 - start, StandardCharsets.UTF_8));
+                    builder.append(readEscape());
+                    start = this.pos;
+                } else if (b >= 0 && b < 0x20) {
+                    throw error("Expected valid string character");
+                }
+            }
+        }
+
+        void skipValue() {
+            byte next = peek();
+            if (next == '{') {
+                this.pos++;
+                if (!readObjectEnd()) {
+                    do {
+                        readMemberName();
+                        skipValue();
+                    } while (readMemberSeparator());
+                }
+            } else if (next == '[') {
+                this.pos++;
+                if (peek() == ']') {
+                    this.pos++;
+                    return;
+                }
+                do {
+                    skipValue();
+                    next = peek();
+                    this.pos++;
+                } while (next == ',');
+                if (next != ']') {
+                    throw error("Expected ',' or ']'");
+                }
+            } else if (next == '"') {
+                readString();
+            } else if (next == 't' || next == 'f') {
+                readBoolean();
+            } else if (next == 'n') {
+                readLiteral("null");
+            } else {
+                readNumber();
+            }
+        }
+
+        private char readEscape() {
+            byte b = readByte();
+            switch (b) {
+            case '"':
+            case '/':
+            case '\\':
+                return (char) b;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readByte(), 16);
+                    if (digit < 0) {
+                        throw error("Expected hexadecimal digit");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Expected valid escape sequence");
+            }
+        }
+
+        private int readDigits() {
+            int start = this.pos;
+            while (this.pos < this.buf.length && this.buf[this.pos] >= '0' && this.buf[this.pos] <= '9') {
+                this.pos++;
+            }
+            return this.pos - start;
+        }
+
+        private void readLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (readByte() != literal.charAt(i)) {
+                    throw error("Expected '" + literal + "'");
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            this.pos++;
+        }
+
+        private byte readByte() {
+            if (this.pos >= this.buf.length) {
+                throw error("Unexpected end of input");
+            }
+            return this.buf[this.pos++];
+        }
+
+        private void skipWhitespace() {
+            while (this.pos < this.buf.length) {
+                byte b = this.buf[this.pos];
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                    return;
+                }
+                this.pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + this.pos);
         }
     }
 }
@@ -25,21 +25,36 @@ import static org.eclipse.kura.core.cloud.CloudPayloadJsonFields.CloudPayloadJso
 import static org.eclipse.kura.core.cloud.CloudPayloadJsonFields.CloudPayloadJsonPositionFields.STATUS;
 
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.Date;
 
 import org.eclipse.kura.message.KuraPayload;
 import org.eclipse.kura.message.KuraPosition;
 
-import com.eclipsesource.json.Json;
-import com.eclipsesource.json.JsonObject;
-
 /**
  * This class provides a set of methods that allow to encode the {@link KuraPayload} into a byte[] message.
- *
+ * <p>
+ * The payload is written as UTF-8 directly into a per-thread buffer, without building an intermediate Json tree
+ * or String. The output is the same produced by the minimal-json library with its default (minimal) configuration.
  */
 public class CloudPayloadJsonEncoder {
 
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // Buffers grown beyond this size are not kept for the next message
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<JsonBuffer> buffers = new ThreadLocal<JsonBuffer>() {
+
+        @Override
+        protected JsonBuffer initialValue() {
+            return new JsonBuffer();
+        }
+    };
+
     private CloudPayloadJsonEncoder() {
     }
 
@@ -53,93 +68,276 @@ public class CloudPayloadJsonEncoder {
      *             if the conversion fails
      */
     public static byte[] getBytes(KuraPayload kuraPayload) {
-        JsonObject json = Json.object();
+        JsonBuffer json = buffers.get();
+        try {
+            json.write('{');
 
-        encodeTimestamp(kuraPayload, json);
+            boolean first = encodeTimestamp(kuraPayload, json);
 
-        encodePosition(kuraPayload, json);
+            first = encodePosition(kuraPayload, json, first);
 
-        encodeMetrics(kuraPayload, json);
+            encodeMetrics(kuraPayload, json, first);
 
-        encodeBody(kuraPayload, json);
+            encodeBody(kuraPayload, json);
 
-        return json.toString().getBytes(StandardCharsets.UTF_8);
+            json.write('}');
+            return json.toByteArray();
+        } finally {
+            json.reset();
+        }
     }
 
-    private static void encodeBody(KuraPayload kuraPayload, JsonObject json) {
+    private static void encodeBody(KuraPayload kuraPayload, JsonBuffer json) {
         byte[] body = kuraPayload.getBody();
         if (body != null) {
-            json.add(BODY.value(), Base64.getEncoder().encodeToString(body));
+            json.writeMemberName(BODY.value(), false);
+            json.writeBase64(body);
         }
     }
 
-    private static void encodeMetrics(KuraPayload kuraPayload, JsonObject json) {
-        JsonObject jsonMetrics = Json.object();
+    private static void encodeMetrics(KuraPayload kuraPayload, JsonBuffer json, boolean first) {
+        json.writeMemberName(METRICS.value(), first);
+        json.write('{');
+        boolean firstMetric = true;
         for (String name : kuraPayload.metricNames()) {
             Object object = kuraPayload.getMetric(name);
+            json.writeMemberName(name, firstMetric);
+            firstMetric = false;
             if (object instanceof Boolean) {
-                jsonMetrics.add(name, (Boolean) object);
+                json.writeAscii(object.toString());
             } else if (object instanceof Double) {
-                jsonMetrics.add(name, (Double) object);
+                json.writeDouble((Double) object);
             } else if (object instanceof Float) {
-                jsonMetrics.add(name, (Float) object);
+                json.writeFloat((Float) object);
             } else if (object instanceof Integer) {
-                jsonMetrics.add(name, (Integer) object);
+                json.writeAscii(object.toString());
             } else if (object instanceof Long) {
-                jsonMetrics.add(name, (Long) object);
+                json.writeAscii(object.toString());
             } else if (object instanceof String) {
-                jsonMetrics.add(name, (String) object);
+                json.writeString((String) object);
             } else if (object instanceof byte[]) {
-                jsonMetrics.add(name, Base64.getEncoder().encodeToString((byte[]) object));
+                json.writeBase64((byte[]) object);
             } else {
-                throw new IllegalArgumentException("Cannot encode this value: " + object.toString());
+                throw new IllegalArgumentException("Cannot encode this value: " + object);
             }
         }
-        json.add(METRICS.value(), jsonMetrics);
+        json.write('}');
     }
 
-    private static void encodePosition(KuraPayload kuraPayload, JsonObject json) {
+    private static boolean encodePosition(KuraPayload kuraPayload, JsonBuffer json, boolean first) {
         KuraPosition position = kuraPayload.getPosition();
-        if (position != null) {
+        if (position == null) {
+            return first;
+        }
 
-            JsonObject jsonPosition = Json.object();
-            if (position.getLatitude() != null) {
-                jsonPosition.add(LATITUDE.value(), position.getLatitude());
-            }
-            if (position.getLongitude() != null) {
-                jsonPosition.add(LONGITUDE.value(), position.getLongitude());
+        json.writeMemberName(POSITION.value(), first);
+        json.write('{');
+        boolean firstField = true;
+        if (position.getLatitude() != null) {
+            json.writeMemberName(LATITUDE.value(), firstField);
+            json.writeDouble(position.getLatitude());
+            firstField = false;
+        }
+        if (position.getLongitude() != null) {
+            json.writeMemberName(LONGITUDE.value(), firstField);
+            json.writeDouble(position.getLongitude());
+            firstField = false;
+        }
+        if (position.getAltitude() != null) {
+            json.writeMemberName(ALTITUDE.value(), firstField);
+            json.writeDouble(position.getAltitude());
+            firstField = false;
+        }
+        if (position.getHeading() != null) {
+            json.writeMemberName(HEADING.value(), firstField);
+            json.writeDouble(position.getHeading());
+            firstField = false;
+        }
+        if (position.getPrecision() != null) {
+            json.writeMemberName(PRECISION.value(), firstField);
+            json.writeDouble(position.getPrecision());
+            firstField = false;
+        }
+        if (position.getSatellites() != null) {
+            json.writeMemberName(SATELLITES.value(), firstField);
+            json.writeAscii(position.getSatellites().toString());
+            firstField = false;
+        }
+        if (position.getSpeed() != null) {
+            json.writeMemberName(SPEED.value(), firstField);
+            json.writeDouble(position.getSpeed());
+            firstField = false;
+        }
+        if (position.getTimestamp() != null) {
+            json.writeMemberName(CloudPayloadJsonFields.CloudPayloadJsonPositionFields.TIMESTAMP.value(), firstField);
+            json.writeAscii(Long.toString(position.getTimestamp().getTime()));
+            firstField = false;
+        }
+        if (position.getStatus() != null) {
+            json.writeMemberName(STATUS.value(), firstField);
+            json.writeAscii(position.getStatus().toString());
+        }
+        json.write('}');
+        return false;
+    }
+
+    private static boolean encodeTimestamp(KuraPayload kuraPayload, JsonBuffer json) {
+        Date timestamp = kuraPayload.getTimestamp();
+        if (timestamp == null) {
+            return true;
+        }
+
+        json.writeMemberName(SENTON.value(), true);
+        json.writeAscii(Long.toString(timestamp.getTime()));
+        return false;
+    }
+
+    /**
+     * A growable buffer of UTF-8 encoded Json text.
+     */
+    private static final class JsonBuffer {
+
+        private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        void write(int b) {
+            ensureCapacity(1);
+            this.buf[this.count++] = (byte) b;
+        }
+
+        void writeAscii(String value) {
+            int length = value.length();
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                this.buf[this.count++] = (byte) value.charAt(i);
             }
-            if (position.getAltitude() != null) {
-                jsonPosition.add(ALTITUDE.value(), position.getAltitude());
+        }
+
+        void writeMemberName(String name, boolean first) {
+            if (!first) {
+                write(',');
             }
-            if (position.getHeading() != null) {
-                jsonPosition.add(HEADING.value(), position.getHeading());
+            writeString(name);
+            write(':');
+        }
+
+        // Same formatting of the minimal-json numbers: a trailing ".0" is removed
+        void writeDouble(double value) {
+            if (Double.isInfinite(value) || Double.isNaN(value)) {
+                throw new IllegalArgumentException("Infinite and NaN values not permitted in JSON");
             }
-            if (position.getPrecision() != null) {
-                jsonPosition.add(PRECISION.value(), position.getPrecision());
+            writeNumber(Double.toString(value));
+        }
+
+        void writeFloat(float value) {
+            if (Float.isInfinite(value) || Float.isNaN(value)) {
+                throw new IllegalArgumentException("Infinite and NaN values not permitted in JSON");
             }
-            if (position.getSatellites() != null) {
-                jsonPosition.add(SATELLITES.value(), position.getSatellites());
+            writeNumber(Float.toString(value));
+        }
+
+        private void writeNumber(String value) {
+            if (value.endsWith(".0")) {
+                value = value.substring(0, value.length() - 2);
             }
-            if (position.getSpeed() != null) {
-                jsonPosition.add(SPEED.value(), position.getSpeed());
+            writeAscii(value);
+        }
+
+        // Same escaping of the minimal-json strings
+        void writeString(String value) {
+            write('"');
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    write('\\');
+                    write(c);
+                } else if (c == '\n') {
+                    write('\\');
+                    write('n');
+                } else if (c == '\r') {
+                    write('\\');
+                    write('r');
+                } else if (c == '\t') {
+                    write('\\');
+                    write('t');
+                } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    writeUnicodeEscape(c);
+                } else if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    ensureCapacity(2);
+                    this.buf[this.count++] = (byte) (0xC0 | c >> 6);
+                    this.buf[this.count++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensureCapacity(4);
+                    this.buf[this.count++] = (byte) (0xF0 | codePoint >> 18);
+                    this.buf[this.count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    this.buf[this.count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    this.buf[this.count++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogate: replaced as String.getBytes() does
+                    write('?');
+                } else {
+                    ensureCapacity(3);
+                    this.buf[this.count++] = (byte) (0xE0 | c >> 12);
+                    this.buf[this.count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    this.buf[this.count++] = (byte) (0x80 | c & 0x3F);
+                }
             }
-            if (position.getTimestamp() != null) {
-                jsonPosition.add(CloudPayloadJsonFields.CloudPayloadJsonPositionFields.TIMESTAMP.value(),
-                        position.getTimestamp().getTime());
+            write('"');
+        }
+
+        private void writeUnicodeEscape(char c) {
+            ensureCapacity(6);
+            this.buf[this.count++] = '\\';
+            this.buf[this.count++] = 'u';
+            this.buf[this.count++] = HEX_DIGITS[c >> 12 & 0xF];
+            this.buf[this.count++] = HEX_DIGITS[c >> 8 & 0xF];
+            this.buf[this.count++] = HEX_DIGITS[c >> 4 & 0xF];
+            this.buf[this.count++] = HEX_DIGITS[c & 0xF];
+        }
+
+        // Base64 (RFC 4648, with padding) encoded in place as a Json string
+        void writeBase64(byte[] value) {
+            ensureCapacity(2 + (value.length + 2) / 3 * 4);
+            this.buf[this.count++] = '"';
+            int i = 0;
+            for (; i + 2 < value.length; i += 3) {
+                int bits = (value[i] & 0xFF) << 16 | (value[i + 1] & 0xFF) << 8 | value[i + 2] & 0xFF;
+                this.buf[this.count++] = BASE64_DIGITS[bits >> 18 & 0x3F];
+                this.buf[this.count++] = BASE64_DIGITS[bits >> 12 & 0x3F];
+                this.buf[this.count++] = BASE64_DIGITS[bits >> 6 & 0x3F];
+                this.buf[this.count++] = BASE64_DIGITS[bits & 0x3F];
             }
-            if (position.getStatus() != null) {
-                jsonPosition.add(STATUS.value(), position.getStatus());
+            int remaining = value.length - i;
+            if (remaining > 0) {
+                int bits = (value[i] & 0xFF) << 16 | (remaining == 2 ? (value[i + 1] & 0xFF) << 8 : 0);
+                this.buf[this.count++] = BASE64_DIGITS[bits >> 18 & 0x3F];
+                this.buf[this.count++] = BASE64_DIGITS[bits >> 12 & 0x3F];
+                this.buf[this.count++] = remaining == 2 ? BASE64_DIGITS[bits >> 6 & 0x3F] : (byte) '=';
+                this.buf[this.count++] = '=';
             }
+            this.buf[this.count++] = '"';
+        }
 
-            json.add(POSITION.value(), jsonPosition);
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.buf, this.count);
         }
-    }
 
-    private static void encodeTimestamp(KuraPayload kuraPayload, JsonObject json) {
-        Date timestamp = kuraPayload.getTimestamp();
-        if (timestamp != null) {
-            json.add(SENTON.value(), timestamp.getTime());
+        void reset() {
+            this.count = 0;
+            if (this.buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                this.buf = new byte[INITIAL_BUFFER_SIZE];
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (this.count + length > this.buf.length) {
+                this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length << 1, this.count + length));
+            }
         }
     }
-}
\ No newline at end of file
+}
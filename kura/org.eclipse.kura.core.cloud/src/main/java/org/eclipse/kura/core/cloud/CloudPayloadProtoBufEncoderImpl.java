@@ -13,25 +13,66 @@
 package org.eclipse.kura.core.cloud;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.kura.KuraInvalidMetricTypeException;
-import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
-import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
 import org.eclipse.kura.message.KuraPayload;
 import org.eclipse.kura.message.KuraPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 
 /**
  * Encodes an KuraPayload class using the Google ProtoBuf binary format.
+ * <p>
+ * The message is written directly with a {@link CodedOutputStream} into an array of the exact encoded size,
+ * without building the intermediate KuraPayloadProto messages. The output is the same produced by
+ * KuraPayloadProto.KuraPayload.toByteArray(): fields are written in field number order and metrics in
+ * iteration order.
  */
 public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
 
     private static final Logger logger = LoggerFactory.getLogger(CloudPayloadProtoBufEncoderImpl.class);
 
+    // KuraPayload fields
+    private static final int PAYLOAD_TIMESTAMP = 1;
+    private static final int PAYLOAD_POSITION = 2;
+    private static final int PAYLOAD_METRIC = 5000;
+    private static final int PAYLOAD_BODY = 5001;
+
+    // KuraMetric fields
+    private static final int METRIC_NAME = 1;
+    private static final int METRIC_TYPE = 2;
+    private static final int METRIC_DOUBLE_VALUE = 3;
+    private static final int METRIC_FLOAT_VALUE = 4;
+    private static final int METRIC_LONG_VALUE = 5;
+    private static final int METRIC_INT_VALUE = 6;
+    private static final int METRIC_BOOL_VALUE = 7;
+    private static final int METRIC_STRING_VALUE = 8;
+    private static final int METRIC_BYTES_VALUE = 9;
+
+    // KuraPosition fields
+    private static final int POSITION_LATITUDE = 1;
+    private static final int POSITION_LONGITUDE = 2;
+    private static final int POSITION_ALTITUDE = 3;
+    private static final int POSITION_PRECISION = 4;
+    private static final int POSITION_HEADING = 5;
+    private static final int POSITION_SPEED = 6;
+    private static final int POSITION_TIMESTAMP = 7;
+    private static final int POSITION_SATELLITES = 8;
+    private static final int POSITION_STATUS = 9;
+
+    // Metric names are usually the same for every message published by an application:
+    // their UTF-8 encoding is cached, up to a maximum number of names.
+    private static final int MAX_CACHED_METRIC_NAMES = 4096;
+    private static final Map<String, byte[]> metricNames = new ConcurrentHashMap<String, byte[]>();
+
     private final KuraPayload kuraPayload;
 
     public CloudPayloadProtoBufEncoderImpl(KuraPayload kuraPayload) {
@@ -45,117 +86,253 @@ public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
      */
     @Override
     public byte[] getBytes() throws IOException {
-        // Build the message
-        KuraPayloadProto.KuraPayload.Builder protoMsg = KuraPayloadProto.KuraPayload.newBuilder();
+        // First pass: compute the size of each field, keeping the encoded strings for the second pass
+        int size = 0;
 
-        // set the timestamp
-        if (this.kuraPayload.getTimestamp() != null) {
-            protoMsg.setTimestamp(this.kuraPayload.getTimestamp().getTime());
+        Date timestamp = this.kuraPayload.getTimestamp();
+        if (timestamp != null) {
+            size += CodedOutputStream.computeInt64Size(PAYLOAD_TIMESTAMP, timestamp.getTime());
         }
 
-        // set the position
-        if (this.kuraPayload.getPosition() != null) {
-            protoMsg.setPosition(buildPositionProtoBuf());
+        KuraPosition position = this.kuraPayload.getPosition();
+        int positionSize = 0;
+        if (position != null) {
+            positionSize = computePositionSize(position);
+            size += computeLengthDelimitedSize(PAYLOAD_POSITION, positionSize);
         }
 
-        // set the metrics
-        for (final Map.Entry<String, Object> entry : this.kuraPayload.metrics().entrySet()) {
+        Map<String, Object> metrics = this.kuraPayload.metrics();
+        int metricCount = 0;
+        byte[][] names = new byte[metrics.size()][];
+        ValueType[] types = new ValueType[metrics.size()];
+        Object[] values = new Object[metrics.size()];
+        int[] metricSizes = new int[metrics.size()];
+        for (final Map.Entry<String, Object> entry : metrics.entrySet()) {
             final String name = entry.getKey();
-            final Object value = entry.getValue();
+            Object value = entry.getValue();
 
-            // build a metric
+            ValueType type;
             try {
-                KuraMetric.Builder metricB = KuraMetric.newBuilder();
-                metricB.setName(name);
-
-                boolean result = setProtoKuraMetricValue(metricB, value);
-                if (result) {
-                    // add it to the message
-                    protoMsg.addMetric(metricB);
-                }
+                type = getValueType(value);
             } catch (KuraInvalidMetricTypeException e) {
                 logger.error("During serialization, ignoring metric named: {}. Unrecognized value type: {}.", name,
-                        value != null ? value.getClass().getName() : "<null>");
+                        value.getClass().getName());
                 throw new RuntimeException(e);
             }
+            if (type == null) {
+                logger.warn("Received a metric with a null value!");
+                continue;
+            }
+            if (type == ValueType.STRING) {
+                value = ((String) value).getBytes(StandardCharsets.UTF_8);
+            }
+
+            byte[] nameBytes = encodeMetricName(name);
+            int metricSize = computeLengthDelimitedSize(METRIC_NAME, nameBytes.length)
+                    + CodedOutputStream.computeEnumSize(METRIC_TYPE, type.getNumber())
+                    + computeMetricValueSize(type, value);
+
+            names[metricCount] = nameBytes;
+            types[metricCount] = type;
+            values[metricCount] = value;
+            metricSizes[metricCount] = metricSize;
+            metricCount++;
+
+            size += computeLengthDelimitedSize(PAYLOAD_METRIC, metricSize);
+        }
+
+        byte[] body = this.kuraPayload.getBody();
+        if (body != null) {
+            size += computeLengthDelimitedSize(PAYLOAD_BODY, body.length);
+        }
+
+        // Second pass: write the fields
+        byte[] bytes = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+
+        if (timestamp != null) {
+            out.writeInt64(PAYLOAD_TIMESTAMP, timestamp.getTime());
+        }
+
+        if (position != null) {
+            writeLengthDelimitedHeader(out, PAYLOAD_POSITION, positionSize);
+            writePosition(out, position);
+        }
+
+        for (int i = 0; i < metricCount; i++) {
+            writeLengthDelimitedHeader(out, PAYLOAD_METRIC, metricSizes[i]);
+            writeBytes(out, METRIC_NAME, names[i]);
+            out.writeEnum(METRIC_TYPE, types[i].getNumber());
+            writeMetricValue(out, types[i], values[i]);
         }
 
-        // set the body
-        if (this.kuraPayload.getBody() != null) {
-            protoMsg.setBody(ByteString.copyFrom(this.kuraPayload.getBody()));
+        if (body != null) {
+            writeBytes(out, PAYLOAD_BODY, body);
         }
 
-        return protoMsg.build().toByteArray();
+        out.checkNoSpaceLeft();
+        return bytes;
     }
 
     //
-    // Helper methods to convert the KuraMetrics
+    // Helper methods to encode the KuraMetrics
     //
-    private KuraPayloadProto.KuraPayload.KuraPosition buildPositionProtoBuf() {
-        KuraPayloadProto.KuraPayload.KuraPosition.Builder protoPos = KuraPayloadProto.KuraPayload.KuraPosition
-                .newBuilder();
+    private static byte[] encodeMetricName(String name) {
+        byte[] nameBytes = metricNames.get(name);
+        if (nameBytes == null) {
+            nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (metricNames.size() < MAX_CACHED_METRIC_NAMES) {
+                metricNames.put(name, nameBytes);
+            }
+        }
+        return nameBytes;
+    }
 
-        KuraPosition position = this.kuraPayload.getPosition();
-        if (position.getLatitude() != null) {
-            protoPos.setLatitude(position.getLatitude());
+    private static ValueType getValueType(Object o) throws KuraInvalidMetricTypeException {
+        if (o instanceof String) {
+            return ValueType.STRING;
+        } else if (o instanceof Double) {
+            return ValueType.DOUBLE;
+        } else if (o instanceof Integer) {
+            return ValueType.INT32;
+        } else if (o instanceof Float) {
+            return ValueType.FLOAT;
+        } else if (o instanceof Long) {
+            return ValueType.INT64;
+        } else if (o instanceof Boolean) {
+            return ValueType.BOOL;
+        } else if (o instanceof byte[]) {
+            return ValueType.BYTES;
+        } else if (o == null) {
+            return null;
+        } else {
+            throw new KuraInvalidMetricTypeException(o.getClass().getName());
+        }
+    }
+
+    // String values are already encoded in UTF-8
+    private static int computeMetricValueSize(ValueType type, Object value) {
+        switch (type) {
+        case DOUBLE:
+            return CodedOutputStream.computeDoubleSize(METRIC_DOUBLE_VALUE, (Double) value);
+        case FLOAT:
+            return CodedOutputStream.computeFloatSize(METRIC_FLOAT_VALUE, (Float) value);
+        case INT64:
+            return CodedOutputStream.computeInt64Size(METRIC_LONG_VALUE, (Long) value);
+        case INT32:
+            return CodedOutputStream.computeInt32Size(METRIC_INT_VALUE, (Integer) value);
+        case BOOL:
+            return CodedOutputStream.computeBoolSize(METRIC_BOOL_VALUE, (Boolean) value);
+        case STRING:
+            return computeLengthDelimitedSize(METRIC_STRING_VALUE, ((byte[]) value).length);
+        default:
+            return computeLengthDelimitedSize(METRIC_BYTES_VALUE, ((byte[]) value).length);
+        }
+    }
+
+    private static void writeMetricValue(CodedOutputStream out, ValueType type, Object value) throws IOException {
+        switch (type) {
+        case DOUBLE:
+            out.writeDouble(METRIC_DOUBLE_VALUE, (Double) value);
+            break;
+        case FLOAT:
+            out.writeFloat(METRIC_FLOAT_VALUE, (Float) value);
+            break;
+        case INT64:
+            out.writeInt64(METRIC_LONG_VALUE, (Long) value);
+            break;
+        case INT32:
+            out.writeInt32(METRIC_INT_VALUE, (Integer) value);
+            break;
+        case BOOL:
+            out.writeBool(METRIC_BOOL_VALUE, (Boolean) value);
+            break;
+        case STRING:
+            writeBytes(out, METRIC_STRING_VALUE, (byte[]) value);
+            break;
+        default:
+            writeBytes(out, METRIC_BYTES_VALUE, (byte[]) value);
+            break;
         }
-        if (position.getLongitude() != null) {
-            protoPos.setLongitude(position.getLongitude());
+    }
+
+    //
+    // Helper methods to encode the KuraPosition
+    //
+    private static int computePositionSize(KuraPosition position) {
+        // Latitude and longitude are required fields
+        if (position.getLatitude() == null || position.getLongitude() == null) {
+            throw new IllegalArgumentException("Position latitude and longitude are required");
         }
+
+        int size = CodedOutputStream.computeDoubleSize(POSITION_LATITUDE, position.getLatitude())
+                + CodedOutputStream.computeDoubleSize(POSITION_LONGITUDE, position.getLongitude());
         if (position.getAltitude() != null) {
-            protoPos.setAltitude(position.getAltitude());
+            size += CodedOutputStream.computeDoubleSize(POSITION_ALTITUDE, position.getAltitude());
         }
         if (position.getPrecision() != null) {
-            protoPos.setPrecision(position.getPrecision());
+            size += CodedOutputStream.computeDoubleSize(POSITION_PRECISION, position.getPrecision());
         }
         if (position.getHeading() != null) {
-            protoPos.setHeading(position.getHeading());
+            size += CodedOutputStream.computeDoubleSize(POSITION_HEADING, position.getHeading());
         }
         if (position.getSpeed() != null) {
-            protoPos.setSpeed(position.getSpeed());
+            size += CodedOutputStream.computeDoubleSize(POSITION_SPEED, position.getSpeed());
         }
         if (position.getTimestamp() != null) {
-            protoPos.setTimestamp(position.getTimestamp().getTime());
+            size += CodedOutputStream.computeInt64Size(POSITION_TIMESTAMP, position.getTimestamp().getTime());
         }
         if (position.getSatellites() != null) {
-            protoPos.setSatellites(position.getSatellites());
+            size += CodedOutputStream.computeInt32Size(POSITION_SATELLITES, position.getSatellites());
         }
         if (position.getStatus() != null) {
-            protoPos.setStatus(position.getStatus());
+            size += CodedOutputStream.computeInt32Size(POSITION_STATUS, position.getStatus());
         }
-        return protoPos.build();
+        return size;
     }
 
-    private static boolean setProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric.Builder metric, Object o)
-            throws KuraInvalidMetricTypeException {
-
-        if (o instanceof String) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.STRING);
-            metric.setStringValue((String) o);
-        } else if (o instanceof Double) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.DOUBLE);
-            metric.setDoubleValue((Double) o);
-        } else if (o instanceof Integer) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT32);
-            metric.setIntValue((Integer) o);
-        } else if (o instanceof Float) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.FLOAT);
-            metric.setFloatValue((Float) o);
-        } else if (o instanceof Long) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT64);
-            metric.setLongValue((Long) o);
-        } else if (o instanceof Boolean) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BOOL);
-            metric.setBoolValue((Boolean) o);
-        } else if (o instanceof byte[]) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BYTES);
-            metric.setBytesValue(ByteString.copyFrom((byte[]) o));
-        } else if (o == null) {
-            logger.warn("Received a metric with a null value!");
-            return false;
-        } else {
-            throw new KuraInvalidMetricTypeException(o.getClass().getName());
+    private static void writePosition(CodedOutputStream out, KuraPosition position) throws IOException {
+        out.writeDouble(POSITION_LATITUDE, position.getLatitude());
+        out.writeDouble(POSITION_LONGITUDE, position.getLongitude());
+        if (position.getAltitude() != null) {
+            out.writeDouble(POSITION_ALTITUDE, position.getAltitude());
+        }
+        if (position.getPrecision() != null) {
+            out.writeDouble(POSITION_PRECISION, position.getPrecision());
+        }
+        if (position.getHeading() != null) {
+            out.writeDouble(POSITION_HEADING, position.getHeading());
+        }
+        if (position.getSpeed() != null) {
+            out.writeDouble(POSITION_SPEED, position.getSpeed());
         }
-        return true;
+        if (position.getTimestamp() != null) {
+            out.writeInt64(POSITION_TIMESTAMP, position.getTimestamp().getTime());
+        }
+        if (position.getSatellites() != null) {
+            out.writeInt32(POSITION_SATELLITES, position.getSatellites());
+        }
+        if (position.getStatus() != null) {
+            out.writeInt32(POSITION_STATUS, position.getStatus());
+        }
+    }
+
+    //
+    // Helper methods for length delimited fields
+    //
+    private static int computeLengthDelimitedSize(int fieldNumber, int length) {
+        return CodedOutputStream.computeTagSize(fieldNumber) + CodedOutputStream.computeRawVarint32Size(length)
+                + length;
+    }
+
+    private static void writeLengthDelimitedHeader(CodedOutputStream out, int fieldNumber, int length)
+            throws IOException {
+        out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(length);
+    }
+
+    private static void writeBytes(CodedOutputStream out, int fieldNumber, byte[] value) throws IOException {
+        writeLengthDelimitedHeader(out, fieldNumber, value.length);
+        out.writeRawBytes(value);
     }
 }
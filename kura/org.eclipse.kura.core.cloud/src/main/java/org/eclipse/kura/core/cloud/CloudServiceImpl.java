@@ -16,6 +16,7 @@ import static org.eclipse.kura.cloud.CloudPayloadEncoding.KURA_PROTOBUF;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -47,7 +48,6 @@ import org.eclipse.kura.position.PositionLockedEvent;
 import org.eclipse.kura.position.PositionService;
 import org.eclipse.kura.system.SystemAdminService;
 import org.eclipse.kura.system.SystemService;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
@@ -74,11 +74,15 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
     private NetworkService networkService;
     private PositionService positionService;
     private EventAdmin eventAdmin;
-    private CertificatesService certificatesService;
+    private volatile CertificatesService certificatesService;
 
     // use a synchronized implementation for the list
     private final List<CloudClientImpl> cloudClients;
 
+    // The cloud clients indexed by application ID, rebuilt when a client is added or removed.
+    // Used to route the message events without scanning all the clients.
+    private volatile Map<String, List<CloudClientImpl>> cloudClientsByAppId = Collections.emptyMap();
+
     // package visibility for LyfeCyclePayloadBuilder
     String imei;
     String iccid;
@@ -169,6 +173,16 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         this.eventAdmin = null;
     }
 
+    public void setCertificatesService(CertificatesService certificatesService) {
+        this.certificatesService = certificatesService;
+    }
+
+    public void unsetCertificatesService(CertificatesService certificatesService) {
+        if (this.certificatesService == certificatesService) {
+            this.certificatesService = null;
+        }
+    }
+
     // ----------------------------------------------------------------
     //
     // Activation APIs
@@ -240,6 +254,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         // certificate is already published due the missing dependency
         // we only need to empty our CloudClient list
         this.cloudClients.clear();
+        indexCloudClients();
 
         this.dataService = null;
         this.systemService = null;
@@ -247,7 +262,6 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         this.networkService = null;
         this.positionService = null;
         this.eventAdmin = null;
-        this.certificatesService = null;
     }
 
     @Override
@@ -302,6 +316,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         // create new instance
         CloudClientImpl cloudClient = new CloudClientImpl(applicationId, this.dataService, this);
         this.cloudClients.add(cloudClient);
+        indexCloudClients();
 
         // publish updated birth certificate with list of active apps
         if (isConnected()) {
@@ -339,6 +354,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
     public void removeCloudClient(CloudClientImpl cloudClient) {
         // remove the client
         this.cloudClients.remove(cloudClient);
+        indexCloudClients();
 
         // publish updated birth certificate with updated list of active apps
         if (isConnected()) {
@@ -439,48 +455,42 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         KuraTopic kuraTopic = new KuraTopic(topic, this.options.getTopicControlPrefix());
         if (TOPIC_MQTT_APP.equals(kuraTopic.getApplicationId()) || TOPIC_BA_APP.equals(kuraTopic.getApplicationId())) {
             logger.info("Ignoring feedback message from {}", topic);
-        } else {
-            KuraPayload kuraPayload = null;
+            return;
+        }
+
+        List<CloudClientImpl> cloudClients = getCloudClients(kuraTopic.getApplicationId());
+        if (cloudClients.isEmpty()) {
+            return;
+        }
 
-            if (this.options.getPayloadEncoding() == SIMPLE_JSON) {
-                kuraPayload = createKuraPayloadFromJson(payload);
-            } else if (this.options.getPayloadEncoding() == KURA_PROTOBUF) {
-                kuraPayload = createKuraPayloadFromProtoBuf(topic, payload);
+        // decode the payload only when there is someone to deliver it to
+        KuraPayload kuraPayload = null;
+        if (this.options.getPayloadEncoding() == SIMPLE_JSON) {
+            kuraPayload = createKuraPayloadFromJson(payload);
+        } else if (this.options.getPayloadEncoding() == KURA_PROTOBUF) {
+            kuraPayload = createKuraPayloadFromProtoBuf(topic, payload);
+        }
+
+        boolean controlMessage = this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix());
+        if (controlMessage) {
+            CertificatesService certificatesService = this.certificatesService;
+            if (certificatesService != null && !certificatesService.verifySignature(kuraTopic, kuraPayload)) {
+                logger.warn("Message verification failed! Not valid signature or message not signed.");
+                return;
             }
+        }
 
-            for (CloudClientImpl cloudClient : this.cloudClients) {
-                if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
-                    try {
-                        if (this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix())) {
-                            if (this.certificatesService == null) {
-                                ServiceReference<CertificatesService> sr = this.ctx.getBundleContext()
-                                        .getServiceReference(CertificatesService.class);
-                                if (sr != null) {
-                                    this.certificatesService = this.ctx.getBundleContext().getService(sr);
-                                }
-                            }
-                            boolean validMessage = false;
-                            if (this.certificatesService == null) {
-                                validMessage = true;
-                            } else if (this.certificatesService.verifySignature(kuraTopic, kuraPayload)) {
-                                validMessage = true;
-                            }
-
-                            if (validMessage) {
-                                cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(),
-                                        kuraTopic.getApplicationTopic(), kuraPayload, qos, retained);
-                            } else {
-                                logger.warn("Message verification failed! Not valid signature or message not signed.");
-                            }
-                        } else {
-                            cloudClient.onMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(),
-                                    kuraPayload, qos, retained);
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error during CloudClientListener notification.", e);
-                    }
+        for (CloudClientImpl cloudClient : cloudClients) {
+            try {
+                if (controlMessage) {
+                    cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(),
+                            kuraPayload, qos, retained);
+                } else {
+                    cloudClient.onMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(),
+                            kuraPayload, qos, retained);
                 }
-
+            } catch (Exception e) {
+                logger.error("Error during CloudClientListener notification.", e);
             }
         }
     }
@@ -499,10 +509,8 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
         // notify listeners
         KuraTopic kuraTopic = new KuraTopic(topic, this.options.getTopicControlPrefix());
-        for (CloudClientImpl cloudClient : this.cloudClients) {
-            if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
-                cloudClient.onMessagePublished(messageId, kuraTopic.getApplicationTopic());
-            }
+        for (CloudClientImpl cloudClient : getCloudClients(kuraTopic.getApplicationId())) {
+            cloudClient.onMessagePublished(messageId, kuraTopic.getApplicationTopic());
         }
     }
 
@@ -518,10 +526,8 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
         // notify listeners
         KuraTopic kuraTopic = new KuraTopic(topic, this.options.getTopicControlPrefix());
-        for (CloudClientImpl cloudClient : this.cloudClients) {
-            if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
-                cloudClient.onMessageConfirmed(messageId, kuraTopic.getApplicationTopic());
-            }
+        for (CloudClientImpl cloudClient : getCloudClients(kuraTopic.getApplicationId())) {
+            cloudClient.onMessageConfirmed(messageId, kuraTopic.getApplicationTopic());
         }
     }
 
@@ -692,7 +698,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
         CloudPayloadEncoder encoder = new CloudPayloadProtoBufEncoderImpl(payload);
         if (this.options.getEncodeGzip()) {
-            encoder = new CloudPayloadGZipEncoder(encoder);
+            encoder = new CloudPayloadGZipEncoder(encoder, this.options.getEncodeGzipMinSize());
         }
 
         try {
@@ -707,6 +713,25 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         return CloudPayloadJsonEncoder.getBytes(payload);
     }
 
+    private List<CloudClientImpl> getCloudClients(String applicationId) {
+        List<CloudClientImpl> cloudClients = applicationId != null ? this.cloudClientsByAppId.get(applicationId)
+                : null;
+        return cloudClients != null ? cloudClients : Collections.<CloudClientImpl> emptyList();
+    }
+
+    private synchronized void indexCloudClients() {
+        Map<String, List<CloudClientImpl>> cloudClientsByAppId = new HashMap<String, List<CloudClientImpl>>();
+        for (CloudClientImpl cloudClient : this.cloudClients) {
+            List<CloudClientImpl> cloudClients = cloudClientsByAppId.get(cloudClient.getApplicationId());
+            if (cloudClients == null) {
+                cloudClients = new ArrayList<CloudClientImpl>(1);
+                cloudClientsByAppId.put(cloudClient.getApplicationId(), cloudClients);
+            }
+            cloudClients.add(cloudClient);
+        }
+        this.cloudClientsByAppId = cloudClientsByAppId;
+    }
+
     private KuraPayload createKuraPayloadFromJson(byte[] payload) {
         return CloudPayloadJsonDecoder.buildFromByteArray(payload);
     }
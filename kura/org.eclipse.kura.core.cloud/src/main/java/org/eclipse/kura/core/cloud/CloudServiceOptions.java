@@ -43,12 +43,15 @@ public class CloudServiceOptions {
     private static final String DEVICE_DISPLAY_NAME = "device.display-name";
     private static final String DEVICE_CUSTOM_NAME = "device.custom-name";
     private static final String ENCODE_GZIP = "encode.gzip";
+    private static final String ENCODE_GZIP_MIN_SIZE = "encode.gzip.min-size";
     private static final String REPUB_BIRTH_ON_GPS_LOCK = "republish.mqtt.birth.cert.on.gps.lock";
     private static final String REPUB_BIRTH_ON_MODEM_DETECT = "republish.mqtt.birth.cert.on.modem.detect";
     private static final String ENABLE_DFLT_SUBSCRIPTIONS = "enable.default.subscriptions";
     private static final String BIRTH_CERT_POLICY = "birth.cert.policy";
     private static final String PAYLOAD_ENCODING = "payload.encoding";
 
+    private static final int ENCODE_GZIP_MIN_SIZE_DEFAULT = 64;
+
     private static final int LIFECYCLE_QOS = 0;
     private static final int LIFECYCLE_PRIORITY = 0;
     private static final boolean LIFECYCLE_RETAIN = false;
@@ -127,6 +130,21 @@ public class CloudServiceOptions {
         return encodeGzip;
     }
 
+    /**
+     * Returns the size in bytes below which outgoing payloads are not Gzip compressed,
+     * even if compression is enabled.
+     *
+     * @return an int value.
+     */
+    public int getEncodeGzipMinSize() {
+        int minSize = ENCODE_GZIP_MIN_SIZE_DEFAULT;
+        if (this.properties != null && this.properties.get(ENCODE_GZIP_MIN_SIZE) != null
+                && this.properties.get(ENCODE_GZIP_MIN_SIZE) instanceof Integer) {
+            minSize = (Integer) this.properties.get(ENCODE_GZIP_MIN_SIZE);
+        }
+        return minSize;
+    }
+
     /**
      * Returns true if the current CloudService configuration
      * specifies the cloud client should republish the MQTT birth
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -12,6 +12,16 @@
 package org.eclipse.kura.core.cloud.call;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraErrorCode;
@@ -46,11 +56,15 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
     private static final String ACCOUNT_NAME_VAR_NAME = "#account-name";
     private static final String CLIENT_ID_VAR_NAME = "#client-id";
 
+    private static final String REPLY_TOPIC = "REPLY";
+
     private DataService m_dataService;
 
-    private Object m_lock;
-    private String m_respTopic;
-    private KuraResponsePayload m_resp;
+    // The outstanding calls, by application ID and application topic of the expected response
+    private final Map<String, PendingCall> m_pendingCalls = new ConcurrentHashMap<String, PendingCall>();
+
+    // Shared by all the calls to expire them and to unsubscribe from their response topics
+    private ScheduledExecutorService m_executor;
 
     // ----------------------------------------------------------------
     //
@@ -74,27 +88,60 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
 
     protected void activate(ComponentContext componentContext) {
         s_logger.info("Activating...");
-        this.m_lock = new Object();
+        this.m_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CloudCallServiceImpl:Timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         this.m_dataService.addDataServiceListener(this);
     }
 
     protected void deactivate(ComponentContext componentContext) {
         s_logger.info("Deactivating...");
         this.m_dataService.removeDataServiceListener(this);
-        synchronized (this.m_lock) {
-            this.m_lock.notifyAll();
-        }
+        cancel();
+        this.m_executor.shutdown();
     }
 
     @Override
-    public synchronized KuraResponsePayload call(String appId, String appTopic, KuraPayload appPayload, int timeout)
+    public KuraResponsePayload call(String appId, String appTopic, KuraPayload appPayload, int timeout)
             throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException {
         return call(CLIENT_ID_VAR_NAME, appId, appTopic, appPayload, timeout);
     }
 
     @Override
-    public synchronized KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload,
+    public KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload,
             int timeout) throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException {
+        CompletableFuture<KuraResponsePayload> response = callAsync(deviceId, appId, appTopic, appPayload, timeout);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            // Avoid re-throwing this exception which should not normally happen
+            s_logger.warn("Interrupted while waiting for the response");
+            Thread.currentThread().interrupt();
+            response.cancel(false);
+            throw new KuraTimeoutException("Timed out while waiting for the response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KuraException) {
+                throw (KuraException) e.getCause();
+            }
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<KuraResponsePayload> callAsync(String appId, String appTopic, KuraPayload appPayload,
+            int timeout) throws KuraConnectException, KuraStoreException, KuraException {
+        return callAsync(CLIENT_ID_VAR_NAME, appId, appTopic, appPayload, timeout);
+    }
+
+    @Override
+    public CompletableFuture<KuraResponsePayload> callAsync(String deviceId, String appId, String appTopic,
+            KuraPayload appPayload, int timeout) throws KuraConnectException, KuraStoreException, KuraException {
         // Generate the request ID
         String requestId = s_generator.next();
 
@@ -102,7 +149,7 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
                 .append(deviceId).append("/").append(appId).append("/").append(appTopic);
 
         StringBuilder sbRespTopic = new StringBuilder("$EDC").append("/").append(ACCOUNT_NAME_VAR_NAME).append("/")
-                .append(CLIENT_ID_VAR_NAME).append("/").append(appId).append("/").append("REPLY").append("/")
+                .append(CLIENT_ID_VAR_NAME).append("/").append(appId).append("/").append(REPLY_TOPIC).append("/")
                 .append(requestId);
 
         KuraRequestPayload req = null;
@@ -124,41 +171,75 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
             throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e, "Cannot encode request");
         }
 
-        this.m_respTopic = sbRespTopic.toString();
-        this.m_resp = null;
-
-        this.m_dataService.subscribe(this.m_respTopic, 0);
-
-        synchronized (this.m_lock) {
-            try {
-                this.m_dataService.publish(sbReqTopic.toString(), rawPayload, DFLT_PUB_QOS, DFLT_RETAIN, DFLT_PRIORITY);
-                this.m_lock.wait(timeout);
-            } catch (KuraStoreException e) {
-                throw e;
-            } catch (InterruptedException e) {
-                // Avoid re-throwing this exception which should not normally happen
-                s_logger.warn("Interrupted while waiting for the response");
-                Thread.interrupted();
-            } finally {
-                try {
-                    this.m_dataService.unsubscribe(this.m_respTopic);
-                } catch (KuraException e) {
-                    s_logger.error("Cannot unsubscribe");
-                }
-                this.m_respTopic = null;
+        String key = appId + "/" + REPLY_TOPIC + "/" + requestId;
+        final PendingCall call = new PendingCall(key, sbRespTopic.toString());
+        this.m_pendingCalls.put(key, call);
+
+        // Whatever completes the call, a response, a timeout or a cancellation, releases it
+        call.m_response.whenComplete(new BiConsumer<KuraResponsePayload, Throwable>() {
+
+            @Override
+            public void accept(KuraResponsePayload response, Throwable failure) {
+                release(call);
             }
-        }
+        });
 
-        if (this.m_resp == null) {
-            throw new KuraTimeoutException("Timed out while waiting for the response");
+        try {
+            this.m_dataService.subscribe(call.m_respTopic, 0);
+            this.m_dataService.publish(sbReqTopic.toString(), rawPayload, DFLT_PUB_QOS, DFLT_RETAIN, DFLT_PRIORITY);
+        } catch (KuraException e) {
+            call.m_response.completeExceptionally(e);
+            throw e;
         }
 
-        return this.m_resp;
+        if (timeout > 0) {
+            call.m_timeout = this.m_executor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    call.m_response.completeExceptionally(
+                            new KuraTimeoutException("Timed out while waiting for the response"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        return call.m_response;
     }
 
+    /**
+     * Fails all the outstanding calls.
+     */
     public void cancel() {
-        synchronized (this.m_lock) {
-            notifyAll();
+        for (PendingCall call : this.m_pendingCalls.values()) {
+            call.m_response.completeExceptionally(new KuraTimeoutException("Call canceled"));
+        }
+    }
+
+    private void release(final PendingCall call) {
+        this.m_pendingCalls.remove(call.m_key);
+        if (call.m_timeout != null) {
+            call.m_timeout.cancel(false);
+        }
+
+        // Unsubscribe from the timer thread, since the call can be completed by a DataService callback
+        Runnable unsubscribe = new Runnable() {
+
+            @Override
+            public void run() {
+                DataService dataService = CloudCallServiceImpl.this.m_dataService;
+                if (dataService == null) {
+                    return;
+                }
+                try {
+                    dataService.unsubscribe(call.m_respTopic);
+                } catch (KuraException e) {
+                    s_logger.error("Cannot unsubscribe");
+                }
+            }
+        };
+        if (this.m_executor.isShutdown()) {
+            unsubscribe.run();
+        } else {
+            this.m_executor.execute(unsubscribe);
         }
     }
 
@@ -187,33 +268,30 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
 
         s_logger.debug("Message arrived on topic: '{}'", topic);
 
-        if (this.m_respTopic != null) {
-            // Filter on application ID and topic
-            KuraTopic kuraTopic = new KuraTopic(topic);
-            KuraTopic kuraRespTopic = new KuraTopic(this.m_respTopic);
-
-            if (kuraTopic.getApplicationId().equals(kuraRespTopic.getApplicationId())
-                    && kuraTopic.getApplicationTopic().equals(kuraRespTopic.getApplicationTopic())) {
-
-                s_logger.debug("Got response");
+        if (this.m_pendingCalls.isEmpty()) {
+            return;
+        }
 
-                CloudPayloadProtoBufDecoderImpl decoder = new CloudPayloadProtoBufDecoderImpl(payload);
+        // Filter on application ID and topic
+        KuraTopic kuraTopic = new KuraTopic(topic);
+        PendingCall call = this.m_pendingCalls
+                .get(kuraTopic.getApplicationId() + "/" + kuraTopic.getApplicationTopic());
+        if (call == null) {
+            return;
+        }
 
-                KuraResponsePayload resp = null;
-                try {
-                    KuraPayload kuraPayload = decoder.buildFromByteArray();
-                    resp = new KuraResponsePayload(kuraPayload);
-                } catch (KuraInvalidMessageException e) {
-                    s_logger.error("Cannot decode protobuf", e);
-                } catch (IOException e) {
-                    s_logger.error("Cannot decode protobuf", e);
-                }
+        s_logger.debug("Got response");
 
-                synchronized (this.m_lock) {
-                    this.m_resp = resp; // Can be null
-                    this.m_lock.notifyAll();
-                }
-            }
+        CloudPayloadProtoBufDecoderImpl decoder = new CloudPayloadProtoBufDecoderImpl(payload);
+        try {
+            KuraPayload kuraPayload = decoder.buildFromByteArray();
+            call.m_response.complete(new KuraResponsePayload(kuraPayload));
+        } catch (KuraInvalidMessageException e) {
+            s_logger.error("Cannot decode protobuf", e);
+            call.m_response.completeExceptionally(e);
+        } catch (IOException e) {
+            s_logger.error("Cannot decode protobuf", e);
+            call.m_response.completeExceptionally(new KuraException(KuraErrorCode.DECODER_ERROR, e));
         }
     }
 
@@ -231,4 +309,17 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
     public boolean isConnected() {
         return this.m_dataService.isConnected();
     }
+
+    private static final class PendingCall {
+
+        private final String m_key;
+        private final String m_respTopic;
+        private final CompletableFuture<KuraResponsePayload> m_response = new CompletableFuture<KuraResponsePayload>();
+        private volatile ScheduledFuture<?> m_timeout;
+
+        PendingCall(String key, String respTopic) {
+            this.m_key = key;
+            this.m_respTopic = respTopic;
+        }
+    }
 }
@@ -94,6 +94,10 @@ public class DataMessage {
         return this.payload;
     }
 
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
     public int getPriority() {
         return this.priority;
     }
@@ -102,6 +106,10 @@ public class DataMessage {
         return this.sessionId;
     }
 
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
     public Date droppedOn() {
         return this.droppedOn;
     }
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data;
+
+/**
+ * Receives the messages scanned by the visit methods of the {@link DataStore}, one at a time,
+ * so that a scan does not need to hold all the matching messages in memory.
+ */
+public interface DataMessageVisitor {
+
+    /**
+     * Called for each scanned message, in the order defined by the scan.
+     *
+     * @param msgId
+     *            the ID of the message
+     * @param topic
+     *            the topic of the message
+     */
+    public void visit(int msgId, String topic);
+}
@@ -11,12 +11,15 @@
  *******************************************************************************/
 package org.eclipse.kura.core.data;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -24,6 +27,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.eclipse.kura.KuraConnectException;
@@ -35,6 +39,7 @@ import org.eclipse.kura.KuraTooManyInflightMessagesException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.core.data.store.DbDataStore;
+import org.eclipse.kura.core.data.store.LogDataStore;
 import org.eclipse.kura.data.DataService;
 import org.eclipse.kura.data.DataTransportService;
 import org.eclipse.kura.data.DataTransportToken;
@@ -44,6 +49,7 @@ import org.eclipse.kura.db.DbService;
 import org.eclipse.kura.status.CloudConnectionStatusComponent;
 import org.eclipse.kura.status.CloudConnectionStatusEnum;
 import org.eclipse.kura.status.CloudConnectionStatusService;
+import org.eclipse.kura.system.SystemService;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.ComponentException;
 import org.slf4j.Logger;
@@ -59,18 +65,28 @@ public class DataServiceImpl
     private static final String AUTOCONNECT_PROP_NAME = "connect.auto-on-startup";
     private static final String CONNECT_DELAY_PROP_NAME = "connect.retry-interval";
     private static final String DISCONNECT_DELAY_PROP_NAME = "disconnect.quiesce-timeout";
+    private static final String STORE_TYPE_PROP_NAME = "store.type";
+    private static final String STORE_TYPE_LOG = "log";
     private static final String STORE_HOUSEKEEPER_INTERVAL_PROP_NAME = "store.housekeeper-interval";
     private static final String STORE_PURGE_AGE_PROP_NAME = "store.purge-age";
     private static final String STORE_CAPACITY_PROP_NAME = "store.capacity";
+    private static final String STORE_PUBLISH_WINDOW_SIZE_PROP_NAME = "store.publish-window-size";
+    private static final String STORE_PUBLISH_WINDOW_MAX_BYTES_PROP_NAME = "store.publish-window-max-bytes";
+    private static final String STORE_GROUP_COMMIT_SIZE_PROP_NAME = "store.group-commit-size";
+    private static final String STORE_GROUP_COMMIT_DELAY_PROP_NAME = "store.group-commit-delay";
     private static final String REPUBLISH_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.republish-on-new-session";
     private static final String MAX_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.max-number";
     private static final String IN_FLIGHT_MSGS_CONGESTION_TIMEOUT_PROP_NAME = "in-flight-messages.congestion-timeout";
+    private static final String LISTENER_QUEUE_SIZE_PROP_NAME = "listener.queue-size";
+    private static final String LISTENER_QUEUE_OVERFLOW_POLICY_PROP_NAME = "listener.queue-overflow-policy";
 
     private final Map<String, Object> properties = new HashMap<String, Object>();
 
     private DataTransportService dataTransportService;
     private DbService dbService;
-    private DataServiceListenerS dataServiceListeners;
+    private SystemService systemService;
+    // Created with the component, since listener services can be bound before the activation
+    private final DataServiceListenerS dataServiceListeners = new DataServiceListenerS();
 
     protected ScheduledExecutorService reconnectExecutor;
     private ScheduledFuture<?> reconnectFuture;
@@ -79,8 +95,21 @@ public class DataServiceImpl
     private ScheduledExecutorService publisherExecutor;
 
     private DataStore store;
+    private String storeType;
 
-    private Map<DataTransportToken, Integer> inFlightMsgIds;
+    // The in-flight window. Messages are kept without payload so that confirmations do not need to read the store.
+    private Map<DataTransportToken, DataMessage> inFlightMsgs;
+
+    // Tokens confirmed by the transport before the publisher has added them to the in-flight window,
+    // mapped to the sequence number of their confirmation
+    private final Map<DataTransportToken, Long> earlyConfirmedTokens =
+            new ConcurrentHashMap<DataTransportToken, Long>();
+
+    // Sequence number of the last confirmation received from the transport
+    private final AtomicLong confirmationSeq = new AtomicLong();
+
+    // IDs of confirmed messages not yet acknowledged to the store
+    private final Queue<Integer> confirmedMsgIds = new ConcurrentLinkedQueue<Integer>();
 
     private ScheduledExecutorService congestionExecutor;
     private ScheduledFuture<?> congestionFuture;
@@ -109,25 +138,33 @@ public class DataServiceImpl
         if (parts.length > 1) {
             table += "_" + parts[1];
         }
-        this.store = new DbDataStore(table);
+        this.storeType = (String) this.properties.get(STORE_TYPE_PROP_NAME);
+        if (STORE_TYPE_LOG.equals(this.storeType)) {
+            File directory = new File(this.systemService.getKuraDataDirectory(), table);
+            this.store = new LogDataStore(directory);
+        } else {
+            this.store = new DbDataStore(table);
+        }
 
         try {
             this.store.start(this.dbService, (Integer) this.properties.get(STORE_HOUSEKEEPER_INTERVAL_PROP_NAME),
                     (Integer) this.properties.get(STORE_PURGE_AGE_PROP_NAME),
-                    (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME));
+                    (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME),
+                    (Integer) this.properties.get(STORE_GROUP_COMMIT_SIZE_PROP_NAME),
+                    (Integer) this.properties.get(STORE_GROUP_COMMIT_DELAY_PROP_NAME));
 
             // The initial list of in-flight messages
             List<DataMessage> inFlightMsgs = this.store.allInFlightMessagesNoPayload();
 
-            // The map associating a DataTransportToken with a message ID
-            this.inFlightMsgIds = new ConcurrentHashMap<DataTransportToken, Integer>();
+            // The map associating a DataTransportToken with a message
+            this.inFlightMsgs = new ConcurrentHashMap<DataTransportToken, DataMessage>();
 
             if (inFlightMsgs != null) {
                 for (DataMessage message : inFlightMsgs) {
 
                     DataTransportToken token = new DataTransportToken(message.getPublishedMessageId(),
                             message.getSessionId());
-                    this.inFlightMsgIds.put(token, message.getId());
+                    this.inFlightMsgs.put(token, message);
 
                     logger.debug("Restored in-fligh messages from store. Topic: {}, ID: {}, MQTT message ID: {}",
                             new Object[] { message.getTopic(), message.getId(), message.getPublishedMessageId() });
@@ -138,7 +175,7 @@ public class DataServiceImpl
             throw new ComponentException("Failed to start store", e);
         }
 
-        this.dataServiceListeners = new DataServiceListenerS(componentContext);
+        updateListenerDispatch();
 
         // Register the component in the CloudConnectionStatus Service
         this.cloudConnectionStatusService.register(this);
@@ -156,9 +193,18 @@ public class DataServiceImpl
         this.properties.clear();
         this.properties.putAll(properties);
 
+        if (!this.storeType.equals(this.properties.get(STORE_TYPE_PROP_NAME))) {
+            logger.warn("The Data Store type will be changed to {} on the next activation of the service",
+                    this.properties.get(STORE_TYPE_PROP_NAME));
+        }
+
         this.store.update((Integer) this.properties.get(STORE_HOUSEKEEPER_INTERVAL_PROP_NAME),
                 (Integer) this.properties.get(STORE_PURGE_AGE_PROP_NAME),
-                (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME));
+                (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME),
+                (Integer) this.properties.get(STORE_GROUP_COMMIT_SIZE_PROP_NAME),
+                (Integer) this.properties.get(STORE_GROUP_COMMIT_DELAY_PROP_NAME));
+
+        updateListenerDispatch();
 
         if (!this.dataTransportService.isConnected()) {
             startReconnectTask();
@@ -185,9 +231,18 @@ public class DataServiceImpl
 
         this.dataTransportService.removeDataTransportListener(this);
 
+        this.dataServiceListeners.shutdown();
+
+        flushConfirmedMessages();
         this.store.stop();
     }
 
+    private void updateListenerDispatch() {
+        String overflowPolicy = (String) this.properties.get(LISTENER_QUEUE_OVERFLOW_POLICY_PROP_NAME);
+        this.dataServiceListeners.update((Integer) this.properties.get(LISTENER_QUEUE_SIZE_PROP_NAME),
+                DataServiceListenerS.OverflowPolicy.valueOf(overflowPolicy));
+    }
+
     // ----------------------------------------------------------------
     //
     // Dependencies
@@ -210,6 +265,14 @@ public class DataServiceImpl
         this.dbService = null;
     }
 
+    public void setSystemService(SystemService systemService) {
+        this.systemService = systemService;
+    }
+
+    public void unsetSystemService(SystemService systemService) {
+        this.systemService = null;
+    }
+
     public void setCloudConnectionStatusService(CloudConnectionStatusService cloudConnectionStatusService) {
         this.cloudConnectionStatusService = cloudConnectionStatusService;
     }
@@ -218,6 +281,14 @@ public class DataServiceImpl
         this.cloudConnectionStatusService = null;
     }
 
+    public void setDataServiceListener(org.eclipse.kura.data.DataServiceListener listener) {
+        this.dataServiceListeners.add(listener);
+    }
+
+    public void unsetDataServiceListener(org.eclipse.kura.data.DataServiceListener listener) {
+        this.dataServiceListeners.remove(listener);
+    }
+
     @Override
     public void addDataServiceListener(DataServiceListener listener) {
         this.dataServiceListeners.add(listener);
@@ -257,6 +328,12 @@ public class DataServiceImpl
         // in the DataPublisherService persistence.
 
         if (newSession) {
+            // Messages confirmed in the previous session must not be republished or dropped
+            flushConfirmedMessages();
+
+            // MQTT message IDs are reused by the new session
+            this.earlyConfirmedTokens.clear();
+
             Boolean unpublishInFlightMsgs = (Boolean) this.properties.get(REPUBLISH_IN_FLIGHT_MSGS_PROP_NAME);
 
             if (unpublishInFlightMsgs) {
@@ -264,7 +341,7 @@ public class DataServiceImpl
                         "New session established. Unpublishing all in-flight messages. Disregarding the QoS level, this may cause duplicate messages.");
                 try {
                     this.store.unpublishAllInFlighMessages();
-                    this.inFlightMsgIds.clear();
+                    clearInFlightMessages();
                 } catch (KuraStoreException e) {
                     logger.error("Failed to unpublish in-flight messages", e);
                 }
@@ -272,7 +349,7 @@ public class DataServiceImpl
                 logger.info("New session established. Dropping all in-flight messages.");
                 try {
                     this.store.dropAllInFlightMessages();
-                    this.inFlightMsgIds.clear();
+                    clearInFlightMessages();
                 } catch (KuraStoreException e) {
                     logger.error("Failed to drop in-flight messages", e);
                 }
@@ -358,38 +435,31 @@ public class DataServiceImpl
     }
 
     @Override
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
-    public synchronized void onMessageConfirmed(DataTransportToken token) {
+    public void onMessageConfirmed(DataTransportToken token) {
 
         logger.debug("Confirmed message with MQTT message ID: {} on session ID: {}", token.getMessageId(),
                 token.getSessionId());
 
-        Integer messageId = this.inFlightMsgIds.remove(token);
-        if (messageId == null) {
+        DataMessage message = this.inFlightMsgs.remove(token);
+        if (message == null) {
+            // The transport may confirm a message before the publisher has tracked its token.
+            // Leave the confirmation to the publisher, unless it has tracked the token in the meantime.
+            this.earlyConfirmedTokens.put(token, this.confirmationSeq.incrementAndGet());
+            message = this.inFlightMsgs.remove(token);
+            if (message != null) {
+                this.earlyConfirmedTokens.remove(token);
+            }
+        }
+
+        if (message == null) {
             logger.info(
                     "Confirmed message published with MQTT message ID: {} not tracked in the map of in-flight messages",
                     token.getMessageId());
         } else {
-
-            DataMessage confirmedMessage = null;
-            try {
-                logger.info("Confirmed message ID: {} to store", messageId);
-                this.store.confirmed(messageId);
-                confirmedMessage = this.store.get(messageId);
-            } catch (KuraStoreException e) {
-                logger.error("Cannot confirm message to store", e);
-            }
-
-            // Notify the listeners
-            if (confirmedMessage != null) {
-                String topic = confirmedMessage.getTopic();
-                this.dataServiceListeners.onMessageConfirmed(messageId, topic);
-            } else {
-                logger.error("Confirmed Message with ID {} could not be loaded from the DataStore.", messageId);
-            }
+            confirmed(message);
         }
 
-        if (this.inFlightMsgIds.size() < (Integer) this.properties.get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
+        if (this.inFlightMsgs.size() < (Integer) this.properties.get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
             handleInFlightDecongestion();
         }
 
@@ -450,20 +520,23 @@ public class DataServiceImpl
 
     @Override
     public List<Integer> getUnpublishedMessageIds(String topicRegex) throws KuraStoreException {
-        List<DataMessage> messages = this.store.allUnpublishedMessagesNoPayload();
-        return buildMessageIds(messages, topicRegex);
+        MessageIdCollector collector = new MessageIdCollector(topicRegex);
+        this.store.visitUnpublishedMessages(collector.getTopicPrefix(), collector);
+        return collector.getMessageIds();
     }
 
     @Override
     public List<Integer> getInFlightMessageIds(String topicRegex) throws KuraStoreException {
-        List<DataMessage> messages = this.store.allInFlightMessagesNoPayload();
-        return buildMessageIds(messages, topicRegex);
+        MessageIdCollector collector = new MessageIdCollector(topicRegex);
+        this.store.visitInFlightMessages(collector.getTopicPrefix(), collector);
+        return collector.getMessageIds();
     }
 
     @Override
     public List<Integer> getDroppedInFlightMessageIds(String topicRegex) throws KuraStoreException {
-        List<DataMessage> messages = this.store.allDroppedInFlightMessagesNoPayload();
-        return buildMessageIds(messages, topicRegex);
+        MessageIdCollector collector = new MessageIdCollector(topicRegex);
+        this.store.visitDroppedInFlightMessages(collector.getTopicPrefix(), collector);
+        return collector.getMessageIds();
     }
 
     private boolean startReconnectTask() {
@@ -548,38 +621,61 @@ public class DataServiceImpl
             @Override
             public void run() {
                 Thread.currentThread().setName("DataServiceImpl:Submit");
+
+                // Confirmations received before a disconnection are acknowledged to the store anyway
+                flushConfirmedMessages();
+
                 if (!DataServiceImpl.this.dataTransportService.isConnected()) {
                     logger.info("DataPublisherService not connected");
                     return;
                 }
                 try {
 
-                    // Compared with getting all unpublished messages, getting one message at a time
-                    // is a little bit inefficient (we query the underlying DB every time)
-                    // but improves responsiveness to high priority message.
-                    // TODO: add a getUnpublishedMessages with a limit argument?
-                    // getNextMessage is a special case with limit = 1.
-                    DataMessage message = null;
-                    while ((message = DataServiceImpl.this.store.getNextMessage()) != null) {
-
-                        // Further limit the maximum number of in-flight messages
-                        if (message.getQos() > 0) {
-                            if (DataServiceImpl.this.inFlightMsgIds.size() >= (Integer) DataServiceImpl.this.properties
-                                    .get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
-                                logger.warn("The configured maximum number of in-flight messages has been reached");
-                                handleInFlightCongestion();
-                                break;
+                    // Messages are fetched from the store in windows of at most publish-window-size messages
+                    // and the store is updated once per window. The store is queried again after each window
+                    // so that newly stored high priority messages are published first.
+                    // A window size of 1 gets one message at a time, as getNextMessage does.
+                    int windowSize = (Integer) DataServiceImpl.this.properties
+                            .get(STORE_PUBLISH_WINDOW_SIZE_PROP_NAME);
+                    int windowMaxBytes = (Integer) DataServiceImpl.this.properties
+                            .get(STORE_PUBLISH_WINDOW_MAX_BYTES_PROP_NAME);
+                    boolean congested = false;
+                    List<DataMessage> messages;
+                    while (!congested && !(messages = DataServiceImpl.this.store.getNextMessages(windowSize,
+                            windowMaxBytes)).isEmpty()) {
+
+                        List<DataMessage> publishedMessages = new ArrayList<DataMessage>(messages.size());
+                        try {
+                            for (DataMessage message : messages) {
+
+                                // Further limit the maximum number of in-flight messages
+                                if (message.getQos() > 0) {
+                                    if (DataServiceImpl.this.inFlightMsgs
+                                            .size() >= (Integer) DataServiceImpl.this.properties
+                                                    .get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
+                                        logger.warn(
+                                                "The configured maximum number of in-flight messages has been reached");
+                                        handleInFlightCongestion();
+                                        congested = true;
+                                        break;
+                                    }
+                                }
+
+                                publishInternal(message);
+
+                                // The payload now belongs to the transport: do not retain it until
+                                // the whole window has been acknowledged
+                                message.setPayload(null);
+                                publishedMessages.add(message);
+
+                                // TODO: add a 'message throttle' configuration parameter to
+                                // slow down publish rate?
                             }
+                        } finally {
+                            // Acknowledge to the store whatever has been handed to the transport,
+                            // even if the window has been interrupted
+                            DataServiceImpl.this.store.published(publishedMessages);
                         }
-
-                        publishInternal(message);
-
-                        // TODO: add a 'message throttle' configuration parameter to
-                        // slow down publish rate?
-
-                        // Notify the listeners
-                        DataServiceImpl.this.dataServiceListeners.onMessagePublished(message.getId(),
-                                message.getTopic());
                     }
                 } catch (KuraConnectException e) {
                     logger.info("DataPublisherService is not connected", e);
@@ -593,8 +689,9 @@ public class DataServiceImpl
         });
     }
 
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
-    private synchronized void publishInternal(DataMessage message)
+    // Only called by the publisher thread.
+    // The store is not updated here: the caller acknowledges the publication of the whole window.
+    private void publishInternal(DataMessage message)
             throws KuraConnectException, KuraTooManyInflightMessagesException, KuraStoreException, KuraException {
 
         String topic = message.getTopic();
@@ -606,39 +703,70 @@ public class DataServiceImpl
         logger.debug("Publishing message with ID: {} on topic: {}, priority: {}",
                 new Object[] { msgId, topic, message.getPriority() });
 
+        // Confirmations received from now on may belong to this message
+        long publishSeq = this.confirmationSeq.get();
         DataTransportToken token = this.dataTransportService.publish(topic, payload, qos, retain);
 
+        // Notify the listeners before the token is tracked, so that the confirmation cannot be notified first
+        this.dataServiceListeners.onMessagePublished(msgId, topic);
+
         if (token == null) {
-            this.store.published(msgId);
             logger.debug("Published message with ID: {}", msgId);
         } else {
+            message.setPublishedMessageId(token.getMessageId());
+            message.setSessionId(token.getSessionId());
+
+            DataMessage inFlightMsg = new DataMessage.Builder(msgId).withTopic(topic).withQos(qos)
+                    .withRetain(retain).withCreatedOn(message.getCreatedOn())
+                    .withPublishedMessageId(token.getMessageId()).withPriority(message.getPriority())
+                    .withSessionId(token.getSessionId()).build();
 
             // Check if the token is already tracked in the map (in which case we are in trouble)
-            Integer trackedMsgId = this.inFlightMsgIds.get(token);
-            if (trackedMsgId != null) {
+            DataMessage trackedMsg = this.inFlightMsgs.put(token, inFlightMsg);
+            if (trackedMsg != null) {
                 logger.error("Token already tracked: " + token.getSessionId() + "-" + token.getMessageId());
             }
-
-            this.inFlightMsgIds.put(token, msgId);
-            this.store.published(msgId, token.getMessageId(), token.getSessionId());
             logger.debug("Published message with ID: {} and MQTT message ID: {}", msgId, token.getMessageId());
+
+            // The confirmation may have been received before tracking the token.
+            // An earlier confirmation of the same token belongs to a previous message reusing its MQTT message ID.
+            Long confirmedSeq = this.earlyConfirmedTokens.remove(token);
+            if (confirmedSeq != null && confirmedSeq > publishSeq && this.inFlightMsgs.remove(token, inFlightMsg)) {
+                confirmed(inFlightMsg);
+            }
         }
     }
 
-    private List<Integer> buildMessageIds(List<DataMessage> messages, String topicRegex) {
-        Pattern topicPattern = Pattern.compile(topicRegex);
-        List<Integer> ids = new ArrayList<Integer>();
+    private void confirmed(DataMessage message) {
+        logger.info("Confirmed message ID: {}", message.getId());
+        this.confirmedMsgIds.add(message.getId());
 
-        if (messages != null) {
-            for (DataMessage message : messages) {
-                String topic = message.getTopic();
-                if (topicPattern.matcher(topic).matches()) {
-                    ids.add(message.getId());
-                }
-            }
+        // Notify the listeners
+        this.dataServiceListeners.onMessageConfirmed(message.getId(), message.getTopic());
+    }
+
+    // Acknowledges the confirmed messages to the store in a single batch
+    private void flushConfirmedMessages() {
+        List<Integer> msgIds = new ArrayList<Integer>();
+        Integer msgId;
+        while ((msgId = this.confirmedMsgIds.poll()) != null) {
+            msgIds.add(msgId);
+        }
+        if (msgIds.isEmpty()) {
+            return;
         }
 
-        return ids;
+        try {
+            logger.debug("Confirming {} messages to store", msgIds.size());
+            this.store.confirmed(msgIds);
+        } catch (KuraStoreException e) {
+            logger.error("Cannot confirm messages to store", e);
+        }
+    }
+
+    private void clearInFlightMessages() {
+        this.inFlightMsgs.clear();
+        this.earlyConfirmedTokens.clear();
     }
 
     private void handleInFlightCongestion() {
@@ -680,4 +808,61 @@ public class DataServiceImpl
     public void setNotificationStatus(CloudConnectionStatusEnum status) {
         this.notificationStatus = status;
     }
+
+    /**
+     * Collects the IDs of the scanned messages whose topic matches a regular expression.
+     * The literal prefix of the expression is pushed down to the store so that only candidate messages
+     * are scanned.
+     */
+    private static class MessageIdCollector implements DataMessageVisitor {
+
+        private final Pattern topicPattern;
+        private final String topicPrefix;
+        private final List<Integer> messageIds = new ArrayList<Integer>();
+
+        MessageIdCollector(String topicRegex) {
+            this.topicPattern = Pattern.compile(topicRegex);
+            this.topicPrefix = getLiteralPrefix(topicRegex);
+        }
+
+        String getTopicPrefix() {
+            return this.topicPrefix;
+        }
+
+        List<Integer> getMessageIds() {
+            return this.messageIds;
+        }
+
+        @Override
+        public void visit(int msgId, String topic) {
+            if (this.topicPattern.matcher(topic).matches()) {
+                this.messageIds.add(msgId);
+            }
+        }
+
+        // Returns the characters every topic matched by the regular expression starts with.
+        // It is conservative: an empty prefix is always correct.
+        private static String getLiteralPrefix(String topicRegex) {
+            // An alternation may match topics with a different prefix
+            if (topicRegex.indexOf('|') >= 0) {
+                return "";
+            }
+
+            int i = topicRegex.startsWith("^") ? 1 : 0;
+            StringBuilder prefix = new StringBuilder();
+            for (; i < topicRegex.length(); i++) {
+                char c = topicRegex.charAt(i);
+                if ("\\[](){}.*+?^$".indexOf(c) >= 0) {
+                    break;
+                }
+                prefix.append(c);
+            }
+
+            // The last literal character is optional if followed by a quantifier
+            if (i < topicRegex.length() && prefix.length() > 0 && "*?{".indexOf(topicRegex.charAt(i)) >= 0) {
+                prefix.setLength(prefix.length() - 1);
+            }
+            return prefix.toString();
+        }
+    }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -11,11 +11,21 @@
  *******************************************************************************/
 package org.eclipse.kura.core.data;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.kura.data.listener.DataServiceListener;
-import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,224 +33,530 @@ import org.slf4j.LoggerFactory;
  * The following represents an exception to Semantic Versioning conventions.
  * Though the class implements the org.eclipse.kura.data.listener.DataServiceListener API,
  * it is actually an API consumer (it calls into the API implementors).
+ *
+ * The events are queued to a bounded queue per listener and delivered, in order, by a thread owned
+ * by the listener. Message events (arrived, published and confirmed) are delivered asynchronously,
+ * so that a slow listener does not stall the publisher or the transport threads, and a queue size of zero
+ * delivers them on the calling thread. The calling thread waits for the delivery of connection events to all
+ * the listeners, up to a single timeout.
  */
 class DataServiceListenerS implements DataServiceListener {
 
     private static final Logger s_logger = LoggerFactory.getLogger(DataServiceListenerS.class);
 
-    private static final String DATA_SERVICE_LISTENER_REFERENCE = "DataServiceListener";
+    /**
+     * What to do with a message event when the queue of a listener is full.
+     */
+    enum OverflowPolicy {
+        /** Wait until the listener makes room in its queue */
+        BLOCK,
+        /** Discard the event */
+        DROP_NEWEST,
+        /** Discard the oldest queued event to make room for the new one */
+        DROP_OLDEST;
+    }
+
+    private static final long DISPATCHER_KEEP_ALIVE = 60; // seconds
+    private static final long CONNECTION_EVENT_TIMEOUT = 10; // seconds, for all the listeners
+    private static final long DROPPED_EVENTS_LOG_INTERVAL = 1000;
+
+    // thread-safe list implementation
+    private final List<ListenerDispatcher> m_dispatchers = new CopyOnWriteArrayList<ListenerDispatcher>();
 
-    private final ComponentContext m_ctx;
-    private final List<DataServiceListener> m_listeners;
+    private int m_queueSize;
+    private OverflowPolicy m_overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * Applies the queue size and the overflow policy to all the listeners.
+     * The events already queued are kept and delivered in order.
+     */
+    public synchronized void update(int queueSize, OverflowPolicy overflowPolicy) {
+        this.m_queueSize = queueSize;
+        this.m_overflowPolicy = overflowPolicy;
+
+        for (ListenerDispatcher dispatcher : this.m_dispatchers) {
+            dispatcher.update(queueSize, overflowPolicy);
+        }
+    }
 
-    public DataServiceListenerS(ComponentContext ctx) {
-        this.m_ctx = ctx;
-        // thread-safe list implementation
-        this.m_listeners = new CopyOnWriteArrayList<DataServiceListener>();
+    /**
+     * Stops the delivery threads. The events already queued are still delivered.
+     */
+    public synchronized void shutdown() {
+        for (ListenerDispatcher dispatcher : this.m_dispatchers) {
+            dispatcher.logStatistics();
+            dispatcher.shutdown();
+        }
     }
 
     @Override
     public void onConnectionEstablished() {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onConnectionEstablished();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
-                }
-            }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onConnectionEstablished");
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onConnectionEstablished");
+            return;
         }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onConnectionEstablished();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        Map<ListenerDispatcher, CountDownLatch> pending = new LinkedHashMap<ListenerDispatcher, CountDownLatch>();
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            CountDownLatch delivered = dispatcher.dispatchConnectionEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onConnectionEstablished();
                 }
+            });
+            if (delivered != null) {
+                pending.put(dispatcher, delivered);
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onConnectionEstablished");
         }
+        awaitDelivery(pending);
     }
 
     @Override
     public void onDisconnecting() {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onDisconnecting();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
-                }
-            }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onDisconnecting");
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onDisconnecting");
+            return;
         }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onDisconnecting();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        Map<ListenerDispatcher, CountDownLatch> pending = new LinkedHashMap<ListenerDispatcher, CountDownLatch>();
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            CountDownLatch delivered = dispatcher.dispatchConnectionEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onDisconnecting();
                 }
+            });
+            if (delivered != null) {
+                pending.put(dispatcher, delivered);
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onDisconnecting");
         }
+        awaitDelivery(pending);
     }
 
     @Override
     public void onDisconnected() {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onDisconnected();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onDisconnected");
+            return;
+        }
+
+        Map<ListenerDispatcher, CountDownLatch> pending = new LinkedHashMap<ListenerDispatcher, CountDownLatch>();
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            CountDownLatch delivered = dispatcher.dispatchConnectionEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onDisconnected();
                 }
+            });
+            if (delivered != null) {
+                pending.put(dispatcher, delivered);
             }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onDisconnected");
         }
+        awaitDelivery(pending);
+    }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onDisconnected();
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    @Override
+    public void onConnectionLost(final Throwable cause) {
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onConnectionLost");
+            return;
+        }
+
+        Map<ListenerDispatcher, CountDownLatch> pending = new LinkedHashMap<ListenerDispatcher, CountDownLatch>();
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            CountDownLatch delivered = dispatcher.dispatchConnectionEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onConnectionLost(cause);
                 }
+            });
+            if (delivered != null) {
+                pending.put(dispatcher, delivered);
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onDisconnected");
         }
+        awaitDelivery(pending);
     }
 
     @Override
-    public void onConnectionLost(Throwable cause) {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onConnectionLost(cause);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    public void onMessageArrived(final String topic, final byte[] payload, final int qos, final boolean retained) {
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onMessageArrived");
+            return;
+        }
+
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            dispatcher.dispatch(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onMessageArrived(topic, payload, qos, retained);
                 }
-            }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onConnectionLost");
+            });
         }
+    }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onConnectionLost(cause);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    @Override
+    public void onMessagePublished(final int messageId, final String topic) {
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onMessagePublished");
+            return;
+        }
+
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            dispatcher.dispatch(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onMessagePublished(messageId, topic);
                 }
-            }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onConnectionLost");
+            });
         }
     }
 
     @Override
-    public void onMessageArrived(String topic, byte[] payload, int qos, boolean retained) {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onMessageArrived(topic, payload, qos,
-                            retained);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    public void onMessageConfirmed(final int messageId, final String topic) {
+        if (this.m_dispatchers.isEmpty()) {
+            s_logger.warn("No registered listeners. Ignoring onMessageConfirmed");
+            return;
+        }
+
+        for (final ListenerDispatcher dispatcher : this.m_dispatchers) {
+            dispatcher.dispatch(new Runnable() {
+
+                @Override
+                public void run() {
+                    dispatcher.m_listener.onMessageConfirmed(messageId, topic);
                 }
-            }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onMessageArrived");
+            });
         }
+    }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onMessageArrived(topic, payload, qos, retained);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    /**
+     * Waits for the delivery of a connection event to all the listeners, which handle it concurrently on their own
+     * threads. The wait is bounded by a single deadline for all the listeners.
+     */
+    private static void awaitDelivery(Map<ListenerDispatcher, CountDownLatch> pending) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECTION_EVENT_TIMEOUT);
+        try {
+            for (Entry<ListenerDispatcher, CountDownLatch> entry : pending.entrySet()) {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!entry.getValue().await(remaining, TimeUnit.NANOSECONDS)) {
+                    s_logger.warn("Listener {} did not handle the connection event in {} seconds",
+                            entry.getKey().m_target, CONNECTION_EVENT_TIMEOUT);
                 }
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onMessageArrived");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    @Override
-    public void onMessagePublished(int messageId, String topic) {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onMessagePublished(messageId, topic);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+    public void add(DataServiceListener listener) {
+        addDispatcher(listener, listener);
+    }
+
+    public void remove(DataServiceListener listener) {
+        removeDispatcher(listener);
+    }
+
+    /**
+     * Adds a listener registered as a service with the deprecated {@link org.eclipse.kura.data.DataServiceListener}
+     * interface.
+     */
+    public void add(org.eclipse.kura.data.DataServiceListener service) {
+        addDispatcher(service, new DataServiceListenerAdapter(service));
+    }
+
+    public void remove(org.eclipse.kura.data.DataServiceListener service) {
+        removeDispatcher(service);
+    }
+
+    private synchronized void addDispatcher(Object target, DataServiceListener listener) {
+        this.m_dispatchers
+                .add(new ListenerDispatcher(target, listener, this.m_queueSize, this.m_overflowPolicy));
+    }
+
+    private synchronized void removeDispatcher(Object target) {
+        for (ListenerDispatcher dispatcher : this.m_dispatchers) {
+            if (dispatcher.m_target == target) {
+                this.m_dispatchers.remove(dispatcher);
+                dispatcher.logStatistics();
+                dispatcher.shutdown();
+                return;
+            }
+        }
+    }
+
+    /*
+     * Delivers the events to a single listener and keeps its latency counters.
+     * The events are queued to a bounded queue drained by a thread of the dispatcher, which is released when
+     * the queue is empty. The latency of an event is measured from the time it is dispatched to the end of the
+     * callback.
+     */
+    private static final class ListenerDispatcher implements Runnable {
+
+        private final Object m_target;
+        private final DataServiceListener m_listener;
+        private final ThreadPoolExecutor m_executor;
+
+        /** The queued events. Guarded by this, like the fields below */
+        private final Deque<Runnable> m_queue = new ArrayDeque<Runnable>();
+        private int m_queueSize;
+        private OverflowPolicy m_overflowPolicy;
+        private Thread m_worker;
+        private boolean m_draining;
+        private boolean m_shutdown;
+
+        private final AtomicLong m_delivered = new AtomicLong();
+        private final AtomicLong m_dropped = new AtomicLong();
+        private final AtomicLong m_totalLatency = new AtomicLong();
+        private final AtomicLong m_maxLatency = new AtomicLong();
+
+        ListenerDispatcher(Object target, DataServiceListener listener, int queueSize,
+                OverflowPolicy overflowPolicy) {
+            this.m_target = target;
+            this.m_listener = listener;
+            this.m_queueSize = queueSize;
+            this.m_overflowPolicy = overflowPolicy;
+
+            final String threadName = "DataServiceListener:" + target.getClass().getSimpleName();
+            this.m_executor = new ThreadPoolExecutor(1, 1, DISPATCHER_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, threadName);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // The thread of an idle listener is released
+            this.m_executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Applies the new settings to the following events. The events already queued are kept.
+         */
+        synchronized void update(int queueSize, OverflowPolicy overflowPolicy) {
+            this.m_queueSize = queueSize;
+            this.m_overflowPolicy = overflowPolicy;
+            notifyAll();
+        }
+
+        /**
+         * Queues a message event, applying the overflow policy if the queue is full.
+         * With a queue size of zero, the event is delivered on the calling thread once the queue is empty.
+         */
+        void dispatch(final Runnable event) {
+            Runnable task = newTask(event);
+            synchronized (this) {
+                // The thread of the dispatcher does not wait for itself
+                boolean worker = this.m_worker == Thread.currentThread();
+                if (this.m_queueSize > 0 || worker) {
+                    while (!worker && this.m_overflowPolicy == OverflowPolicy.BLOCK
+                            && this.m_queue.size() >= this.m_queueSize && !this.m_shutdown) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            dropped();
+                            return;
+                        }
+                    }
+                    if (this.m_queueSize > 0 && this.m_queue.size() >= this.m_queueSize
+                            && this.m_overflowPolicy != OverflowPolicy.BLOCK) {
+                        if (this.m_overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                            dropped();
+                            return;
+                        }
+                        this.m_queue.poll();
+                        dropped();
+                    }
+                    enqueue(task);
+                    return;
+                }
+
+                while (this.m_draining) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped();
+                        return;
+                    }
                 }
             }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onMessagePublished");
+            task.run();
         }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onMessagePublished(messageId, topic);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        /**
+         * Queues a connection event, even if the queue is full. The event is delivered after the events already
+         * queued. Returns the latch counted down on delivery, or null if there is nothing to wait for.
+         * The caller bounds its wait, since the listener may be waiting for a lock held by the caller.
+         */
+        CountDownLatch dispatchConnectionEvent(final Runnable event) {
+            final CountDownLatch delivered = new CountDownLatch(1);
+            Runnable task = newTask(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        event.run();
+                    } finally {
+                        delivered.countDown();
+                    }
+                }
+            });
+
+            synchronized (this) {
+                if (!enqueue(task)) {
+                    return null;
+                }
+                if (this.m_worker == Thread.currentThread()) {
+                    // Raised by the listener while handling an event, delivered once it returns
+                    return null;
                 }
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onMessagePublished");
+            return delivered;
         }
-    }
 
-    @Override
-    public void onMessageConfirmed(int messageId, String topic) {
-        Object[] services = this.m_ctx.locateServices(DATA_SERVICE_LISTENER_REFERENCE);
-        if (services != null) {
-            for (Object service : services) {
-                try {
-                    ((org.eclipse.kura.data.DataServiceListener) service).onMessageConfirmed(messageId, topic);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        // Drains the queue
+        @Override
+        public void run() {
+            synchronized (this) {
+                this.m_worker = Thread.currentThread();
+            }
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = this.m_queue.poll();
+                    notifyAll();
+                    if (task == null) {
+                        this.m_worker = null;
+                        this.m_draining = false;
+                        return;
+                    }
                 }
+                task.run();
             }
-        } else {
-            s_logger.debug("No registered listener services. Ignoring onMessageConfirmed");
         }
 
-        if (!this.m_listeners.isEmpty()) {
-            for (DataServiceListener listener : this.m_listeners) {
-                try {
-                    listener.onMessageConfirmed(messageId, topic);
-                } catch (Throwable t) {
-                    s_logger.warn("Unexpected Throwable", t);
+        /**
+         * Stops accepting events. The events already queued are still delivered.
+         */
+        void shutdown() {
+            synchronized (this) {
+                this.m_shutdown = true;
+                notifyAll();
+            }
+            this.m_executor.shutdown();
+        }
+
+        void logStatistics() {
+            long delivered = this.m_delivered.get();
+            s_logger.info("Listener {}: delivered {} events, dropped {}, average latency {} us, max latency {} us",
+                    new Object[] { this.m_target, delivered, this.m_dropped.get(),
+                            delivered > 0 ? this.m_totalLatency.get() / delivered / 1000 : 0,
+                            this.m_maxLatency.get() / 1000 });
+        }
+
+        private Runnable newTask(final Runnable event) {
+            final long dispatched = System.nanoTime();
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        event.run();
+                    } catch (Throwable t) {
+                        s_logger.warn("Unexpected Throwable", t);
+                    } finally {
+                        delivered(System.nanoTime() - dispatched);
+                    }
                 }
+            };
+        }
+
+        // Must be called holding the lock of the dispatcher
+        private boolean enqueue(Runnable task) {
+            if (this.m_shutdown) {
+                dropped();
+                return false;
             }
-        } else {
-            s_logger.warn("No registered listeners. Ignoring onMessageConfirmed");
+            this.m_queue.add(task);
+            if (!this.m_draining) {
+                this.m_draining = true;
+                this.m_executor.execute(this);
+            }
+            return true;
         }
-    }
 
-    public void add(DataServiceListener listener) {
-        this.m_listeners.add(listener);
+        private void delivered(long latency) {
+            this.m_delivered.incrementAndGet();
+            this.m_totalLatency.addAndGet(latency);
+            long max = this.m_maxLatency.get();
+            while (latency > max && !this.m_maxLatency.compareAndSet(max, latency)) {
+                max = this.m_maxLatency.get();
+            }
+        }
+
+        private void dropped() {
+            long dropped = this.m_dropped.incrementAndGet();
+            if (dropped % DROPPED_EVENTS_LOG_INTERVAL == 1) {
+                s_logger.warn("The event queue of listener {} is full, {} events dropped so far", this.m_target,
+                        dropped);
+            }
+        }
     }
 
-    public void remove(DataServiceListener listener) {
-        this.m_listeners.remove(listener);
+    /*
+     * Adapts a listener registered with the deprecated interface.
+     */
+    @SuppressWarnings("deprecation")
+    private static final class DataServiceListenerAdapter implements DataServiceListener {
+
+        private final org.eclipse.kura.data.DataServiceListener m_service;
+
+        DataServiceListenerAdapter(org.eclipse.kura.data.DataServiceListener service) {
+            this.m_service = service;
+        }
+
+        @Override
+        public void onConnectionEstablished() {
+            this.m_service.onConnectionEstablished();
+        }
+
+        @Override
+        public void onDisconnecting() {
+            this.m_service.onDisconnecting();
+        }
+
+        @Override
+        public void onDisconnected() {
+            this.m_service.onDisconnected();
+        }
+
+        @Override
+        public void onConnectionLost(final Throwable cause) {
+            this.m_service.onConnectionLost(cause);
+        }
+
+        @Override
+        public void onMessageArrived(String topic, byte[] payload, int qos, boolean retained) {
+            this.m_service.onMessageArrived(topic, payload, qos, retained);
+        }
+
+        @Override
+        public void onMessagePublished(int messageId, String topic) {
+            this.m_service.onMessagePublished(messageId, topic);
+        }
+
+        @Override
+        public void onMessageConfirmed(int messageId, String topic) {
+            this.m_service.onMessageConfirmed(messageId, topic);
+        }
     }
 }
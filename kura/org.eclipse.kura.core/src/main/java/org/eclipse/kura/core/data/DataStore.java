@@ -25,10 +25,24 @@ import org.eclipse.kura.db.DbService;
  */
 public interface DataStore {
 
-    public void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
-            throws KuraStoreException;
+    /**
+     * Starts the store.
+     * When groupCommitSize is greater than one, concurrent calls to
+     * {@link #store(String, byte[], int, boolean, int)} are committed together in groups of at most
+     * groupCommitSize messages, waiting at most groupCommitDelay milliseconds for a group to fill up.
+     *
+     * @param dbService
+     * @param houseKeeperInterval
+     * @param purgeAge
+     * @param capacity
+     * @param groupCommitSize
+     * @param groupCommitDelay
+     * @throws KuraStoreException
+     */
+    public void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity, int groupCommitSize,
+            int groupCommitDelay) throws KuraStoreException;
 
-    public void update(int houseKeeperInterval, int purgeAge, int capacity);
+    public void update(int houseKeeperInterval, int purgeAge, int capacity, int groupCommitSize, int groupCommitDelay);
 
     public void stop();
 
@@ -71,6 +85,17 @@ public interface DataStore {
      */
     public void published(int msgId) throws KuraStoreException;
 
+    /**
+     * Acknowledges the publication of a batch of DataMessages in a single transaction.
+     * For messages published with QoS > 0 the protocol (e.g. MQTT) message ID and the session ID
+     * are taken from the DataMessage itself.
+     *
+     * @param messages
+     *            the published messages
+     * @throws KuraStoreException
+     */
+    public void published(List<DataMessage> messages) throws KuraStoreException;
+
     /**
      * Acknowledges the delivery of the DataMessage published with the given
      * protocol (e.g. MQTT) message ID. This method is only called for messages
@@ -81,6 +106,16 @@ public interface DataStore {
      */
     public void confirmed(int msgId) throws KuraStoreException;
 
+    /**
+     * Acknowledges the delivery of a batch of DataMessages in a single transaction.
+     * This method is only called for messages published with QoS > 0.
+     *
+     * @param msgIds
+     *            the IDs of the confirmed messages
+     * @throws KuraStoreException
+     */
+    public void confirmed(List<Integer> msgIds) throws KuraStoreException;
+
     /**
      * Gets the next unpublished message. Messages with higher
      * priority (0 is the highest priority) are returned first. Within each
@@ -91,6 +126,22 @@ public interface DataStore {
      */
     public DataMessage getNextMessage() throws KuraStoreException;
 
+    /**
+     * Gets at most limit unpublished messages, in the same order used by {@link #getNextMessage()}.
+     * No more messages are loaded once the total size of the loaded payloads reaches maxPayloadBytes,
+     * but the first message is always returned whatever its size.
+     * The returned messages are not marked as published: callers must acknowledge them
+     * before asking for the next batch.
+     *
+     * @param limit
+     *            the maximum number of messages to return
+     * @param maxPayloadBytes
+     *            the size of the loaded payloads after which no more messages are returned
+     * @return the list of unpublished messages, empty if there are none
+     * @throws KuraStoreException
+     */
+    public List<DataMessage> getNextMessages(int limit, int maxPayloadBytes) throws KuraStoreException;
+
     /**
      * Returns a message from the DataStore by its message id.
      * 
@@ -128,6 +179,43 @@ public interface DataStore {
      */
     public List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException;
 
+    /**
+     * Scans the unpublished messages whose topic starts with the given prefix, in the order of
+     * {@link #allUnpublishedMessagesNoPayload()}. Messages are passed to the visitor as they are read.
+     *
+     * @param topicPrefix
+     *            the prefix of the topics of the scanned messages, the empty string scans all of them
+     * @param visitor
+     *            receives the scanned messages
+     * @throws KuraStoreException
+     */
+    public void visitUnpublishedMessages(String topicPrefix, DataMessageVisitor visitor) throws KuraStoreException;
+
+    /**
+     * Scans the in-flight messages whose topic starts with the given prefix, in the order of
+     * {@link #allInFlightMessagesNoPayload()}. Messages are passed to the visitor as they are read.
+     *
+     * @param topicPrefix
+     *            the prefix of the topics of the scanned messages, the empty string scans all of them
+     * @param visitor
+     *            receives the scanned messages
+     * @throws KuraStoreException
+     */
+    public void visitInFlightMessages(String topicPrefix, DataMessageVisitor visitor) throws KuraStoreException;
+
+    /**
+     * Scans the dropped in-flight messages whose topic starts with the given prefix, in the order of
+     * {@link #allDroppedInFlightMessagesNoPayload()}. Messages are passed to the visitor as they are read.
+     *
+     * @param topicPrefix
+     *            the prefix of the topics of the scanned messages, the empty string scans all of them
+     * @param visitor
+     *            receives the scanned messages
+     * @throws KuraStoreException
+     */
+    public void visitDroppedInFlightMessages(String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException;
+
     /**
      * Marks all in-flight messages as unpublished.
      * 
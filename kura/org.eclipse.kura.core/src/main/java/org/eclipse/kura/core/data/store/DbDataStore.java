@@ -15,7 +15,6 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLDataException;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
@@ -24,14 +23,19 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.kura.KuraStoreCapacityReachedException;
 import org.eclipse.kura.KuraStoreException;
 import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataMessageVisitor;
 import org.eclipse.kura.core.data.DataStore;
 import org.eclipse.kura.core.db.HsqlDbServiceImpl;
 import org.eclipse.kura.db.DbService;
@@ -46,12 +50,28 @@ public class DbDataStore implements DataStore {
 
     private static final Logger s_logger = LoggerFactory.getLogger(DbDataStore.class);
 
+    // Maximum number of messages deleted in a single transaction by the housekeeper
+    private static final int PURGE_CHUNK_SIZE = 1000;
+
+    private static final int THREAD_TERMINATION_TOUT = 30; // In seconds
+
     private DbService m_dbService;
     private final Calendar m_utcCalendar;
     private ScheduledExecutorService m_houseKeeperExecutor;
     private ScheduledFuture<?> m_houseKeeperTask;
     private int m_capacity;
 
+    // Number of rows in the table, maintained on insert and delete. Guarded by this.
+    private int m_messageCount;
+
+    // Group commit of the stored messages. Requests are only enqueued while m_groupCommitEnabled is true,
+    // both are guarded by m_storeRequests.
+    private ExecutorService m_groupCommitExecutor;
+    private final BlockingQueue<StoreRequest> m_storeRequests = new LinkedBlockingQueue<StoreRequest>();
+    private boolean m_groupCommitEnabled;
+    // Number of writers waiting for their request to be committed
+    private final AtomicInteger m_groupCommitWriters = new AtomicInteger();
+
     private final String m_table;
 
     private final String m_sqlCreateTable;
@@ -62,20 +82,21 @@ public class DbDataStore implements DataStore {
     private final String m_sqlStore;
     private final String m_sqlGetMessage;
     private final String m_sqlGetNextMessage;
+    private final String m_sqlGetNextMessages;
     private final String m_sqlSetPublished;
     private final String m_sqlSetPublished2;
     private final String m_sqlSetConfirmed;
     private final String m_sqlAllUnpublishedMessages;
     private final String m_sqlAllInFlightMessages;
     private final String m_sqlAllDroppedInFlightMessages;
+    private final String m_sqlVisitUnpublishedMessages;
+    private final String m_sqlVisitInFlightMessages;
+    private final String m_sqlVisitDroppedInFlightMessages;
     private final String m_sqlUnpublishAllInFlightMessages;
     private final String m_sqlDropAllInFlightMessages;
     private final String m_sqlDeleteDroppedMessages;
-    private final String m_sqlDeleteDroppedMessages2;
     private final String m_sqlDeleteConfirmedMessages;
-    private final String m_sqlDeleteConfirmedMessages2;
     private final String m_sqlDeletePublishedMessages;
-    private final String m_sqlDeletePublishedMessages2;
     private final String m_sqlDuplicateCount;
     private final String m_sqlDropPrimaryKey;
     private final String m_sqlDeleteDuplicates;
@@ -103,6 +124,10 @@ public class DbDataStore implements DataStore {
                 + this.m_table
                 + " WHERE publishedOn IS NULL ORDER BY priority ASC, createdOn ASC LIMIT 1 USING INDEX) a, "
                 + this.m_table + " d WHERE a.id = d.id;";
+        // Only the payload lengths: the payloads are fetched by ID within the window byte limit
+        this.m_sqlGetNextMessages = "SELECT d.id, OCTET_LENGTH(d.payload) FROM (SELECT id FROM " + this.m_table
+                + " WHERE publishedOn IS NULL ORDER BY priority ASC, createdOn ASC LIMIT ? USING INDEX) a, "
+                + this.m_table + " d WHERE a.id = d.id ORDER BY d.priority ASC, d.createdOn ASC, d.id ASC;";
         this.m_sqlSetPublished = "UPDATE " + this.m_table
                 + " SET publishedOn = ?, publishedMessageId = ?, sessionId = ? WHERE id = ?;";
         this.m_sqlSetPublished2 = "UPDATE " + this.m_table + " SET publishedOn = ? WHERE id = ?;";
@@ -114,22 +139,25 @@ public class DbDataStore implements DataStore {
                 + " WHERE publishedOn IS NOT NULL AND qos > 0 AND confirmedOn IS NULL AND droppedOn IS NULL ORDER BY priority ASC, createdOn ASC;";
         this.m_sqlAllDroppedInFlightMessages = "SELECT id, topic, qos, retain, createdOn, publishedOn, publishedMessageId, confirmedOn, priority, sessionId, droppedOn FROM "
                 + this.m_table + " WHERE droppedOn IS NOT NULL ORDER BY priority ASC, createdOn ASC;";
+        // Only the columns needed by the visitors. The topic prefix is matched by the database.
+        this.m_sqlVisitUnpublishedMessages = "SELECT id, topic FROM " + this.m_table
+                + " WHERE publishedOn IS NULL AND topic LIKE ? ESCAPE '\\' ORDER BY priority ASC, createdOn ASC;";
+        this.m_sqlVisitInFlightMessages = "SELECT id, topic FROM " + this.m_table
+                + " WHERE publishedOn IS NOT NULL AND qos > 0 AND confirmedOn IS NULL AND droppedOn IS NULL AND topic LIKE ? ESCAPE '\\' ORDER BY priority ASC, createdOn ASC;";
+        this.m_sqlVisitDroppedInFlightMessages = "SELECT id, topic FROM " + this.m_table
+                + " WHERE droppedOn IS NOT NULL AND topic LIKE ? ESCAPE '\\' ORDER BY priority ASC, createdOn ASC;";
         this.m_sqlUnpublishAllInFlightMessages = "UPDATE " + this.m_table
                 + " SET publishedOn = NULL WHERE publishedOn IS NOT NULL AND qos > 0 AND confirmedOn IS NULL;";
         this.m_sqlDropAllInFlightMessages = "UPDATE " + this.m_table
                 + " SET droppedOn = ? WHERE publishedOn IS NOT NULL AND qos > 0 AND confirmedOn IS NULL;";
+        // Range conditions on the timestamps, so that the indexes on droppedOn, confirmedOn and publishedOn are used.
+        // HSQLDB does not accept a parameter in the LIMIT clause of a DELETE.
         this.m_sqlDeleteDroppedMessages = "DELETE FROM " + this.m_table
-                + " WHERE DATEDIFF('ss', droppedOn, ?) > ? AND droppedOn IS NOT NULL;";
-        this.m_sqlDeleteDroppedMessages2 = "DELETE FROM " + this.m_table
-                + " WHERE DATEDIFF('yy', droppedOn, ?) > ? AND droppedOn IS NOT NULL;";
+                + " WHERE droppedOn IS NOT NULL AND droppedOn < ? LIMIT " + PURGE_CHUNK_SIZE + ";";
         this.m_sqlDeleteConfirmedMessages = "DELETE FROM " + this.m_table
-                + " WHERE DATEDIFF('ss', confirmedOn, ?) > ? AND confirmedOn IS NOT NULL;";
-        this.m_sqlDeleteConfirmedMessages2 = "DELETE FROM " + this.m_table
-                + " WHERE DATEDIFF('yy', confirmedOn, ?) > ? AND confirmedOn IS NOT NULL;";
+                + " WHERE confirmedOn IS NOT NULL AND confirmedOn < ? LIMIT " + PURGE_CHUNK_SIZE + ";";
         this.m_sqlDeletePublishedMessages = "DELETE FROM " + this.m_table
-                + " WHERE qos = 0 AND DATEDIFF('ss', publishedOn, ?) > ? AND publishedOn IS NOT NULL;";
-        this.m_sqlDeletePublishedMessages2 = "DELETE FROM " + this.m_table
-                + " WHERE qos = 0 AND DATEDIFF('yy', publishedOn, ?) > ? AND publishedOn IS NOT NULL;";
+                + " WHERE publishedOn IS NOT NULL AND publishedOn < ? AND qos = 0 LIMIT " + PURGE_CHUNK_SIZE + ";";
         this.m_sqlDuplicateCount = "SELECT count(*) FROM (SELECT id, COUNT(id) FROM " + this.m_table
                 + " GROUP BY id HAVING (COUNT(id) > 1)) dups;";
         this.m_sqlDropPrimaryKey = "ALTER TABLE " + this.m_table + " DROP PRIMARY KEY;";
@@ -145,18 +173,20 @@ public class DbDataStore implements DataStore {
     // ----------------------------------------------------------
 
     @Override
-    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
-            throws KuraStoreException {
+    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity,
+            int groupCommitSize, int groupCommitDelay) throws KuraStoreException {
         this.m_dbService = dbService;
 
         this.m_houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.m_groupCommitExecutor = Executors.newSingleThreadExecutor();
 
         //
         // Set up the schema tables required by the DataStore
-        init(houseKeeperInterval, purgeAge, capacity);
+        init(houseKeeperInterval, purgeAge, capacity, groupCommitSize, groupCommitDelay);
     }
 
-    private void init(int houseKeeperInterval, int purgeAge, int capacity) throws KuraStoreException {
+    private void init(int houseKeeperInterval, int purgeAge, int capacity, int groupCommitSize,
+            int groupCommitDelay) throws KuraStoreException {
         // create the MESSAGES table
         // Note that the HSQLDB will throw an sequence limit exceeded exception when the sequence generator reaches the
         // value 2147483647 + 1.
@@ -203,22 +233,48 @@ public class DbDataStore implements DataStore {
         // publishedOn TIMESTAMP, publishedMessageId INTEGER, confirmedOn TIMESTAMP, payload BLOB(256M), priority
         // INTEGER, sessionId VARCHAR(32767 CHARACTERS), droppedOn TIMESTAMP);");
 
-        update(houseKeeperInterval, purgeAge, capacity);
+        this.m_messageCount = getMessageCount();
+
+        update(houseKeeperInterval, purgeAge, capacity, groupCommitSize, groupCommitDelay);
     }
 
     @Override
-    public synchronized void stop() {
-        s_logger.info("Canceling the Housekeeper Task...");
-        if (this.m_houseKeeperTask != null) {
-            this.m_houseKeeperTask.cancel(true);
+    public void stop() {
+        ExecutorService groupCommitExecutor;
+        synchronized (this) {
+            s_logger.info("Canceling the Housekeeper Task...");
+            if (this.m_houseKeeperTask != null) {
+                this.m_houseKeeperTask.cancel(true);
+            }
+            this.m_houseKeeperExecutor.shutdownNow();
+
+            // The group commit task still commits the messages already queued
+            stopGroupCommit();
+            groupCommitExecutor = this.m_groupCommitExecutor;
+            groupCommitExecutor.shutdown();
+        }
+
+        // Without holding the store monitor, the group commit task needs it
+        try {
+            if (!groupCommitExecutor.awaitTermination(THREAD_TERMINATION_TOUT, TimeUnit.SECONDS)) {
+                s_logger.warn("The Group Commit Task did not terminate in {} seconds", THREAD_TERMINATION_TOUT);
+            }
+        } catch (InterruptedException e) {
+            s_logger.info("Interrupted", e);
+            Thread.currentThread().interrupt();
         }
-        this.m_houseKeeperExecutor.shutdownNow();
     }
 
     @Override
-    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity) {
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity, int groupCommitSize,
+            int groupCommitDelay) {
         this.m_capacity = capacity;
 
+        stopGroupCommit();
+        if (groupCommitSize > 1) {
+            startGroupCommit(groupCommitSize, groupCommitDelay);
+        }
+
         if (this.m_houseKeeperTask != null) {
             this.m_houseKeeperTask.cancel(true);
         }
@@ -266,21 +322,62 @@ public class DbDataStore implements DataStore {
         execute(this.m_sqlResetId);
     }
 
+    private void startGroupCommit(int groupCommitSize, int groupCommitDelay) {
+        synchronized (this.m_storeRequests) {
+            this.m_groupCommitExecutor
+                    .submit(new GroupCommitTask(this, this.m_storeRequests, this.m_groupCommitWriters,
+                            groupCommitSize, groupCommitDelay));
+            this.m_groupCommitEnabled = true;
+        }
+    }
+
+    private void stopGroupCommit() {
+        synchronized (this.m_storeRequests) {
+            if (this.m_groupCommitEnabled) {
+                s_logger.info("Stopping the Group Commit Task...");
+                this.m_groupCommitEnabled = false;
+                this.m_storeRequests.add(StoreRequest.STOP);
+            }
+        }
+    }
+
     @Override
-    public synchronized DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
+    public DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
             throws KuraStoreException {
         if (topic == null || topic.trim().length() == 0) {
             throw new IllegalArgumentException("topic");
         }
 
+        // Do not hold the store monitor while waiting: the group commit task needs it.
+        StoreRequest request = null;
+        synchronized (this.m_storeRequests) {
+            if (this.m_groupCommitEnabled) {
+                request = new StoreRequest(topic, payload, qos, retain, priority);
+                this.m_groupCommitWriters.incrementAndGet();
+                this.m_storeRequests.add(request);
+            }
+        }
+
+        if (request != null) {
+            try {
+                return request.await();
+            } finally {
+                this.m_groupCommitWriters.decrementAndGet();
+            }
+        }
+        return storeSingle(topic, payload, qos, retain, priority);
+    }
+
+    private synchronized DataMessage storeSingle(String topic, byte[] payload, int qos, boolean retain, int priority)
+            throws KuraStoreException {
+
         // Priority 0 are used for life-cycle messages like birth and death certificates.
         // Priority 1 are used for remove management by Cloudlet applications.
         // For those messages, bypass the max message count check of the DB cache;
         // we want to publish those message even if the db is full, so allow their storage.
         if (priority != 0 && priority != 1) {
-            int count = getMessageCount();
-            s_logger.debug("Store message count: {}", count);
-            if (count >= this.m_capacity) {
+            s_logger.debug("Store message count: {}", this.m_messageCount);
+            if (this.m_messageCount >= this.m_capacity) {
                 s_logger.error("Store capacity exceeded");
                 throw new KuraStoreCapacityReachedException("Store capacity exceeded");
             }
@@ -320,7 +417,6 @@ public class DbDataStore implements DataStore {
         Timestamp now = new Timestamp(new Date().getTime());
 
         int messageId = -1;
-        ResultSet rs = null;
         Connection conn = null;
         PreparedStatement pstmt = null;
         PreparedStatement cstmt = null;
@@ -328,35 +424,17 @@ public class DbDataStore implements DataStore {
 
             conn = getConnection();
 
-            // store message
             pstmt = conn.prepareStatement(this.m_sqlStore);
-            pstmt.setString(1, topic);				// topic
-            pstmt.setInt(2, qos);				// qos
-            pstmt.setBoolean(3, retain);				// retain
-            pstmt.setTimestamp(4, now, this.m_utcCalendar); // createdOn
-            pstmt.setTimestamp(5, null);				// publishedOn
-            pstmt.setInt(6, -1);                 // publishedMessageId
-            pstmt.setTimestamp(7, null);				// confirmedOn
-            pstmt.setBytes(8, payload);			// payload
-            pstmt.setInt(9, priority);            // priority
-            pstmt.setString(10, null);               // sessionId
-            pstmt.setTimestamp(11, null);				// droppedOn
-            pstmt.execute();
-
-            // retrieve message id
             cstmt = conn.prepareStatement("CALL IDENTITY();");
-            rs = cstmt.executeQuery();
-            if (rs != null && rs.next()) {
-                messageId = rs.getInt(1);
-            }
+            messageId = insertMessage(pstmt, cstmt, topic, payload, qos, retain, priority, now);
 
             conn.commit();
+            this.m_messageCount++;
         } catch (SQLException e) {
             rollback(conn);
             s_logger.error("SQL error code: {}", e.getErrorCode());
             throw new KuraStoreException(e, "Cannot store message");
         } finally {
-            close(rs);
             close(cstmt);
             close(pstmt);
             close(conn);
@@ -364,6 +442,122 @@ public class DbDataStore implements DataStore {
         return get(messageId);
     }
 
+    /**
+     * Stores a group of messages in a single transaction and completes the corresponding requests.
+     * Called by the {@link GroupCommitTask}.
+     */
+    synchronized void storeGroup(List<StoreRequest> group) {
+        List<StoreRequest> accepted = new ArrayList<StoreRequest>(group.size());
+        try {
+            // Same capacity policy of store(), counting the messages accepted in the group
+            for (StoreRequest request : group) {
+                int priority = request.getPriority();
+                if (priority != 0 && priority != 1 && this.m_messageCount + accepted.size() >= this.m_capacity) {
+                    s_logger.error("Store capacity exceeded");
+                    request.fail(new KuraStoreCapacityReachedException("Store capacity exceeded"));
+                    continue;
+                }
+                accepted.add(request);
+            }
+
+            try {
+                storeGroupInternal(accepted);
+            } catch (KuraStoreException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && ((SQLException) cause).getErrorCode() == -3416) {
+                    s_logger.warn("Identity generator limit exceeded. Resetting it...");
+                    resetIdentityGenerator();
+                    storeGroupInternal(accepted);
+                } else {
+                    throw e;
+                }
+            }
+        } catch (KuraStoreException e) {
+            for (StoreRequest request : accepted) {
+                request.fail(e);
+            }
+        } catch (RuntimeException e) {
+            KuraStoreException kse = new KuraStoreException(e, "Cannot store message");
+            for (StoreRequest request : group) {
+                request.fail(kse);
+            }
+        }
+    }
+
+    private synchronized void storeGroupInternal(List<StoreRequest> group) throws KuraStoreException {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = new Timestamp(new Date().getTime());
+
+        List<DataMessage> messages = new ArrayList<DataMessage>(group.size());
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        PreparedStatement cstmt = null;
+        try {
+
+            conn = getConnection();
+
+            pstmt = conn.prepareStatement(this.m_sqlStore);
+            cstmt = conn.prepareStatement("CALL IDENTITY();");
+            for (StoreRequest request : group) {
+                int messageId = insertMessage(pstmt, cstmt, request.getTopic(), request.getPayload(),
+                        request.getQos(), request.isRetain(), request.getPriority(), now);
+                messages.add(new DataMessage.Builder(messageId).withTopic(request.getTopic())
+                        .withQos(request.getQos()).withRetain(request.isRetain()).withCreatedOn(now)
+                        .withPublishedMessageId(-1).withPayload(request.getPayload())
+                        .withPriority(request.getPriority()).build());
+            }
+
+            conn.commit();
+            this.m_messageCount += group.size();
+        } catch (SQLException e) {
+            rollback(conn);
+            s_logger.error("SQL error code: {}", e.getErrorCode());
+            throw new KuraStoreException(e, "Cannot store messages");
+        } finally {
+            close(cstmt);
+            close(pstmt);
+            close(conn);
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(messages.get(i));
+        }
+    }
+
+    private int insertMessage(PreparedStatement pstmt, PreparedStatement cstmt, String topic, byte[] payload,
+            int qos, boolean retain, int priority, Timestamp now) throws SQLException {
+        int messageId = -1;
+
+        // store message
+        pstmt.setString(1, topic);				// topic
+        pstmt.setInt(2, qos);				// qos
+        pstmt.setBoolean(3, retain);				// retain
+        pstmt.setTimestamp(4, now, this.m_utcCalendar); // createdOn
+        pstmt.setTimestamp(5, null);				// publishedOn
+        pstmt.setInt(6, -1);                 // publishedMessageId
+        pstmt.setTimestamp(7, null);				// confirmedOn
+        pstmt.setBytes(8, payload);			// payload
+        pstmt.setInt(9, priority);            // priority
+        pstmt.setString(10, null);               // sessionId
+        pstmt.setTimestamp(11, null);				// droppedOn
+        pstmt.execute();
+
+        // retrieve message id
+        ResultSet rs = null;
+        try {
+            rs = cstmt.executeQuery();
+            if (rs != null && rs.next()) {
+                messageId = rs.getInt(1);
+            }
+        } finally {
+            close(rs);
+        }
+        return messageId;
+    }
+
     @Override
     public synchronized DataMessage get(int msgId) throws KuraStoreException {
         DataMessage msg = null;
@@ -413,6 +607,47 @@ public class DbDataStore implements DataStore {
         return msg;
     }
 
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int limit, int maxPayloadBytes) throws KuraStoreException {
+        List<DataMessage> msgs = new ArrayList<DataMessage>();
+        ResultSet rs = null;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+
+            conn = getConnection();
+            stmt = conn.prepareStatement(this.m_sqlGetNextMessages);
+            stmt.setInt(1, limit);
+            rs = stmt.executeQuery();
+            // The window is sized on the payload lengths, before any payload is read
+            List<Integer> msgIds = new ArrayList<Integer>();
+            long payloadBytes = 0;
+            while (payloadBytes < maxPayloadBytes && rs.next()) {
+                msgIds.add(rs.getInt(1));
+                payloadBytes += rs.getLong(2);
+            }
+            close(rs);
+            close(stmt);
+
+            stmt = conn.prepareStatement(this.m_sqlGetMessage);
+            for (Integer msgId : msgIds) {
+                stmt.setInt(1, msgId);
+                rs = stmt.executeQuery();
+                if (rs.next()) {
+                    msgs.add(buildDataMessage(rs));
+                }
+                close(rs);
+            }
+        } catch (Exception e) {
+            throw new KuraStoreException(e, "Cannot get next messages");
+        } finally {
+            close(rs);
+            close(stmt);
+            close(conn);
+        }
+        return msgs;
+    }
+
     @Override
     public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
         Timestamp now = new Timestamp(new Date().getTime());
@@ -444,11 +679,93 @@ public class DbDataStore implements DataStore {
         updateTimestamp(this.m_sqlSetPublished2, msgId);
     }
 
+    @Override
+    public synchronized void published(List<DataMessage> messages) throws KuraStoreException {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = new Timestamp(new Date().getTime());
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        PreparedStatement stmt2 = null;
+        try {
+
+            conn = getConnection();
+            stmt = conn.prepareStatement(this.m_sqlSetPublished);
+            stmt2 = conn.prepareStatement(this.m_sqlSetPublished2);
+
+            boolean batch = false;
+            boolean batch2 = false;
+            for (DataMessage message : messages) {
+                if (message.getQos() > 0) {
+                    stmt.setTimestamp(1, now, this.m_utcCalendar); // timestamp
+                    stmt.setInt(2, message.getPublishedMessageId());
+                    stmt.setString(3, message.getSessionId());
+                    stmt.setInt(4, message.getId());
+                    stmt.addBatch();
+                    batch = true;
+                } else {
+                    stmt2.setTimestamp(1, now, this.m_utcCalendar); // timestamp
+                    stmt2.setInt(2, message.getId());
+                    stmt2.addBatch();
+                    batch2 = true;
+                }
+            }
+
+            if (batch) {
+                stmt.executeBatch();
+            }
+            if (batch2) {
+                stmt2.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new KuraStoreException(e, "Cannot update timestamp");
+        } finally {
+            close(stmt, stmt2);
+            close(conn);
+        }
+    }
+
     @Override
     public synchronized void confirmed(int msgId) throws KuraStoreException {
         updateTimestamp(this.m_sqlSetConfirmed, msgId);
     }
 
+    @Override
+    public synchronized void confirmed(List<Integer> msgIds) throws KuraStoreException {
+        if (msgIds.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = new Timestamp(new Date().getTime());
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+
+            conn = getConnection();
+            stmt = conn.prepareStatement(this.m_sqlSetConfirmed);
+            for (Integer msgId : msgIds) {
+                stmt.setTimestamp(1, now, this.m_utcCalendar); // timestamp
+                stmt.setInt(2, msgId);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new KuraStoreException(e, "Cannot update timestamp");
+        } finally {
+            close(stmt);
+            close(conn);
+        }
+    }
+
     @Override
     public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() throws KuraStoreException {
         // Order by priority, createdOn
@@ -467,6 +784,22 @@ public class DbDataStore implements DataStore {
         return listMessages(this.m_sqlAllDroppedInFlightMessages);
     }
 
+    @Override
+    public void visitUnpublishedMessages(String topicPrefix, DataMessageVisitor visitor) throws KuraStoreException {
+        visitMessages(this.m_sqlVisitUnpublishedMessages, topicPrefix, visitor);
+    }
+
+    @Override
+    public void visitInFlightMessages(String topicPrefix, DataMessageVisitor visitor) throws KuraStoreException {
+        visitMessages(this.m_sqlVisitInFlightMessages, topicPrefix, visitor);
+    }
+
+    @Override
+    public void visitDroppedInFlightMessages(String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException {
+        visitMessages(this.m_sqlVisitDroppedInFlightMessages, topicPrefix, visitor);
+    }
+
     @Override
     public synchronized void unpublishAllInFlighMessages() throws KuraStoreException {
         execute(this.m_sqlUnpublishAllInFlightMessages);
@@ -478,67 +811,69 @@ public class DbDataStore implements DataStore {
     }
 
     @Override
-    public synchronized void deleteStaleMessages(int purgeAge) throws KuraStoreException {
-        final int INTERVAL_FIELD_OVERFLOW = -3435;
-        Timestamp now = new Timestamp(new Date().getTime());
+    public void deleteStaleMessages(int purgeAge) throws KuraStoreException {
+        // Messages are deleted in chunks, each in its own transaction, and the store monitor is only held
+        // for the duration of a chunk, so that store() and getNextMessage() are not blocked by a long purge.
+        Timestamp limit = new Timestamp(new Date().getTime() - purgeAge * 1000L);
+
         // Delete dropped messages (published with QoS > 0)
-        try {
-            execute(this.m_sqlDeleteDroppedMessages, now, purgeAge);
-        } catch (KuraStoreException e) {
-            // Interval field overflow
-            Throwable cause = e.getCause();
-            if (cause != null && cause instanceof SQLDataException
-                    && ((SQLDataException) cause).getErrorCode() == INTERVAL_FIELD_OVERFLOW) {
-                s_logger.info("Delete all dropped messages older than one year");
-                execute(this.m_sqlDeleteDroppedMessages2, now, 0);
-            } else {
-                throw e;
-            }
-        }
+        int count = deleteMessages(this.m_sqlDeleteDroppedMessages, limit);
 
         // Delete stale confirmed messages (published with QoS > 0)
-        try {
-            execute(this.m_sqlDeleteConfirmedMessages, now, purgeAge);
-        } catch (KuraStoreException e) {
-            // Interval field overflow
-            Throwable cause = e.getCause();
-            if (cause != null && cause instanceof SQLDataException
-                    && ((SQLDataException) cause).getErrorCode() == INTERVAL_FIELD_OVERFLOW) {
-                s_logger.info("Delete all confirmed messages older than one year");
-                execute(this.m_sqlDeleteConfirmedMessages2, now, 0);
-            } else {
-                throw e;
-            }
-        }
+        count += deleteMessages(this.m_sqlDeleteConfirmedMessages, limit);
 
         // Delete stale published messages with QoS == 0
-        try {
-            execute(this.m_sqlDeletePublishedMessages, now, purgeAge);
-        } catch (KuraStoreException e) {
-            // Interval field overflow
-            Throwable cause = e.getCause();
-            if (cause != null && cause instanceof SQLDataException
-                    && ((SQLDataException) cause).getErrorCode() == INTERVAL_FIELD_OVERFLOW) {
-                s_logger.info("Delete all published messages older than one year");
-                execute(this.m_sqlDeletePublishedMessages2, now, 0);
-            } else {
-                throw e;
-            }
-        }
+        count += deleteMessages(this.m_sqlDeletePublishedMessages, limit);
+
+        s_logger.info("Deleted {} stale messages", count);
     }
 
+    // Not synchronized: HSQLDB locks the database itself for the duration of the checkpoint
     @Override
-    public synchronized void defrag() throws KuraStoreException {
+    public void defrag() throws KuraStoreException {
         execute("CHECKPOINT DEFRAG"); // regains the disk space
     }
 
     @Override
-    public synchronized void checkpoint() throws KuraStoreException {
+    public void checkpoint() throws KuraStoreException {
         execute("CHECKPOINT");
     }
 
     @Override
-    public synchronized void repair() throws KuraStoreException {
+    public void repair() throws KuraStoreException {
+        // The check for duplicates scans the whole table: only hold the store monitor
+        // if a repair is actually needed.
+        if (getDuplicateCount() > 0) {
+            repairDuplicates();
+        }
+    }
+
+    private int getDuplicateCount() throws KuraStoreException {
+        ResultSet rs = null;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        int count = -1;
+        try {
+
+            conn = getConnection();
+            // Get the count of IDs for which duplicates exist
+            stmt = conn.prepareStatement(this.m_sqlDuplicateCount);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                count = rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new KuraStoreException(e, "Cannot repair database");
+        } finally {
+            close(rs);
+            close(stmt);
+            close(conn);
+        }
+
+        return count;
+    }
+
+    private synchronized void repairDuplicates() throws KuraStoreException {
         // See:
         // https://sourceforge.net/p/hsqldb/discussion/73674/thread/a08046eb/#7960
         ResultSet rs = null;
@@ -589,6 +924,8 @@ public class DbDataStore implements DataStore {
             close(stmt);
             close(conn);
         }
+
+        this.m_messageCount = getMessageCount();
     }
 
     // ------------------------------------------------------------------
@@ -597,6 +934,43 @@ public class DbDataStore implements DataStore {
     //
     // ------------------------------------------------------------------
 
+    private int deleteMessages(String sql, Timestamp limit) throws KuraStoreException {
+        int count = 0;
+        int deleted;
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            deleted = deleteChunk(sql, limit);
+            count += deleted;
+        } while (deleted == PURGE_CHUNK_SIZE);
+
+        return count;
+    }
+
+    private synchronized int deleteChunk(String sql, Timestamp limit) throws KuraStoreException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        int deleted = 0;
+        try {
+
+            conn = getConnection();
+            stmt = conn.prepareStatement(sql);
+            stmt.setTimestamp(1, limit, this.m_utcCalendar);
+            deleted = stmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new KuraStoreException(e, "Cannot delete messages");
+        } finally {
+            close(stmt);
+            close(conn);
+        }
+
+        this.m_messageCount -= deleted;
+        return deleted;
+    }
+
     private synchronized void updateTimestamp(String sql, Integer... msgIds) throws KuraStoreException {
         Timestamp now = new Timestamp(new Date().getTime());
 
@@ -651,39 +1025,51 @@ public class DbDataStore implements DataStore {
         return msgs;
     }
 
-    private synchronized void execute(String sql, Integer... params) throws KuraStoreException {
+    // Read-only scan: it does not need the store monitor
+    private void visitMessages(String sql, String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException {
+        ResultSet rs = null;
         Connection conn = null;
         PreparedStatement stmt = null;
         try {
 
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
-            for (int i = 0; i < params.length; i++) {
-                stmt.setInt(1 + i, params[i]);
+            stmt.setString(1, escapeLike(topicPrefix) + "%");
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                visitor.visit(rs.getInt(1), rs.getString(2));
             }
-            stmt.execute();
-            conn.commit();
         } catch (SQLException e) {
-            rollback(conn);
-            throw new KuraStoreException(e, "Cannot execute query");
+            throw new KuraStoreException(e, "Cannot list messages");
         } finally {
+            close(rs);
             close(stmt);
             close(conn);
         }
     }
 
-    private synchronized void execute(String sql, Timestamp timestamp, Integer... params) throws KuraStoreException {
+    private static String escapeLike(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private void execute(String sql, Integer... params) throws KuraStoreException {
         Connection conn = null;
         PreparedStatement stmt = null;
         try {
 
             conn = getConnection();
             stmt = conn.prepareStatement(sql);
-            if (timestamp != null) {
-                stmt.setTimestamp(1, timestamp, this.m_utcCalendar);
-            }
             for (int i = 0; i < params.length; i++) {
-                stmt.setInt(2 + i, params[i]);
+                stmt.setInt(1 + i, params[i]);
             }
             stmt.execute();
             conn.commit();
@@ -695,7 +1081,7 @@ public class DbDataStore implements DataStore {
             close(conn);
         }
     }
-    
+
     private void createIndex(String indexname, String table, String order)
 			throws KuraStoreException 
 	{
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.KuraStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit task which coalesces the messages stored concurrently into a single transaction.
+ * A group is committed as soon as it reaches the maximum size or the maximum delay
+ * from its first message elapses, whichever comes first. It is also committed right away when it holds all
+ * the writers waiting in {@link DbDataStore#store(String, byte[], int, boolean, int)}, so that a single
+ * writer does not wait for the delay.
+ * The task terminates after committing all the requests queued before {@link StoreRequest#STOP}.
+ */
+class GroupCommitTask implements Runnable {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(GroupCommitTask.class);
+
+    private final DbDataStore m_store;
+    private final BlockingQueue<StoreRequest> m_requests;
+    private final AtomicInteger m_writers;
+    private final int m_maxSize;
+    private final long m_maxDelayNanos;
+
+    GroupCommitTask(DbDataStore store, BlockingQueue<StoreRequest> requests, AtomicInteger writers, int maxSize,
+            int maxDelay) {
+        this.m_store = store;
+        this.m_requests = requests;
+        this.m_writers = writers;
+        this.m_maxSize = maxSize;
+        this.m_maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    }
+
+    @Override
+    public void run() {
+        Thread.currentThread().setName(getClass().getSimpleName());
+        s_logger.info("GroupCommitTask started. Max size: {}, max delay: {} ms", this.m_maxSize,
+                TimeUnit.NANOSECONDS.toMillis(this.m_maxDelayNanos));
+
+        boolean stopped = false;
+        List<StoreRequest> group = new ArrayList<StoreRequest>(this.m_maxSize);
+        try {
+            while (!stopped) {
+                StoreRequest request = this.m_requests.take();
+                long deadline = System.nanoTime() + this.m_maxDelayNanos;
+                while (request != null) {
+                    if (request == StoreRequest.STOP) {
+                        stopped = true;
+                        break;
+                    }
+                    group.add(request);
+                    if (group.size() >= this.m_maxSize || group.size() >= this.m_writers.get()) {
+                        break;
+                    }
+                    request = this.m_requests.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+
+                if (!group.isEmpty()) {
+                    s_logger.debug("Committing a group of {} messages", group.size());
+                    this.m_store.storeGroup(group);
+                    group.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            s_logger.info("GroupCommitTask interrupted");
+            failAll(group, new KuraStoreException(e, "Group commit interrupted"));
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            s_logger.error("GroupCommitTask exception", t);
+            failAll(group, new KuraStoreException(t, "Group commit failed"));
+        }
+        s_logger.info("GroupCommitTask ended.");
+    }
+
+    // Do not leave callers blocked forever if the task terminates abnormally
+    private void failAll(List<StoreRequest> group, KuraStoreException error) {
+        List<StoreRequest> pending = new ArrayList<StoreRequest>(group);
+        this.m_requests.drainTo(pending);
+        for (StoreRequest request : pending) {
+            if (request != StoreRequest.STOP) {
+                request.fail(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,1194 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataMessageVisitor;
+import org.eclipse.kura.core.data.DataStore;
+import org.eclipse.kura.db.DbService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the DataStore which stores messages into an append-only log on the file system.
+ * <p>
+ * Topic and payload of the messages are appended to segment files of bounded size.
+ * The state of the messages is kept in a memory-mapped index with one fixed-width entry per message,
+ * so that a state transition only updates a few bytes in place.
+ * Stale messages are marked as deleted in the index and a segment file is removed as a whole
+ * once all its messages have been deleted. Message IDs are increasing along the index,
+ * which is compacted by dropping the entries of the deleted messages.
+ * <p>
+ * Files are written to the page cache and forced to the storage on {@link #checkpoint()},
+ * which is run periodically by the {@link HouseKeeperTask}.
+ * On start, index entries referring to records not completely written to their segment are discarded.
+ */
+public class LogDataStore implements DataStore {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(LogDataStore.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String INDEX_FILE = "index.dat";
+    private static final String SESSIONS_FILE = "sessions.dat";
+    private static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile("segment-(\\d+)\\.log");
+
+    private static final long SEGMENT_SIZE = 1024L * 1024L;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    // Index header
+    private static final int INDEX_MAGIC = 0x4B4C4F47;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_BASE_ID = 8;
+    private static final int HEADER_COUNT = 12;
+    private static final int HEADER_NEXT_ID = 16;
+
+    // Index entries
+    private static final int ENTRY_SIZE = 64;
+    private static final int ENTRY_ID = 0;
+    private static final int ENTRY_PRIORITY = 4;
+    private static final int ENTRY_QOS = 8;
+    private static final int ENTRY_RETAIN = 9;
+    private static final int ENTRY_DELETED = 10;
+    private static final int ENTRY_PUBLISHED_MESSAGE_ID = 12;
+    private static final int ENTRY_CREATED_ON = 16;
+    private static final int ENTRY_PUBLISHED_ON = 24;
+    private static final int ENTRY_CONFIRMED_ON = 32;
+    private static final int ENTRY_DROPPED_ON = 40;
+    private static final int ENTRY_SESSION = 48;
+    private static final int ENTRY_SEGMENT = 52;
+    private static final int ENTRY_OFFSET = 56;
+    private static final int ENTRY_LENGTH = 60;
+
+    // Segment records: id, topic length, topic, payload length (-1 for null), payload
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int THREAD_TERMINATION_TOUT = 30; // In seconds
+
+    // Segments with less live bytes than this fraction of their size are rewritten on defrag
+    private static final int SPARSE_SEGMENT_RATIO = 4;
+    private static final int COMPACT_BUFFER_ENTRIES = 1024;
+
+    private final File m_directory;
+
+    private ScheduledExecutorService m_houseKeeperExecutor;
+    private ScheduledFuture<?> m_houseKeeperTask;
+    private int m_capacity;
+
+    private FileChannel m_indexChannel;
+    private MappedByteBuffer m_index;
+    private int m_baseId;
+    private int m_nextId;
+    private int m_count;
+    private int m_liveCount;
+
+    // Unpublished messages ordered by priority and id
+    private final TreeSet<Long> m_unpublished = new TreeSet<Long>();
+
+    private final TreeMap<Integer, Segment> m_segments = new TreeMap<Integer, Segment>();
+
+    private final List<String> m_sessions = new ArrayList<String>();
+    private final Map<String, Integer> m_sessionIndexes = new HashMap<String, Integer>();
+    private DataOutputStream m_sessionsOut;
+
+    private static class Segment {
+
+        private final int number;
+        private final File file;
+        private FileChannel channel;
+        private long size;
+        private int liveCount;
+        private long liveBytes;
+
+        private Segment(int number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+    }
+
+    public LogDataStore(File directory) {
+        this.m_directory = directory;
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Start/Stop
+    //
+    // ----------------------------------------------------------
+
+    /**
+     * The group commit parameters are ignored: storing a message appends it to the page cache
+     * and the log is forced to the storage at checkpoints.
+     */
+    @Override
+    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity,
+            int groupCommitSize, int groupCommitDelay) throws KuraStoreException {
+        this.m_houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        try {
+            open();
+        } catch (IOException e) {
+            close();
+            throw new KuraStoreException(e, "Cannot open the message log in " + this.m_directory);
+        }
+
+        update(houseKeeperInterval, purgeAge, capacity, groupCommitSize, groupCommitDelay);
+    }
+
+    @Override
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity, int groupCommitSize,
+            int groupCommitDelay) {
+        this.m_capacity = capacity;
+
+        // Do not interrupt a running housekeeper: the interrupt would close the channel it is writing to
+        if (this.m_houseKeeperTask != null) {
+            this.m_houseKeeperTask.cancel(false);
+        }
+
+        // Start the Housekeeper task
+        this.m_houseKeeperTask = this.m_houseKeeperExecutor.scheduleWithFixedDelay(
+                new HouseKeeperTask(this, purgeAge, true), 1,    // start in one second
+                houseKeeperInterval,   // repeat every retryInterval until we stopped.
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for a running housekeeper before closing the log. The housekeeper is not interrupted
+     * and this method does not hold the lock of the store while waiting, as the housekeeper needs it.
+     */
+    @Override
+    public void stop() {
+        s_logger.info("Canceling the Housekeeper Task...");
+        synchronized (this) {
+            if (this.m_houseKeeperTask != null) {
+                this.m_houseKeeperTask.cancel(false);
+            }
+            this.m_houseKeeperExecutor.shutdown();
+        }
+        try {
+            this.m_houseKeeperExecutor.awaitTermination(THREAD_TERMINATION_TOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            s_logger.info("Interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                checkpoint();
+            } catch (KuraStoreException e) {
+                s_logger.warn("Cannot checkpoint the message log", e);
+            }
+            close();
+        }
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Message APIs
+    //
+    // ----------------------------------------------------------
+
+    @Override
+    public synchronized DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
+            throws KuraStoreException {
+        if (topic == null || topic.trim().length() == 0) {
+            throw new IllegalArgumentException("topic");
+        }
+
+        // Same policy of the DbDataStore: priority 0 and 1 bypass the capacity check.
+        if (priority != 0 && priority != 1) {
+            s_logger.debug("Store message count: {}", this.m_liveCount);
+            if (this.m_liveCount >= this.m_capacity) {
+                s_logger.error("Store capacity exceeded");
+                throw new KuraStoreCapacityReachedException("Store capacity exceeded");
+            }
+        }
+
+        if (this.m_nextId == Integer.MAX_VALUE) {
+            if (this.m_liveCount > 0) {
+                throw new KuraStoreException("Identity generator limit exceeded");
+            }
+            s_logger.warn("Identity generator limit exceeded. Resetting it...");
+            resetIndex();
+        }
+
+        byte[] topicBytes = topic.getBytes(UTF8);
+        int payloadLength = payload == null ? 0 : payload.length;
+        int recordLength = RECORD_HEADER_SIZE + topicBytes.length + 4 + payloadLength;
+
+        // The payload is written straight from the caller's array, only the record header is copied
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + topicBytes.length + 4);
+        int id = this.m_nextId;
+        header.putInt(id);
+        header.putInt(topicBytes.length);
+        header.put(topicBytes);
+        header.putInt(payload == null ? -1 : payloadLength);
+        header.flip();
+
+        long now = System.currentTimeMillis();
+        try {
+            Segment segment = getWritableSegment();
+            long offset = segment.size;
+            write(segment.channel, header, offset);
+            if (payload != null) {
+                write(segment.channel, ByteBuffer.wrap(payload), offset + header.capacity());
+            }
+            segment.size += recordLength;
+
+            ensureIndexCapacity(this.m_count + 1);
+            int position = entryPosition(this.m_count);
+            for (int i = 0; i < ENTRY_SIZE; i++) {
+                this.m_index.put(position + i, (byte) 0);
+            }
+            this.m_index.putInt(position + ENTRY_ID, id);
+            this.m_index.putInt(position + ENTRY_PRIORITY, priority);
+            this.m_index.put(position + ENTRY_QOS, (byte) qos);
+            this.m_index.put(position + ENTRY_RETAIN, (byte) (retain ? 1 : 0));
+            this.m_index.putInt(position + ENTRY_PUBLISHED_MESSAGE_ID, -1);
+            this.m_index.putLong(position + ENTRY_CREATED_ON, now);
+            this.m_index.putInt(position + ENTRY_SESSION, -1);
+            this.m_index.putInt(position + ENTRY_SEGMENT, segment.number);
+            this.m_index.putInt(position + ENTRY_OFFSET, (int) offset);
+            this.m_index.putInt(position + ENTRY_LENGTH, recordLength);
+
+            this.m_count++;
+            this.m_nextId++;
+            this.m_index.putInt(HEADER_COUNT, this.m_count);
+            this.m_index.putInt(HEADER_NEXT_ID, this.m_nextId);
+
+            this.m_liveCount++;
+            segment.liveCount++;
+            segment.liveBytes += recordLength;
+            this.m_unpublished.add(unpublishedKey(priority, id));
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot store message");
+        }
+
+        return new DataMessage.Builder(id).withTopic(topic).withQos(qos).withRetain(retain)
+                .withCreatedOn(new Date(now)).withPublishedMessageId(-1).withPayload(payload).withPriority(priority)
+                .build();
+    }
+
+    @Override
+    public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
+        int slot = findSlot(msgId);
+        if (slot < 0) {
+            return;
+        }
+
+        int position = entryPosition(slot);
+        setPublished(position, System.currentTimeMillis());
+        this.m_index.putInt(position + ENTRY_PUBLISHED_MESSAGE_ID, publishedMsgId);
+        this.m_index.putInt(position + ENTRY_SESSION, getSessionIndex(sessionId));
+    }
+
+    @Override
+    public synchronized void published(int msgId) throws KuraStoreException {
+        int slot = findSlot(msgId);
+        if (slot < 0) {
+            return;
+        }
+
+        setPublished(entryPosition(slot), System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void published(List<DataMessage> messages) throws KuraStoreException {
+        for (DataMessage message : messages) {
+            if (message.getQos() > 0) {
+                published(message.getId(), message.getPublishedMessageId(), message.getSessionId());
+            } else {
+                published(message.getId());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void confirmed(int msgId) throws KuraStoreException {
+        int slot = findSlot(msgId);
+        if (slot < 0) {
+            return;
+        }
+
+        this.m_index.putLong(entryPosition(slot) + ENTRY_CONFIRMED_ON, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void confirmed(List<Integer> msgIds) throws KuraStoreException {
+        for (Integer msgId : msgIds) {
+            confirmed(msgId);
+        }
+    }
+
+    @Override
+    public synchronized DataMessage getNextMessage() throws KuraStoreException {
+        List<DataMessage> messages = getNextMessages(1, Integer.MAX_VALUE);
+        return messages.isEmpty() ? null : messages.get(0);
+    }
+
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int limit, int maxPayloadBytes) throws KuraStoreException {
+        List<DataMessage> messages = new ArrayList<DataMessage>();
+        Iterator<Long> keys = this.m_unpublished.iterator();
+        long payloadBytes = 0;
+        while (keys.hasNext() && messages.size() < limit && payloadBytes < maxPayloadBytes) {
+            int slot = findSlot((int) (long) keys.next());
+            DataMessage message;
+            try {
+                message = buildDataMessage(slot, true);
+            } catch (KuraStoreException e) {
+                if (isRecordReadable(slot)) {
+                    throw e;
+                }
+                // A damaged record must not hold back the messages queued after it
+                s_logger.error("Deleting corrupted message ID: {}", getId(slot), e);
+                keys.remove();
+                delete(entryPosition(slot));
+                continue;
+            }
+            if (message.getPayload() != null) {
+                payloadBytes += message.getPayload().length;
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized DataMessage get(int msgId) throws KuraStoreException {
+        int slot = findSlot(msgId);
+        if (slot < 0) {
+            return null;
+        }
+        return buildDataMessage(slot, true);
+    }
+
+    @Override
+    public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() throws KuraStoreException {
+        List<DataMessage> messages = new ArrayList<DataMessage>(this.m_unpublished.size());
+        for (Long key : this.m_unpublished) {
+            messages.add(buildDataMessage(findSlot((int) (long) key), false));
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized List<DataMessage> allInFlightMessagesNoPayload() throws KuraStoreException {
+        return buildDataMessagesNoPayload(inFlightSlots());
+    }
+
+    @Override
+    public synchronized List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException {
+        return buildDataMessagesNoPayload(droppedInFlightSlots());
+    }
+
+    @Override
+    public synchronized void visitUnpublishedMessages(String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException {
+        for (Long key : this.m_unpublished) {
+            visitMessage(findSlot((int) (long) key), topicPrefix, visitor);
+        }
+    }
+
+    @Override
+    public synchronized void visitInFlightMessages(String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException {
+        for (Integer slot : sortSlots(inFlightSlots())) {
+            visitMessage(slot, topicPrefix, visitor);
+        }
+    }
+
+    @Override
+    public synchronized void visitDroppedInFlightMessages(String topicPrefix, DataMessageVisitor visitor)
+            throws KuraStoreException {
+        for (Integer slot : sortSlots(droppedInFlightSlots())) {
+            visitMessage(slot, topicPrefix, visitor);
+        }
+    }
+
+    @Override
+    public synchronized void unpublishAllInFlighMessages() throws KuraStoreException {
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (!isDeleted(position) && isInFlight(position)) {
+                this.m_index.putLong(position + ENTRY_PUBLISHED_ON, 0);
+                this.m_unpublished.add(unpublishedKey(this.m_index.getInt(position + ENTRY_PRIORITY),
+                        this.m_index.getInt(position + ENTRY_ID)));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void dropAllInFlightMessages() throws KuraStoreException {
+        long now = System.currentTimeMillis();
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (!isDeleted(position) && isInFlight(position)) {
+                this.m_index.putLong(position + ENTRY_DROPPED_ON, now);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void deleteStaleMessages(int purgeAge) throws KuraStoreException {
+        long now = System.currentTimeMillis();
+        long maxAge = purgeAge * 1000L;
+        int deleted = 0;
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (isDeleted(position)) {
+                continue;
+            }
+
+            long publishedOn = this.m_index.getLong(position + ENTRY_PUBLISHED_ON);
+            long confirmedOn = this.m_index.getLong(position + ENTRY_CONFIRMED_ON);
+            long droppedOn = this.m_index.getLong(position + ENTRY_DROPPED_ON);
+            int qos = this.m_index.get(position + ENTRY_QOS);
+
+            boolean stale = droppedOn != 0 && now - droppedOn > maxAge
+                    || confirmedOn != 0 && now - confirmedOn > maxAge
+                    || qos == 0 && publishedOn != 0 && now - publishedOn > maxAge;
+            if (stale) {
+                delete(position);
+                deleted++;
+            }
+        }
+        s_logger.info("Deleted {} stale messages", deleted);
+
+        deleteEmptySegments();
+    }
+
+    /**
+     * Copies the live records of the segments mostly made of deleted messages to the current segment,
+     * drops the index entries of the deleted messages when they take up at least half of the index,
+     * and forces the log to the storage. A message never confirmed nor purged keeps neither
+     * its segment nor the index entries after it.
+     */
+    @Override
+    public synchronized void defrag() throws KuraStoreException {
+        try {
+            relocateSparseSegments();
+
+            int deleted = this.m_count - this.m_liveCount;
+            if (deleted > 0 && deleted >= this.m_liveCount) {
+                compactIndex();
+            }
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot compact the message log");
+        }
+
+        // The segments left without live records are deleted once the index no longer refers to them
+        checkpoint();
+        deleteEmptySegments();
+    }
+
+    @Override
+    public synchronized void checkpoint() throws KuraStoreException {
+        try {
+            if (this.m_index != null) {
+                this.m_index.force();
+            }
+            for (Segment segment : this.m_segments.values()) {
+                if (segment.channel != null) {
+                    getChannel(segment).force(false);
+                }
+            }
+            if (this.m_sessionsOut != null) {
+                this.m_sessionsOut.flush();
+            }
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot checkpoint the message log");
+        }
+    }
+
+    /**
+     * Nothing to do: the consistency of the index with the segments is checked on start.
+     */
+    @Override
+    public synchronized void repair() throws KuraStoreException {
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods
+    //
+    // ------------------------------------------------------------------
+
+    private static long unpublishedKey(int priority, int id) {
+        return (long) priority << 32 | id & 0xFFFFFFFFL;
+    }
+
+    private static int entryPosition(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private int findSlot(int msgId) {
+        if (msgId < this.m_baseId || msgId >= this.m_nextId) {
+            return -1;
+        }
+
+        // The slot of a message is its offset from the base ID, unless the index has been compacted past it
+        int slot = (int) Math.min((long) msgId - this.m_baseId, this.m_count - 1L);
+        if (slot >= 0 && getId(slot) != msgId) {
+            int low = 0;
+            int high = slot - 1;
+            slot = -1;
+            while (low <= high) {
+                int middle = low + high >>> 1;
+                int id = getId(middle);
+                if (id < msgId) {
+                    low = middle + 1;
+                } else if (id > msgId) {
+                    high = middle - 1;
+                } else {
+                    slot = middle;
+                    break;
+                }
+            }
+        }
+
+        if (slot < 0 || isDeleted(entryPosition(slot))) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private int getId(int slot) {
+        return this.m_index.getInt(entryPosition(slot) + ENTRY_ID);
+    }
+
+    private boolean isDeleted(int position) {
+        return this.m_index.get(position + ENTRY_DELETED) != 0;
+    }
+
+    // Same condition of the in-flight updates of the DbDataStore
+    private void delete(int position) {
+        this.m_index.put(position + ENTRY_DELETED, (byte) 1);
+        this.m_unpublished.remove(unpublishedKey(this.m_index.getInt(position + ENTRY_PRIORITY),
+                this.m_index.getInt(position + ENTRY_ID)));
+        this.m_liveCount--;
+        Segment segment = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+        if (segment != null) {
+            segment.liveCount--;
+            segment.liveBytes -= this.m_index.getInt(position + ENTRY_LENGTH);
+        }
+    }
+
+    private boolean isInFlight(int position) {
+        return this.m_index.getLong(position + ENTRY_PUBLISHED_ON) != 0 && this.m_index.get(position + ENTRY_QOS) > 0
+                && this.m_index.getLong(position + ENTRY_CONFIRMED_ON) == 0;
+    }
+
+    private void setPublished(int position, long now) {
+        this.m_index.putLong(position + ENTRY_PUBLISHED_ON, now);
+        this.m_unpublished.remove(unpublishedKey(this.m_index.getInt(position + ENTRY_PRIORITY),
+                this.m_index.getInt(position + ENTRY_ID)));
+    }
+
+    private int getSessionIndex(String sessionId) throws KuraStoreException {
+        if (sessionId == null) {
+            return -1;
+        }
+
+        Integer index = this.m_sessionIndexes.get(sessionId);
+        if (index == null) {
+            try {
+                this.m_sessionsOut.writeUTF(sessionId);
+                this.m_sessionsOut.flush();
+            } catch (IOException e) {
+                throw new KuraStoreException(e, "Cannot store session ID");
+            }
+            index = this.m_sessions.size();
+            this.m_sessions.add(sessionId);
+            this.m_sessionIndexes.put(sessionId, index);
+        }
+        return index;
+    }
+
+    private List<Integer> inFlightSlots() {
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (!isDeleted(position) && isInFlight(position)
+                    && this.m_index.getLong(position + ENTRY_DROPPED_ON) == 0) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    private List<Integer> droppedInFlightSlots() {
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (!isDeleted(position) && this.m_index.getLong(position + ENTRY_DROPPED_ON) != 0) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    private void visitMessage(int slot, String topicPrefix, DataMessageVisitor visitor) throws KuraStoreException {
+        DataMessage message = buildDataMessage(slot, false);
+        if (message.getTopic().startsWith(topicPrefix)) {
+            visitor.visit(message.getId(), message.getTopic());
+        }
+    }
+
+    private List<DataMessage> buildDataMessagesNoPayload(List<Integer> slots) throws KuraStoreException {
+        List<DataMessage> messages = new ArrayList<DataMessage>(slots.size());
+        for (Integer slot : sortSlots(slots)) {
+            messages.add(buildDataMessage(slot, false));
+        }
+        return messages;
+    }
+
+    private List<Integer> sortSlots(List<Integer> slots) {
+        // Order by priority, createdOn
+        Collections.sort(slots, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer slot1, Integer slot2) {
+                int position1 = entryPosition(slot1);
+                int position2 = entryPosition(slot2);
+                int result = Integer.compare(LogDataStore.this.m_index.getInt(position1 + ENTRY_PRIORITY),
+                        LogDataStore.this.m_index.getInt(position2 + ENTRY_PRIORITY));
+                if (result == 0) {
+                    result = Long.compare(LogDataStore.this.m_index.getLong(position1 + ENTRY_CREATED_ON),
+                            LogDataStore.this.m_index.getLong(position2 + ENTRY_CREATED_ON));
+                }
+                return result;
+            }
+        });
+        return slots;
+    }
+
+    private DataMessage buildDataMessage(int slot, boolean withPayload) throws KuraStoreException {
+        int position = entryPosition(slot);
+        int id = this.m_index.getInt(position + ENTRY_ID);
+        int sessionIndex = this.m_index.getInt(position + ENTRY_SESSION);
+
+        DataMessage.Builder builder = new DataMessage.Builder(id)
+                .withQos(this.m_index.get(position + ENTRY_QOS))
+                .withRetain(this.m_index.get(position + ENTRY_RETAIN) != 0)
+                .withCreatedOn(toDate(this.m_index.getLong(position + ENTRY_CREATED_ON)))
+                .withPublishedOn(toDate(this.m_index.getLong(position + ENTRY_PUBLISHED_ON)))
+                .withPublishedMessageId(this.m_index.getInt(position + ENTRY_PUBLISHED_MESSAGE_ID))
+                .withConfirmedOn(toDate(this.m_index.getLong(position + ENTRY_CONFIRMED_ON)))
+                .withPriority(this.m_index.getInt(position + ENTRY_PRIORITY))
+                .withSessionId(sessionIndex < 0 ? null : this.m_sessions.get(sessionIndex))
+                .withDroppedOn(toDate(this.m_index.getLong(position + ENTRY_DROPPED_ON)));
+
+        Segment segment = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+        if (segment == null) {
+            throw new KuraStoreException("Missing segment for message ID: " + id);
+        }
+        long offset = this.m_index.getInt(position + ENTRY_OFFSET) & 0xFFFFFFFFL;
+
+        try {
+            FileChannel channel = getChannel(segment);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            read(channel, header, offset);
+            if (header.getInt(0) != id) {
+                throw new KuraStoreException("Corrupted record for message ID: " + id);
+            }
+            int topicLength = header.getInt(4);
+
+            ByteBuffer topicAndLength = ByteBuffer.allocate(topicLength + 4);
+            read(channel, topicAndLength, offset + RECORD_HEADER_SIZE);
+            builder.withTopic(new String(topicAndLength.array(), 0, topicLength, UTF8));
+
+            if (withPayload) {
+                int payloadLength = topicAndLength.getInt(topicLength);
+                if (payloadLength >= 0) {
+                    ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+                    read(channel, payload, offset + RECORD_HEADER_SIZE + topicLength + 4);
+                    builder.withPayload(payload.array());
+                }
+            }
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot read message ID: " + id);
+        }
+        return builder.build();
+    }
+
+    private static Date toDate(long time) {
+        return time == 0 ? null : new Date(time);
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // Checks the header of the record against its index entry. I/O errors other than a short read are thrown.
+    private boolean isRecordValid(Segment segment, int position) throws IOException {
+        long offset = this.m_index.getInt(position + ENTRY_OFFSET) & 0xFFFFFFFFL;
+        int length = this.m_index.getInt(position + ENTRY_LENGTH);
+        if (length < RECORD_HEADER_SIZE + 4 || offset + length > segment.size) {
+            return false;
+        }
+
+        try {
+            FileChannel channel = getChannel(segment);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            read(channel, header, offset);
+            int topicLength = header.getInt(4);
+            if (header.getInt(0) != this.m_index.getInt(position + ENTRY_ID) || topicLength < 0
+                    || topicLength > length - RECORD_HEADER_SIZE - 4) {
+                return false;
+            }
+            ByteBuffer payloadLength = ByteBuffer.allocate(4);
+            read(channel, payloadLength, offset + RECORD_HEADER_SIZE + topicLength);
+            int payloadSize = payloadLength.getInt(0);
+            return payloadSize >= -1 && RECORD_HEADER_SIZE + topicLength + 4 + Math.max(payloadSize, 0) == length;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private boolean isRecordReadable(int slot) {
+        int position = entryPosition(slot);
+        Segment segment = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+        try {
+            return segment != null && isRecordValid(segment, position);
+        } catch (IOException e) {
+            // not a corruption of the record
+            return true;
+        }
+    }
+
+    // A channel is closed if a thread is interrupted while using it, in that case it is reopened
+    private FileChannel getChannel(Segment segment) throws IOException {
+        if (segment.channel == null || !segment.channel.isOpen()) {
+            segment.channel = new RandomAccessFile(segment.file, "rw").getChannel();
+        }
+        return segment.channel;
+    }
+
+    private Segment getWritableSegment() throws IOException {
+        Segment segment = this.m_segments.isEmpty() ? null : this.m_segments.lastEntry().getValue();
+        if (segment == null || segment.size >= SEGMENT_SIZE) {
+            int number = segment == null ? 0 : segment.number + 1;
+            segment = new Segment(number, new File(this.m_directory, "segment-" + number + ".log"));
+            this.m_segments.put(number, segment);
+            s_logger.debug("Created segment {}", segment.file);
+        }
+        getChannel(segment);
+        return segment;
+    }
+
+    private void deleteEmptySegments() {
+        Segment current = this.m_segments.isEmpty() ? null : this.m_segments.lastEntry().getValue();
+        Iterator<Segment> segments = this.m_segments.values().iterator();
+        while (segments.hasNext()) {
+            Segment segment = segments.next();
+            if (segment.liveCount == 0 && segment != current) {
+                closeChannel(segment);
+                if (!segment.file.delete()) {
+                    s_logger.warn("Cannot delete segment {}", segment.file);
+                }
+                segments.remove();
+                s_logger.debug("Deleted segment {}", segment.file);
+            }
+        }
+    }
+
+    // Copies the live records of the sparse segments to the writable segment. The copies are forced
+    // to the storage before the index refers to them.
+    private void relocateSparseSegments() throws IOException {
+        Segment current = this.m_segments.isEmpty() ? null : this.m_segments.lastEntry().getValue();
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            if (isDeleted(position)) {
+                continue;
+            }
+            Segment segment = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+            if (segment != null && segment != current && segment.liveBytes * SPARSE_SEGMENT_RATIO < segment.size) {
+                slots.add(slot);
+            }
+        }
+        if (slots.isEmpty()) {
+            return;
+        }
+
+        Segment[] targets = new Segment[slots.size()];
+        long[] offsets = new long[slots.size()];
+        for (int i = 0; i < slots.size(); i++) {
+            int position = entryPosition(slots.get(i));
+            Segment source = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+            ByteBuffer record = ByteBuffer.allocate(this.m_index.getInt(position + ENTRY_LENGTH));
+            read(getChannel(source), record, this.m_index.getInt(position + ENTRY_OFFSET) & 0xFFFFFFFFL);
+            record.flip();
+
+            Segment target = getWritableSegment();
+            write(target.channel, record, target.size);
+            targets[i] = target;
+            offsets[i] = target.size;
+            target.size += record.capacity();
+        }
+        for (Segment segment : new HashSet<Segment>(Arrays.asList(targets))) {
+            segment.channel.force(false);
+        }
+
+        for (int i = 0; i < slots.size(); i++) {
+            int position = entryPosition(slots.get(i));
+            int length = this.m_index.getInt(position + ENTRY_LENGTH);
+            Segment source = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+            source.liveCount--;
+            source.liveBytes -= length;
+            targets[i].liveCount++;
+            targets[i].liveBytes += length;
+            this.m_index.putInt(position + ENTRY_SEGMENT, targets[i].number);
+            this.m_index.putInt(position + ENTRY_OFFSET, (int) offsets[i]);
+        }
+        s_logger.info("Relocated {} records of sparse segments", slots.size());
+    }
+
+    private void ensureIndexCapacity(int count) throws IOException {
+        long required = (long) HEADER_SIZE + (long) count * ENTRY_SIZE;
+        if (required > this.m_index.capacity()) {
+            long size = Math.max(required, 2L * this.m_index.capacity());
+            this.m_index.force();
+            if (!this.m_indexChannel.isOpen()) {
+                this.m_indexChannel = new RandomAccessFile(new File(this.m_directory, INDEX_FILE), "rw").getChannel();
+            }
+            this.m_index = this.m_indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void resetIndex() throws KuraStoreException {
+        for (Segment segment : this.m_segments.values()) {
+            closeChannel(segment);
+            if (!segment.file.delete()) {
+                s_logger.warn("Cannot delete segment {}", segment.file);
+            }
+        }
+        this.m_segments.clear();
+        this.m_unpublished.clear();
+        try {
+            compactIndex();
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot reset the message log index");
+        }
+        this.m_baseId = 1;
+        this.m_nextId = 1;
+        this.m_index.putInt(HEADER_BASE_ID, this.m_baseId);
+        this.m_index.putInt(HEADER_NEXT_ID, this.m_nextId);
+    }
+
+    // Rewrites the index without the entries of the deleted messages and atomically replaces the current one
+    private void compactIndex() throws IOException {
+        s_logger.info("Compacting the message log index. Dropping {} entries of {}", this.m_count - this.m_liveCount,
+                this.m_count);
+
+        File indexFile = new File(this.m_directory, INDEX_FILE);
+        File tmpFile = new File(this.m_directory, INDEX_FILE + ".tmp");
+
+        FileChannel tmpChannel = new RandomAccessFile(tmpFile, "rw").getChannel();
+        try {
+            tmpChannel.truncate(0);
+            ByteBuffer entries = ByteBuffer.allocate(COMPACT_BUFFER_ENTRIES * ENTRY_SIZE);
+            long position = HEADER_SIZE;
+            int count = 0;
+            int baseId = this.m_nextId;
+            for (int slot = 0; slot < this.m_count; slot++) {
+                if (isDeleted(entryPosition(slot))) {
+                    continue;
+                }
+                if (count == 0) {
+                    baseId = getId(slot);
+                }
+                ByteBuffer entry = this.m_index.duplicate();
+                entry.limit(entryPosition(slot) + ENTRY_SIZE);
+                entry.position(entryPosition(slot));
+                entries.put(entry);
+                count++;
+                if (!entries.hasRemaining()) {
+                    entries.flip();
+                    write(tmpChannel, entries, position);
+                    position += entries.limit();
+                    entries.clear();
+                }
+            }
+            entries.flip();
+            write(tmpChannel, entries, position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(HEADER_MAGIC, INDEX_MAGIC);
+            header.putInt(HEADER_VERSION, INDEX_VERSION);
+            header.putInt(HEADER_BASE_ID, baseId);
+            header.putInt(HEADER_COUNT, count);
+            header.putInt(HEADER_NEXT_ID, this.m_nextId);
+            write(tmpChannel, header, 0);
+            tmpChannel.force(true);
+        } finally {
+            tmpChannel.close();
+        }
+
+        this.m_index = null;
+        this.m_indexChannel.close();
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        openIndex(indexFile);
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: File Management
+    //
+    // ------------------------------------------------------------------
+
+    private void open() throws IOException {
+        if (!this.m_directory.isDirectory() && !this.m_directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + this.m_directory);
+        }
+        s_logger.info("Opening the message log in {}", this.m_directory);
+
+        openSessions(new File(this.m_directory, SESSIONS_FILE));
+
+        File[] files = this.m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_FILE_PATTERN.matcher(file.getName());
+                if (matcher.matches()) {
+                    int number = Integer.parseInt(matcher.group(1));
+                    Segment segment = new Segment(number, file);
+                    segment.size = file.length();
+                    this.m_segments.put(number, segment);
+                }
+            }
+        }
+
+        openIndex(new File(this.m_directory, INDEX_FILE));
+        recover();
+    }
+
+    private void openSessions(File sessionsFile) throws IOException {
+        long validLength = 0;
+        if (sessionsFile.exists()) {
+            DataInputStream in = new DataInputStream(new FileInputStream(sessionsFile));
+            try {
+                while (true) {
+                    String sessionId = in.readUTF();
+                    this.m_sessionIndexes.put(sessionId, this.m_sessions.size());
+                    this.m_sessions.add(sessionId);
+                    validLength += 2 + sessionId.getBytes(UTF8).length;
+                }
+            } catch (EOFException e) {
+                // end of the file, possibly with a partially written session ID
+            } finally {
+                in.close();
+            }
+
+            if (validLength < sessionsFile.length()) {
+                RandomAccessFile file = new RandomAccessFile(sessionsFile, "rw");
+                try {
+                    file.setLength(validLength);
+                } finally {
+                    file.close();
+                }
+            }
+        }
+        this.m_sessionsOut = new DataOutputStream(new FileOutputStream(sessionsFile, true));
+    }
+
+    private void openIndex(File indexFile) throws IOException {
+        this.m_indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+        long size = this.m_indexChannel.size();
+        if (size < HEADER_SIZE) {
+            this.m_index = this.m_indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    entryPosition(INITIAL_INDEX_CAPACITY));
+            this.m_index.putInt(HEADER_MAGIC, INDEX_MAGIC);
+            this.m_index.putInt(HEADER_VERSION, INDEX_VERSION);
+            this.m_index.putInt(HEADER_BASE_ID, 1);
+            this.m_index.putInt(HEADER_COUNT, 0);
+            this.m_index.putInt(HEADER_NEXT_ID, 1);
+        } else {
+            this.m_index = this.m_indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (this.m_index.getInt(HEADER_MAGIC) != INDEX_MAGIC
+                    || this.m_index.getInt(HEADER_VERSION) != INDEX_VERSION) {
+                throw new IOException("Unsupported index file " + indexFile);
+            }
+        }
+
+        this.m_baseId = this.m_index.getInt(HEADER_BASE_ID);
+        this.m_count = Math.min(this.m_index.getInt(HEADER_COUNT),
+                (this.m_index.capacity() - HEADER_SIZE) / ENTRY_SIZE);
+        this.m_nextId = this.m_index.getInt(HEADER_NEXT_ID);
+        if (this.m_nextId == 0) {
+            // Written before the index could be compacted past a live entry: the IDs are contiguous
+            this.m_nextId = this.m_baseId + this.m_count;
+            this.m_index.putInt(HEADER_NEXT_ID, this.m_nextId);
+        }
+        ensureIndexCapacity(this.m_count + INITIAL_INDEX_CAPACITY);
+    }
+
+    private void recover() throws IOException {
+        // Discard the entries whose record has not been completely written
+        while (this.m_count > 0) {
+            int position = entryPosition(this.m_count - 1);
+            Segment segment = this.m_segments.get(this.m_index.getInt(position + ENTRY_SEGMENT));
+            long end = (this.m_index.getInt(position + ENTRY_OFFSET) & 0xFFFFFFFFL)
+                    + this.m_index.getInt(position + ENTRY_LENGTH);
+            int id = this.m_index.getInt(position + ENTRY_ID);
+            int previousId = this.m_count > 1 ? getId(this.m_count - 2) : this.m_baseId - 1;
+            boolean valid = id > previousId && id < this.m_nextId
+                    && (isDeleted(position) || segment != null && segment.size >= end
+                            && isRecordValid(segment, position));
+            if (valid) {
+                break;
+            }
+            s_logger.warn("Discarding incomplete message log entry {}", this.m_count - 1);
+            this.m_count--;
+        }
+        this.m_index.putInt(HEADER_COUNT, this.m_count);
+
+        Map<Integer, Long> segmentEnds = new HashMap<Integer, Long>();
+        for (int slot = 0; slot < this.m_count; slot++) {
+            int position = entryPosition(slot);
+            int number = this.m_index.getInt(position + ENTRY_SEGMENT);
+            long end = (this.m_index.getInt(position + ENTRY_OFFSET) & 0xFFFFFFFFL)
+                    + this.m_index.getInt(position + ENTRY_LENGTH);
+            Long segmentEnd = segmentEnds.get(number);
+            if (segmentEnd == null || segmentEnd < end) {
+                segmentEnds.put(number, end);
+            }
+
+            if (isDeleted(position)) {
+                continue;
+            }
+            Segment segment = this.m_segments.get(number);
+            if (segment == null) {
+                s_logger.warn("Missing segment {}. Deleting message ID: {}", number,
+                        this.m_index.getInt(position + ENTRY_ID));
+                this.m_index.put(position + ENTRY_DELETED, (byte) 1);
+                continue;
+            }
+            if (!isRecordValid(segment, position)) {
+                s_logger.warn("Corrupted record in segment {}. Deleting message ID: {}", number,
+                        this.m_index.getInt(position + ENTRY_ID));
+                this.m_index.put(position + ENTRY_DELETED, (byte) 1);
+                continue;
+            }
+
+            this.m_liveCount++;
+            segment.liveCount++;
+            segment.liveBytes += this.m_index.getInt(position + ENTRY_LENGTH);
+            if (this.m_index.getLong(position + ENTRY_PUBLISHED_ON) == 0) {
+                this.m_unpublished.add(unpublishedKey(this.m_index.getInt(position + ENTRY_PRIORITY),
+                        this.m_index.getInt(position + ENTRY_ID)));
+            }
+        }
+
+        // Truncate records appended after the last indexed one
+        if (!this.m_segments.isEmpty()) {
+            Segment current = this.m_segments.lastEntry().getValue();
+            Long end = segmentEnds.get(current.number);
+            long validSize = end == null ? 0 : end;
+            if (current.size > validSize) {
+                s_logger.warn("Truncating segment {} to {} bytes", current.file, validSize);
+                getChannel(current).truncate(validSize);
+                current.size = validSize;
+            }
+        }
+
+        deleteEmptySegments();
+        s_logger.info("Opened the message log. Messages: {}, unpublished: {}, segments: {}",
+                new Object[] { this.m_liveCount, this.m_unpublished.size(), this.m_segments.size() });
+    }
+
+    private void closeChannel(Segment segment) {
+        if (segment.channel != null) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                s_logger.warn("Cannot close segment {}", segment.file, e);
+            }
+            segment.channel = null;
+        }
+    }
+
+    private void close() {
+        for (Segment segment : this.m_segments.values()) {
+            closeChannel(segment);
+        }
+        this.m_segments.clear();
+        this.m_unpublished.clear();
+        this.m_sessions.clear();
+        this.m_sessionIndexes.clear();
+        this.m_liveCount = 0;
+
+        try {
+            if (this.m_sessionsOut != null) {
+                this.m_sessionsOut.close();
+                this.m_sessionsOut = null;
+            }
+            if (this.m_indexChannel != null) {
+                this.m_index = null;
+                this.m_indexChannel.close();
+                this.m_indexChannel = null;
+            }
+        } catch (IOException e) {
+            s_logger.warn("Cannot close the message log", e);
+        }
+    }
+}
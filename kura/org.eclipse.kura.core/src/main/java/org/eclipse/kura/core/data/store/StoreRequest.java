@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+
+/**
+ * A message waiting to be stored by the {@link GroupCommitTask}.
+ * The thread calling {@link DbDataStore#store(String, byte[], int, boolean, int)} blocks in {@link #await()}
+ * until the group the message belongs to has been committed.
+ */
+class StoreRequest {
+
+    static final StoreRequest STOP = new StoreRequest(null, null, 0, false, 0);
+
+    private final String m_topic;
+    private final byte[] m_payload;
+    private final int m_qos;
+    private final boolean m_retain;
+    private final int m_priority;
+
+    private final CountDownLatch m_done = new CountDownLatch(1);
+    private DataMessage m_message;
+    private KuraStoreException m_error;
+
+    StoreRequest(String topic, byte[] payload, int qos, boolean retain, int priority) {
+        this.m_topic = topic;
+        this.m_payload = payload;
+        this.m_qos = qos;
+        this.m_retain = retain;
+        this.m_priority = priority;
+    }
+
+    String getTopic() {
+        return this.m_topic;
+    }
+
+    byte[] getPayload() {
+        return this.m_payload;
+    }
+
+    int getQos() {
+        return this.m_qos;
+    }
+
+    boolean isRetain() {
+        return this.m_retain;
+    }
+
+    int getPriority() {
+        return this.m_priority;
+    }
+
+    void complete(DataMessage message) {
+        if (isDone()) {
+            return;
+        }
+        this.m_message = message;
+        this.m_done.countDown();
+    }
+
+    void fail(KuraStoreException error) {
+        if (isDone()) {
+            return;
+        }
+        this.m_error = error;
+        this.m_done.countDown();
+    }
+
+    boolean isDone() {
+        return this.m_done.getCount() == 0;
+    }
+
+    /**
+     * Waits for the group of the message to be committed or to fail. An interruption does not abort the wait,
+     * since the message may be committed anyway: the interrupted status is restored on return.
+     */
+    DataMessage await() throws KuraStoreException {
+        boolean interrupted = false;
+        while (!isDone()) {
+            try {
+                this.m_done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.m_error != null) {
+            throw this.m_error;
+        }
+        return this.m_message;
+    }
+}
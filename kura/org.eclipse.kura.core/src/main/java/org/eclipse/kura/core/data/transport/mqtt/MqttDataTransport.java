@@ -90,6 +90,7 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
     private static final String CLOUD_ACCOUNT_NAME_PROP_NAME = "topic.context.account-name";
 
     private static final String PERSISTENCE_TYPE_PROP_NAME = "in-flight.persistence";
+    private static final String MAX_INFLIGHT_PROP_NAME = "in-flight.max-number";
 
     private static final String TOPIC_ACCOUNT_NAME_CTX_NAME = "account-name";
     private static final String TOPIC_DEVICE_ID_CTX_NAME = "client-id";
@@ -300,6 +301,7 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
         logger.info("#  keepAlive = " + this.clientConf.getConnectOptions().getKeepAliveInterval());
         logger.info("#  timeout   = " + this.clientConf.getConnectOptions().getConnectionTimeout());
         logger.info("#  cleanSession    = " + this.clientConf.getConnectOptions().isCleanSession());
+        logger.info("#  maxInflight     = " + this.clientConf.getConnectOptions().getMaxInflight());
         logger.info(
                 "#  MQTT version    = " + getMqttVersionLabel(this.clientConf.getConnectOptions().getMqttVersion()));
         logger.info("#  willDestination = " + this.clientConf.getConnectOptions().getWillDestination());
@@ -765,6 +767,14 @@ public class MqttDataTransport implements DataTransportService, MqttCallback, Co
 
             conOpt.setMqttVersion((Integer) properties.get(MQTT_DEFAULT_VERSION_PROP_NAME));
 
+            // The publish path never waits for the delivery so the number of messages in the pipe
+            // is only bounded by this limit
+            Integer maxInflight = (Integer) properties.get(MAX_INFLIGHT_PROP_NAME);
+            if (maxInflight != null) {
+                ValidationUtil.notNegative(maxInflight, MAX_INFLIGHT_PROP_NAME);
+                conOpt.setMaxInflight(maxInflight);
+            }
+
             synchronized (this.topicContext) {
                 this.topicContext.clear();
                 if (properties.get(CLOUD_ACCOUNT_NAME_PROP_NAME) != null) {
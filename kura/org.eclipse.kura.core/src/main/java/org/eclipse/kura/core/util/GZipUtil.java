@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -14,11 +14,26 @@ package org.eclipse.kura.core.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class GZipUtil {
 
+    // Same header written by java.util.zip.GZIPOutputStream
+    private static final byte[] GZIP_HEADER = { (byte) GZIPInputStream.GZIP_MAGIC,
+            (byte) (GZIPInputStream.GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final ThreadLocal<Compressor> compressors = new ThreadLocal<Compressor>() {
+
+        @Override
+        protected Compressor initialValue() {
+            return new Compressor();
+        }
+    };
+
     public static boolean isCompressed(byte[] bytes) throws IOException {
         if (bytes == null || bytes.length < 2) {
             return false;
@@ -28,25 +43,31 @@ public class GZipUtil {
         }
     }
 
+    /**
+     * Compresses the source in the gzip format, reusing a {@link Deflater} owned by the calling thread.
+     *
+     * @param source
+     *            the bytes to compress
+     * @return the gzip compressed bytes
+     * @throws IOException
+     */
     public static byte[] compress(byte[] source) throws IOException {
+        return compressors.get().compress(source, Integer.MAX_VALUE);
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        GZIPOutputStream gzipos = null;
-        try {
-            gzipos = new GZIPOutputStream(baos);
-            gzipos.write(source);
-        } catch (IOException e) {
-            throw e;
-        } finally {
-            if (gzipos != null) {
-                try {
-                    gzipos.close();
-                } catch (IOException e) {
-                    // Ignore
-                }
-            }
-        }
-        return baos.toByteArray();
+    /**
+     * Compresses the source in the gzip format, reusing a {@link Deflater} owned by the calling thread.
+     * The compression is abandoned as soon as the compressed data reaches maxLength bytes.
+     *
+     * @param source
+     *            the bytes to compress
+     * @param maxLength
+     *            the compressed data is returned only if shorter than this length
+     * @return the gzip compressed bytes, or null if they would not be shorter than maxLength
+     * @throws IOException
+     */
+    public static byte[] compress(byte[] source, int maxLength) throws IOException {
+        return compressors.get().compress(source, maxLength);
     }
 
     public static byte[] decompress(byte[] source) throws IOException {
@@ -83,4 +104,67 @@ public class GZipUtil {
 
         return baos.toByteArray();
     }
+
+    private static final class Compressor {
+
+        private static final int INITIAL_BUFFER_SIZE = 4096;
+        // Buffers grown beyond this size are not kept for the next message
+        private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        byte[] compress(byte[] source, int maxLength) {
+            // The deflated data must end before this offset to have a result shorter than maxLength.
+            // One more byte is given to the Deflater, since it cannot tell if the data is complete
+            // when the output space is exactly filled.
+            int limit = maxLength - GZIP_TRAILER_SIZE;
+            if (limit <= GZIP_HEADER.length) {
+                return null;
+            }
+
+            try {
+                System.arraycopy(GZIP_HEADER, 0, this.buffer, 0, GZIP_HEADER.length);
+                int length = GZIP_HEADER.length;
+
+                this.deflater.setInput(source);
+                this.deflater.finish();
+                while (!this.deflater.finished()) {
+                    if (length == limit) {
+                        return null;
+                    }
+                    if (length == this.buffer.length) {
+                        this.buffer = Arrays.copyOf(this.buffer, (int) Math.min(2L * this.buffer.length, limit));
+                    }
+                    length += this.deflater.deflate(this.buffer, length, Math.min(this.buffer.length, limit) - length);
+                }
+                if (length == limit) {
+                    return null;
+                }
+
+                this.crc.update(source);
+                if (length + GZIP_TRAILER_SIZE > this.buffer.length) {
+                    this.buffer = Arrays.copyOf(this.buffer, length + GZIP_TRAILER_SIZE);
+                }
+                writeInt((int) this.crc.getValue(), length);
+                writeInt(source.length, length + 4);
+                return Arrays.copyOf(this.buffer, length + GZIP_TRAILER_SIZE);
+            } finally {
+                this.deflater.reset();
+                this.crc.reset();
+                if (this.buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                    this.buffer = new byte[INITIAL_BUFFER_SIZE];
+                }
+            }
+        }
+
+        // Little endian, as required by the gzip trailer
+        private void writeInt(int value, int offset) {
+            this.buffer[offset] = (byte) value;
+            this.buffer[offset + 1] = (byte) (value >> 8);
+            this.buffer[offset + 2] = (byte) (value >> 16);
+            this.buffer[offset + 3] = (byte) (value >> 24);
+        }
+    }
 }
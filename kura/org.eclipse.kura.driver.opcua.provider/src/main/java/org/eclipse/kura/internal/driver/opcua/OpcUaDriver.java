@@ -50,15 +50,20 @@ import org.eclipse.kura.util.base.TypeUtil;
 import org.eclipse.milo.opcua.sdk.client.OpcUaClient;
 import org.eclipse.milo.opcua.sdk.client.api.config.OpcUaClientConfig;
 import org.eclipse.milo.opcua.sdk.client.api.config.OpcUaClientConfigBuilder;
-import org.eclipse.milo.opcua.sdk.client.api.nodes.VariableNode;
 import org.eclipse.milo.opcua.stack.client.UaTcpStackClient;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
 import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
 import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.WriteValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +75,11 @@ import io.netty.util.internal.StringUtil;
  * node. As of now, it doesn't support method execution or history read.
  * <br/>
  * <br/>
+ * The channels of a read or a write are transferred with a single Read or Write
+ * service request, split in several requests only if they exceed the maximum
+ * number of nodes per request advertised by the server in its operation limits.
+ * <br/>
+ * <br/>
  * This OPC-UA Driver can be used in cooperation with Kura Asset Model and in
  * isolation as well. In case of isolation, the properties needs to be provided
  * externally.
@@ -103,6 +113,12 @@ public final class OpcUaDriver implements Driver {
 
     private final AtomicBoolean isBusy = new AtomicBoolean();
 
+    /** The maximum number of nodes of a Read request accepted by the server, 0 if unlimited. */
+    private volatile int maxNodesPerRead;
+
+    /** The maximum number of nodes of a Write request accepted by the server, 0 if unlimited. */
+    private volatile int maxNodesPerWrite;
+
     private <U> U runSafe(final Future<U> future) throws ExecutionException, InterruptedException, TimeoutException {
         try {
             return future.get(this.options.getRequestTimeout(), TimeUnit.MILLISECONDS);
@@ -198,6 +214,7 @@ public final class OpcUaDriver implements Driver {
             logger.debug("Connecting...");
             newClient = new OpcUaClient(clientConfigBuilder.build());
             this.client = (OpcUaClient) runSafe(newClient.connect());
+            readOperationLimits();
 
             logger.info(message.connectingDone());
         } catch (final Exception e) {
@@ -241,6 +258,36 @@ public final class OpcUaDriver implements Driver {
         }
     }
 
+    private void readOperationLimits() {
+        this.maxNodesPerRead = 0;
+        this.maxNodesPerWrite = 0;
+        final List<ReadValueId> limits = Arrays.asList(
+                toReadValueId(Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead),
+                toReadValueId(Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerWrite));
+        try {
+            final DataValue[] results = runSafe(this.client.read(0.0, TimestampsToReturn.Neither, limits))
+                    .getResults();
+            this.maxNodesPerRead = extractLimit(results[0]);
+            this.maxNodesPerWrite = extractLimit(results[1]);
+        } catch (final Exception e) {
+            // the operation limits are optional
+            logger.debug("Cannot read the server operation limits", e);
+        }
+        logger.debug("Max nodes per read: {} Max nodes per write: {}", this.maxNodesPerRead, this.maxNodesPerWrite);
+    }
+
+    private static int extractLimit(final DataValue value) {
+        final Object limit = nonNull(value.getValue()) ? value.getValue().getValue() : null;
+        if (limit instanceof UInteger) {
+            return (int) Math.min(((UInteger) limit).longValue(), Integer.MAX_VALUE);
+        }
+        return 0;
+    }
+
+    private static ReadValueId toReadValueId(final NodeId nodeId) {
+        return new ReadValueId(nodeId, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+    }
+
     private void shutdownClient(final OpcUaClient client) throws ConnectionException {
         if (isNull(this.client)) {
             return;
@@ -312,19 +359,47 @@ public final class OpcUaDriver implements Driver {
         }
     }
 
-    private void runReadRequest(OpcUaRequestInfo requestInfo) {
-        ChannelRecord record = requestInfo.channelRecord;
-        final VariableNode node = this.client.getAddressSpace().createVariableNode(requestInfo.nodeId);
+    private void runReadRequests(final List<OpcUaRequestInfo> requestInfos, final List<ReadValueId> readValueIds) {
+        final int chunkSize = this.maxNodesPerRead > 0 ? this.maxNodesPerRead : Math.max(readValueIds.size(), 1);
+        for (int start = 0; start < readValueIds.size(); start += chunkSize) {
+            final int end = Math.min(start + chunkSize, readValueIds.size());
+            final List<OpcUaRequestInfo> chunk = requestInfos.subList(start, end);
+            final DataValue[] results;
+            try {
+                logger.debug("reading: {} nodes", chunk.size());
+                results = runSafe(this.client.read(0.0, TimestampsToReturn.Neither, readValueIds.subList(start, end)))
+                        .getResults();
+                requireNonNull(results, message.errorNullResult());
+                if (results.length != chunk.size()) {
+                    throw new IOException(message.readFailed());
+                }
+                logger.debug("Read Successful");
+            } catch (final Exception e) {
+                logger.warn(message.readFailed(), e);
+                for (final OpcUaRequestInfo requestInfo : chunk) {
+                    requestInfo.channelRecord
+                            .setChannelStatus(new ChannelStatus(ChannelFlag.FAILURE, message.readFailed(), e));
+                    requestInfo.channelRecord.setTimestamp(System.currentTimeMillis());
+                }
+                continue;
+            }
+            for (int i = 0; i < results.length; i++) {
+                setReadResult(chunk.get(i), results[i]);
+            }
+        }
+    }
+
+    private void setReadResult(final OpcUaRequestInfo requestInfo, final DataValue value) {
+        final ChannelRecord record = requestInfo.channelRecord;
         Object readResult = null;
         try {
-            logger.debug("reading:  namespace index: {} node id: {}", requestInfo.nodeNamespaceIndex,
-                    requestInfo.nodeId);
-            readResult = extractValue(runSafe(node.readValue()));
-            logger.debug("Read Successful");
+            checkStatus(value.getStatusCode());
+            readResult = extractValue(value);
         } catch (final Exception e) {
             record.setChannelStatus(new ChannelStatus(ChannelFlag.FAILURE, message.readFailed(), e));
             record.setTimestamp(System.currentTimeMillis());
-            logger.warn(message.readFailed(), e);
+            logger.warn("{} namespace index: {} node id: {}", message.readFailed(), requestInfo.nodeNamespaceIndex,
+                    requestInfo.nodeId, e);
             return;
         }
 
@@ -348,9 +423,19 @@ public final class OpcUaDriver implements Driver {
         if (isNull(this.client)) {
             this.connect();
         }
+        final List<OpcUaRequestInfo> requestInfos = new ArrayList<>();
         for (final ChannelRecord record : records) {
-            OpcUaRequestInfo.extract(record).ifPresent(this::runReadRequest);
+            OpcUaRequestInfo.extract(record).ifPresent(requestInfos::add);
         }
+        runReadRequests(requestInfos, toReadValueIds(requestInfos));
+    }
+
+    private static List<ReadValueId> toReadValueIds(final List<OpcUaRequestInfo> requestInfos) {
+        final List<ReadValueId> readValueIds = new ArrayList<>(requestInfos.size());
+        for (final OpcUaRequestInfo requestInfo : requestInfos) {
+            readValueIds.add(toReadValueId(requestInfo.nodeId));
+        }
+        return readValueIds;
     }
 
     /** {@inheritDoc} */
@@ -385,22 +470,48 @@ public final class OpcUaDriver implements Driver {
         logger.debug("Updating OPC-UA Driver... Done");
     }
 
-    private void runWriteRequest(OpcUaRequestInfo requestInfo) {
-        ChannelRecord record = requestInfo.channelRecord;
-        final TypedValue<?> value = record.getValue();
-        final VariableNode node = this.client.getAddressSpace().createVariableNode(requestInfo.nodeId);
-        final DataValue newValue = new DataValue(new Variant(value.getValue()));
-        try {
+    private void runWriteRequests(final List<OpcUaRequestInfo> requestInfos) {
+        final List<WriteValue> writeValues = new ArrayList<>(requestInfos.size());
+        for (final OpcUaRequestInfo requestInfo : requestInfos) {
+            final TypedValue<?> value = requestInfo.channelRecord.getValue();
             logger.debug("writing: {} namespace index: {} node id: {}..", value, requestInfo.nodeNamespaceIndex,
                     requestInfo.nodeId);
-            checkStatus(runSafe(node.writeValue(newValue)));
-            record.setChannelStatus(new ChannelStatus(SUCCESS));
-            logger.debug("Write Successful");
-        } catch (final Exception e) {
-            record.setChannelStatus(new ChannelStatus(FAILURE, message.writeFailed(), e));
-            logger.warn(message.writeFailed(), e);
+            writeValues.add(new WriteValue(requestInfo.nodeId, AttributeId.Value.uid(), null,
+                    new DataValue(new Variant(value.getValue()))));
+        }
+
+        final int chunkSize = this.maxNodesPerWrite > 0 ? this.maxNodesPerWrite : Math.max(writeValues.size(), 1);
+        for (int start = 0; start < writeValues.size(); start += chunkSize) {
+            final int end = Math.min(start + chunkSize, writeValues.size());
+            final List<OpcUaRequestInfo> chunk = requestInfos.subList(start, end);
+            final StatusCode[] results;
+            try {
+                results = runSafe(this.client.write(writeValues.subList(start, end))).getResults();
+                requireNonNull(results, message.errorNullResult());
+                if (results.length != chunk.size()) {
+                    throw new IOException(message.writeFailed());
+                }
+            } catch (final Exception e) {
+                logger.warn(message.writeFailed(), e);
+                for (final OpcUaRequestInfo requestInfo : chunk) {
+                    requestInfo.channelRecord.setChannelStatus(new ChannelStatus(FAILURE, message.writeFailed(), e));
+                    requestInfo.channelRecord.setTimestamp(System.currentTimeMillis());
+                }
+                continue;
+            }
+            for (int i = 0; i < results.length; i++) {
+                final ChannelRecord record = chunk.get(i).channelRecord;
+                try {
+                    checkStatus(results[i]);
+                    record.setChannelStatus(new ChannelStatus(SUCCESS));
+                    logger.debug("Write Successful");
+                } catch (final Exception e) {
+                    record.setChannelStatus(new ChannelStatus(FAILURE, message.writeFailed(), e));
+                    logger.warn(message.writeFailed(), e);
+                }
+                record.setTimestamp(System.currentTimeMillis());
+            }
         }
-        record.setTimestamp(System.currentTimeMillis());
     }
 
     /** {@inheritDoc} */
@@ -412,9 +523,11 @@ public final class OpcUaDriver implements Driver {
         if (this.client == null) {
             this.connect();
         }
+        final List<OpcUaRequestInfo> requestInfos = new ArrayList<>();
         for (final ChannelRecord record : records) {
-            OpcUaRequestInfo.extract(record).ifPresent(this::runWriteRequest);
+            OpcUaRequestInfo.extract(record).ifPresent(requestInfos::add);
         }
+        runWriteRequests(requestInfos);
     }
 
     private static class OpcUaRequestInfo {
@@ -485,12 +598,14 @@ public final class OpcUaDriver implements Driver {
         for (ChannelRecord record : channelRecords) {
             OpcUaRequestInfo.extract(record).ifPresent(preparedRead.requestInfos::add);
         }
+        preparedRead.readValueIds = toReadValueIds(preparedRead.requestInfos);
         return preparedRead;
     }
 
     private class OpcUaPreparedRead implements PreparedRead {
 
         private List<OpcUaRequestInfo> requestInfos = new ArrayList<>();
+        private List<ReadValueId> readValueIds;
         private volatile List<ChannelRecord> channelRecords;
 
         @Override
@@ -502,9 +617,7 @@ public final class OpcUaDriver implements Driver {
                 OpcUaDriver.this.connect();
             }
 
-            for (OpcUaRequestInfo requestInfo : requestInfos) {
-                OpcUaDriver.this.runReadRequest(requestInfo);
-            }
+            OpcUaDriver.this.runReadRequests(requestInfos, readValueIds);
 
             return Collections.unmodifiableList(channelRecords);
         }
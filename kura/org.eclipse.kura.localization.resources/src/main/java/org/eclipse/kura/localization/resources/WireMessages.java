@@ -145,6 +145,9 @@ public interface WireMessages {
     @En("Closing all statements...Done")
     public String closingStatementDone();
 
+    @En("Cloud Client not available, dropping the batch of {0} records for topic {1}")
+    public String cloudClientBatchDropped(int recordCount, String appTopic);
+
     @En("Cloud Client cannot be null")
     public String cloudClientNonNull();
 
@@ -699,4 +702,55 @@ public interface WireMessages {
 
     @En("Unexpected exception while dispatching envelope")
     public String fifoUnexpectedExceptionWhileDispatching();
+
+    @En("Queue capacity must be between {0} and {1}")
+    public String fifoInvalidQueueCapacity(int min, int max);
+
+    @En("Activating Time Series Wire Record Store...")
+    public String activatingTimeSeriesStore();
+
+    @En("Activating Time Series Wire Record Store...Done")
+    public String activatingTimeSeriesStoreDone();
+
+    @En("Updating Time Series Wire Record Store...")
+    public String updatingTimeSeriesStore();
+
+    @En("Updating Time Series Wire Record Store...Done")
+    public String updatingTimeSeriesStoreDone();
+
+    @En("Deactivating Time Series Wire Record Store...")
+    public String deactivatingTimeSeriesStore();
+
+    @En("Deactivating Time Series Wire Record Store...Done")
+    public String deactivatingTimeSeriesStoreDone();
+
+    @En("Activating Time Series Wire Record Filter...")
+    public String activatingTimeSeriesFilter();
+
+    @En("Activating Time Series Wire Record Filter...Done")
+    public String activatingTimeSeriesFilterDone();
+
+    @En("Updating Time Series Wire Record Filter...")
+    public String updatingTimeSeriesFilter();
+
+    @En("Updating Time Series Wire Record Filter...Done")
+    public String updatingTimeSeriesFilterDone();
+
+    @En("Deactivating Time Series Wire Record Filter...")
+    public String deactivatingTimeSeriesFilter();
+
+    @En("Deactivating Time Series Wire Record Filter...Done")
+    public String deactivatingTimeSeriesFilterDone();
+
+    @En("Error while writing the time series partitions...")
+    public String errorWritingTimeSeries();
+
+    @En("Error while reading the time series partitions...")
+    public String errorReadingTimeSeries();
+
+    @En("Dropped {0} expired time series partitions")
+    public String droppedTimeSeriesPartitions(int count);
+
+    @En("The storage directory {0} is used by another time series store, the records will not be stored")
+    public String errorTimeSeriesDirectoryInUse(String directory);
 }
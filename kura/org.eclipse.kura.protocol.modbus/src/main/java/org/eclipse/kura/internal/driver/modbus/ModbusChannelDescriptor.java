@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.configuration.metatype.Option;
+import org.eclipse.kura.core.configuration.metatype.Tad;
+import org.eclipse.kura.core.configuration.metatype.Toption;
+import org.eclipse.kura.core.configuration.metatype.Tscalar;
+import org.eclipse.kura.driver.ChannelDescriptor;
+import org.eclipse.kura.util.collection.CollectionUtil;
+
+/**
+ * Modbus specific channel descriptor. The descriptor contains the following
+ * attribute definition identifier.
+ *
+ * <ul>
+ * <li>unit.id</li> denotes the Modbus unit identifier of the device.
+ * <li>primary.table</li> denotes the table the channel belongs to, one of
+ * {@link ModbusTable}.
+ * <li>memory.address</li> denotes the address of the coil, input or first
+ * register, starting from 0.
+ * <li>value.type</li> denotes how a register value is stored, one of
+ * {@link ModbusValueType}, ignored for coils and discrete inputs.
+ * </ul>
+ */
+public final class ModbusChannelDescriptor implements ChannelDescriptor {
+
+    private static final String UNIT_ID = "unit.id";
+    private static final String PRIMARY_TABLE = "primary.table";
+    private static final String MEMORY_ADDRESS = "memory.address";
+    private static final String VALUE_TYPE = "value.type";
+
+    private static void addOptions(Tad target, Enum<?>[] values) {
+        final List<Option> options = target.getOption();
+        for (Enum<?> value : values) {
+            Toption option = new Toption();
+            option.setLabel(value.name());
+            option.setValue(value.name());
+            options.add(option);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object getDescriptor() {
+        final List<Tad> elements = CollectionUtil.newArrayList();
+
+        final Tad unitId = new Tad();
+        unitId.setName(UNIT_ID);
+        unitId.setId(UNIT_ID);
+        unitId.setDescription(UNIT_ID);
+        unitId.setType(Tscalar.INTEGER);
+        unitId.setRequired(true);
+        unitId.setDefault("1");
+        elements.add(unitId);
+
+        final Tad primaryTable = new Tad();
+        primaryTable.setName(PRIMARY_TABLE);
+        primaryTable.setId(PRIMARY_TABLE);
+        primaryTable.setDescription(PRIMARY_TABLE);
+        primaryTable.setType(Tscalar.STRING);
+        primaryTable.setRequired(true);
+        primaryTable.setDefault(ModbusTable.HOLDING_REGISTERS.name());
+
+        addOptions(primaryTable, ModbusTable.values());
+
+        elements.add(primaryTable);
+
+        final Tad address = new Tad();
+        address.setName(MEMORY_ADDRESS);
+        address.setId(MEMORY_ADDRESS);
+        address.setDescription(MEMORY_ADDRESS);
+        address.setType(Tscalar.INTEGER);
+        address.setRequired(true);
+        address.setDefault("0");
+        address.setMin("0");
+        address.setMax("65535");
+        elements.add(address);
+
+        final Tad valueType = new Tad();
+        valueType.setName(VALUE_TYPE);
+        valueType.setId(VALUE_TYPE);
+        valueType.setDescription(VALUE_TYPE);
+        valueType.setType(Tscalar.STRING);
+        valueType.setRequired(true);
+        valueType.setDefault(ModbusValueType.INT16.name());
+
+        addOptions(valueType, ModbusValueType.values());
+
+        elements.add(valueType);
+        return elements;
+    }
+
+    static int getUnitId(Map<String, Object> properties) {
+        final int unitId = Integer.parseInt(String.valueOf(properties.get(UNIT_ID)).trim());
+        if (unitId < 0 || unitId > 255) {
+            throw new IllegalArgumentException();
+        }
+        return unitId;
+    }
+
+    static ModbusTable getPrimaryTable(Map<String, Object> properties) {
+        return ModbusTable.valueOf(String.valueOf(properties.get(PRIMARY_TABLE)).trim());
+    }
+
+    static int getMemoryAddress(Map<String, Object> properties) {
+        final int address = Integer.parseInt(String.valueOf(properties.get(MEMORY_ADDRESS)).trim());
+        if (address < 0 || address > 0xFFFF) {
+            throw new IllegalArgumentException();
+        }
+        return address;
+    }
+
+    static ModbusValueType getValueType(Map<String, Object> properties) {
+        final Object valueType = properties.get(VALUE_TYPE);
+        if (valueType == null) {
+            return ModbusValueType.INT16;
+        }
+        return ModbusValueType.valueOf(String.valueOf(valueType).trim());
+    }
+}
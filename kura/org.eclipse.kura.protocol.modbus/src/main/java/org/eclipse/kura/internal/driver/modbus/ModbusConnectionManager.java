@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.kura.KuraConnectionStatus;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolErrorCode;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolException;
+import org.eclipse.kura.usb.UsbService;
+import org.osgi.service.io.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class {@link ModbusConnectionManager} keeps one {@link ModbusEndpoint} per endpoint key, so
+ * that the drivers of the assets behind the same Modbus TCP gateway or on the same serial bus share a
+ * single connection instead of competing for it. The endpoints are reference counted: the connection
+ * is opened by the first driver acquiring it and closed when the last driver releases it.
+ */
+final class ModbusConnectionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusConnectionManager.class);
+
+    /**
+     * The endpoints by key, completed once connected. The connections are opened outside the lock, so
+     * that connecting to an unreachable endpoint does not hold the drivers of the other endpoints.
+     * Guarded by this.
+     */
+    private final Map<String, CompletableFuture<ModbusEndpoint>> endpoints = new HashMap<>();
+
+    /**
+     * Returns the endpoint having the provided key, connecting to it if it is not open yet.
+     *
+     * @param key
+     *            the endpoint key
+     * @param connectionConfig
+     *            the connection configuration, used only if the endpoint is not open yet
+     * @param connectionFactory
+     *            the connection factory
+     * @param usbService
+     *            the USB service
+     * @return the endpoint, to be released by {@link #release(ModbusEndpoint)}
+     * @throws ModbusProtocolException
+     *             if the connection fails
+     */
+    ModbusEndpoint acquire(final String key, final Properties connectionConfig,
+            final ConnectionFactory connectionFactory, final UsbService usbService) throws ModbusProtocolException {
+        while (true) {
+            CompletableFuture<ModbusEndpoint> future;
+            boolean connecting = false;
+            synchronized (this) {
+                future = this.endpoints.get(key);
+                if (isNull(future)) {
+                    future = new CompletableFuture<>();
+                    this.endpoints.put(key, future);
+                    connecting = true;
+                }
+            }
+            if (connecting) {
+                connect(key, connectionConfig, connectionFactory, usbService, future);
+            }
+
+            final ModbusEndpoint endpoint = await(key, future);
+            synchronized (this) {
+                // the endpoint may have been released by all its drivers in the meantime
+                if (this.endpoints.get(key) == future) {
+                    endpoint.retain();
+                    return endpoint;
+                }
+            }
+        }
+    }
+
+    private void connect(final String key, final Properties connectionConfig,
+            final ConnectionFactory connectionFactory, final UsbService usbService,
+            final CompletableFuture<ModbusEndpoint> future) {
+        try {
+            final ModbusProtocolDevice device = new ModbusProtocolDevice();
+            device.setConnectionFactory(connectionFactory);
+            device.setUsbService(usbService);
+            device.configureConnection(connectionConfig);
+            device.connect();
+            if (device.getConnectStatus() != KuraConnectionStatus.CONNECTED) {
+                try {
+                    device.disconnect();
+                } catch (final ModbusProtocolException e) {
+                    logger.debug("Error while disconnecting", e);
+                }
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.CONNECTION_FAILURE, key);
+            }
+            future.complete(new ModbusEndpoint(key, device));
+            logger.info("Modbus endpoint {} connected", key);
+        } catch (final ModbusProtocolException | RuntimeException e) {
+            // the next driver acquiring the endpoint tries to connect again
+            synchronized (this) {
+                this.endpoints.remove(key, future);
+            }
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static ModbusEndpoint await(final String key, final CompletableFuture<ModbusEndpoint> future)
+            throws ModbusProtocolException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.CONNECTION_FAILURE, e, key);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ModbusProtocolException) {
+                throw (ModbusProtocolException) cause;
+            }
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.CONNECTION_FAILURE, cause, key);
+        }
+    }
+
+    /**
+     * Releases an endpoint, closing it if no other driver uses it.
+     *
+     * @param endpoint
+     *            the endpoint returned by
+     *            {@link #acquire(String, Properties, ConnectionFactory, UsbService)}
+     */
+    synchronized void release(final ModbusEndpoint endpoint) {
+        if (endpoint.release() > 0) {
+            return;
+        }
+        final CompletableFuture<ModbusEndpoint> future = this.endpoints.get(endpoint.getKey());
+        if (nonNull(future) && future.getNow(null) == endpoint) {
+            this.endpoints.remove(endpoint.getKey());
+        }
+        endpoint.close();
+        logger.info("Modbus endpoint {} disconnected", endpoint.getKey());
+    }
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static org.eclipse.kura.KuraErrorCode.OPERATION_NOT_SUPPORTED;
+import static org.eclipse.kura.channel.ChannelFlag.SUCCESS;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.kura.KuraRuntimeException;
+import org.eclipse.kura.channel.ChannelRecord;
+import org.eclipse.kura.channel.ChannelStatus;
+import org.eclipse.kura.channel.listener.ChannelListener;
+import org.eclipse.kura.driver.ChannelDescriptor;
+import org.eclipse.kura.driver.Driver;
+import org.eclipse.kura.driver.PreparedRead;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolErrorCode;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolException;
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.usb.UsbService;
+import org.osgi.service.io.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class {@link ModbusDriver} is a Modbus Driver implementation for Kura Asset-Driver
+ * Topology, on top of the {@link ModbusProtocolDevice}. It supports reading and writing
+ * coils and registers, and reading discrete inputs.
+ * <br/>
+ * <br/>
+ * Read requests are optimized by grouping the channels by unit identifier and table, and merging
+ * the channels with adjacent or close addresses into a single request of up to 125 registers or
+ * 2000 coils, whose response is then sliced back into the channel records. The grouping is
+ * computed once by {@link #prepareRead(List)}. When the device refuses a merged request, for example
+ * with an illegal data address exception for an address between two channels, the channels of the
+ * request are read again one by one, as are those of the following reads, until the driver is
+ * updated. On Modbus TCP connections with a pipeline window greater than 1, the requests of a read
+ * are sent without waiting for the previous responses.
+ * <br/>
+ * <br/>
+ * The drivers configured with the same endpoint, the same Modbus TCP gateway or the same serial port
+ * and settings, share the connection through a {@link ModbusConnectionManager}. Their requests are
+ * scheduled fairly, the requests of the units having a higher priority in {@code unit.priorities}
+ * being sent first.
+ * <br/>
+ * <br/>
+ * The required properties are enlisted in {@link ModbusChannelDescriptor} and
+ * the driver connection specific properties are enlisted in
+ * {@link ModbusDriverOptions}
+ *
+ * @see Driver
+ * @see ModbusDriverOptions
+ * @see ModbusChannelDescriptor
+ */
+public final class ModbusDriver implements Driver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusDriver.class);
+
+    private static final ModbusConnectionManager connectionManager = new ModbusConnectionManager();
+
+    private volatile ConnectionFactory connectionFactory;
+
+    private volatile UsbService usbService;
+
+    private ModbusDriverOptions options;
+
+    private Map<Integer, Integer> unitPriorities = Collections.emptyMap();
+
+    /** The shared connection, null if not connected. Guarded by this. */
+    private ModbusEndpoint endpoint;
+
+    /** The coalesced blocks whose channels are read one by one. Guarded by this. */
+    private final Set<ModbusReadBlock> splitBlocks = new HashSet<>();
+
+    /**
+     * Binds the Connection Factory.
+     *
+     * @param connectionFactory
+     *            the new Connection Factory
+     */
+    protected void bindConnectionFactory(final ConnectionFactory connectionFactory) {
+        if (isNull(this.connectionFactory)) {
+            this.connectionFactory = connectionFactory;
+        }
+    }
+
+    /**
+     * Unbinds the Connection Factory.
+     *
+     * @param connectionFactory
+     *            the Connection Factory
+     */
+    protected void unbindConnectionFactory(final ConnectionFactory connectionFactory) {
+        if (this.connectionFactory == connectionFactory) {
+            this.connectionFactory = null;
+        }
+    }
+
+    /**
+     * Binds the USB Service.
+     *
+     * @param usbService
+     *            the new USB Service
+     */
+    protected void bindUsbService(final UsbService usbService) {
+        if (isNull(this.usbService)) {
+            this.usbService = usbService;
+        }
+    }
+
+    /**
+     * Unbinds the USB Service.
+     *
+     * @param usbService
+     *            the USB Service
+     */
+    protected void unbindUsbService(final UsbService usbService) {
+        if (this.usbService == usbService) {
+            this.usbService = null;
+        }
+    }
+
+    /**
+     * OSGi service component callback while activation.
+     *
+     * @param properties
+     *            the service properties
+     */
+    protected synchronized void activate(final Map<String, Object> properties) {
+        logger.debug("Activating Modbus Driver...");
+        this.options = new ModbusDriverOptions(properties);
+        this.unitPriorities = getUnitPriorities(this.options);
+        logger.debug("Activating Modbus Driver... Done");
+    }
+
+    /**
+     * OSGi service component callback while updating.
+     *
+     * @param properties
+     *            the properties
+     */
+    public synchronized void updated(final Map<String, Object> properties) {
+        logger.debug("Updating Modbus Driver...");
+        disconnectQuietly();
+        this.options = new ModbusDriverOptions(properties);
+        this.unitPriorities = getUnitPriorities(this.options);
+        this.splitBlocks.clear();
+        logger.debug("Updating Modbus Driver... Done");
+    }
+
+    /**
+     * OSGi service component callback while deactivation.
+     */
+    protected synchronized void deactivate() {
+        logger.debug("Deactivating Modbus Driver...");
+        disconnectQuietly();
+        logger.debug("Deactivating Modbus Driver... Done");
+    }
+
+    private static Map<Integer, Integer> getUnitPriorities(final ModbusDriverOptions options) {
+        try {
+            return options.getUnitPriorities();
+        } catch (final IllegalArgumentException e) {
+            logger.error("Invalid unit priorities, using the default priority for all the units", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void connect() throws ConnectionException {
+        if (nonNull(this.endpoint)) {
+            return;
+        }
+        try {
+            this.endpoint = connectionManager.acquire(this.options.getEndpointKey(),
+                    this.options.getConnectionConfig(), this.connectionFactory, this.usbService);
+        } catch (final ModbusProtocolException e) {
+            throw new ConnectionException("Cannot connect to the Modbus device", e);
+        }
+        logger.info("Modbus Driver connected");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void disconnect() throws ConnectionException {
+        if (isNull(this.endpoint)) {
+            return;
+        }
+        try {
+            connectionManager.release(this.endpoint);
+            logger.info("Modbus Driver disconnected");
+        } finally {
+            this.endpoint = null;
+        }
+    }
+
+    private void disconnectQuietly() {
+        try {
+            disconnect();
+        } catch (final ConnectionException e) {
+            logger.error("Error while disconnecting", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ChannelDescriptor getChannelDescriptor() {
+        return new ModbusChannelDescriptor();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void read(final List<ChannelRecord> records) throws ConnectionException {
+        requireNonNull(records, "Channel record list cannot be null");
+        runReadBlocks(planReads(records));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PreparedRead prepareRead(final List<ChannelRecord> records) {
+        requireNonNull(records, "Channel record list cannot be null");
+        return new ModbusPreparedRead(records, planReads(records));
+    }
+
+    private synchronized List<ModbusReadBlock> planReads(final List<ChannelRecord> records) {
+        final List<ModbusRequestInfo> requestInfos = new ArrayList<>();
+        for (final ChannelRecord record : records) {
+            ModbusRequestInfo.extract(record).ifPresent(requestInfos::add);
+        }
+        return ModbusReadBlock.coalesce(requestInfos, this.options.getReadGapTolerance(),
+                this.options.getReadMaxRegisters(), this.options.getReadMaxCoils());
+    }
+
+    private synchronized void runReadBlocks(final List<ModbusReadBlock> blocks) throws ConnectionException {
+        if (blocks.isEmpty()) {
+            return;
+        }
+        connect();
+        List<ModbusReadBlock> reads = new ArrayList<>(blocks.size());
+        for (final ModbusReadBlock block : blocks) {
+            if (this.splitBlocks.contains(block)) {
+                reads.addAll(block.split());
+            } else {
+                reads.add(block);
+            }
+        }
+        while (!reads.isEmpty()) {
+            // the channels of the blocks refused by the device are read again one by one
+            final List<ModbusReadBlock> refusedBlocks = runReads(reads);
+            reads = new ArrayList<>();
+            for (final ModbusReadBlock block : refusedBlocks) {
+                logger.info("Reading the channels of unit id: {} table: {} address: {} count: {} one by one",
+                        block.getUnitId(), block.getTable(), block.getStartAddress(), block.getCount());
+                this.splitBlocks.add(block);
+                reads.addAll(block.split());
+            }
+        }
+    }
+
+    /**
+     * Reads the provided blocks, failing the channels of the blocks which cannot be read.
+     *
+     * @return the blocks of several channels the device has refused, whose channels have not been
+     *         completed
+     */
+    private List<ModbusReadBlock> runReads(final List<ModbusReadBlock> blocks) throws ConnectionException {
+        // with a pipelined connection all the requests are in flight before the first response is awaited
+        final List<CompletableFuture<?>> responses = new ArrayList<>(blocks.size());
+        for (final ModbusReadBlock block : blocks) {
+            responses.add(startReadBlock(block));
+        }
+        final List<ModbusReadBlock> refusedBlocks = new ArrayList<>();
+        ConnectionException connectionException = null;
+        for (int i = 0; i < blocks.size(); i++) {
+            try {
+                if (!completeReadBlock(blocks.get(i), responses.get(i))) {
+                    refusedBlocks.add(blocks.get(i));
+                }
+            } catch (final ConnectionException e) {
+                connectionException = e;
+            }
+        }
+        if (nonNull(connectionException)) {
+            throw connectionException;
+        }
+        return refusedBlocks;
+    }
+
+    private CompletableFuture<?> startReadBlock(final ModbusReadBlock block) {
+        final int unitId = block.getUnitId();
+        final int start = block.getStartAddress();
+        final int count = block.getCount();
+        logger.debug("reading: unit id: {} table: {} address: {} count: {}", unitId, block.getTable(), start, count);
+        switch (block.getTable()) {
+        case COILS:
+            return submit(unitId, device -> device.readCoilsAsync(unitId, start, count));
+        case DISCRETE_INPUTS:
+            return submit(unitId, device -> device.readDiscreteInputsAsync(unitId, start, count));
+        case INPUT_REGISTERS:
+            return submit(unitId, device -> device.readInputRegistersAsync(unitId, start, count));
+        default:
+            return submit(unitId, device -> device.readHoldingRegistersAsync(unitId, start, count));
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(final int unitId, final ModbusEndpoint.Operation<T> operation) {
+        final Integer priority = this.unitPriorities.get(unitId);
+        return this.endpoint.submit(this, isNull(priority) ? 0 : priority, operation);
+    }
+
+    /**
+     * Completes the channels of a block with the response of the device.
+     *
+     * @return false if the block holds several channels and the device has refused it, for example
+     *         because the gap between two channels is not readable, in which case its channels are
+     *         not completed
+     */
+    private boolean completeReadBlock(final ModbusReadBlock block, final CompletableFuture<?> response)
+            throws ConnectionException {
+        final Object values;
+        try {
+            values = response.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failReadBlock(block, e);
+            return true;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ModbusProtocolException && block.getRequestInfos().size() > 1
+                    && ((ModbusProtocolException) cause).getCode() == ModbusProtocolErrorCode.TRANSACTION_FAILURE) {
+                logger.warn("Read of several channels failed", cause);
+                return false;
+            }
+            logger.warn("Read failed", cause);
+            failReadBlock(block, cause instanceof Exception ? (Exception) cause : e);
+            if (cause instanceof ModbusProtocolException) {
+                checkConnection((ModbusProtocolException) cause);
+            }
+            return true;
+        }
+        final boolean[] bits = values instanceof boolean[] ? (boolean[]) values : null;
+        final int[] registers = values instanceof int[] ? (int[]) values : null;
+        final int start = block.getStartAddress();
+
+        final long timestamp = System.currentTimeMillis();
+        for (final ModbusRequestInfo requestInfo : block.getRequestInfos()) {
+            final ChannelRecord record = requestInfo.getChannelRecord();
+            final int offset = requestInfo.getAddress() - start;
+            final Optional<TypedValue<?>> typedValue;
+            if (nonNull(bits)) {
+                typedValue = getTypedValue(record.getValueType(), bits[offset],
+                        new byte[] { (byte) (bits[offset] ? 1 : 0) });
+            } else {
+                final ModbusValueType valueType = requestInfo.getValueType();
+                final ByteBuffer raw = ByteBuffer.allocate(valueType.getRegisterCount() * 2);
+                for (int i = 0; i < valueType.getRegisterCount(); i++) {
+                    raw.putShort((short) registers[offset + i]);
+                }
+                typedValue = getTypedValue(record.getValueType(), valueType.decode(registers, offset), raw.array());
+            }
+            if (typedValue.isPresent()) {
+                record.setValue(typedValue.get());
+                record.setChannelStatus(new ChannelStatus(SUCCESS));
+                record.setTimestamp(timestamp);
+            } else {
+                ModbusRequestInfo.fail(record, "Error while converting the read value", null);
+            }
+        }
+        return true;
+    }
+
+    private static void failReadBlock(final ModbusReadBlock block, final Exception exception) {
+        for (final ModbusRequestInfo requestInfo : block.getRequestInfos()) {
+            ModbusRequestInfo.fail(requestInfo.getChannelRecord(), "Read failed", exception);
+        }
+    }
+
+    private void checkConnection(final ModbusProtocolException e) throws ConnectionException {
+        if (e.getCode() == ModbusProtocolErrorCode.NOT_CONNECTED
+                || e.getCode() == ModbusProtocolErrorCode.CONNECTION_FAILURE) {
+            disconnectQuietly();
+            throw new ConnectionException(e);
+        }
+    }
+
+    private static Optional<TypedValue<?>> getTypedValue(final DataType expectedValueType, final Object value,
+            final byte[] raw) {
+        final Number number = value instanceof Boolean ? (Integer) ((Boolean) value ? 1 : 0) : (Number) value;
+        switch (expectedValueType) {
+        case LONG:
+            return Optional.of(TypedValues.newLongValue(number.longValue()));
+        case FLOAT:
+            return Optional.of(TypedValues.newFloatValue(number.floatValue()));
+        case DOUBLE:
+            return Optional.of(TypedValues.newDoubleValue(number.doubleValue()));
+        case INTEGER:
+            return Optional.of(TypedValues.newIntegerValue(number.intValue()));
+        case BOOLEAN:
+            return Optional.of(TypedValues.newBooleanValue(number.doubleValue() != 0));
+        case STRING:
+            return Optional.of(TypedValues.newStringValue(value.toString()));
+        case BYTE_ARRAY:
+            return Optional.of(TypedValues.newByteArrayValue(raw));
+        default:
+            return Optional.empty();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void write(final List<ChannelRecord> records) throws ConnectionException {
+        requireNonNull(records, "Channel record list cannot be null");
+        connect();
+        for (final ChannelRecord record : records) {
+            final Optional<ModbusRequestInfo> requestInfo = ModbusRequestInfo.extract(record);
+            if (requestInfo.isPresent()) {
+                runWriteRequest(requestInfo.get());
+            }
+        }
+    }
+
+    private void runWriteRequest(final ModbusRequestInfo requestInfo) throws ConnectionException {
+        final ChannelRecord record = requestInfo.getChannelRecord();
+        if (!requestInfo.getTable().isWritable()) {
+            ModbusRequestInfo.fail(record, "The table of the channel cannot be written", null);
+            return;
+        }
+        final Number value;
+        try {
+            value = toNumber(record.getValue());
+        } catch (final RuntimeException e) {
+            ModbusRequestInfo.fail(record, "Error while converting the value to write", e);
+            return;
+        }
+
+        final int unitId = requestInfo.getUnitId();
+        final int address = requestInfo.getAddress();
+        logger.debug("writing: {} unit id: {} table: {} address: {}", value, unitId, requestInfo.getTable(), address);
+        final CompletableFuture<Void> response = submit(unitId, device -> {
+            if (requestInfo.getTable() == ModbusTable.COILS) {
+                device.writeSingleCoil(unitId, address, value.doubleValue() != 0);
+            } else {
+                final int[] registers = requestInfo.getValueType().encode(value);
+                if (registers.length == 1) {
+                    device.writeSingleRegister(unitId, address, registers[0]);
+                } else {
+                    device.writeMultipleRegister(unitId, address, registers);
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        try {
+            response.get();
+            record.setChannelStatus(new ChannelStatus(SUCCESS));
+            record.setTimestamp(System.currentTimeMillis());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ModbusRequestInfo.fail(record, "Write failed", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            logger.warn("Write failed", cause);
+            ModbusRequestInfo.fail(record, "Write failed", cause instanceof Exception ? (Exception) cause : e);
+            if (cause instanceof ModbusProtocolException) {
+                checkConnection((ModbusProtocolException) cause);
+            }
+        }
+    }
+
+    private static Number toNumber(final TypedValue<?> typedValue) {
+        final Object value = typedValue.getValue();
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        } else if (value instanceof String) {
+            final String string = ((String) value).trim();
+            try {
+                return Long.parseLong(string);
+            } catch (final NumberFormatException e) {
+                return Double.parseDouble(string);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported value type");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void registerChannelListener(final Map<String, Object> channelConfig, final ChannelListener listener)
+            throws ConnectionException {
+        throw new KuraRuntimeException(OPERATION_NOT_SUPPORTED);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void unregisterChannelListener(final ChannelListener listener) throws ConnectionException {
+        throw new KuraRuntimeException(OPERATION_NOT_SUPPORTED);
+    }
+
+    private class ModbusPreparedRead implements PreparedRead {
+
+        private final List<ChannelRecord> channelRecords;
+        private final List<ModbusReadBlock> blocks;
+
+        ModbusPreparedRead(final List<ChannelRecord> channelRecords, final List<ModbusReadBlock> blocks) {
+            this.channelRecords = channelRecords;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public synchronized List<ChannelRecord> execute() throws ConnectionException {
+            ModbusDriver.this.runReadBlocks(this.blocks);
+            return Collections.unmodifiableList(this.channelRecords);
+        }
+
+        @Override
+        public List<ChannelRecord> getChannelRecords() {
+            return Collections.unmodifiableList(this.channelRecords);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, the connection belongs to the driver
+        }
+    }
+}
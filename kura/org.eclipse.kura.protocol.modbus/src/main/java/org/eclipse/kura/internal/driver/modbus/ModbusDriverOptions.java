@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.protocol.modbus.ModbusTransmissionMode;
+
+/**
+ * The Class {@link ModbusDriverOptions} is responsible to provide all the required
+ * configurable options for the Modbus Driver.<br/>
+ * <br/>
+ *
+ * The different properties to configure a Modbus Driver are as follows:
+ * <ul>
+ * <li>connection.type</li> must be one of these : TCP/IP, TCP-RTU, RS232
+ * <li>ip.address</li>
+ * <li>ip.port</li>
+ * <li>serial.port</li>
+ * <li>serial.baudrate</li>
+ * <li>serial.databits</li>
+ * <li>serial.stopbits</li>
+ * <li>serial.parity</li>
+ * <li>transmission.mode</li> must be one of these : RTU, ASCII
+ * <li>response.timeout</li>
+ * <li>read.gap.tolerance</li>
+ * <li>read.max.registers</li>
+ * <li>read.max.coils</li>
+ * <li>pipeline.window</li>
+ * <li>unit.priorities</li> comma separated list of unit.id:priority pairs
+ * </ul>
+ */
+final class ModbusDriverOptions {
+
+    /** The maximum number of registers of a read request allowed by the Modbus specification. */
+    static final int MAX_READ_REGISTERS = 125;
+
+    /** The maximum number of coils or discrete inputs of a read request allowed by the Modbus specification. */
+    static final int MAX_READ_COILS = 2000;
+
+    private static final String CONNECTION_TYPE = "connection.type";
+    private static final String IP_ADDRESS = "ip.address";
+    private static final String IP_PORT = "ip.port";
+    private static final String SERIAL_PORT = "serial.port";
+    private static final String SERIAL_BAUDRATE = "serial.baudrate";
+    private static final String SERIAL_DATABITS = "serial.databits";
+    private static final String SERIAL_STOPBITS = "serial.stopbits";
+    private static final String SERIAL_PARITY = "serial.parity";
+    private static final String TRANSMISSION_MODE = "transmission.mode";
+    private static final String RESPONSE_TIMEOUT = "response.timeout";
+    private static final String READ_GAP_TOLERANCE = "read.gap.tolerance";
+    private static final String READ_MAX_REGISTERS = "read.max.registers";
+    private static final String READ_MAX_COILS = "read.max.coils";
+    private static final String PIPELINE_WINDOW = "pipeline.window";
+    private static final String UNIT_PRIORITIES = "unit.priorities";
+
+    private final Map<String, Object> properties;
+
+    /**
+     * Instantiates a new Modbus options.
+     *
+     * @param properties
+     *            the properties
+     * @throws NullPointerException
+     *             if the provided properties are null
+     */
+    ModbusDriverOptions(final Map<String, Object> properties) {
+        requireNonNull(properties, "Properties cannot be null");
+        this.properties = properties;
+    }
+
+    private String getString(final String key, final String defaultValue) {
+        final Object value = this.properties.get(key);
+        if (nonNull(value) && value instanceof String && !((String) value).trim().isEmpty()) {
+            return ((String) value).trim();
+        }
+        return defaultValue;
+    }
+
+    private int getInteger(final String key, final int defaultValue) {
+        final Object value = this.properties.get(key);
+        if (nonNull(value) && value instanceof Integer) {
+            return (Integer) value;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the connection configuration expected by
+     * {@link ModbusProtocolDevice#configureConnection(Properties)}.
+     *
+     * @return the connection configuration
+     */
+    Properties getConnectionConfig() {
+        final Properties connectionConfig = new Properties();
+        final String connectionType = getString(CONNECTION_TYPE,
+                ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_ETHER_TCP);
+        connectionConfig.setProperty("connectionType", connectionType);
+        if (ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_SERIAL.equals(connectionType)) {
+            connectionConfig.setProperty("port", getString(SERIAL_PORT, "/dev/ttyUSB0"));
+            connectionConfig.setProperty("baudRate", Integer.toString(getInteger(SERIAL_BAUDRATE, 9600)));
+            connectionConfig.setProperty("bitsPerWord", Integer.toString(getInteger(SERIAL_DATABITS, 8)));
+            connectionConfig.setProperty("stopBits", Integer.toString(getInteger(SERIAL_STOPBITS, 1)));
+            connectionConfig.setProperty("parity", Integer.toString(getInteger(SERIAL_PARITY, 0)));
+        } else {
+            connectionConfig.setProperty("ipAddress", getString(IP_ADDRESS, "127.0.0.1"));
+            connectionConfig.setProperty("ethport", Integer.toString(getInteger(IP_PORT, 502)));
+            connectionConfig.setProperty("pipelineWindow", Integer.toString(getPipelineWindow()));
+        }
+        connectionConfig.setProperty("transmissionMode", getString(TRANSMISSION_MODE, ModbusTransmissionMode.RTU));
+        connectionConfig.setProperty("respTimeout", Integer.toString(getInteger(RESPONSE_TIMEOUT, 1000)));
+        return connectionConfig;
+    }
+
+    /**
+     * Returns the maximum number of unused coils, inputs or registers read between two channels to
+     * read them with a single request.
+     *
+     * @return the gap tolerance
+     */
+    int getReadGapTolerance() {
+        return Math.max(getInteger(READ_GAP_TOLERANCE, 0), 0);
+    }
+
+    /**
+     * Returns the maximum number of registers read by a request.
+     *
+     * @return the maximum number of registers
+     */
+    int getReadMaxRegisters() {
+        return Math.min(Math.max(getInteger(READ_MAX_REGISTERS, MAX_READ_REGISTERS), 1), MAX_READ_REGISTERS);
+    }
+
+    /**
+     * Returns the maximum number of coils or discrete inputs read by a request.
+     *
+     * @return the maximum number of coils or discrete inputs
+     */
+    int getReadMaxCoils() {
+        return Math.min(Math.max(getInteger(READ_MAX_COILS, MAX_READ_COILS), 1), MAX_READ_COILS);
+    }
+
+    /**
+     * Returns the maximum number of Modbus TCP requests in flight on the connection, 1 to wait for each
+     * response before sending the next request.
+     *
+     * @return the pipeline window
+     */
+    int getPipelineWindow() {
+        return Math.max(getInteger(PIPELINE_WINDOW, 1), 1);
+    }
+
+    /**
+     * Returns the key identifying the endpoint of the connection: the drivers configured with the same
+     * key share the connection. The response timeout and the pipeline window are not part of the
+     * key, the connection being configured by the first driver connecting.
+     *
+     * @return the endpoint key
+     */
+    String getEndpointKey() {
+        final Properties connectionConfig = getConnectionConfig();
+        final String connectionType = connectionConfig.getProperty("connectionType");
+        final String transmissionMode = connectionConfig.getProperty("transmissionMode");
+        if (ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_SERIAL.equals(connectionType)) {
+            return connectionType + "://" + connectionConfig.getProperty("port") + "?baudRate="
+                    + connectionConfig.getProperty("baudRate") + "&bitsPerWord="
+                    + connectionConfig.getProperty("bitsPerWord") + "&stopBits="
+                    + connectionConfig.getProperty("stopBits") + "&parity=" + connectionConfig.getProperty("parity")
+                    + "&transmissionMode=" + transmissionMode;
+        }
+        return connectionType + "://" + connectionConfig.getProperty("ipAddress") + ":"
+                + connectionConfig.getProperty("ethport") + "?transmissionMode=" + transmissionMode;
+    }
+
+    /**
+     * Returns the priorities of the requests by unit identifier, parsed from a comma separated list of
+     * {@code unit.id:priority} pairs. The requests of the units not listed have priority 0, the higher
+     * priority requests being sent first on a shared connection.
+     *
+     * @return the priorities by unit identifier
+     * @throws IllegalArgumentException
+     *             if the list is malformed
+     */
+    Map<Integer, Integer> getUnitPriorities() {
+        final String value = getString(UNIT_PRIORITIES, null);
+        if (value == null) {
+            return Collections.emptyMap();
+        }
+        final Map<Integer, Integer> priorities = new HashMap<>();
+        for (final String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            final String[] pair = entry.split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid unit priority: " + entry.trim());
+            }
+            priorities.put(Integer.parseInt(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+        }
+        return priorities;
+    }
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolErrorCode;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class {@link ModbusEndpoint} is a connection to a Modbus endpoint, a TCP gateway or a serial
+ * bus, shared by all the drivers talking to the same endpoint.
+ * <br/>
+ * <br/>
+ * The requests of every client are queued by priority and run in order by a single worker thread.
+ * The worker serves the highest priority request among the clients' queues, in round-robin
+ * between the clients having requests of the same priority, so that a client polling many channels
+ * does not starve the others. With a pipelined Modbus TCP connection the worker only waits for room
+ * in the pipeline, not for the responses.
+ * <br/>
+ * <br/>
+ * The endpoint also counts the transactions, their failures and their latency, which are logged
+ * periodically.
+ */
+final class ModbusEndpoint {
+
+    /**
+     * An operation run on the shared {@link ModbusProtocolDevice}.
+     *
+     * @param <T>
+     *            the type of the result
+     */
+    interface Operation<T> {
+
+        /**
+         * Starts the operation.
+         *
+         * @param device
+         *            the device of the endpoint
+         * @return the future result of the operation
+         * @throws ModbusProtocolException
+         *             if the operation fails
+         */
+        CompletableFuture<T> start(ModbusProtocolDevice device) throws ModbusProtocolException;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusEndpoint.class);
+
+    private static final long REPORT_INTERVAL = TimeUnit.MINUTES.toNanos(5);
+
+    private final String key;
+    private final ModbusProtocolDevice device;
+
+    /** The number of drivers using the endpoint. Guarded by the {@link ModbusConnectionManager}. */
+    private int references;
+
+    /** The pending requests by client, in round-robin order. Guarded by itself. */
+    private final Map<Object, PriorityQueue<Request<?>>> queues = new LinkedHashMap<>();
+    private long sequence;
+    private boolean running = true;
+
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * Instantiates a new endpoint and starts its worker.
+     *
+     * @param key
+     *            the key identifying the endpoint
+     * @param device
+     *            the device connected to the endpoint
+     */
+    ModbusEndpoint(final String key, final ModbusProtocolDevice device) {
+        this.key = key;
+        this.device = device;
+        final Thread worker = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                work();
+            }
+        }, "ModbusEndpoint " + key);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the key identifying the endpoint.
+     *
+     * @return the endpoint key
+     */
+    String getKey() {
+        return this.key;
+    }
+
+    int retain() {
+        return ++this.references;
+    }
+
+    int release() {
+        return --this.references;
+    }
+
+    /**
+     * Queues an operation.
+     *
+     * @param client
+     *            the client submitting the operation, the operations of each client being scheduled
+     *            fairly with respect to the other clients
+     * @param priority
+     *            the priority of the operation, the higher first
+     * @param operation
+     *            the operation
+     * @return the future result, failed with a {@link ModbusProtocolException} if the operation fails
+     *         or the endpoint is closed
+     */
+    <T> CompletableFuture<T> submit(final Object client, final int priority, final Operation<T> operation) {
+        final Request<T> request;
+        synchronized (this.queues) {
+            request = new Request<>(operation, priority, this.sequence++);
+            if (!this.running) {
+                request.result
+                        .completeExceptionally(new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
+                return request.result;
+            }
+            PriorityQueue<Request<?>> queue = this.queues.get(client);
+            if (queue == null) {
+                queue = new PriorityQueue<>(11, REQUEST_ORDER);
+                this.queues.put(client, queue);
+            }
+            queue.add(request);
+            this.queues.notifyAll();
+        }
+        return request.result;
+    }
+
+    /**
+     * Stops the worker, fails the pending operations and disconnects the device.
+     */
+    void close() {
+        synchronized (this.queues) {
+            this.running = false;
+            for (final PriorityQueue<Request<?>> queue : this.queues.values()) {
+                for (final Request<?> request : queue) {
+                    request.result.completeExceptionally(
+                            new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
+                }
+            }
+            this.queues.clear();
+            this.queues.notifyAll();
+        }
+        try {
+            this.device.disconnect();
+        } catch (final ModbusProtocolException e) {
+            logger.error("Error while disconnecting from {}", this.key, e);
+        }
+        logMetrics();
+    }
+
+    /**
+     * Returns the number of transactions run on the endpoint.
+     *
+     * @return the number of transactions
+     */
+    long getTransactionCount() {
+        return this.transactions.get();
+    }
+
+    /**
+     * Returns the number of transactions which failed.
+     *
+     * @return the number of failed transactions
+     */
+    long getErrorCount() {
+        return this.errors.get();
+    }
+
+    /**
+     * Returns the average latency of the transactions, from the time they are started to the time they
+     * are completed.
+     *
+     * @return the average latency in nanoseconds, 0 if no transaction has been run
+     */
+    long getAverageLatency() {
+        final long count = this.transactions.get();
+        return count == 0 ? 0 : this.totalLatency.get() / count;
+    }
+
+    /**
+     * Returns the maximum latency of the transactions.
+     *
+     * @return the maximum latency in nanoseconds
+     */
+    long getMaxLatency() {
+        return this.maxLatency.get();
+    }
+
+    private void work() {
+        long nextReport = System.nanoTime() + REPORT_INTERVAL;
+        while (true) {
+            final Request<?> request;
+            synchronized (this.queues) {
+                while (this.running && this.queues.isEmpty()) {
+                    final long wait = nextReport - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this.queues, wait);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!this.running) {
+                    return;
+                }
+                request = next();
+            }
+            if (request != null) {
+                run(request);
+            }
+            if (System.nanoTime() - nextReport >= 0) {
+                logMetrics();
+                nextReport = System.nanoTime() + REPORT_INTERVAL;
+            }
+        }
+    }
+
+    /**
+     * Removes the highest priority request, the first client in round-robin order winning the ties,
+     * and moves its client to the end of the round.
+     */
+    private Request<?> next() {
+        Object selectedClient = null;
+        Request<?> selected = null;
+        for (final Map.Entry<Object, PriorityQueue<Request<?>>> entry : this.queues.entrySet()) {
+            final Request<?> head = entry.getValue().peek();
+            if (selected == null || head.priority > selected.priority) {
+                selectedClient = entry.getKey();
+                selected = head;
+            }
+        }
+        if (selected == null) {
+            return null;
+        }
+        final PriorityQueue<Request<?>> queue = this.queues.remove(selectedClient);
+        queue.poll();
+        if (!queue.isEmpty()) {
+            this.queues.put(selectedClient, queue);
+        }
+        return selected;
+    }
+
+    private <T> void run(final Request<T> request) {
+        final long start = System.nanoTime();
+        final CompletableFuture<T> response;
+        try {
+            response = request.operation.start(this.device);
+        } catch (final ModbusProtocolException | RuntimeException e) {
+            record(start, true);
+            request.result.completeExceptionally(e);
+            return;
+        }
+        response.whenComplete((value, error) -> {
+            record(start, error != null);
+            if (error != null) {
+                request.result.completeExceptionally(error);
+            } else {
+                request.result.complete(value);
+            }
+        });
+    }
+
+    private void record(final long start, final boolean failed) {
+        final long latency = System.nanoTime() - start;
+        this.transactions.incrementAndGet();
+        if (failed) {
+            this.errors.incrementAndGet();
+        }
+        this.totalLatency.addAndGet(latency);
+        this.maxLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    private void logMetrics() {
+        final long count = this.transactions.get();
+        if (count == 0) {
+            return;
+        }
+        logger.info("Modbus endpoint {}: {} transactions, {}% errors, average latency {} ms, maximum latency {} ms",
+                this.key, count, this.errors.get() * 100 / count, TimeUnit.NANOSECONDS.toMillis(getAverageLatency()),
+                TimeUnit.NANOSECONDS.toMillis(getMaxLatency()));
+    }
+
+    private static final Comparator<Request<?>> REQUEST_ORDER = new Comparator<Request<?>>() {
+
+        @Override
+        public int compare(final Request<?> first, final Request<?> second) {
+            if (first.priority != second.priority) {
+                return first.priority > second.priority ? -1 : 1;
+            }
+            return Long.compare(first.sequence, second.sequence);
+        }
+    };
+
+    private static final class Request<T> {
+
+        private final Operation<T> operation;
+        private final int priority;
+        private final long sequence;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(final Operation<T> operation, final int priority, final long sequence) {
+            this.operation = operation;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The Class ModbusReadBlock is a range of coils, inputs or registers of a table of a unit, read with
+ * a single request, and the channels whose values it contains.
+ */
+final class ModbusReadBlock {
+
+    private final int unitId;
+    private final ModbusTable table;
+    private final int startAddress;
+    private int endAddress;
+    private final List<ModbusRequestInfo> requestInfos = new ArrayList<>();
+
+    private ModbusReadBlock(final ModbusRequestInfo requestInfo) {
+        this.unitId = requestInfo.getUnitId();
+        this.table = requestInfo.getTable();
+        this.startAddress = requestInfo.getAddress();
+        this.endAddress = requestInfo.getAddress() + requestInfo.getCount();
+        this.requestInfos.add(requestInfo);
+    }
+
+    int getUnitId() {
+        return this.unitId;
+    }
+
+    ModbusTable getTable() {
+        return this.table;
+    }
+
+    int getStartAddress() {
+        return this.startAddress;
+    }
+
+    /**
+     * Returns the number of coils, inputs or registers to be read.
+     *
+     * @return the number of coils, inputs or registers
+     */
+    int getCount() {
+        return this.endAddress - this.startAddress;
+    }
+
+    List<ModbusRequestInfo> getRequestInfos() {
+        return this.requestInfos;
+    }
+
+    /**
+     * Returns a block for each of the channels of this block, to read them one by one.
+     *
+     * @return the blocks of the channels
+     */
+    List<ModbusReadBlock> split() {
+        final List<ModbusReadBlock> blocks = new ArrayList<>(this.requestInfos.size());
+        for (final ModbusRequestInfo requestInfo : this.requestInfos) {
+            blocks.add(new ModbusReadBlock(requestInfo));
+        }
+        return blocks;
+    }
+
+    /**
+     * Blocks are equal if they read the same range of the same table of the same unit, which is the
+     * case of the blocks coalesced from the same channels.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof ModbusReadBlock)) {
+            return false;
+        }
+        final ModbusReadBlock other = (ModbusReadBlock) obj;
+        return this.unitId == other.unitId && this.table == other.table && this.startAddress == other.startAddress
+                && this.endAddress == other.endAddress;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.unitId, this.table, this.startAddress, this.endAddress);
+    }
+
+    private boolean tryAdd(final ModbusRequestInfo requestInfo, final int gapTolerance, final int maxCount) {
+        if (requestInfo.getUnitId() != this.unitId || requestInfo.getTable() != this.table
+                || requestInfo.getAddress() > this.endAddress + gapTolerance) {
+            return false;
+        }
+        final int newEndAddress = Math.max(this.endAddress, requestInfo.getAddress() + requestInfo.getCount());
+        if (newEndAddress - this.startAddress > maxCount) {
+            return false;
+        }
+        this.endAddress = newEndAddress;
+        this.requestInfos.add(requestInfo);
+        return true;
+    }
+
+    /**
+     * Groups the provided channels by unit and table, and merges the channels whose addresses are
+     * closer than the gap tolerance into the fewest blocks not exceeding the maximum read counts.
+     *
+     * @param requestInfos
+     *            the channels to be read
+     * @param gapTolerance
+     *            the maximum number of unused coils, inputs or registers read between two channels
+     * @param maxRegisters
+     *            the maximum number of registers read by a request
+     * @param maxBits
+     *            the maximum number of coils or inputs read by a request
+     * @return the blocks to be read
+     */
+    static List<ModbusReadBlock> coalesce(final List<ModbusRequestInfo> requestInfos, final int gapTolerance,
+            final int maxRegisters, final int maxBits) {
+        final List<ModbusRequestInfo> sorted = new ArrayList<>(requestInfos);
+        Collections.sort(sorted, new Comparator<ModbusRequestInfo>() {
+
+            @Override
+            public int compare(final ModbusRequestInfo first, final ModbusRequestInfo second) {
+                int result = Integer.compare(first.getUnitId(), second.getUnitId());
+                if (result == 0) {
+                    result = first.getTable().compareTo(second.getTable());
+                }
+                if (result == 0) {
+                    result = Integer.compare(first.getAddress(), second.getAddress());
+                }
+                return result;
+            }
+        });
+
+        final List<ModbusReadBlock> blocks = new ArrayList<>();
+        ModbusReadBlock block = null;
+        for (final ModbusRequestInfo requestInfo : sorted) {
+            final int maxCount = requestInfo.getTable().isBits() ? maxBits : maxRegisters;
+            if (block == null || !block.tryAdd(requestInfo, gapTolerance, maxCount)) {
+                block = new ModbusReadBlock(requestInfo);
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import static org.eclipse.kura.channel.ChannelFlag.FAILURE;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.kura.channel.ChannelRecord;
+import org.eclipse.kura.channel.ChannelStatus;
+import org.eclipse.kura.type.DataType;
+
+/**
+ * The Class ModbusRequestInfo holds the validated Modbus configuration of a {@link ChannelRecord}.
+ */
+final class ModbusRequestInfo {
+
+    private final ChannelRecord channelRecord;
+    private final int unitId;
+    private final ModbusTable table;
+    private final int address;
+    private final ModbusValueType valueType;
+
+    ModbusRequestInfo(final ChannelRecord channelRecord, final int unitId, final ModbusTable table,
+            final int address, final ModbusValueType valueType) {
+        this.channelRecord = channelRecord;
+        this.unitId = unitId;
+        this.table = table;
+        this.address = address;
+        this.valueType = valueType;
+    }
+
+    ChannelRecord getChannelRecord() {
+        return this.channelRecord;
+    }
+
+    int getUnitId() {
+        return this.unitId;
+    }
+
+    ModbusTable getTable() {
+        return this.table;
+    }
+
+    int getAddress() {
+        return this.address;
+    }
+
+    ModbusValueType getValueType() {
+        return this.valueType;
+    }
+
+    /**
+     * Returns the number of coils, inputs or registers holding the value of the channel.
+     *
+     * @return the number of coils, inputs or registers
+     */
+    int getCount() {
+        return this.table.isBits() ? 1 : this.valueType.getRegisterCount();
+    }
+
+    static void fail(final ChannelRecord record, final String message, final Exception exception) {
+        record.setChannelStatus(new ChannelStatus(FAILURE, message, exception));
+        record.setTimestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Validates the configuration of the provided record, setting the failure status of the record if
+     * the configuration is not valid.
+     *
+     * @param record
+     *            the record
+     * @return the request info, if the configuration is valid
+     */
+    static Optional<ModbusRequestInfo> extract(final ChannelRecord record) {
+        final Map<String, Object> channelConfig = record.getChannelConfig();
+        final int unitId;
+        final ModbusTable table;
+        final int address;
+        final ModbusValueType valueType;
+
+        try {
+            unitId = ModbusChannelDescriptor.getUnitId(channelConfig);
+            table = ModbusChannelDescriptor.getPrimaryTable(channelConfig);
+            address = ModbusChannelDescriptor.getMemoryAddress(channelConfig);
+            valueType = ModbusChannelDescriptor.getValueType(channelConfig);
+        } catch (final Exception e) {
+            fail(record, "Invalid Modbus channel configuration", e);
+            return Optional.empty();
+        }
+
+        final DataType dataType = record.getValueType();
+        if (dataType == null) {
+            fail(record, "Value type cannot be null", null);
+            return Optional.empty();
+        }
+
+        if (!table.isBits() && address + valueType.getRegisterCount() > 0x10000) {
+            fail(record, "Invalid Modbus channel configuration", null);
+            return Optional.empty();
+        }
+
+        return Optional.of(new ModbusRequestInfo(record, unitId, table, address, valueType));
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+/**
+ * The Enum ModbusTable represents the primary tables of a Modbus device.
+ */
+public enum ModbusTable {
+
+    /** Single bits, readable and writable. */
+    COILS(true, true),
+
+    /** Single bits, read only. */
+    DISCRETE_INPUTS(true, false),
+
+    /** 16 bit registers, read only. */
+    INPUT_REGISTERS(false, false),
+
+    /** 16 bit registers, readable and writable. */
+    HOLDING_REGISTERS(false, true);
+
+    private final boolean bits;
+    private final boolean writable;
+
+    private ModbusTable(final boolean bits, final boolean writable) {
+        this.bits = bits;
+        this.writable = writable;
+    }
+
+    /**
+     * Tells whether the table contains single bits rather than registers.
+     *
+     * @return true for coils and discrete inputs
+     */
+    public boolean isBits() {
+        return this.bits;
+    }
+
+    /**
+     * Tells whether the table can be written.
+     *
+     * @return true for coils and holding registers
+     */
+    public boolean isWritable() {
+        return this.writable;
+    }
+}
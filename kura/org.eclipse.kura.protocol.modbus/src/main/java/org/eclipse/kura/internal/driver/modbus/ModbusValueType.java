@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+/**
+ * The Enum ModbusValueType represents how the value of a channel is stored in consecutive registers,
+ * the most significant word first.
+ */
+public enum ModbusValueType {
+
+    INT16(1),
+
+    UINT16(1),
+
+    INT32(2),
+
+    UINT32(2),
+
+    INT64(4),
+
+    FLOAT(2),
+
+    DOUBLE(4);
+
+    private final int registerCount;
+
+    private ModbusValueType(final int registerCount) {
+        this.registerCount = registerCount;
+    }
+
+    /**
+     * Returns the number of registers holding a value of this type.
+     *
+     * @return the number of registers
+     */
+    public int getRegisterCount() {
+        return this.registerCount;
+    }
+
+    /**
+     * Decodes a value from the provided registers.
+     *
+     * @param registers
+     *            the registers, each one in the 0 to 65535 range
+     * @param offset
+     *            the index of the first register of the value
+     * @return the decoded value
+     */
+    Number decode(final int[] registers, final int offset) {
+        long bits = 0;
+        for (int i = 0; i < this.registerCount; i++) {
+            bits = bits << 16 | registers[offset + i] & 0xFFFF;
+        }
+        switch (this) {
+        case INT16:
+            return (int) (short) bits;
+        case UINT16:
+            return (int) bits;
+        case INT32:
+            return (int) bits;
+        case UINT32:
+            return bits;
+        case FLOAT:
+            return Float.intBitsToFloat((int) bits);
+        case DOUBLE:
+            return Double.longBitsToDouble(bits);
+        default:
+            return bits;
+        }
+    }
+
+    /**
+     * Encodes the provided value into registers.
+     *
+     * @param value
+     *            the value to encode
+     * @return the registers, each one in the 0 to 65535 range
+     */
+    int[] encode(final Number value) {
+        final long bits;
+        switch (this) {
+        case FLOAT:
+            bits = Float.floatToIntBits(value.floatValue());
+            break;
+        case DOUBLE:
+            bits = Double.doubleToLongBits(value.doubleValue());
+            break;
+        default:
+            bits = value.longValue();
+        }
+        final int[] registers = new int[this.registerCount];
+        for (int i = 0; i < this.registerCount; i++) {
+            registers[i] = (int) (bits >>> 16 * (this.registerCount - 1 - i)) & 0xFFFF;
+        }
+        return registers;
+    }
+}
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.protocol.modbus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads whole Modbus frames from a stream into a buffer reused for all the frames of a connection.
+ * <p>
+ * Modbus TCP frames are read as the MBAP header followed by the exact remaining length it announces,
+ * RTU frames are read in bulk as soon as their length can be computed from the function code and
+ * byte count, ASCII frames are read in bulk up to the trailing CR LF. The reads block on the stream
+ * instead of polling it, so that the frame is returned as soon as its last byte is received.
+ * <p>
+ * For serial lines, the reader also keeps track of the end of the last frame on the line, so that a
+ * request is only sent after the 3.5 character times of silence which delimit RTU frames.
+ */
+final class ModbusFrameReader {
+
+    /** The length of the MBAP header, including the unit identifier. */
+    static final int MBAP_HEADER_LENGTH = 7;
+
+    /** The maximum length of a Modbus TCP frame: the MBAP header followed by a 253 bytes PDU. */
+    static final int MAX_TCP_FRAME_LENGTH = 260;
+
+    /** The maximum length of a Modbus RTU frame: unit identifier, 253 bytes PDU and CRC. */
+    static final int MAX_RTU_FRAME_LENGTH = 256;
+
+    /** The maximum length of a Modbus ASCII frame. */
+    static final int MAX_ASCII_FRAME_LENGTH = 513;
+
+    // Silence used above 19200 bauds, as recommended by the Modbus serial line specification
+    private static final long MIN_SILENCE_NANOS = 1750000L;
+
+    private static final int BITS_PER_CHARACTER = 11;
+
+    private final byte[] buffer;
+    private int length;
+
+    private final long silenceNanos;
+    private long lastFrameEnd;
+
+    /**
+     * Instantiates a reader for a TCP connection.
+     *
+     * @param capacity
+     *            the size of the buffer, the maximum length of a frame
+     */
+    ModbusFrameReader(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * Instantiates a reader for a serial line.
+     *
+     * @param capacity
+     *            the size of the buffer, the maximum length of a frame
+     * @param baudRate
+     *            the baud rate of the line, used to compute the silence between frames, or 0 if
+     *            frames are not delimited by silence
+     */
+    ModbusFrameReader(int capacity, int baudRate) {
+        this.buffer = new byte[capacity];
+        if (baudRate <= 0) {
+            this.silenceNanos = 0;
+        } else if (baudRate > 19200) {
+            this.silenceNanos = MIN_SILENCE_NANOS;
+        } else {
+            this.silenceNanos = TimeUnit.SECONDS.toNanos(BITS_PER_CHARACTER) * 7 / 2 / baudRate;
+        }
+        this.lastFrameEnd = System.nanoTime() - this.silenceNanos;
+    }
+
+    /**
+     * Returns the buffer holding the last frame read, from index 0.
+     *
+     * @return the buffer
+     */
+    byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Returns the length of the last frame read.
+     *
+     * @return the frame length
+     */
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the MBAP transaction identifier of the last Modbus TCP frame read.
+     *
+     * @return the transaction identifier
+     */
+    int getTransactionId() {
+        return (this.buffer[0] & 0xff) << 8 | this.buffer[1] & 0xff;
+    }
+
+    /**
+     * Waits until the line has been silent for 3.5 characters since the end of the last frame, so
+     * that the next frame can be sent.
+     */
+    void awaitSilence() {
+        long remaining;
+        while ((remaining = this.lastFrameEnd + this.silenceNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Records that a frame has just been sent or received, starting the silence before the next one.
+     */
+    void markFrameEnd() {
+        this.lastFrameEnd = System.nanoTime();
+    }
+
+    /**
+     * Reads a Modbus TCP frame: the MBAP header, then the remaining length announced by the header.
+     *
+     * @param in
+     *            the stream to read from
+     * @throws IOException
+     *             if the stream fails or times out, or the header announces an invalid length
+     */
+    void readTcpFrame(InputStream in) throws IOException {
+        this.length = 0;
+        readFully(in, MBAP_HEADER_LENGTH, 0);
+        int remaining = ((this.buffer[4] & 0xff) << 8 | this.buffer[5] & 0xff) - 1;
+        if (remaining < 1 || MBAP_HEADER_LENGTH + remaining > this.buffer.length) {
+            throw new IOException("Invalid MBAP length: " + (remaining + 1));
+        }
+        readFully(in, MBAP_HEADER_LENGTH + remaining, 0);
+    }
+
+    /**
+     * Reads a Modbus RTU frame sent by the provided unit. The bytes preceding the unit identifier are
+     * skipped, as well as the first byte of the frames having a bad CRC.
+     *
+     * @param in
+     *            the stream to read from
+     * @param unitId
+     *            the identifier of the unit the request has been sent to
+     * @param timeout
+     *            the response timeout in milliseconds, for streams whose reads return nothing on
+     *            timeout instead of throwing an exception
+     * @throws IOException
+     *             if the stream fails or times out
+     */
+    void readRtuFrame(InputStream in, byte unitId, int timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.length = 0;
+        int expected = 2;
+        while (true) {
+            // after a resynchronization, the bytes already buffered are checked before reading more
+            readFully(in, expected, deadline);
+            if (this.buffer[0] != unitId) {
+                shift(1);
+                expected = 2;
+                continue;
+            }
+            expected = getRtuFrameLength(this.length);
+            if (expected > this.buffer.length) {
+                shift(1);
+                expected = 2;
+                continue;
+            }
+            if (this.length < expected) {
+                continue;
+            }
+            if (Crc16.getCrc16(this.buffer, expected, 0xffff) == 0) {
+                this.length = expected;
+                markFrameEnd();
+                return;
+            }
+            // not a valid frame, resynchronize on the next byte
+            shift(1);
+            expected = 2;
+        }
+    }
+
+    /**
+     * Reads a Modbus ASCII frame, from the colon up to the trailing CR LF included.
+     *
+     * @param in
+     *            the stream to read from
+     * @param timeout
+     *            the response timeout in milliseconds, for streams whose reads return nothing on
+     *            timeout instead of throwing an exception
+     * @throws IOException
+     *             if the stream fails or times out, or the frame is too long
+     */
+    void readAsciiFrame(InputStream in, int timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.length = 0;
+        int scanned = 0;
+        while (true) {
+            if (this.length == scanned) {
+                if (this.length == this.buffer.length) {
+                    throw new IOException("ASCII frame too long");
+                }
+                int read = in.read(this.buffer, this.length, this.buffer.length - this.length);
+                checkRead(read, deadline);
+                this.length += read;
+            }
+            if (this.buffer[0] != ':') {
+                shift(1);
+                scanned = 0;
+                continue;
+            }
+            for (; scanned < this.length; scanned++) {
+                if (scanned > 0 && this.buffer[scanned] == 10 && this.buffer[scanned - 1] == 13) {
+                    this.length = scanned + 1;
+                    markFrameEnd();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the unit identifier and PDU of a Modbus TCP response frame, checking that it
+     * answers the provided request.
+     *
+     * @param frame
+     *            the buffer holding the frame, from index 0
+     * @param length
+     *            the length of the frame
+     * @param request
+     *            the request, starting with the unit identifier and the function code
+     * @return the unit identifier and the PDU of the response
+     * @throws ModbusProtocolException
+     *             if the response is an exception or does not match the request
+     */
+    static byte[] getTcpResponse(byte[] frame, int length, byte[] request) throws ModbusProtocolException {
+        // test modbus id
+        if (frame[6] != request[0]) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
+                    "incorrect modbus id " + String.format("%02X", frame[6]));
+        }
+        // test function number
+        if ((frame[7] & 0x7f) != request[1]) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
+                    "incorrect function number " + String.format("%02X", frame[7]));
+        }
+        // Check first for an Exception response
+        if ((frame[7] & 0x80) == 0x80) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
+                    "Modbus responds an error = " + String.format("%02X", frame[8]));
+        }
+        return getResponse(frame, MBAP_HEADER_LENGTH - 1, length - MBAP_HEADER_LENGTH + 1);
+    }
+
+    /**
+     * Returns a copy of the unit identifier and PDU of a response frame, checking for an exception
+     * response and for the length announced by the read responses.
+     *
+     * @param frame
+     *            the buffer holding the frame
+     * @param offset
+     *            the index of the unit identifier in the buffer
+     * @param length
+     *            the length of the unit identifier and PDU, without header or checksum
+     * @return the unit identifier and the PDU of the response
+     * @throws ModbusProtocolException
+     *             if the response is an exception or is too short
+     */
+    static byte[] getResponse(byte[] frame, int offset, int length) throws ModbusProtocolException {
+        if (length < 3) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Short response");
+        }
+        if ((frame[offset + 1] & 0x80) == 0x80) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
+                    "Exception response = " + Byte.toString(frame[offset + 2]));
+        }
+        int responseLength = length;
+        switch (frame[offset + 1]) {
+        case ModbusFunctionCodes.FORCE_SINGLE_COIL:
+        case ModbusFunctionCodes.PRESET_SINGLE_REG:
+        case ModbusFunctionCodes.FORCE_MULTIPLE_COILS:
+        case ModbusFunctionCodes.PRESET_MULTIPLE_REGS:
+            responseLength = 6;
+            break;
+        case ModbusFunctionCodes.READ_COIL_STATUS:
+        case ModbusFunctionCodes.READ_INPUT_STATUS:
+        case ModbusFunctionCodes.READ_INPUT_REGS:
+        case ModbusFunctionCodes.READ_HOLDING_REGS:
+            responseLength = (frame[offset + 2] & 0xff) + 3;
+            break;
+        default:
+            break;
+        }
+        if (responseLength > length) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Short response");
+        }
+        byte[] ret = new byte[responseLength];
+        System.arraycopy(frame, offset, ret, 0, responseLength);
+        return ret;
+    }
+
+    /**
+     * Computes the length of the RTU frame in the buffer, reading at least the provided number of bytes.
+     */
+    private int getRtuFrameLength(int read) {
+        int functionCode = this.buffer[1] & 0xff;
+        if ((functionCode & 0x80) == 0x80) {
+            // unit, function, exception code, CRC
+            return 5;
+        }
+        switch (functionCode) {
+        case ModbusFunctionCodes.READ_EXCEPTION_STATUS:
+            return 5;
+        case ModbusFunctionCodes.FORCE_SINGLE_COIL:
+        case ModbusFunctionCodes.PRESET_SINGLE_REG:
+        case ModbusFunctionCodes.FORCE_MULTIPLE_COILS:
+        case ModbusFunctionCodes.PRESET_MULTIPLE_REGS:
+        case ModbusFunctionCodes.GET_COMM_EVENT_COUNTER:
+            return 8;
+        default:
+            // unit, function, byte count, data, CRC
+            if (read < 3) {
+                return 3;
+            }
+            return (this.buffer[2] & 0xff) + 5;
+        }
+    }
+
+    private void readFully(InputStream in, int end, long deadline) throws IOException {
+        while (this.length < end) {
+            int read = in.read(this.buffer, this.length, end - this.length);
+            checkRead(read, deadline);
+            this.length += read;
+        }
+    }
+
+    private void checkRead(int read, long deadline) throws IOException {
+        if (read < 0) {
+            throw new EOFException("Recv failure");
+        }
+        if (read == 0 && (deadline == 0 || System.nanoTime() - deadline > 0)) {
+            markFrameEnd();
+            throw new InterruptedIOException("Recv timeout");
+        }
+    }
+
+    private void shift(int count) {
+        this.length -= count;
+        System.arraycopy(this.buffer, count, this.buffer, 0, this.length);
+    }
+}
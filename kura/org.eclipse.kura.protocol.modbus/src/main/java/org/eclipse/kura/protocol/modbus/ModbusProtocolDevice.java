@@ -15,11 +15,13 @@ package org.eclipse.kura.protocol.modbus;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.eclipse.kura.KuraConnectionStatus;
 import org.eclipse.kura.comm.CommConnection;
@@ -286,6 +288,20 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         abstract public int getConnectStatus();
 
         abstract public byte[] msgTransaction(byte[] msg) throws ModbusProtocolException;
+
+        /**
+         * Sends a request without waiting for its response. Unless overridden, the transaction is run
+         * synchronously and the returned future is already completed.
+         */
+        public CompletableFuture<byte[]> submit(byte[] msg) {
+            CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+            try {
+                future.complete(msgTransaction(msg));
+            } catch (ModbusProtocolException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
     }
 
     /**
@@ -328,6 +344,7 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         InputStream in;
         OutputStream out;
         CommConnection conn = null;
+        ModbusFrameReader frameReader;
 
         public SerialCommunicate(ConnectionFactory connFactory, Properties connectionConfig)
                 throws ModbusProtocolException {
@@ -352,8 +369,15 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
             int parity = Integer.valueOf(sParity).intValue();
             int bits = Integer.valueOf(sBits).intValue();
 
+            // the reads block until data is received or the response timeout expires
+            int receiveTimeout = Math.max(ModbusProtocolDevice.this.m_respTout, 1);
             String uri = new CommURI.Builder(sPort).withBaudRate(baud).withDataBits(bits).withStopBits(stop)
-                    .withParity(parity).withTimeout(2000).build().toString();
+                    .withParity(parity).withTimeout(receiveTimeout).build().toString();
+            if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE) {
+                this.frameReader = new ModbusFrameReader(ModbusFrameReader.MAX_ASCII_FRAME_LENGTH);
+            } else {
+                this.frameReader = new ModbusFrameReader(ModbusFrameReader.MAX_RTU_FRAME_LENGTH, baud);
+            }
 
             try {
                 this.conn = (CommConnection) connFactory.createConnection(uri, 1, false);
@@ -470,9 +494,7 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
 
             if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.RTU_MODE) {
                 cmd = new byte[msg.length + 2];
-                for (int i = 0; i < msg.length; i++) {
-                    cmd[i] = msg[i];
-                }
+                System.arraycopy(msg, 0, cmd, 0, msg.length);
                 // Add crc calculation to end of message
                 int crc = Crc16.getCrc16(msg, msg.length, 0x0ffff);
                 cmd[msg.length] = (byte) crc;
@@ -486,151 +508,48 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
                 synchronized (this.out) {
                     synchronized (this.in) {
                         // flush input
-                        while (this.in.available() > 0) {
-                            this.in.read();
+                        int available;
+                        while ((available = this.in.available()) > 0) {
+                            this.in.skip(available);
                         }
-                        // send all data
+                        // send all data, after the silence ending the previous frame
+                        this.frameReader.awaitSilence();
                         this.out.write(cmd, 0, cmd.length);
                         this.out.flush();
-                        // outputStream.waitAllSent(respTout);
+                        this.frameReader.markFrameEnd();
 
                         // wait for and process response
-                        byte[] response = new byte[262]; // response buffer
-                        int respIndex = 0;
-                        int minimumLength = 5; // default minimum message length
                         if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE) {
-                            minimumLength = 11;
-                        }
-                        int timeOut = ModbusProtocolDevice.this.m_respTout;
-                        for (int maxLoop = 0; maxLoop < 1000; maxLoop++) {
-                            boolean endFrame = false;
-                            // while (respIndex < minimumLength) {
-                            while (!endFrame) {
-                                long start = System.currentTimeMillis();
-                                while (this.in.available() == 0) {
-                                    try {
-                                        Thread.sleep(5);	// avoid a high cpu load
-                                    } catch (InterruptedException e) {
-                                        throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                                                "Thread interrupted");
-                                    }
-
-                                    long elapsed = System.currentTimeMillis() - start;
-                                    if (elapsed > timeOut) {
-                                        String failMsg = "Recv timeout";
-                                        s_logger.warn(failMsg + " : " + elapsed + " minimumLength=" + minimumLength
-                                                + " respIndex=" + respIndex);
-                                        throw new ModbusProtocolException(ModbusProtocolErrorCode.RESPONSE_TIMEOUT,
-                                                failMsg);
-                                    }
-                                }
-                                // address byte must match first
-                                if (respIndex == 0) {
-                                    if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE) {
-                                        if ((response[0] = (byte) this.in.read()) == ':') {
-                                            respIndex++;
-                                        }
-                                    } else {
-                                        if ((response[0] = (byte) this.in.read()) == msg[0]) {
-                                            respIndex++;
-                                        }
-                                    }
-                                } else {
-                                    response[respIndex++] = (byte) this.in.read();
-                                }
-
-                                if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.RTU_MODE) {
-                                    timeOut = 100; // move to character timeout
-                                    if (respIndex >= minimumLength) {
-                                        endFrame = true;
-                                    }
-                                } else {
-                                    if (response[respIndex - 1] == 10 && response[respIndex - 2] == 13) {
-                                        endFrame = true;
-                                    }
-                                }
-                            }
-                            // if ASCII mode convert response
-                            if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE) {
-                                byte lrcRec = asciiLrcCalc(response, respIndex);
-                                response = convertAsciiResponseToBin(response, respIndex);
-                                byte lrcCalc = (byte) binLrcCalc(response);
-                                if (lrcRec != lrcCalc) {
-                                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                                            "Bad LRC");
-                                }
-                            }
-
-                            // Check first for an Exception response
-                            if ((response[1] & 0x80) == 0x80) {
-                                if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE
-                                        || Crc16.getCrc16(response, 5, 0xffff) == 0) {
-                                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                                            "Exception response = " + Byte.toString(response[2]));
-                                }
-                            } else {
-                                // then check for a valid message
-                                switch (response[1]) {
-                                case ModbusFunctionCodes.FORCE_SINGLE_COIL:
-                                case ModbusFunctionCodes.PRESET_SINGLE_REG:
-                                case ModbusFunctionCodes.FORCE_MULTIPLE_COILS:
-                                case ModbusFunctionCodes.PRESET_MULTIPLE_REGS:
-                                    if (respIndex < 8) {
-                                        // wait for more data
-                                        minimumLength = 8;
-                                    } else if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE
-                                            || Crc16.getCrc16(response, 8, 0xffff) == 0) {
-                                        byte[] ret = new byte[6];
-                                        for (int i = 0; i < 6; i++) {
-                                            ret[i] = response[i];
-                                        }
-                                        return ret;
-                                    }
-                                    break;
-                                case ModbusFunctionCodes.READ_COIL_STATUS:
-                                case ModbusFunctionCodes.READ_INPUT_STATUS:
-                                case ModbusFunctionCodes.READ_INPUT_REGS:
-                                case ModbusFunctionCodes.READ_HOLDING_REGS:
-                                    int byteCnt;
-                                    if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE) {
-                                        byteCnt = (response[2] & 0xff) + 3;
-                                    } else {
-                                        byteCnt = (response[2] & 0xff) + 5;
-                                    }
-                                    if (respIndex < byteCnt) {
-                                        // wait for more data
-                                        minimumLength = byteCnt;
-                                    } else if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.ASCII_MODE
-                                            || Crc16.getCrc16(response, byteCnt, 0xffff) == 0) {
-                                        byte[] ret = new byte[byteCnt];
-                                        for (int i = 0; i < byteCnt; i++) {
-                                            ret[i] = response[i];
-                                        }
-                                        return ret;
-                                    }
-                                }
-                            }
-
-                            /*
-                             * if required length then must have failed, drop
-                             * first byte and try again
-                             */
-                            if (respIndex >= minimumLength) {
-                                respIndex--;
-                                for (int i = 0; i < respIndex; i++) {
-                                    response[i] = response[i + 1];
-                                }
-                                minimumLength = 5; // reset minimum length
-                            }
+                            return readAsciiResponse();
                         }
+                        this.frameReader.readRtuFrame(this.in, msg[0], ModbusProtocolDevice.this.m_respTout);
+                        return ModbusFrameReader.getResponse(this.frameReader.getBuffer(), 0,
+                                this.frameReader.getLength() - 2);
                     }
                 }
+            } catch (InterruptedIOException e) {
+                String failMsg = "Recv timeout";
+                s_logger.warn(failMsg);
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.RESPONSE_TIMEOUT, failMsg);
             } catch (IOException e) {
-                // e.printStackTrace();
                 throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, e.getMessage());
             }
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                    "Too much activity on recv line");
+        }
+
+        private byte[] readAsciiResponse() throws IOException, ModbusProtocolException {
+            this.frameReader.readAsciiFrame(this.in, ModbusProtocolDevice.this.m_respTout);
+            byte[] frame = this.frameReader.getBuffer();
+            int length = this.frameReader.getLength();
+            if (length < 11) {
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Short response");
+            }
+            byte lrcRec = asciiLrcCalc(frame, length);
+            byte[] response = convertAsciiResponseToBin(frame, length);
+            byte lrcCalc = (byte) binLrcCalc(response);
+            if (lrcRec != lrcCalc) {
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Bad LRC");
+            }
+            return ModbusFrameReader.getResponse(response, 0, response.length);
         }
     }
 
@@ -646,6 +565,10 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         String ipAddress;
         String connType;
         boolean connected = false;
+        final byte[] request = new byte[ModbusFrameReader.MAX_TCP_FRAME_LENGTH];
+        final ModbusFrameReader frameReader = new ModbusFrameReader(ModbusFrameReader.MAX_TCP_FRAME_LENGTH);
+        int pipelineWindow = 1;
+        ModbusTcpPipeline pipeline;
 
         public EthernetCommunicate(ConnectionFactory connFactory, Properties connectionConfig)
                 throws ModbusProtocolException {
@@ -658,12 +581,19 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
                 throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_CONFIGURATION);
             }
             this.port = Integer.valueOf(sPort).intValue();
+            String sWindow = connectionConfig.getProperty("pipelineWindow");
+            if (sWindow != null && PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType)) {
+                this.pipelineWindow = Integer.valueOf(sWindow).intValue();
+                if (this.pipelineWindow < 1) {
+                    throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_CONFIGURATION);
+                }
+            }
             ModbusProtocolDevice.this.m_connConfigd = true;
             this.socket = new Socket();
         }
 
         @Override
-        public void connect() {
+        public synchronized void connect() {
             if (!ModbusProtocolDevice.this.m_connConfigd) {
                 s_logger.error("Can't connect, port not configured");
             } else {
@@ -671,8 +601,17 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
                     try {
                         this.socket = new Socket(this.ipAddress, this.port);
                         try {
+                            // requests are small and wait for their response, do not delay them
+                            this.socket.setTcpNoDelay(true);
                             this.inputStream = this.socket.getInputStream();
                             this.outputStream = this.socket.getOutputStream();
+                            if (this.pipelineWindow > 1) {
+                                // the pipeline times out each request, the receiver waits indefinitely
+                                this.pipeline = new ModbusTcpPipeline(this.inputStream, this.outputStream,
+                                        this.pipelineWindow, ModbusProtocolDevice.this.m_respTout);
+                            } else {
+                                this.socket.setSoTimeout(ModbusProtocolDevice.this.m_respTout);
+                            }
                             this.connected = true;
                             s_logger.info("TCP connected");
                         } catch (IOException e) {
@@ -687,12 +626,16 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         }
 
         @Override
-        public void disconnect() {
+        public synchronized void disconnect() {
             if(this.socket==null){
                 return;
             }
             if (ModbusProtocolDevice.this.m_connConfigd) {
                 if (this.connected) {
+                    if (this.pipeline != null) {
+                        this.pipeline.close();
+                        this.pipeline = null;
+                    }
                     try {
                         if (!this.socket.isInputShutdown()) {
                             this.socket.shutdownInput();
@@ -723,38 +666,68 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
             }
         }
 
+        @Override
+        public CompletableFuture<byte[]> submit(byte[] msg) {
+            if (this.pipelineWindow <= 1) {
+                return super.submit(msg);
+            }
+            ModbusTcpPipeline current;
+            synchronized (this) {
+                if (this.pipeline != null && !this.pipeline.isOpen()) {
+                    disconnect();
+                }
+                connect();
+                current = this.pipeline;
+            }
+            if (current == null) {
+                CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+                future.completeExceptionally(new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
+                        "Cannot transact on closed socket"));
+                return future;
+            }
+            return current.submit(msg);
+        }
+
         @Override
         public byte[] msgTransaction(byte[] msg) throws ModbusProtocolException {
-            byte[] cmd = null;
+            if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.RTU_MODE
+                    && PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType) && this.pipelineWindow > 1) {
+                return await(submit(msg));
+            }
+            // the request buffer and the frame reader are shared by the threads using the connection
+            synchronized (this) {
+                return transact(msg);
+            }
+        }
+
+        private byte[] transact(byte[] msg) throws ModbusProtocolException {
+            int length;
+            int index = 0;
 
             // ---------------------------------------------- Send Message
             // ---------------------------------------------------
             if (ModbusProtocolDevice.this.m_txMode == ModbusTransmissionMode.RTU_MODE) {
                 if (PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType)) {
-                    cmd = new byte[msg.length + 6];
                     // build MBAP header
-                    int index = getNextTransactionIndex();
-                    cmd[0] = (byte) (index >> 8);
-                    cmd[1] = (byte) index;
-                    cmd[2] = 0;
-                    cmd[3] = 0;
+                    index = getNextTransactionIndex();
+                    this.request[0] = (byte) (index >> 8);
+                    this.request[1] = (byte) index;
+                    this.request[2] = 0;
+                    this.request[3] = 0;
                     // length
                     int len = msg.length;
-                    cmd[4] = (byte) (len >> 8);
-                    cmd[5] = (byte) len;
-                    for (int i = 0; i < msg.length; i++) {
-                        cmd[i + 6] = msg[i];
-                    }
+                    this.request[4] = (byte) (len >> 8);
+                    this.request[5] = (byte) len;
+                    System.arraycopy(msg, 0, this.request, 6, msg.length);
+                    length = msg.length + 6;
                     // No crc in Modbus TCP
                 } else {
-                    cmd = new byte[msg.length + 2];
-                    for (int i = 0; i < msg.length; i++) {
-                        cmd[i] = msg[i];
-                    }
+                    System.arraycopy(msg, 0, this.request, 0, msg.length);
                     // Add crc calculation to end of message
                     int crc = Crc16.getCrc16(msg, msg.length, 0x0ffff);
-                    cmd[msg.length] = (byte) crc;
-                    cmd[msg.length + 1] = (byte) (crc >> 8);
+                    this.request[msg.length] = (byte) crc;
+                    this.request[msg.length + 1] = (byte) (crc >> 8);
+                    length = msg.length + 2;
                 }
             } else {
                 throw new ModbusProtocolException(ModbusProtocolErrorCode.METHOD_NOT_SUPPORTED,
@@ -771,11 +744,12 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
             // Send the message
             try {
                 // flush input
-                while (this.inputStream.available() > 0) {
-                    this.inputStream.read();
+                int available;
+                while ((available = this.inputStream.available()) > 0) {
+                    this.inputStream.skip(available);
                 }
                 // send all data
-                this.outputStream.write(cmd, 0, cmd.length);
+                this.outputStream.write(this.request, 0, length);
                 this.outputStream.flush();
             } catch (IOException e) {
                 // Assume this means the socket is closed...make sure it is
@@ -788,93 +762,28 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
             // ---------------------------------------------- Receive response
             // ---------------------------------------------------
             // wait for and process response
-
-            boolean endFrame = false;
-            byte[] response = new byte[262]; // response buffer
-            int respIndex = 0;
-            int minimumLength = 5; // default minimum message length
-            if (PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType)) {
-                minimumLength += 6;
-            }
-            while (!endFrame) {
-                try {
-                    this.socket.setSoTimeout(ModbusProtocolDevice.this.m_respTout);
-                    int resp = this.inputStream.read(response, respIndex, 1);
-                    if (resp > 0) {
-                        respIndex += resp;
-                        if (PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType)) {
-                            if (respIndex == 7) {
-                                // test modbus id
-                                if (response[6] != msg[0]) {
-                                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                                            "incorrect modbus id " + String.format("%02X", response[6]));
-                                }
-                            } else if (respIndex == 8) {
-                                // test function number
-                                if ((response[7] & 0x7f) != msg[1]) {
-                                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                                            "incorrect function number " + String.format("%02X", response[7]));
-                                }
-                            } else if (respIndex == 9) {
-                                // Check first for an Exception response
-                            	if ((response[7] & 0x80) == 0x80) {                                    
-                            		throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE,
-                            				"Modbus responds an error = " + String.format("%02X", response[8]));
-                                } else {
-                                    if (response[7] == ModbusFunctionCodes.FORCE_SINGLE_COIL
-                                            || response[7] == ModbusFunctionCodes.PRESET_SINGLE_REG
-                                            || response[7] == ModbusFunctionCodes.FORCE_MULTIPLE_COILS
-                                            || response[7] == ModbusFunctionCodes.PRESET_MULTIPLE_REGS) {
-                                        minimumLength = 12;
-                                    } else {
-                                        // bytes count
-                                        minimumLength = response[8] + 9;
-                                    }
-                                }
-                            } else if (respIndex == minimumLength) {
-                                endFrame = true;
-                            }
-                        } else {
-
-                        }
-                    } else {
-                        s_logger.error("Socket disconnect in recv");
-                        throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Recv failure");
-                    }
-                } catch (SocketTimeoutException e) {
-                    String failMsg = "Recv timeout";
-                    s_logger.warn(failMsg);
-                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, failMsg);
-                } catch (IOException e) {
-                    s_logger.error("Socket disconnect in recv: " + e);
-                    throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Recv failure");
+            try {
+                if (!PROTOCOL_CONNECTION_TYPE_ETHER_TCP.equals(this.connType)) {
+                    this.frameReader.readRtuFrame(this.inputStream, msg[0], ModbusProtocolDevice.this.m_respTout);
+                    return ModbusFrameReader.getResponse(this.frameReader.getBuffer(), 0,
+                            this.frameReader.getLength() - 2);
                 }
 
+                // discard the late responses to the previous requests
+                do {
+                    this.frameReader.readTcpFrame(this.inputStream);
+                } while (this.frameReader.getTransactionId() != index);
+            } catch (InterruptedIOException e) {
+                String failMsg = "Recv timeout";
+                s_logger.warn(failMsg);
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, failMsg);
+            } catch (IOException e) {
+                s_logger.error("Socket disconnect in recv: " + e);
+                disconnect();
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Recv failure");
             }
 
-            // then check for a valid message
-            switch (response[7]) {
-            case ModbusFunctionCodes.FORCE_SINGLE_COIL:
-            case ModbusFunctionCodes.PRESET_SINGLE_REG:
-            case ModbusFunctionCodes.FORCE_MULTIPLE_COILS:
-            case ModbusFunctionCodes.PRESET_MULTIPLE_REGS:
-                byte[] ret = new byte[8];
-                for (int i = 6; i < 12; i++) {
-                    ret[i - 6] = response[i];
-                }
-                return ret;
-            case ModbusFunctionCodes.READ_COIL_STATUS:
-            case ModbusFunctionCodes.READ_INPUT_STATUS:
-            case ModbusFunctionCodes.READ_INPUT_REGS:
-            case ModbusFunctionCodes.READ_HOLDING_REGS:
-                int byteCnt = (response[8] & 0xff) + 3 + 6;
-                ret = new byte[byteCnt - 6];
-                for (int i = 6; i < byteCnt; i++) {
-                    ret[i - 6] = response[i];
-                }
-                return ret;
-            }
-            return null;
+            return ModbusFrameReader.getTcpResponse(this.frameReader.getBuffer(), this.frameReader.getLength(), msg);
         }
     }
 
@@ -883,54 +792,31 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         if (!this.m_connConfigd) {
             throw new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED);
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_COIL_STATUS, dataAddress, count);
+        return getBits(this.m_comm.msgTransaction(cmd), count);
+    }
 
-        boolean[] ret = new boolean[count];
-        int index = 0;
-
-        byte[] resp;
-        /*
-         * construct the command issue and get results
-         */
-        byte[] cmd = new byte[6];
-        cmd[0] = (byte) unitAddr;
-        cmd[1] = (byte) ModbusFunctionCodes.READ_COIL_STATUS;
-        cmd[2] = (byte) (dataAddress / 256);
-        cmd[3] = (byte) (dataAddress % 256);
-        cmd[4] = (byte) (count / 256);
-        cmd[5] = (byte) (count % 256);
-
-        /*
-         * send the message and get the response
-         */
-        resp = this.m_comm.msgTransaction(cmd);
-
-        /*
-         * process the response (address & CRC already confirmed)
-         */
-        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
-        }
-        if ((resp[2] & 0xff) == (count + 7) / 8) {
-            byte mask = 1;
-            int byteOffset = 3;
-            for (int j = 0; j < count; j++, index++) {
-                // get this point's value
-                if ((resp[byteOffset] & mask) == mask) {
-                    ret[index] = true;
-                } else {
-                    ret[index] = false;
-                }
-                // advance the mask and offset index
-                if ((mask <<= 1) == 0) {
-                    mask = 1;
-                    byteOffset++;
-                }
-            }
-        } else {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
+    /**
+     * Reads coils without waiting for the response, see {@link #readCoils(int, int, int)}.
+     * <p>
+     * With a Modbus TCP connection configured with a {@code pipelineWindow} greater than 1, the request
+     * is sent without waiting for the responses to the requests in flight. Otherwise the read is run
+     * synchronously and the returned future is already completed.
+     *
+     * @return the future coil values, failed with a {@link ModbusProtocolException} if the read fails
+     */
+    public CompletableFuture<boolean[]> readCoilsAsync(int unitAddr, int dataAddress, final int count) {
+        if (!this.m_connConfigd) {
+            return failed(new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_COIL_STATUS, dataAddress, count);
+        return parse(this.m_comm.submit(cmd), new ResponseParser<boolean[]>() {
 
-        return ret;
+            @Override
+            public boolean[] parse(byte[] resp) throws ModbusProtocolException {
+                return getBits(resp, count);
+            }
+        });
     }
 
     @Override
@@ -938,54 +824,28 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         if (!this.m_connConfigd) {
             throw new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED);
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_INPUT_STATUS, dataAddress, count);
+        return getBits(this.m_comm.msgTransaction(cmd), count);
+    }
 
-        boolean[] ret = new boolean[count];
-        int index = 0;
-
-        byte[] resp;
-        /*
-         * construct the command issue and get results
-         */
-        byte[] cmd = new byte[6];
-        cmd[0] = (byte) unitAddr;
-        cmd[1] = (byte) ModbusFunctionCodes.READ_INPUT_STATUS;
-        cmd[2] = (byte) (dataAddress / 256);
-        cmd[3] = (byte) (dataAddress % 256);
-        cmd[4] = (byte) (count / 256);
-        cmd[5] = (byte) (count % 256);
-
-        /*
-         * send the message and get the response
-         */
-        resp = this.m_comm.msgTransaction(cmd);
-
-        /*
-         * process the response (address & CRC already confirmed)
-         */
-        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
-        }
-        if ((resp[2] & 0xff) == (count + 7) / 8) {
-            byte mask = 1;
-            int byteOffset = 3;
-            for (int j = 0; j < count; j++, index++) {
-                // get this point's value
-                if ((resp[byteOffset] & mask) == mask) {
-                    ret[index] = true;
-                } else {
-                    ret[index] = false;
-                }
-                // advance the mask and offset index
-                if ((mask <<= 1) == 0) {
-                    mask = 1;
-                    byteOffset++;
-                }
-            }
-        } else {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
+    /**
+     * Reads discrete inputs without waiting for the response, see {@link #readDiscreteInputs(int, int, int)}
+     * and {@link #readCoilsAsync(int, int, int)}.
+     *
+     * @return the future input values, failed with a {@link ModbusProtocolException} if the read fails
+     */
+    public CompletableFuture<boolean[]> readDiscreteInputsAsync(int unitAddr, int dataAddress, final int count) {
+        if (!this.m_connConfigd) {
+            return failed(new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_INPUT_STATUS, dataAddress, count);
+        return parse(this.m_comm.submit(cmd), new ResponseParser<boolean[]>() {
 
-        return ret;
+            @Override
+            public boolean[] parse(byte[] resp) throws ModbusProtocolException {
+                return getBits(resp, count);
+            }
+        });
     }
 
     @Override
@@ -1088,100 +948,57 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         if (!this.m_connConfigd) {
             throw new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED);
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_HOLDING_REGS, dataAddress, count);
+        return getRegisters(this.m_comm.msgTransaction(cmd), count);
+    }
 
-        int[] ret = new int[count];
-        int index = 0;
-
-        byte[] resp;
-        /*
-         * construct the command issue and get results, putting the results
-         * away at index and then incrementing index for the next command
-         */
-        byte[] cmd = new byte[6];
-        cmd[0] = (byte) unitAddr;
-        cmd[1] = (byte) ModbusFunctionCodes.READ_HOLDING_REGS;
-        cmd[2] = (byte) (dataAddress / 256);
-        cmd[3] = (byte) (dataAddress % 256);
-        cmd[4] = 0;
-        cmd[5] = (byte) count;
-
-        /*
-         * send the message and get the response
-         */
-        resp = this.m_comm.msgTransaction(cmd);
-
-        /*
-         * process the response (address & CRC already confirmed)
-         */
-        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
+    /**
+     * Reads holding registers without waiting for the response, see
+     * {@link #readHoldingRegisters(int, int, int)} and {@link #readCoilsAsync(int, int, int)}.
+     *
+     * @return the future register values, failed with a {@link ModbusProtocolException} if the read fails
+     */
+    public CompletableFuture<int[]> readHoldingRegistersAsync(int unitAddr, int dataAddress, final int count) {
+        if (!this.m_connConfigd) {
+            return failed(new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
         }
-        if ((resp[2] & 0xff) == count * 2) {
-            int byteOffset = 3;
-            for (int j = 0; j < count; j++, index++) {
-                int val = resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(0) - '1'] & 0xff;
-                val <<= 8;
-                val += resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(1) - '1'] & 0xff;
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_HOLDING_REGS, dataAddress, count);
+        return parse(this.m_comm.submit(cmd), new ResponseParser<int[]>() {
 
-                ret[index] = val;
-
-                byteOffset += 2;
+            @Override
+            public int[] parse(byte[] resp) throws ModbusProtocolException {
+                return getRegisters(resp, count);
             }
-        } else {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
-        }
-        return ret;
+        });
     }
 
     @Override
     public int[] readInputRegisters(int unitAddr, int dataAddress, int count) throws ModbusProtocolException {
-
         if (!this.m_connConfigd) {
             throw new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED);
         }
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_INPUT_REGS, dataAddress, count);
+        return getRegisters(this.m_comm.msgTransaction(cmd), count);
+    }
 
-        int[] ret = new int[count];
-        int index = 0;
-
-        byte[] resp;
-        /*
-         * construct the command issue and get results, putting the results
-         * away at index and then incrementing index for the next command
-         */
-        byte[] cmd = new byte[6];
-        cmd[0] = (byte) unitAddr;
-        cmd[1] = (byte) ModbusFunctionCodes.READ_INPUT_REGS;
-        cmd[2] = (byte) (dataAddress / 256);
-        cmd[3] = (byte) (dataAddress % 256);
-        cmd[4] = 0;
-        cmd[5] = (byte) count;
-
-        /*
-         * send the message and get the response
-         */
-        resp = this.m_comm.msgTransaction(cmd);
-
-        /*
-         * process the response (address & CRC already confirmed)
-         */
-        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
+    /**
+     * Reads input registers without waiting for the response, see
+     * {@link #readInputRegisters(int, int, int)} and {@link #readCoilsAsync(int, int, int)}.
+     *
+     * @return the future register values, failed with a {@link ModbusProtocolException} if the read fails
+     */
+    public CompletableFuture<int[]> readInputRegistersAsync(int unitAddr, int dataAddress, final int count) {
+        if (!this.m_connConfigd) {
+            return failed(new ModbusProtocolException(ModbusProtocolErrorCode.NOT_CONNECTED));
         }
-        if ((resp[2] & 0xff) == count * 2) {
-            int byteOffset = 3;
-            for (int j = 0; j < count; j++, index++) {
-                int val = resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(0) - '1'] & 0xff;
-                val <<= 8;
-                val += resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(1) - '1'] & 0xff;
-
-                ret[index] = val;
+        byte[] cmd = buildReadCommand(unitAddr, ModbusFunctionCodes.READ_INPUT_REGS, dataAddress, count);
+        return parse(this.m_comm.submit(cmd), new ResponseParser<int[]>() {
 
-                byteOffset += 2;
+            @Override
+            public int[] parse(byte[] resp) throws ModbusProtocolException {
+                return getRegisters(resp, count);
             }
-        } else {
-            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
-        }
-        return ret;
+        });
     }
 
     @Override
@@ -1399,12 +1216,119 @@ public class ModbusProtocolDevice implements ModbusProtocolDeviceService {
         return mce;
     }
 
+    private static byte[] buildReadCommand(int unitAddr, int functionCode, int dataAddress, int count) {
+        byte[] cmd = new byte[6];
+        cmd[0] = (byte) unitAddr;
+        cmd[1] = (byte) functionCode;
+        cmd[2] = (byte) (dataAddress / 256);
+        cmd[3] = (byte) (dataAddress % 256);
+        cmd[4] = (byte) (count / 256);
+        cmd[5] = (byte) (count % 256);
+        return cmd;
+    }
+
+    private static boolean[] getBits(byte[] resp, int count) throws ModbusProtocolException {
+        /*
+         * process the response (address & CRC already confirmed)
+         */
+        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
+        }
+        if ((resp[2] & 0xff) != (count + 7) / 8) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
+        }
+        boolean[] ret = new boolean[count];
+        byte mask = 1;
+        int byteOffset = 3;
+        for (int j = 0; j < count; j++) {
+            // get this point's value
+            ret[j] = (resp[byteOffset] & mask) == mask;
+            // advance the mask and offset index
+            if ((mask <<= 1) == 0) {
+                mask = 1;
+                byteOffset++;
+            }
+        }
+        return ret;
+    }
+
+    private static int[] getRegisters(byte[] resp, int count) throws ModbusProtocolException {
+        /*
+         * process the response (address & CRC already confirmed)
+         */
+        if (resp.length < 3 || resp.length < (resp[2] & 0xff) + 3) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_TYPE);
+        }
+        if ((resp[2] & 0xff) != count * 2) {
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.INVALID_DATA_ADDRESS);
+        }
+        int[] ret = new int[count];
+        int byteOffset = 3;
+        for (int j = 0; j < count; j++) {
+            int val = resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(0) - '1'] & 0xff;
+            val <<= 8;
+            val += resp[byteOffset + ModbusDataOrder.MODBUS_WORD_ORDER_BIG_ENDIAN.charAt(1) - '1'] & 0xff;
+
+            ret[j] = val;
+
+            byteOffset += 2;
+        }
+        return ret;
+    }
+
+    /**
+     * Parses a response once received.
+     */
+    private interface ResponseParser<T> {
+
+        T parse(byte[] resp) throws ModbusProtocolException;
+    }
+
+    private static <T> CompletableFuture<T> parse(CompletableFuture<byte[]> response, final ResponseParser<T> parser) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        response.whenComplete((resp, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            try {
+                result.complete(parser.parse(resp));
+            } catch (ModbusProtocolException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failed(ModbusProtocolException e) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Waits for the response to a request sent with {@link Communicate#submit(byte[])}.
+     */
+    private static byte[] await(CompletableFuture<byte[]> response) throws ModbusProtocolException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Thread interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ModbusProtocolException) {
+                throw (ModbusProtocolException) e.getCause();
+            }
+            throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, e.getCause());
+        }
+    }
+
     /**
      * Calculates and returns the next transaction index for Modbus TCP.
      * 
      * @return the next transaction index.
      */
-    private int getNextTransactionIndex() {
+    private static synchronized int getNextTransactionIndex() {
         transactionIndex++;
         if (transactionIndex > 0xffff) {
             transactionIndex = 0;
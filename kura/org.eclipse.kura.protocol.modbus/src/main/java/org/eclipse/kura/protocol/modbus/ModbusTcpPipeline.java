@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.protocol.modbus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends Modbus TCP requests on a connection without waiting for the responses of the previous ones.
+ * <p>
+ * At most a configured number of requests are in flight at the same time, the submitters waiting for
+ * room beyond that. A receiver thread reads the responses and completes the future of the request
+ * having the same MBAP transaction identifier, so that the responses can arrive in any order. The
+ * responses to requests which already timed out are discarded. A failure of the connection fails all
+ * the requests in flight and closes the pipeline.
+ */
+final class ModbusTcpPipeline {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(ModbusTcpPipeline.class);
+
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final int timeout;
+
+    private final Semaphore window;
+    private final Map<Integer, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    /** The buffer the requests are built in. Guarded by itself. */
+    private final byte[] request = new byte[ModbusFrameReader.MAX_TCP_FRAME_LENGTH];
+    private int transactionIndex;
+
+    private final ModbusFrameReader frameReader = new ModbusFrameReader(ModbusFrameReader.MAX_TCP_FRAME_LENGTH);
+    private final ScheduledExecutorService timeouts;
+
+    private volatile boolean open = true;
+
+    /**
+     * Starts a pipeline on the provided connection streams.
+     *
+     * @param inputStream
+     *            the connection input stream
+     * @param outputStream
+     *            the connection output stream
+     * @param windowSize
+     *            the maximum number of requests in flight
+     * @param timeout
+     *            the response timeout of every request, in milliseconds
+     */
+    ModbusTcpPipeline(InputStream inputStream, OutputStream outputStream, int windowSize, int timeout) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.timeout = timeout;
+        this.window = new Semaphore(windowSize);
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ModbusTcpPipelineTimeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Thread receiver = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "ModbusTcpPipelineReceiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Tells whether the pipeline still accepts requests.
+     *
+     * @return false if the pipeline has been closed or the connection failed
+     */
+    boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * Sends a request, waiting for room in the window if needed.
+     *
+     * @param msg
+     *            the request, starting with the unit identifier
+     * @return the future response, holding the unit identifier and PDU of the response or failed with a
+     *         {@link ModbusProtocolException}
+     */
+    CompletableFuture<byte[]> submit(final byte[] msg) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        try {
+            this.window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(
+                    new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Thread interrupted"));
+            return future;
+        }
+
+        synchronized (this.request) {
+            int index;
+            do {
+                index = this.transactionIndex = this.transactionIndex + 1 & 0xffff;
+            } while (this.inFlight.putIfAbsent(index, future) != null);
+
+            final int transactionId = index;
+            final ScheduledFuture<?> expiration;
+            try {
+                if (!this.open) {
+                    throw new RejectedExecutionException();
+                }
+                expiration = this.timeouts.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (ModbusTcpPipeline.this.inFlight.remove(transactionId, future)) {
+                            ModbusTcpPipeline.this.window.release();
+                            s_logger.warn("Recv timeout");
+                            future.completeExceptionally(new ModbusProtocolException(
+                                    ModbusProtocolErrorCode.RESPONSE_TIMEOUT, "Recv timeout"));
+                        }
+                    }
+                }, this.timeout, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed in the meantime
+                if (this.inFlight.remove(transactionId, future)) {
+                    this.window.release();
+                    future.completeExceptionally(new ModbusProtocolException(
+                            ModbusProtocolErrorCode.TRANSACTION_FAILURE, "Cannot transact on closed socket"));
+                }
+                return future;
+            }
+            future.whenComplete((response, error) -> expiration.cancel(false));
+
+            // build MBAP header
+            this.request[0] = (byte) (index >> 8);
+            this.request[1] = (byte) index;
+            this.request[2] = 0;
+            this.request[3] = 0;
+            this.request[4] = (byte) (msg.length >> 8);
+            this.request[5] = (byte) msg.length;
+            System.arraycopy(msg, 0, this.request, 6, msg.length);
+            try {
+                this.outputStream.write(this.request, 0, msg.length + 6);
+                this.outputStream.flush();
+            } catch (IOException e) {
+                s_logger.error("Socket disconnect in send: " + e);
+                fail("Send failure: " + e.getMessage());
+                return future;
+            }
+        }
+
+        // the response validation needs the request
+        final CompletableFuture<byte[]> response = new CompletableFuture<byte[]>();
+        future.whenComplete((frame, error) -> {
+            if (error != null) {
+                response.completeExceptionally(error);
+                return;
+            }
+            try {
+                response.complete(ModbusFrameReader.getTcpResponse(frame, frame.length, msg));
+            } catch (ModbusProtocolException e) {
+                response.completeExceptionally(e);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Closes the pipeline, failing the requests in flight. The receiver thread stops when the
+     * connection is closed.
+     */
+    void close() {
+        fail("Connection closed");
+    }
+
+    private void receive() {
+        try {
+            while (this.open) {
+                this.frameReader.readTcpFrame(this.inputStream);
+                byte[] buffer = this.frameReader.getBuffer();
+                int transactionId = this.frameReader.getTransactionId();
+                CompletableFuture<byte[]> future = this.inFlight.remove(transactionId);
+                if (future == null) {
+                    s_logger.debug("Discarding the response to transaction {}", transactionId);
+                    continue;
+                }
+                this.window.release();
+                byte[] frame = new byte[this.frameReader.getLength()];
+                System.arraycopy(buffer, 0, frame, 0, frame.length);
+                future.complete(frame);
+            }
+        } catch (IOException e) {
+            if (this.open) {
+                s_logger.error("Socket disconnect in recv: " + e);
+                fail("Recv failure");
+            }
+        }
+    }
+
+    private void fail(String message) {
+        this.open = false;
+        this.timeouts.shutdownNow();
+        for (Map.Entry<Integer, CompletableFuture<byte[]>> entry : this.inFlight.entrySet()) {
+            if (this.inFlight.remove(entry.getKey(), entry.getValue())) {
+                this.window.release();
+                entry.getValue().completeExceptionally(
+                        new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE, message));
+            }
+        }
+    }
+}
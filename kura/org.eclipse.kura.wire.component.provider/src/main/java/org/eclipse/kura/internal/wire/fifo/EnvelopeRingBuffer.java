@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.fifo;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.kura.wire.WireEnvelope;
+
+/**
+ * The Class EnvelopeRingBuffer is a bounded queue of {@link WireEnvelope}s, with many producers and
+ * a single consumer.<br/>
+ * <br/>
+ *
+ * Producers claim a slot by advancing the tail with a compare-and-set, which never contends when
+ * a single emitter feeds the queue, and then publish the envelope in the slot. The consumer is the
+ * only one advancing the head; it reads every available envelope at once and removes each one
+ * when it is about to be delivered, so that the envelope being delivered does not count against
+ * the capacity, while the ones waiting do. Threads only block when the queue is empty or full, and
+ * are only woken up if they are actually waiting.
+ */
+final class EnvelopeRingBuffer {
+
+    private final AtomicReferenceArray<WireEnvelope> slots;
+    private final int capacity;
+
+    /** The sequence of the next slot to be claimed by a producer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The sequence of the next slot to be read by the consumer, only written by the consumer. */
+    private volatile long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private volatile Thread waitingConsumer;
+
+    /** The producers waiting for room. Guarded by itself for writing. */
+    private final Object notFull = new Object();
+    private volatile int waitingProducers;
+
+    /**
+     * Instantiates a new empty buffer.
+     *
+     * @param capacity
+     *            the maximum number of envelopes in the buffer
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive
+     */
+    EnvelopeRingBuffer(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Adds the provided envelope to the buffer, unless the buffer is full or closed, in which case the
+     * envelope is counted as dropped.
+     *
+     * @param envelope
+     *            the envelope to add
+     * @return true if the envelope has been added
+     */
+    boolean offer(final WireEnvelope envelope) {
+        if (this.running && tryAdd(envelope)) {
+            return true;
+        }
+        this.dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Adds the provided envelope to the buffer, waiting for room if the buffer is full.
+     *
+     * @param envelope
+     *            the envelope to add
+     * @return true if the envelope has been added, false if the buffer has been closed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    boolean put(final WireEnvelope envelope) throws InterruptedException {
+        while (this.running) {
+            if (tryAdd(envelope)) {
+                return true;
+            }
+            synchronized (this.notFull) {
+                this.waitingProducers++;
+                try {
+                    if (this.running && isFull()) {
+                        this.notFull.wait();
+                    }
+                } finally {
+                    this.waitingProducers--;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean tryAdd(final WireEnvelope envelope) {
+        long sequence;
+        do {
+            sequence = this.tail.get();
+            if (sequence - this.head >= this.capacity) {
+                return false;
+            }
+        } while (!this.tail.compareAndSet(sequence, sequence + 1));
+
+        this.slots.set(index(sequence), envelope);
+
+        final Thread consumer = this.waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the available envelopes to the provided list, waiting for at least one if the buffer is
+     * empty. The envelopes stay in the buffer until removed. Must only be called by the consumer thread.
+     *
+     * @param envelopes
+     *            the list the envelopes are added to
+     * @param maxEnvelopes
+     *            the maximum number of envelopes to copy
+     * @return the number of envelopes copied, 0 if the buffer has been closed
+     */
+    int peekTo(final List<WireEnvelope> envelopes, final int maxEnvelopes) {
+        final long first = this.head;
+        while (this.running && first == this.tail.get()) {
+            this.waitingConsumer = Thread.currentThread();
+            if (this.running && first == this.tail.get()) {
+                LockSupport.park(this);
+            }
+            this.waitingConsumer = null;
+        }
+        if (!this.running) {
+            return 0;
+        }
+
+        final long available = this.tail.get();
+        int count = 0;
+        for (long sequence = first; sequence < available && count < maxEnvelopes; sequence++) {
+            WireEnvelope envelope;
+            // the slot is claimed but the producer has not stored the envelope yet
+            while ((envelope = this.slots.get(index(sequence))) == null) {
+                Thread.yield();
+            }
+            envelopes.add(envelope);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Removes the provided number of envelopes from the head of the buffer, making room for the
+     * producers. Must only be called by the consumer thread, for envelopes previously copied by
+     * {@link #peekTo(List, int)}.
+     *
+     * @param count
+     *            the number of envelopes to remove
+     */
+    void remove(final int count) {
+        long sequence = this.head;
+        for (int i = 0; i < count; i++) {
+            this.slots.set(index(sequence++), null);
+        }
+        this.head = sequence;
+
+        if (this.waitingProducers > 0) {
+            synchronized (this.notFull) {
+                this.notFull.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes the buffer, waking up the waiting threads. The envelopes still in the buffer are discarded.
+     */
+    void close() {
+        this.running = false;
+        final Thread consumer = this.waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        synchronized (this.notFull) {
+            this.notFull.notifyAll();
+        }
+    }
+
+    /**
+     * Tells whether the buffer has been closed.
+     *
+     * @return true if closed
+     */
+    boolean isClosed() {
+        return !this.running;
+    }
+
+    /**
+     * Returns the number of envelopes in the buffer.
+     *
+     * @return the queue depth
+     */
+    int size() {
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+
+    /**
+     * Returns the number of envelopes dropped because the buffer was full.
+     *
+     * @return the number of dropped envelopes
+     */
+    long getDropped() {
+        return this.dropped.get();
+    }
+
+    private boolean isFull() {
+        return this.tail.get() - this.head >= this.capacity;
+    }
+
+    private int index(final long sequence) {
+        return (int) (sequence % this.capacity);
+    }
+}
@@ -16,20 +16,18 @@ import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
-import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.localization.LocalizationAdapter;
 import org.eclipse.kura.localization.resources.WireMessages;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.service.wireadmin.Wire;
 import org.slf4j.Logger;
@@ -37,8 +35,8 @@ import org.slf4j.LoggerFactory;
 
 public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
 
-    private static final String DISCARD_ENVELOPES_PROP_NAME = "discard.envelopes";
-    private static final String QUEUE_CAPACITY_PROP_NAME = "queue.capacity";
+    /** The maximum number of envelopes taken from the queue at once by the emitter thread. */
+    private static final int MAX_DRAINED_ENVELOPES = 256;
 
     private static final Logger logger = LoggerFactory.getLogger(Fifo.class);
     private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
@@ -46,7 +44,7 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
     private volatile WireHelperService wireHelperService;
     private WireSupport wireSupport;
 
-    private FifoEmitterThread emitterThread;
+    private volatile FifoEmitterThread emitterThread;
 
     public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -76,12 +74,10 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
     public void updated(final Map<String, Object> properties) {
         logger.info(message.updatingFifo());
 
-        String threadName = (String) properties.getOrDefault(ConfigurationService.KURA_SERVICE_PID, "Fifo")
-                + "-EmitterThread";
-        int queueCapacity = (Integer) properties.getOrDefault(QUEUE_CAPACITY_PROP_NAME, 50);
-        boolean discardEnvelopes = (Boolean) properties.getOrDefault(DISCARD_ENVELOPES_PROP_NAME, false);
-
-        restartEmitterThread(threadName, queueCapacity, discardEnvelopes);
+        // validated before the running emitter thread is stopped
+        final FifoOptions options = new FifoOptions(properties);
+        restartEmitterThread(options.getThreadName(), options.getQueueCapacity(), options.isDiscardEnvelopes(),
+                options.getBatchSize());
 
         logger.info(message.updatingFifoDone());
     }
@@ -93,20 +89,22 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         }
     }
 
-    private synchronized void restartEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes) {
+    private synchronized void restartEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes,
+            int batchSize) {
         stopEmitterThread();
 
-        logger.debug("Creating new emitter thread: {}, queue capacity: {}, discard envelopes: {}", threadName,
-                queueCapacity, discardEnvelopes);
-        emitterThread = new FifoEmitterThread(threadName, queueCapacity, discardEnvelopes);
+        logger.debug("Creating new emitter thread: {}, queue capacity: {}, discard envelopes: {}, batch size: {}",
+                threadName, queueCapacity, discardEnvelopes, batchSize);
+        emitterThread = new FifoEmitterThread(threadName, queueCapacity, discardEnvelopes, batchSize);
         emitterThread.start();
     }
 
     @Override
     public void onWireReceive(WireEnvelope wireEnvelope) {
         requireNonNull(wireEnvelope, message.wireEnvelopeNonNull());
-        if (emitterThread != null) {
-            emitterThread.submit(wireEnvelope);
+        final FifoEmitterThread thread = emitterThread;
+        if (thread != null) {
+            thread.submit(wireEnvelope);
         }
     }
 
@@ -130,22 +128,38 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         this.wireSupport.producersConnected(wires);
     }
 
-    private class FifoEmitterThread extends Thread {
+    /**
+     * Returns the number of envelopes waiting to be emitted. Logged with the dropped envelopes when the
+     * emitter thread is stopped.
+     *
+     * @return the queue depth
+     */
+    int getQueueDepth() {
+        final FifoEmitterThread thread = this.emitterThread;
+        return thread != null ? thread.queue.size() : 0;
+    }
 
-        private Lock lock = new ReentrantLock();
+    /**
+     * Returns the number of envelopes discarded because the queue was full, since the last configuration
+     * update.
+     *
+     * @return the number of dropped envelopes
+     */
+    long getDroppedEnvelopes() {
+        final FifoEmitterThread thread = this.emitterThread;
+        return thread != null ? thread.queue.getDropped() : 0;
+    }
 
-        private Condition producer = lock.newCondition();
-        private Condition consumer = lock.newCondition();
+    private class FifoEmitterThread extends Thread {
 
-        private boolean run = true;
-        private ArrayList<WireEnvelope> queue;
-        private int queueCapacity;
+        private final EnvelopeRingBuffer queue;
+        private final int batchSize;
 
-        private Consumer<WireEnvelope> submitter;
+        private final Consumer<WireEnvelope> submitter;
 
-        public FifoEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes) {
-            this.queue = new ArrayList<WireEnvelope>();
-            this.queueCapacity = queueCapacity;
+        public FifoEmitterThread(String threadName, int queueCapacity, boolean discardEnvelopes, int batchSize) {
+            this.queue = new EnvelopeRingBuffer(queueCapacity);
+            this.batchSize = Math.max(1, batchSize);
             setName(threadName);
             if (discardEnvelopes) {
                 submitter = getEnvelopeDiscardingSubmitter();
@@ -156,18 +170,10 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
 
         private Consumer<WireEnvelope> getEnvelopeDiscardingSubmitter() {
             return (envelope) -> {
-                try {
-                    lock.lock();
-                    if (!run || queue.size() >= queueCapacity) {
-                        logger.debug("envelope discarded");
-                        return;
-                    } else {
-                        queue.add(envelope);
-                        producer.signal();
-                        logger.debug("envelope submitted");
-                    }
-                } finally {
-                    lock.unlock();
+                if (queue.offer(envelope)) {
+                    logger.debug("envelope submitted");
+                } else {
+                    logger.debug("envelope discarded");
                 }
             };
         }
@@ -175,33 +181,20 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
         private Consumer<WireEnvelope> getEmitterBlockingSubmitter() {
             return (envelope) -> {
                 try {
-                    lock.lock();
-                    while (run && queue.size() >= queueCapacity) {
-                        consumer.await();
-                    }
-                    if (!run) {
-                        return;
+                    if (queue.put(envelope)) {
+                        logger.debug("envelope submitted");
                     }
-                    queue.add(envelope);
-                    producer.signal();
-                    logger.debug("envelope submitted");
                 } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     logger.warn(message.fifoInterruptedWhileSubmitting(), e);
-                } finally {
-                    lock.unlock();
                 }
             };
         }
 
         public void shutdown() {
-            try {
-                lock.lock();
-                run = false;
-                producer.signalAll();
-                consumer.signalAll();
-            } finally {
-                lock.unlock();
-            }
+            queue.close();
+            logger.info("Fifo statistics - queue depth: {}, dropped envelopes: {}", queue.size(),
+                    queue.getDropped());
         }
 
         public void submit(WireEnvelope envelope) {
@@ -210,28 +203,39 @@ public class Fifo implements WireEmitter, WireReceiver, ConfigurableComponent {
 
         @Override
         public void run() {
-            while (run) {
+            final List<WireEnvelope> envelopes = new ArrayList<>();
+            while (true) {
+                envelopes.clear();
+                if (queue.peekTo(envelopes, MAX_DRAINED_ENVELOPES) == 0) {
+                    break;
+                }
+                emit(envelopes);
+            }
+            logger.debug("exiting");
+        }
+
+        /*
+         * Emits the envelopes read from the queue, merging the records of up to batchSize consecutive
+         * envelopes into a single emit. The envelopes are removed from the queue right before being emitted.
+         */
+        private void emit(List<WireEnvelope> envelopes) {
+            for (int start = 0; start < envelopes.size() && !queue.isClosed(); start += batchSize) {
+                final int end = Math.min(start + batchSize, envelopes.size());
+                queue.remove(end - start);
                 try {
-                    WireEnvelope next = null;
-                    try {
-                        lock.lock();
-                        while (run && queue.isEmpty()) {
-                            producer.await();
-                        }
-                        if (!run) {
-                            break;
+                    if (end - start == 1) {
+                        wireSupport.emit(envelopes.get(start).getRecords());
+                    } else {
+                        final List<WireRecord> records = new ArrayList<>();
+                        for (WireEnvelope envelope : envelopes.subList(start, end)) {
+                            records.addAll(envelope.getRecords());
                         }
-                        next = queue.remove(0);
-                        consumer.signal();
-                    } finally {
-                        lock.unlock();
+                        wireSupport.emit(records);
                     }
-                    wireSupport.emit(next.getRecords());
                 } catch (Exception e) {
                     logger.warn(message.fifoUnexpectedExceptionWhileDispatching(), e);
                 }
             }
-            logger.debug("exiting");
         }
     }
 }
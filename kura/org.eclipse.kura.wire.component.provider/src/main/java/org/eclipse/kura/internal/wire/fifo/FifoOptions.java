@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.fifo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+
+import org.eclipse.kura.configuration.ConfigurationService;
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+
+/**
+ * The Class FifoOptions is responsible to contain all the Fifo related configurable options. The options
+ * are validated on creation, so that an invalid configuration leaves the running emitter thread untouched.
+ */
+final class FifoOptions {
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    private static final String DISCARD_ENVELOPES_PROP_NAME = "discard.envelopes";
+    private static final String QUEUE_CAPACITY_PROP_NAME = "queue.capacity";
+    private static final String BATCH_SIZE_PROP_NAME = "batch.size";
+
+    /** The bounds of the queue capacity, as in the metatype. The queue slots are allocated upfront. */
+    static final int MIN_QUEUE_CAPACITY = 1;
+    static final int MAX_QUEUE_CAPACITY = 100000;
+
+    private final String threadName;
+    private final int queueCapacity;
+    private final boolean discardEnvelopes;
+    private final int batchSize;
+
+    /**
+     * Instantiates new Fifo options.
+     *
+     * @param properties
+     *            the provided properties
+     * @throws IllegalArgumentException
+     *             if the queue capacity is out of bounds
+     */
+    FifoOptions(final Map<String, Object> properties) {
+        requireNonNull(properties, message.propertiesNonNull());
+        this.threadName = (String) properties.getOrDefault(ConfigurationService.KURA_SERVICE_PID, "Fifo")
+                + "-EmitterThread";
+        this.queueCapacity = (Integer) properties.getOrDefault(QUEUE_CAPACITY_PROP_NAME, 50);
+        this.discardEnvelopes = (Boolean) properties.getOrDefault(DISCARD_ENVELOPES_PROP_NAME, false);
+        this.batchSize = Math.max(1, (Integer) properties.getOrDefault(BATCH_SIZE_PROP_NAME, 1));
+
+        if (this.queueCapacity < MIN_QUEUE_CAPACITY || this.queueCapacity > MAX_QUEUE_CAPACITY) {
+            throw new IllegalArgumentException(
+                    message.fifoInvalidQueueCapacity(MIN_QUEUE_CAPACITY, MAX_QUEUE_CAPACITY));
+        }
+    }
+
+    String getThreadName() {
+        return this.threadName;
+    }
+
+    int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    boolean isDiscardEnvelopes() {
+        return this.discardEnvelopes;
+    }
+
+    int getBatchSize() {
+        return this.batchSize;
+    }
+}
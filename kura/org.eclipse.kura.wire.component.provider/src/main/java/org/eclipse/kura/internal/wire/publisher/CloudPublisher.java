@@ -17,11 +17,16 @@ import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.cloud.CloudClient;
@@ -56,7 +61,12 @@ import org.slf4j.LoggerFactory;
  * <br/>
  *
  * For every {@link WireRecord} as found in {@link WireEnvelope} will be wrapped inside a Kura
- * Payload and will be sent to the Cloud Platform.
+ * Payload and will be sent to the Cloud Platform.<br/>
+ * <br/>
+ *
+ * If more than one record per message is allowed by the configuration, the {@link WireRecord}s to be
+ * published on the same topic are accumulated in a {@link WireRecordBatch} and published together
+ * once the configured number of records or payload size is reached, or the configured delay elapsed.
  */
 public final class CloudPublisher implements WireReceiver, CloudClientListener, ConfigurableComponent {
 
@@ -101,9 +111,6 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
 
     private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
 
-    private static final String TOPIC_PATTERN_STRING = "\\$([^\\s/]+)";
-    private static final Pattern TOPIC_PATTERN = Pattern.compile(TOPIC_PATTERN_STRING);
-
     private BundleContext bundleContext;
 
     private ServiceTrackerCustomizer<CloudService, CloudService> cloudServiceTrackerCustomizer;
@@ -112,14 +119,21 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
 
     private volatile CloudService cloudService;
 
-    private CloudClient cloudClient;
+    private volatile CloudClient cloudClient;
 
     private CloudPublisherOptions cloudPublisherOptions;
 
+    private volatile TopicTemplate topicTemplate;
+
     private volatile WireHelperService wireHelperService;
 
     private WireSupport wireSupport;
 
+    /** The batches of records waiting to be published, by application topic. Guarded by itself. */
+    private final Map<String, WireRecordBatch> batches = new LinkedHashMap<>();
+
+    private ScheduledExecutorService batchExecutor;
+
     // ----------------------------------------------------------------
     //
     // Dependencies
@@ -171,6 +185,17 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
 
         // Update properties
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
+        this.topicTemplate = new TopicTemplate(this.cloudPublisherOptions.getPublishingTopic());
+
+        this.batchExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "CloudPublisher:Batch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
         this.cloudServiceTrackerCustomizer = new CloudPublisherServiceTrackerCustomizer();
         initCloudServiceTracking();
@@ -186,8 +211,12 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
      */
     public void updated(final Map<String, Object> properties) {
         logger.debug(message.updatingCloudPublisher());
+        // publish the records accumulated with the previous configuration
+        flushBatches();
+
         // Update properties
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
+        this.topicTemplate = new TopicTemplate(this.cloudPublisherOptions.getPublishingTopic());
 
         if (nonNull(this.cloudServiceTracker)) {
             this.cloudServiceTracker.close();
@@ -205,6 +234,11 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
      */
     protected void deactivate(final ComponentContext componentContext) {
         logger.debug(message.deactivatingCloudPublisher());
+        flushBatches();
+        if (nonNull(this.batchExecutor)) {
+            this.batchExecutor.shutdownNow();
+        }
+
         // close the client
         closeCloudClient();
 
@@ -341,47 +375,154 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
         requireNonNull(this.cloudClient, message.cloudClientNonNull());
         requireNonNull(wireRecords, message.wireRecordsNonNull());
 
+        if (this.cloudPublisherOptions.getBatchMaxRecords() > 1) {
+            addToBatches(wireRecords);
+            return;
+        }
+
         try {
             for (final WireRecord dataRecord : wireRecords) {
                 // prepare the topic
                 final String appTopic = buildPublishAppTopic(dataRecord);
 
                 final KuraPayload kuraPayload = buildKuraPayload(dataRecord);
-                if (this.cloudPublisherOptions.isControlMessage()) {
-                    this.cloudClient.controlPublish(appTopic, kuraPayload,
-                            this.cloudPublisherOptions.getPublishingQos(),
-                            this.cloudPublisherOptions.getPublishingRetain(),
-                            this.cloudPublisherOptions.getPublishingPriority());
-                } else {
-                    this.cloudClient.publish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
-                            this.cloudPublisherOptions.getPublishingRetain(),
-                            this.cloudPublisherOptions.getPublishingPriority());
-                }
-
+                publishPayload(appTopic, kuraPayload);
             }
         } catch (final Exception e) {
             logger.error(message.errorPublishingWireRecords(), e);
         }
     }
 
-    private String buildPublishAppTopic(WireRecord dataRecord) {
-        Matcher matcher = TOPIC_PATTERN.matcher(this.cloudPublisherOptions.getPublishingTopic());
-        StringBuffer buffer = new StringBuffer();
+    /**
+     * Publishes the provided payload on the provided application topic, as configured.
+     *
+     * @param appTopic
+     *            the application topic
+     * @param kuraPayload
+     *            the payload to publish
+     * @throws KuraException
+     *             if the publishing fails
+     */
+    private void publishPayload(final String appTopic, final KuraPayload kuraPayload) throws KuraException {
+        if (this.cloudPublisherOptions.isControlMessage()) {
+            this.cloudClient.controlPublish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
+                    this.cloudPublisherOptions.getPublishingRetain(),
+                    this.cloudPublisherOptions.getPublishingPriority());
+        } else {
+            this.cloudClient.publish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
+                    this.cloudPublisherOptions.getPublishingRetain(),
+                    this.cloudPublisherOptions.getPublishingPriority());
+        }
+    }
+
+    /**
+     * Adds the provided {@link WireRecord}s to the batches of their topics, publishing the batches
+     * that reach the configured number of records or size.
+     *
+     * @param wireRecords
+     *            the provided list of {@link WireRecord}s
+     */
+    private void addToBatches(final List<WireRecord> wireRecords) {
+        final int maxRecords = this.cloudPublisherOptions.getBatchMaxRecords();
+        final int maxBytes = this.cloudPublisherOptions.getBatchMaxBytes();
 
-        while (matcher.find()) {
-            Map<String, TypedValue<?>> properties = dataRecord.getProperties();
-            if (properties.containsKey(matcher.group(1))) {
-                String replacement = matcher.group(0);
+        final List<WireRecordBatch> fullBatches = new ArrayList<>();
+        synchronized (this.batches) {
+            for (final WireRecord dataRecord : wireRecords) {
+                requireNonNull(dataRecord, message.wireRecordNonNull());
+                final String appTopic = buildPublishAppTopic(dataRecord);
+
+                WireRecordBatch batch = this.batches.get(appTopic);
+                if (isNull(batch)) {
+                    batch = new WireRecordBatch(appTopic);
+                    this.batches.put(appTopic, batch);
+                    scheduleFlush(batch);
+                }
+                batch.add(dataRecord);
 
-                TypedValue<?> value = properties.get(matcher.group(1));
-                if (replacement != null) {
-                    matcher.appendReplacement(buffer, value.getValue().toString());
-                    continue;
+                if (batch.getRecordCount() >= maxRecords || batch.getEstimatedSize() >= maxBytes) {
+                    this.batches.remove(appTopic);
+                    fullBatches.add(batch);
                 }
             }
         }
-        matcher.appendTail(buffer);
-        return buffer.toString();
+        // published outside the lock, not to block the other emitters on the cloud client
+        for (final WireRecordBatch batch : fullBatches) {
+            publishBatch(batch);
+        }
+    }
+
+    /**
+     * Schedules the publishing of the provided batch after the configured delay, if it has not
+     * been published in the meantime.
+     *
+     * @param batch
+     *            the new batch
+     */
+    private void scheduleFlush(final WireRecordBatch batch) {
+        if (isNull(this.batchExecutor)) {
+            return;
+        }
+        try {
+            this.batchExecutor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (CloudPublisher.this.batches) {
+                        if (CloudPublisher.this.batches.get(batch.getAppTopic()) != batch) {
+                            return;
+                        }
+                        CloudPublisher.this.batches.remove(batch.getAppTopic());
+                    }
+                    publishBatch(batch);
+                }
+            }, this.cloudPublisherOptions.getBatchMaxDelay(), TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            // deactivated, the pending batches are published by deactivate
+        }
+    }
+
+    /**
+     * Publishes all the batches waiting for their delay to elapse.
+     */
+    private void flushBatches() {
+        final List<WireRecordBatch> pendingBatches;
+        synchronized (this.batches) {
+            pendingBatches = new ArrayList<>(this.batches.values());
+            this.batches.clear();
+        }
+        for (final WireRecordBatch batch : pendingBatches) {
+            publishBatch(batch);
+        }
+    }
+
+    /**
+     * Publishes the payload of the provided batch. The batch is dropped if there is no cloud client.
+     *
+     * @param batch
+     *            the batch to publish
+     */
+    private void publishBatch(final WireRecordBatch batch) {
+        if (isNull(this.cloudClient)) {
+            logger.warn(message.cloudClientBatchDropped(batch.getRecordCount(), batch.getAppTopic()));
+            return;
+        }
+        try {
+            publishPayload(batch.getAppTopic(), batch.getPayload());
+        } catch (final Exception e) {
+            logger.error(message.errorPublishingWireRecords(), e);
+        }
+    }
+
+    /**
+     * Builds the application topic of the provided {@link WireRecord} from the configured topic template.
+     *
+     * @param dataRecord
+     *            the {@link WireRecord}
+     * @return the application topic
+     */
+    private String buildPublishAppTopic(final WireRecord dataRecord) {
+        return this.topicTemplate.render(dataRecord.getProperties());
     }
 
     /**
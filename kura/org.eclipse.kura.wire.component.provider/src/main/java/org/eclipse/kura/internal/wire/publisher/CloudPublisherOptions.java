@@ -47,6 +47,15 @@ final class CloudPublisherOptions {
     /** The Constant denoting MQTT topic. */
     private static final String CONF_TOPIC = "publish.topic";
 
+    /** The Constant denoting the maximum number of records published in a single message. */
+    private static final String CONF_BATCH_MAX_RECORDS = "publish.batch.max-records";
+
+    /** The Constant denoting the maximum estimated size of a message containing many records. */
+    private static final String CONF_BATCH_MAX_BYTES = "publish.batch.max-bytes";
+
+    /** The Constant denoting the maximum time the records wait before being published. */
+    private static final String CONF_BATCH_MAX_DELAY = "publish.batch.max-delay";
+
     private static final String DEFAULT_CLOUD_SERVICE_PID = "org.eclipse.kura.cloud.CloudService";
 
     /** The Constant application to perform (either publish or subscribe). */
@@ -64,6 +73,13 @@ final class CloudPublisherOptions {
     /** The Constant denoting default MQTT topic. */
     private static final String DEFAULT_TOPIC = "A1/$assetName";
 
+    /** The Constant denoting the default batch size, that publishes every record in its own message. */
+    private static final int DEFAULT_BATCH_MAX_RECORDS = 1;
+
+    private static final int DEFAULT_BATCH_MAX_BYTES = 65536;
+
+    private static final int DEFAULT_BATCH_MAX_DELAY = 1000;
+
     private final Map<String, Object> properties;
 
     /**
@@ -147,6 +163,48 @@ final class CloudPublisherOptions {
         return publishingTopic;
     }
 
+    /**
+     * Returns the maximum number of records to be published in a single message.
+     *
+     * @return the maximum number of records in a batch, 1 if the records are not batched
+     */
+    int getBatchMaxRecords() {
+        int batchMaxRecords = DEFAULT_BATCH_MAX_RECORDS;
+        final Object maxRecords = this.properties.get(CONF_BATCH_MAX_RECORDS);
+        if (nonNull(maxRecords) && maxRecords instanceof Integer) {
+            batchMaxRecords = (Integer) maxRecords;
+        }
+        return batchMaxRecords;
+    }
+
+    /**
+     * Returns the estimated payload size, in bytes, after which a batch of records is published.
+     *
+     * @return the maximum size of a batch
+     */
+    int getBatchMaxBytes() {
+        int batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+        final Object maxBytes = this.properties.get(CONF_BATCH_MAX_BYTES);
+        if (nonNull(maxBytes) && maxBytes instanceof Integer) {
+            batchMaxBytes = (Integer) maxBytes;
+        }
+        return batchMaxBytes;
+    }
+
+    /**
+     * Returns the maximum time, in milliseconds, a record waits in a batch before being published.
+     *
+     * @return the maximum delay of a batch
+     */
+    int getBatchMaxDelay() {
+        int batchMaxDelay = DEFAULT_BATCH_MAX_DELAY;
+        final Object maxDelay = this.properties.get(CONF_BATCH_MAX_DELAY);
+        if (nonNull(maxDelay) && maxDelay instanceof Integer) {
+            batchMaxDelay = (Integer) maxDelay;
+        }
+        return batchMaxDelay;
+    }
+
     /**
      * Returns the kura.service.pid of the cloud service to be used to publish the generated messages
      *
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.publisher;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.kura.type.TypedValue;
+
+/**
+ * The Class TopicTemplate is the parsed form of a publishing topic containing {@code $propertyName}
+ * placeholders.<br/>
+ * <br/>
+ *
+ * The topic is parsed once into the literal parts and the names of the placeholders between them.
+ * Rendering replaces every placeholder with the value of the record property having its name, or
+ * leaves it as it is if the record has no such property or its value is null. The most recently
+ * rendered topics are cached by placeholder values.
+ */
+final class TopicTemplate {
+
+    private static final Pattern TOPIC_PATTERN = Pattern.compile("\\$([^\\s/]+)");
+
+    private static final int CACHE_SIZE = 64;
+
+    private final String topic;
+
+    /** The literal parts of the topic, one more than the placeholders. */
+    private final String[] literals;
+
+    private final String[] placeholders;
+
+    /** The rendered topics, by placeholder values. Guarded by itself. */
+    private final Map<List<Object>, String> cache = new LinkedHashMap<List<Object>, String>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Parses the provided topic.
+     *
+     * @param topic
+     *            the topic, possibly containing {@code $propertyName} placeholders
+     * @throws NullPointerException
+     *             if the topic is null
+     */
+    TopicTemplate(final String topic) {
+        requireNonNull(topic);
+        this.topic = topic;
+
+        final List<String> literalList = new ArrayList<>();
+        final List<String> placeholderList = new ArrayList<>();
+        final Matcher matcher = TOPIC_PATTERN.matcher(topic);
+        int start = 0;
+        while (matcher.find()) {
+            literalList.add(topic.substring(start, matcher.start()));
+            placeholderList.add(matcher.group(1));
+            start = matcher.end();
+        }
+        literalList.add(topic.substring(start));
+
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+    }
+
+    /**
+     * Returns the topic for the provided record properties.
+     *
+     * @param properties
+     *            the properties of the record to be published
+     * @return the topic with the placeholders replaced
+     */
+    String render(final Map<String, TypedValue<?>> properties) {
+        if (this.placeholders.length == 0) {
+            return this.topic;
+        }
+
+        final Object[] values = new Object[this.placeholders.length];
+        for (int i = 0; i < this.placeholders.length; i++) {
+            final TypedValue<?> value = properties.get(this.placeholders[i]);
+            if (nonNull(value)) {
+                values[i] = value.getValue();
+            }
+        }
+        final List<Object> key = Arrays.asList(values);
+
+        synchronized (this.cache) {
+            final String cached = this.cache.get(key);
+            if (nonNull(cached)) {
+                return cached;
+            }
+        }
+
+        final StringBuilder builder = new StringBuilder(this.topic.length() + 16);
+        for (int i = 0; i < this.placeholders.length; i++) {
+            builder.append(this.literals[i]);
+            if (isNull(values[i])) {
+                builder.append('$').append(this.placeholders[i]);
+            } else {
+                builder.append(values[i].toString());
+            }
+        }
+        builder.append(this.literals[this.placeholders.length]);
+
+        final String rendered = builder.toString();
+        synchronized (this.cache) {
+            this.cache.put(key, rendered);
+        }
+        return rendered;
+    }
+}
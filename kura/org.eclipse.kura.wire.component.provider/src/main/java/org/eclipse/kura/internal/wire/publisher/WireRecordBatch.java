@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.publisher;
+
+import java.util.Map.Entry;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.wire.WireRecord;
+
+/**
+ * The Class WireRecordBatch accumulates the {@link WireRecord}s to be published on the same topic
+ * into a single {@link KuraPayload}.<br/>
+ * <br/>
+ *
+ * The properties of the record with index i in the batch are added as metrics named
+ * {@code i.propertyName}, the index starting from 0.
+ */
+final class WireRecordBatch {
+
+    /** The separator between the record index and the property name in the metric names. */
+    static final String INDEX_SEPARATOR = ".";
+
+    // Rough estimate of the encoding overhead of a metric, beside its name and value
+    private static final int METRIC_OVERHEAD = 8;
+    private static final int NUMERIC_VALUE_SIZE = 8;
+
+    private final String appTopic;
+    private final KuraPayload payload = new KuraPayload();
+    private int recordCount;
+    private int estimatedSize;
+
+    /**
+     * Instantiates a new empty batch.
+     *
+     * @param appTopic
+     *            the application topic of the records in the batch
+     */
+    WireRecordBatch(final String appTopic) {
+        this.appTopic = appTopic;
+    }
+
+    /**
+     * Adds the properties of the provided {@link WireRecord} to the batch payload.
+     *
+     * @param wireRecord
+     *            the {@link WireRecord} to add
+     */
+    void add(final WireRecord wireRecord) {
+        final String prefix = this.recordCount + INDEX_SEPARATOR;
+        for (final Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+            final String name = prefix + entry.getKey();
+            final Object value = entry.getValue().getValue();
+            this.payload.addMetric(name, value);
+            this.estimatedSize += METRIC_OVERHEAD + name.length() + estimateSize(value);
+        }
+        this.recordCount++;
+    }
+
+    /**
+     * Returns the application topic of the records in the batch.
+     *
+     * @return the application topic
+     */
+    String getAppTopic() {
+        return this.appTopic;
+    }
+
+    /**
+     * Returns the payload containing all the records added to the batch.
+     *
+     * @return the batch payload
+     */
+    KuraPayload getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * Returns the number of records added to the batch.
+     *
+     * @return the number of records
+     */
+    int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Returns an estimate of the encoded size of the batch payload, in bytes.
+     *
+     * @return the estimated size
+     */
+    int getEstimatedSize() {
+        return this.estimatedSize;
+    }
+
+    private static int estimateSize(final Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return NUMERIC_VALUE_SIZE;
+    }
+}
@@ -26,10 +26,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.MessageFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.db.DbService;
@@ -60,7 +69,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The Class DbWireRecordStore is a wire component which is responsible to store
- * the received {@link WireRecord}.
+ * the received {@link WireRecord}.<br/>
+ * <br/>
+ *
+ * The records are inserted in JDBC batches, one statement being prepared per set of columns and
+ * per write. The number of rows of the table is counted once and then kept up to date, to decide
+ * when to clean the table up. If a flush interval is configured, the received records are emitted
+ * right away and written in the background.
  */
 public final class DbWireRecordStore implements WireEmitter, WireReceiver, ConfigurableComponent {
 
@@ -90,6 +105,13 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     private static final String[] TABLE_TYPE = new String[] { "TABLE" };
 
+    /** The number of pending records after which they are written without waiting for the flush interval. */
+    private static final int MAX_PENDING_RECORDS = 1000;
+
+    private static final int MAX_CACHED_INSERT_STATEMENTS = 64;
+
+    private static final long THREAD_TERMINATION_TOUT = 30;
+
     private DbServiceHelper dbHelper;
 
     private volatile DbService dbService;
@@ -100,6 +122,19 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     private WireSupport wireSupport;
 
+    /** The records waiting to be written. Guarded by itself. */
+    private final List<PendingRecord> pendingRecords = new ArrayList<>();
+
+    /** The INSERT statements, by column names. Guarded by this. */
+    private final Map<List<String>, String> insertStatements = new HashMap<>();
+
+    /** The number of rows of the table, -1 if not known. Guarded by this. */
+    private int tableSize = -1;
+
+    private ScheduledExecutorService flushExecutor;
+
+    private ScheduledFuture<?> flushTask;
+
     /**
      * Binds the DB service.
      *
@@ -162,8 +197,19 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
         this.dbHelper = DbServiceHelper.of(this.dbService);
         this.wireSupport = this.wireHelperService.newWireSupport(this);
 
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "DbWireRecordStore:Flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         final String tableName = this.wireRecordStoreOptions.getTableName();
         reconcileDB(tableName);
+        scheduleFlush();
         logger.debug(message.activatingStoreDone());
     }
 
@@ -175,10 +221,18 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
      */
     public void updated(final Map<String, Object> properties) {
         logger.debug(message.updatingStore());
-        this.wireRecordStoreOptions = new DbWireRecordStoreOptions(properties);
+        // write the pending records to the previously configured table
+        flush();
+
+        synchronized (this) {
+            this.wireRecordStoreOptions = new DbWireRecordStoreOptions(properties);
+            this.insertStatements.clear();
+            this.tableSize = -1;
+        }
 
         final String tableName = this.wireRecordStoreOptions.getTableName();
         reconcileDB(tableName);
+        scheduleFlush();
         logger.debug(message.updatingStoreDone());
     }
 
@@ -190,6 +244,16 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
      */
     protected void deactivate(final ComponentContext componentContext) {
         logger.debug(message.deactivatingStore());
+        if (nonNull(this.flushExecutor)) {
+            // interrupting a batch write would abort it, the running flush is awaited instead
+            this.flushExecutor.shutdown();
+            try {
+                this.flushExecutor.awaitTermination(THREAD_TERMINATION_TOUT, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
         logger.debug(message.deactivatingStoreDone());
     }
 
@@ -273,21 +337,23 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void onWireReceive(final WireEnvelope wireEvelope) {
+    public void onWireReceive(final WireEnvelope wireEvelope) {
         requireNonNull(wireEvelope, message.wireEnvelopeNonNull());
         logger.debug(message.wireEnvelopeReceived() + this.wireSupport);
 
-        try {
-            if (getTableSize() >= this.wireRecordStoreOptions.getMaximumTableSize()) {
-                truncate();
+        final List<WireRecord> records = wireEvelope.getRecords();
+        final long timestamp = System.currentTimeMillis();
+        boolean flushNow;
+        synchronized (this.pendingRecords) {
+            for (WireRecord wireRecord : records) {
+                requireNonNull(wireRecord, message.wireRecordNonNull());
+                this.pendingRecords.add(new PendingRecord(wireRecord, timestamp));
             }
-        } catch (SQLException e) {
-            logger.warn("Exception while trying to clean db");
+            flushNow = this.wireRecordStoreOptions.getFlushInterval() <= 0
+                    || this.pendingRecords.size() >= MAX_PENDING_RECORDS;
         }
-
-        final List<WireRecord> records = wireEvelope.getRecords();
-        for (WireRecord wireRecord : records) {
-            store(wireRecord);
+        if (flushNow) {
+            flush();
         }
 
         // emit the list of Wire Records to the downstream components
@@ -295,27 +361,99 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
     }
 
     /**
-     * Stores the provided {@link WireRecord} in the database
+     * Schedules the periodic writing of the pending records, if a flush interval is configured.
+     */
+    private synchronized void scheduleFlush() {
+        if (nonNull(this.flushTask)) {
+            this.flushTask.cancel(false);
+            this.flushTask = null;
+        }
+        final int flushInterval = this.wireRecordStoreOptions.getFlushInterval();
+        if (flushInterval > 0) {
+            this.flushTask = this.flushExecutor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the pending records to the database.
+     */
+    private synchronized void flush() {
+        final List<PendingRecord> records;
+        synchronized (this.pendingRecords) {
+            if (this.pendingRecords.isEmpty()) {
+                return;
+            }
+            records = new ArrayList<>(this.pendingRecords);
+            this.pendingRecords.clear();
+        }
+        try {
+            store(records);
+        } catch (final RuntimeException e) {
+            logger.error(message.errorStoring(), e);
+        }
+    }
+
+    /**
+     * Stores the provided records in the database, cleaning the table up first if it is full.
      *
-     * @param wireRecord
-     *            the {@link WireRecord} to be stored
-     * @throws NullPointerException
-     *             if the provided argument is null
+     * @param records
+     *            the records to be stored
      */
-    private void store(final WireRecord wireRecord) {
-        requireNonNull(wireRecord, message.wireRecordNonNull());
+    private void store(final List<PendingRecord> records) {
+        try {
+            if (this.tableSize < 0) {
+                this.tableSize = getTableSize();
+            }
+            if (this.tableSize >= this.wireRecordStoreOptions.getMaximumTableSize()) {
+                truncate();
+                this.tableSize = getTableSize();
+            }
+        } catch (SQLException e) {
+            this.tableSize = -1;
+            logger.warn("Exception while trying to clean db");
+        }
+
         int retryCount = 0;
         final String tableName = this.wireRecordStoreOptions.getTableName();
         do {
             try {
-                insertDataRecord(tableName, wireRecord);
-                break;
-            } catch (final SQLException e) {
+                insertDataRecords(tableName, records);
+                if (this.tableSize >= 0) {
+                    this.tableSize += records.size();
+                }
+                return;
+            } catch (final SQLException | RuntimeException e) {
                 logger.error(message.insertionFailed(), e);
-                reconcileDB(wireRecord, tableName);
+                // reconcile the table against every set of columns in the batch
+                final Set<Set<String>> columnSets = new LinkedHashSet<>();
+                for (PendingRecord pendingRecord : records) {
+                    if (columnSets.add(pendingRecord.wireRecord.getProperties().keySet())) {
+                        reconcileDB(pendingRecord.wireRecord, tableName);
+                    }
+                }
                 retryCount++;
             }
         } while (retryCount < 2);
+
+        // a single record may fail the whole batch: store the others one by one
+        if (records.size() > 1) {
+            for (final PendingRecord pendingRecord : records) {
+                try {
+                    insertDataRecords(tableName, Collections.singletonList(pendingRecord));
+                    if (this.tableSize >= 0) {
+                        this.tableSize++;
+                    }
+                } catch (final SQLException | RuntimeException e) {
+                    logger.error(message.insertionFailed(), e);
+                }
+            }
+        }
     }
 
     /**
@@ -461,42 +599,89 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
     }
 
     /**
-     * Insert the provided {@link WireRecord} to the specified table
+     * Inserts the provided records to the specified table, in a single transaction. The consecutive
+     * records having the same columns are inserted in a single JDBC batch.
      *
      * @param tableName
      *            the table name
-     * @param wireRecord
-     *            the {@link WireRecord}
+     * @param records
+     *            the records to insert
      * @throws SQLException
      *             the SQL exception
      * @throws NullPointerException
      *             if any of the provided arguments is null
      */
-    private void insertDataRecord(final String tableName, final WireRecord wireRecord) throws SQLException {
+    private void insertDataRecords(final String tableName, final List<PendingRecord> records) throws SQLException {
         requireNonNull(tableName, message.tableNameNonNull());
-        requireNonNull(wireRecord, message.wireRecordNonNull());
-
-        final Map<String, TypedValue<?>> wireRecordProperties = wireRecord.getProperties();
+        requireNonNull(records, message.wireRecordsNonNull());
 
         Connection connection = null;
-        PreparedStatement stmt = null;
+        boolean autoCommit = true;
+        final Map<List<String>, PreparedStatement> statements = new HashMap<>();
         try {
             connection = this.dbHelper.getConnection();
-            stmt = prepareStatement(connection, tableName, wireRecordProperties, new Date().getTime());
-            stmt.execute();
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            // prepare all the statements first, so that a missing column fails before anything is written
+            final List<List<String>> recordColumns = new ArrayList<>(records.size());
+            for (PendingRecord pendingRecord : records) {
+                final List<String> columns = new ArrayList<>(pendingRecord.wireRecord.getProperties().keySet());
+                if (!statements.containsKey(columns)) {
+                    statements.put(columns, connection.prepareStatement(getInsertStatement(tableName, columns)));
+                }
+                recordColumns.add(columns);
+            }
+
+            List<String> batchColumns = null;
+            PreparedStatement batchStmt = null;
+            for (int i = 0; i < records.size(); i++) {
+                final PendingRecord pendingRecord = records.get(i);
+                final List<String> columns = recordColumns.get(i);
+                if (!columns.equals(batchColumns)) {
+                    if (nonNull(batchStmt)) {
+                        batchStmt.executeBatch();
+                    }
+                    batchColumns = columns;
+                    batchStmt = statements.get(columns);
+                }
+                setParameters(batchStmt, columns, pendingRecord.wireRecord.getProperties(), pendingRecord.timestamp);
+                batchStmt.addBatch();
+            }
+            if (nonNull(batchStmt)) {
+                batchStmt.executeBatch();
+            }
             connection.commit();
             logger.debug(message.stored());
-        } catch (final SQLException e) {
-            this.dbHelper.rollback(connection);
+        } catch (final SQLException | RuntimeException e) {
+            if (nonNull(connection)) {
+                this.dbHelper.rollback(connection);
+            }
             throw e;
         } finally {
-            this.dbHelper.close(stmt);
+            for (PreparedStatement stmt : statements.values()) {
+                this.dbHelper.close(stmt);
+            }
+            if (nonNull(connection) && autoCommit) {
+                connection.setAutoCommit(true);
+            }
             this.dbHelper.close(connection);
         }
     }
 
-    private PreparedStatement prepareStatement(Connection connection, String tableName,
-            final Map<String, TypedValue<?>> properties, long timestamp) throws SQLException {
+    /**
+     * Returns the INSERT statement for the provided columns, building it the first time.
+     *
+     * @param tableName
+     *            the table name
+     * @param columns
+     *            the names of the inserted columns, besides the timestamp
+     * @return the INSERT statement
+     */
+    private String getInsertStatement(final String tableName, final List<String> columns) {
+        String sqlInsert = this.insertStatements.get(columns);
+        if (nonNull(sqlInsert)) {
+            return sqlInsert;
+        }
 
         final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
         final StringBuilder sbCols = new StringBuilder();
@@ -506,22 +691,29 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
         sbCols.append("TIMESTAMP");
         sbVals.append("?");
 
-        int i = 2;
-        for (Entry<String, TypedValue<?>> entry : properties.entrySet()) {
-            final String sqlColName = this.dbHelper.sanitizeSqlTableAndColumnName(entry.getKey());
+        for (String column : columns) {
+            final String sqlColName = this.dbHelper.sanitizeSqlTableAndColumnName(column);
             sbCols.append(", ").append(sqlColName);
             sbVals.append(", ?");
         }
 
         logger.debug(message.storingRecord(sqlTableName));
-        final String sqlInsert = MessageFormat.format(SQL_INSERT_RECORD, sqlTableName, sbCols.toString(),
-                sbVals.toString());
-        final PreparedStatement stmt = connection.prepareStatement(sqlInsert);
+        sqlInsert = MessageFormat.format(SQL_INSERT_RECORD, sqlTableName, sbCols.toString(), sbVals.toString());
+        if (this.insertStatements.size() >= MAX_CACHED_INSERT_STATEMENTS) {
+            this.insertStatements.clear();
+        }
+        this.insertStatements.put(columns, sqlInsert);
+        return sqlInsert;
+    }
+
+    private void setParameters(final PreparedStatement stmt, final List<String> columns,
+            final Map<String, TypedValue<?>> properties, final long timestamp) throws SQLException {
         stmt.setLong(1, timestamp);
 
-        for (Entry<String, TypedValue<?>> entry : properties.entrySet()) {
-            final DataType dataType = entry.getValue().getType();
-            final Object value = entry.getValue();
+        int i = 2;
+        for (String column : columns) {
+            final TypedValue<?> value = properties.get(column);
+            final DataType dataType = value.getType();
             switch (dataType) {
             case BOOLEAN:
                 stmt.setBoolean(i, ((BooleanValue) value).getValue());
@@ -551,7 +743,6 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
             }
             i++;
         }
-        return stmt;
     }
 
     /** {@inheritDoc} */
@@ -571,4 +762,18 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
     public void updated(final Wire wire, final Object value) {
         this.wireSupport.updated(wire, value);
     }
+
+    /**
+     * A received record waiting to be written, with the time it was received at.
+     */
+    private static final class PendingRecord {
+
+        private final WireRecord wireRecord;
+        private final long timestamp;
+
+        PendingRecord(final WireRecord wireRecord, final long timestamp) {
+            this.wireRecord = wireRecord;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -37,6 +37,8 @@ final class DbWireRecordStoreOptions {
 
     private static final String TABLE_NAME = "table.name";
 
+    private static final String FLUSH_INTERVAL = "flush.interval";
+
     private final Map<String, Object> properties;
 
     /**
@@ -73,6 +75,21 @@ final class DbWireRecordStoreOptions {
         return maximumSize;
     }
 
+    /**
+     * Returns the interval, in milliseconds, between the writes of the received records to the
+     * database.
+     *
+     * @return the flush interval, 0 if the records are written as soon as they are received
+     */
+    int getFlushInterval() {
+        int flushInterval = 0;
+        final Object interval = this.properties.get(FLUSH_INTERVAL);
+        if (nonNull(interval) && interval instanceof Integer) {
+            flushInterval = (Integer) interval;
+        }
+        return flushInterval;
+    }
+
     /**
      * Returns the name of the table as configured.
      *
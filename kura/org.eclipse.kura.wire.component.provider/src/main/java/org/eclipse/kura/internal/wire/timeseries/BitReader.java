@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import java.io.EOFException;
+
+/**
+ * The Class BitReader reads the values written by a {@link BitWriter}.
+ */
+final class BitReader {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final long bitLimit;
+    private long bitPosition;
+
+    /**
+     * Instantiates a new reader of the provided byte range.
+     *
+     * @param bytes
+     *            the bytes to read
+     * @param offset
+     *            the offset of the first byte
+     * @param length
+     *            the number of bytes
+     */
+    BitReader(final byte[] bytes, final int offset, final int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.bitLimit = (long) length << 3;
+    }
+
+    /**
+     * Reads a single bit.
+     *
+     * @return the bit read
+     * @throws EOFException
+     *             if there are no bits left
+     */
+    boolean readBit() throws EOFException {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * Reads a value of the provided number of bits.
+     *
+     * @param count
+     *            the number of bits, from 0 to 64
+     * @return the value read, in the least significant bits
+     * @throws EOFException
+     *             if there are not enough bits left
+     */
+    long readBits(final int count) throws EOFException {
+        if (this.bitPosition + count > this.bitLimit) {
+            throw new EOFException();
+        }
+        long value = 0;
+        for (int remaining = count; remaining > 0;) {
+            final int current = this.bytes[this.offset + (int) (this.bitPosition >>> 3)] & 0xFF;
+            final int available = 8 - (int) (this.bitPosition & 7);
+            final int read = Math.min(available, remaining);
+            final int bits = (current >>> (available - read)) & ((1 << read) - 1);
+            value = (value << read) | bits;
+            this.bitPosition += read;
+            remaining -= read;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of whole bytes left.
+     *
+     * @return the number of bytes left
+     */
+    long getRemainingBytes() {
+        return (this.bitLimit - this.bitPosition) >>> 3;
+    }
+
+    /**
+     * Reads the provided number of bytes.
+     *
+     * @param length
+     *            the number of bytes
+     * @return the bytes read
+     * @throws EOFException
+     *             if there are not enough bits left
+     */
+    byte[] readBytes(final int length) throws EOFException {
+        final byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) readBits(8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * The Class BitWriter writes values of arbitrary bit lengths to a growing byte array, most
+ * significant bit first.
+ */
+final class BitWriter {
+
+    private byte[] bytes;
+    private long bitLength;
+
+    /**
+     * Instantiates a new empty writer.
+     *
+     * @param initialCapacity
+     *            the initial capacity in bytes
+     */
+    BitWriter(final int initialCapacity) {
+        this.bytes = new byte[Math.max(initialCapacity, 8)];
+    }
+
+    /**
+     * Writes a single bit.
+     *
+     * @param bit
+     *            the bit to write
+     */
+    void writeBit(final boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the provided number of least significant bits of the value.
+     *
+     * @param value
+     *            the value to write
+     * @param count
+     *            the number of bits to write, from 0 to 64
+     */
+    void writeBits(final long value, final int count) {
+        ensureCapacity(this.bitLength + count);
+        for (int remaining = count; remaining > 0;) {
+            final int byteIndex = (int) (this.bitLength >>> 3);
+            final int free = 8 - (int) (this.bitLength & 7);
+            final int written = Math.min(free, remaining);
+            final int bits = (int) (value >>> (remaining - written)) & ((1 << written) - 1);
+            this.bytes[byteIndex] |= bits << (free - written);
+            this.bitLength += written;
+            remaining -= written;
+        }
+    }
+
+    /**
+     * Writes the provided bytes.
+     *
+     * @param value
+     *            the bytes to write
+     */
+    void writeBytes(final byte[] value) {
+        for (final byte b : value) {
+            writeBits(b, 8);
+        }
+    }
+
+    /**
+     * Returns the written bytes, the last one padded with zero bits.
+     *
+     * @return a copy of the written bytes
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, (int) ((this.bitLength + 7) >>> 3));
+    }
+
+    private void ensureCapacity(final long bits) {
+        final int required = (int) ((bits + 7) >>> 3);
+        if (required > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(required, this.bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
+
+import java.io.EOFException;
+
+import org.eclipse.kura.type.DataType;
+
+/**
+ * The Class ChunkCodec encodes the points of a channel, that is their timestamps and values, in a
+ * compact bit stream.<br/>
+ * <br/>
+ *
+ * Timestamps are encoded as the difference between consecutive deltas, which is 0 for points
+ * sampled at a regular rate, followed by the sequence of the point within its millisecond, a single
+ * bit for the first point of the millisecond. Integer and long values are encoded as the difference from the
+ * previous value, in the same variable length buckets. Double and float values are encoded as the
+ * XOR with the previous value, only storing the meaningful bits. Booleans take a single bit, while
+ * strings and byte arrays are stored as they are, prefixed by their length.
+ */
+final class ChunkCodec {
+
+    private static final int NULL_LENGTH = -1;
+
+    private ChunkCodec() {
+        // Static Factory Methods container. No need to instantiate.
+    }
+
+    /**
+     * Encodes the provided points.
+     *
+     * @param type
+     *            the type of the values
+     * @param timestamps
+     *            the non decreasing timestamps of the points
+     * @param sequences
+     *            the sequences of the points within their millisecond
+     * @param values
+     *            the values of the points, of the type matching the provided {@link DataType}
+     * @param count
+     *            the number of points
+     * @return the encoded points
+     */
+    static byte[] encode(final DataType type, final long[] timestamps, final int[] sequences, final Object[] values,
+            final int count) {
+        final BitWriter writer = new BitWriter(count * 2 + 16);
+        long previousTimestamp = 0;
+        long previousDelta = 0;
+        long previousValue = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                writer.writeBits(timestamps[0], 64);
+            } else {
+                final long delta = timestamps[i] - previousTimestamp;
+                writeBucketed(writer, delta - previousDelta);
+                previousDelta = delta;
+            }
+            previousTimestamp = timestamps[i];
+            writeBucketed(writer, sequences[i]);
+
+            switch (type) {
+            case BOOLEAN:
+                writer.writeBit((Boolean) values[i]);
+                break;
+            case INTEGER:
+            case LONG:
+                final long longValue = ((Number) values[i]).longValue();
+                if (i == 0) {
+                    writer.writeBits(longValue, 64);
+                } else {
+                    writeBucketed(writer, longValue - previousValue);
+                }
+                previousValue = longValue;
+                break;
+            case DOUBLE:
+            case FLOAT:
+                final long bits = type == DataType.DOUBLE ? Double.doubleToRawLongBits((Double) values[i])
+                        : Float.floatToRawIntBits((Float) values[i]) & 0xFFFFFFFFL;
+                if (i == 0) {
+                    writer.writeBits(bits, 64);
+                } else {
+                    final long xor = bits ^ previousValue;
+                    if (xor == 0) {
+                        writer.writeBit(false);
+                    } else {
+                        writer.writeBit(true);
+                        final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                        final int trailing = Long.numberOfTrailingZeros(xor);
+                        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                            // the meaningful bits fit in the previous window
+                            writer.writeBit(false);
+                            writer.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                        } else {
+                            final int significant = 64 - leading - trailing;
+                            writer.writeBit(true);
+                            writer.writeBits(leading, 5);
+                            writer.writeBits(significant - 1, 6);
+                            writer.writeBits(xor >>> trailing, significant);
+                            previousLeading = leading;
+                            previousTrailing = trailing;
+                        }
+                    }
+                }
+                previousValue = bits;
+                break;
+            case STRING:
+                writeBytes(writer, isNull(values[i]) ? null : ((String) values[i]).getBytes(UTF_8));
+                break;
+            case BYTE_ARRAY:
+                writeBytes(writer, (byte[]) values[i]);
+                break;
+            default:
+                throw new IllegalArgumentException(type.name());
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decodes points previously encoded by {@link #encode(DataType, long[], int[], Object[], int)}.
+     *
+     * @param type
+     *            the type of the values
+     * @param bytes
+     *            the array containing the encoded points
+     * @param offset
+     *            the offset of the encoded points
+     * @param length
+     *            the length of the encoded points
+     * @param timestamps
+     *            the array the timestamps are decoded to
+     * @param sequences
+     *            the array the sequences are decoded to
+     * @param values
+     *            the array the values are decoded to
+     * @param count
+     *            the number of points
+     * @throws EOFException
+     *             if the encoded points are truncated
+     */
+    static void decode(final DataType type, final byte[] bytes, final int offset, final int length,
+            final long[] timestamps, final int[] sequences, final Object[] values, final int count)
+            throws EOFException {
+        final BitReader reader = new BitReader(bytes, offset, length);
+        long previousTimestamp = 0;
+        long previousDelta = 0;
+        long previousValue = 0;
+        int previousLeading = 0;
+        int previousTrailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                timestamps[0] = reader.readBits(64);
+            } else {
+                previousDelta += readBucketed(reader);
+                timestamps[i] = previousTimestamp + previousDelta;
+            }
+            previousTimestamp = timestamps[i];
+            sequences[i] = (int) readBucketed(reader);
+
+            switch (type) {
+            case BOOLEAN:
+                values[i] = reader.readBit();
+                break;
+            case INTEGER:
+            case LONG:
+                previousValue = i == 0 ? reader.readBits(64) : previousValue + readBucketed(reader);
+                values[i] = type == DataType.LONG ? (Object) previousValue : (Object) (int) previousValue;
+                break;
+            case DOUBLE:
+            case FLOAT:
+                if (i == 0) {
+                    previousValue = reader.readBits(64);
+                } else if (reader.readBit()) {
+                    if (reader.readBit()) {
+                        previousLeading = (int) reader.readBits(5);
+                        final int significant = (int) reader.readBits(6) + 1;
+                        previousTrailing = 64 - previousLeading - significant;
+                    }
+                    final long xor = reader.readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+                    previousValue ^= xor;
+                }
+                values[i] = type == DataType.DOUBLE ? (Object) Double.longBitsToDouble(previousValue)
+                        : (Object) Float.intBitsToFloat((int) previousValue);
+                break;
+            case STRING:
+                final byte[] string = readBytes(reader);
+                values[i] = isNull(string) ? null : new String(string, UTF_8);
+                break;
+            case BYTE_ARRAY:
+                values[i] = readBytes(reader);
+                break;
+            default:
+                throw new IllegalArgumentException(type.name());
+            }
+        }
+    }
+
+    /**
+     * Writes a signed value in the smallest of the buckets: '0' for 0, then '10', '110' and '1110'
+     * followed by 7, 9 and 12 bits, and '1111' followed by the 64 bits of the value.
+     */
+    private static void writeBucketed(final BitWriter writer, final long value) {
+        if (value == 0) {
+            writer.writeBit(false);
+        } else if (value >= -64 && value < 64) {
+            writer.writeBits(0b10, 2);
+            writer.writeBits(value, 7);
+        } else if (value >= -256 && value < 256) {
+            writer.writeBits(0b110, 3);
+            writer.writeBits(value, 9);
+        } else if (value >= -2048 && value < 2048) {
+            writer.writeBits(0b1110, 4);
+            writer.writeBits(value, 12);
+        } else {
+            writer.writeBits(0b1111, 4);
+            writer.writeBits(value, 64);
+        }
+    }
+
+    private static long readBucketed(final BitReader reader) throws EOFException {
+        int size = 0;
+        while (size < 4 && reader.readBit()) {
+            size++;
+        }
+        switch (size) {
+        case 0:
+            return 0;
+        case 1:
+            return signExtend(reader.readBits(7), 7);
+        case 2:
+            return signExtend(reader.readBits(9), 9);
+        case 3:
+            return signExtend(reader.readBits(12), 12);
+        default:
+            return reader.readBits(64);
+        }
+    }
+
+    private static long signExtend(final long value, final int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static void writeBytes(final BitWriter writer, final byte[] value) {
+        if (isNull(value)) {
+            writer.writeBits(NULL_LENGTH, 32);
+        } else {
+            writer.writeBits(value.length, 32);
+            writer.writeBytes(value);
+        }
+    }
+
+    private static byte[] readBytes(final BitReader reader) throws EOFException {
+        final int length = (int) reader.readBits(32);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > reader.getRemainingBytes()) {
+            throw new EOFException("Corrupt chunk: invalid byte array length " + length);
+        }
+        return reader.readBytes(length);
+    }
+}
@@ -0,0 +1,630 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class TimeSeriesStore stores the properties of {@link WireRecord}s by channel, that is by
+ * property name, in compressed chunks of consecutive points.<br/>
+ * <br/>
+ *
+ * The points of every channel are buffered in memory until the chunk size is reached or the store
+ * is flushed; the chunk is then encoded by {@link ChunkCodec} and appended to the file of the time
+ * partition it belongs to, named after the start of the partition. Each chunk is written as a
+ * block prefixed by its length and CRC-32, and starting with the channel name and type, the number
+ * of points and the first and last timestamps, so that queries skip the blocks out of the requested
+ * range without decoding them. A complete block with a checksum mismatch is skipped, while the end
+ * of a partition left by an interrupted write, which does not hold a complete block with a matching
+ * checksum, is ignored by the queries and truncated before the store appends to the partition
+ * again. Retention is enforced by deleting whole partition files.<br/>
+ * <br/>
+ *
+ * Records keep the time they have been received, the records received in the same millisecond
+ * being told apart by their sequence within the millisecond, and are rebuilt by queries in order
+ * with a {@link #TIMESTAMP} property. A record received before the previous one, after a clock
+ * adjustment, is stored in the millisecond of the previous one.
+ */
+final class TimeSeriesStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    /** The name of the property holding the timestamp of the records returned by the queries. */
+    static final String TIMESTAMP = "TIMESTAMP";
+
+    private static final String PARTITION_SUFFIX = ".tsp";
+
+    private static final Pattern PARTITION_PATTERN = Pattern.compile("(-?\\d+)\\" + PARTITION_SUFFIX);
+
+    /** The length of the block length and checksum preceding every block. */
+    private static final int BLOCK_HEADER_LENGTH = 8;
+
+    private final File directory;
+
+    private final long partitionDuration;
+
+    private final long retentionTime;
+
+    private final int chunkSize;
+
+    /** The buffered points, by channel name. Guarded by this. */
+    private final Map<String, ChannelBuffer> buffers = new LinkedHashMap<>();
+
+    /** The chunks waiting to be written. Guarded by this. */
+    private final List<Chunk> sealedChunks = new ArrayList<>();
+
+    /** The timestamp of the last stored record. Guarded by this. */
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /** The sequence of the last stored record within its millisecond. Guarded by this. */
+    private int lastSequence;
+
+    /** The partitions whose end has been checked for a torn block. Guarded by this. */
+    private final Set<Long> verifiedPartitions = new HashSet<>();
+
+    /**
+     * Instantiates a new store.
+     *
+     * @param directory
+     *            the directory containing the partition files
+     * @param partitionDuration
+     *            the duration of a partition in milliseconds
+     * @param retentionTime
+     *            the time in milliseconds after which a partition is deleted, 0 to keep the
+     *            partitions forever
+     * @param chunkSize
+     *            the maximum number of points of a chunk
+     * @throws NullPointerException
+     *             if the directory is null
+     * @throws IllegalArgumentException
+     *             if the partition duration or the chunk size are not positive
+     */
+    TimeSeriesStore(final File directory, final long partitionDuration, final long retentionTime,
+            final int chunkSize) {
+        requireNonNull(directory);
+        if (partitionDuration <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Partition duration and chunk size must be positive");
+        }
+        this.directory = directory;
+        this.partitionDuration = partitionDuration;
+        this.retentionTime = retentionTime;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Buffers the properties of a record.
+     *
+     * @param timestamp
+     *            the time the record has been received
+     * @param properties
+     *            the properties of the record
+     * @return the timestamp the record has been stored with
+     */
+    synchronized long append(final long timestamp, final Map<String, TypedValue<?>> properties) {
+        final long recordTimestamp = Math.max(timestamp, this.lastTimestamp);
+        this.lastSequence = recordTimestamp == this.lastTimestamp ? this.lastSequence + 1 : 0;
+        this.lastTimestamp = recordTimestamp;
+
+        for (final Entry<String, TypedValue<?>> entry : properties.entrySet()) {
+            final TypedValue<?> value = entry.getValue();
+            if (isNull(value) || isNull(value.getValue())) {
+                continue;
+            }
+            ChannelBuffer buffer = this.buffers.get(entry.getKey());
+            if (nonNull(buffer) && (buffer.type != value.getType()
+                    || partitionOf(buffer.timestamps[0]) != partitionOf(recordTimestamp))) {
+                // a chunk never spans over several types or partitions
+                seal(buffer);
+                buffer = null;
+            }
+            if (isNull(buffer)) {
+                buffer = new ChannelBuffer(entry.getKey(), value.getType(), this.chunkSize);
+                this.buffers.put(entry.getKey(), buffer);
+            }
+            buffer.add(recordTimestamp, this.lastSequence, value.getValue());
+            if (buffer.count == this.chunkSize) {
+                seal(buffer);
+                this.buffers.remove(entry.getKey());
+            }
+        }
+        return recordTimestamp;
+    }
+
+    private void seal(final ChannelBuffer buffer) {
+        if (buffer.count > 0) {
+            this.sealedChunks.add(buffer.encode());
+        }
+    }
+
+    /**
+     * Writes all the buffered points to the partition files.
+     *
+     * @throws IOException
+     *             if the points could not be written, in which case they are kept for the next flush
+     */
+    synchronized void flush() throws IOException {
+        for (final ChannelBuffer buffer : this.buffers.values()) {
+            seal(buffer);
+        }
+        this.buffers.clear();
+        if (this.sealedChunks.isEmpty()) {
+            return;
+        }
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + this.directory);
+        }
+
+        final Map<Long, ByteArrayOutputStream> partitions = new TreeMap<>();
+        for (final Chunk chunk : this.sealedChunks) {
+            final Long partition = partitionOf(chunk.firstTimestamp);
+            ByteArrayOutputStream blocks = partitions.get(partition);
+            if (isNull(blocks)) {
+                blocks = new ByteArrayOutputStream();
+                partitions.put(partition, blocks);
+            }
+            chunk.writeTo(new DataOutputStream(blocks));
+        }
+
+        final List<Long> written = new ArrayList<>();
+        try {
+            for (final Entry<Long, ByteArrayOutputStream> entry : partitions.entrySet()) {
+                append(entry.getKey(), entry.getValue().toByteArray());
+                written.add(entry.getKey());
+            }
+        } finally {
+            // keep the chunks of the partitions which have not been written
+            final List<Chunk> remaining = new ArrayList<>();
+            for (final Chunk chunk : this.sealedChunks) {
+                if (!written.contains(partitionOf(chunk.firstTimestamp))) {
+                    remaining.add(chunk);
+                }
+            }
+            this.sealedChunks.clear();
+            this.sealedChunks.addAll(remaining);
+        }
+    }
+
+    private void append(final long partition, final byte[] blocks) throws IOException {
+        final File file = getPartitionFile(partition);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (!this.verifiedPartitions.contains(partition)) {
+                // the blocks appended after a torn block could not be read
+                final long validSize = readBlocks(file, size, null);
+                if (validSize < size) {
+                    logger.warn("Truncating {} bytes of incomplete block at the end of partition {}",
+                            size - validSize, file);
+                    channel.truncate(validSize);
+                    size = validSize;
+                }
+                this.verifiedPartitions.add(partition);
+            }
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(blocks);
+                channel.position(size);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (final IOException e) {
+                // the channel is closed if the write has been interrupted, so the partial block is
+                // truncated by the next append
+                this.verifiedPartitions.remove(partition);
+                try {
+                    channel.truncate(size);
+                } catch (final IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads the blocks of a partition file, skipping the complete blocks with a checksum mismatch.
+     * The file is read up to the first incomplete block, or up to a block length exceeding the end of
+     * the file.
+     *
+     * @param file
+     *            the partition file
+     * @param size
+     *            the number of bytes of the partition file to read
+     * @param visitor
+     *            the visitor of the valid blocks, or null
+     * @return the length of the file up to the end of its last valid block, the blocks following it
+     *         being left by an interrupted write
+     * @throws IOException
+     *             if the file could not be read or the visitor fails
+     */
+    private static long readBlocks(final File file, final long size, final BlockVisitor visitor)
+            throws IOException {
+        long position = 0;
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (size - position >= BLOCK_HEADER_LENGTH) {
+                final int length = input.readInt();
+                final int checksum = input.readInt();
+                if (length <= 0 || length > size - position - BLOCK_HEADER_LENGTH) {
+                    break;
+                }
+                final byte[] block = new byte[length];
+                input.readFully(block);
+                if (checksum(block) != checksum) {
+                    // dropped with the end of the file if no valid block follows
+                    logger.warn("Skipping block with checksum mismatch at offset {} of partition {}", position,
+                            file);
+                } else {
+                    if (nonNull(visitor)) {
+                        visitor.visit(block);
+                    }
+                    validLength = position + BLOCK_HEADER_LENGTH + length;
+                }
+                position += BLOCK_HEADER_LENGTH + length;
+            }
+        }
+        return validLength;
+    }
+
+    private static int checksum(final byte[] block) {
+        final CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Deletes the partitions older than the retention time.
+     *
+     * @param now
+     *            the current time
+     * @return the number of deleted partitions
+     */
+    int dropExpiredPartitions(final long now) {
+        if (this.retentionTime <= 0) {
+            return 0;
+        }
+        int dropped = 0;
+        for (final Entry<Long, File> partition : listPartitions(this.directory).entrySet()) {
+            if (partition.getKey() + this.partitionDuration <= now - this.retentionTime
+                    && partition.getValue().delete()) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the records stored between the provided times, including the buffered ones.
+     *
+     * @param from
+     *            the start of the time range, inclusive
+     * @param to
+     *            the end of the time range, inclusive
+     * @return the records, by increasing timestamp
+     * @throws IOException
+     *             if the partition files could not be read
+     */
+    List<WireRecord> query(final long from, final long to) throws IOException {
+        final TreeMap<RowKey, Map<String, TypedValue<?>>> rows = new TreeMap<>();
+        // the points in memory are read first, as they might be written while the files are read
+        synchronized (this) {
+            for (final Chunk chunk : this.sealedChunks) {
+                chunk.decodeTo(from, to, rows);
+            }
+            for (final ChannelBuffer buffer : this.buffers.values()) {
+                buffer.copyTo(from, to, rows);
+            }
+        }
+        readPartitions(this.directory, from, to, rows);
+        return toWireRecords(rows);
+    }
+
+    /**
+     * Returns the records written to the partition files of the provided directory between the
+     * provided times.
+     *
+     * @param directory
+     *            the directory containing the partition files
+     * @param from
+     *            the start of the time range, inclusive
+     * @param to
+     *            the end of the time range, inclusive
+     * @return the records, by increasing timestamp
+     * @throws IOException
+     *             if the partition files could not be read
+     */
+    static List<WireRecord> query(final File directory, final long from, final long to) throws IOException {
+        final TreeMap<RowKey, Map<String, TypedValue<?>>> rows = new TreeMap<>();
+        readPartitions(directory, from, to, rows);
+        return toWireRecords(rows);
+    }
+
+    private static void readPartitions(final File directory, final long from, final long to,
+            final Map<RowKey, Map<String, TypedValue<?>>> rows) throws IOException {
+        for (final Entry<Long, File> partition : listPartitions(directory).entrySet()) {
+            // the partition duration may have changed since the partition has been written, so
+            // only the start of the partition is reliable
+            if (partition.getKey() > to) {
+                break;
+            }
+            readPartition(partition.getValue(), from, to, rows);
+        }
+    }
+
+    private static void readPartition(final File file, final long from, final long to,
+            final Map<RowKey, Map<String, TypedValue<?>>> rows) throws IOException {
+        // the blocks appended while the partition is read are ignored
+        final long size = file.length();
+        try {
+            final long validLength = readBlocks(file, size, new BlockVisitor() {
+
+                @Override
+                public void visit(final byte[] block) throws IOException {
+                    Chunk.readFrom(block).decodeTo(from, to, rows);
+                }
+            });
+            if (validLength < size) {
+                // block being written or torn by an interrupted write, truncated by the next append
+                logger.debug("Ignoring {} bytes of incomplete block at the end of partition {}",
+                        size - validLength, file);
+            }
+        } catch (final IOException | RuntimeException e) {
+            if (file.exists()) {
+                throw new IOException("Cannot read partition " + file, e);
+            }
+            // the partition has been dropped while being read
+        }
+    }
+
+    private static TreeMap<Long, File> listPartitions(final File directory) {
+        final TreeMap<Long, File> partitions = new TreeMap<>();
+        final File[] files = directory.listFiles();
+        if (isNull(files)) {
+            return partitions;
+        }
+        for (final File file : files) {
+            final Matcher matcher = PARTITION_PATTERN.matcher(file.getName());
+            if (matcher.matches()) {
+                partitions.put(Long.parseLong(matcher.group(1)), file);
+            }
+        }
+        return partitions;
+    }
+
+    private static List<WireRecord> toWireRecords(final TreeMap<RowKey, Map<String, TypedValue<?>>> rows) {
+        final List<WireRecord> records = new ArrayList<>(rows.size());
+        for (final Entry<RowKey, Map<String, TypedValue<?>>> row : rows.entrySet()) {
+            row.getValue().put(TIMESTAMP, TypedValues.newLongValue(row.getKey().timestamp));
+            records.add(new WireRecord(row.getValue()));
+        }
+        return records;
+    }
+
+    private static void addPoint(final Map<RowKey, Map<String, TypedValue<?>>> rows, final long timestamp,
+            final int sequence, final String channel, final Object value) {
+        if (isNull(value)) {
+            return;
+        }
+        final RowKey key = new RowKey(timestamp, sequence);
+        Map<String, TypedValue<?>> row = rows.get(key);
+        if (isNull(row)) {
+            row = new HashMap<>();
+            rows.put(key, row);
+        }
+        row.put(channel, TypedValues.newTypedValue(value));
+    }
+
+    private long partitionOf(final long timestamp) {
+        return timestamp - Math.floorMod(timestamp, this.partitionDuration);
+    }
+
+    private File getPartitionFile(final long partition) {
+        return new File(this.directory, partition + PARTITION_SUFFIX);
+    }
+
+    /**
+     * The points of a channel not yet encoded.
+     */
+    private static final class ChannelBuffer {
+
+        private final String name;
+        private final DataType type;
+        private final long[] timestamps;
+        private final int[] sequences;
+        private final Object[] values;
+        private int count;
+
+        ChannelBuffer(final String name, final DataType type, final int capacity) {
+            this.name = name;
+            this.type = type;
+            this.timestamps = new long[capacity];
+            this.sequences = new int[capacity];
+            this.values = new Object[capacity];
+        }
+
+        void add(final long timestamp, final int sequence, final Object value) {
+            this.timestamps[this.count] = timestamp;
+            this.sequences[this.count] = sequence;
+            this.values[this.count] = value;
+            this.count++;
+        }
+
+        Chunk encode() {
+            final byte[] payload = ChunkCodec.encode(this.type, this.timestamps, this.sequences, this.values,
+                    this.count);
+            return new Chunk(this.name, this.type, this.count, this.timestamps[0], this.timestamps[this.count - 1],
+                    payload, 0);
+        }
+
+        void copyTo(final long from, final long to, final Map<RowKey, Map<String, TypedValue<?>>> rows) {
+            for (int i = 0; i < this.count; i++) {
+                if (this.timestamps[i] >= from && this.timestamps[i] <= to) {
+                    addPoint(rows, this.timestamps[i], this.sequences[i], this.name, this.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * An encoded chunk of points of a channel.
+     */
+    private static final class Chunk {
+
+        private final String channel;
+        private final DataType type;
+        private final int count;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final byte[] bytes;
+        private final int payloadOffset;
+
+        Chunk(final String channel, final DataType type, final int count, final long firstTimestamp,
+                final long lastTimestamp, final byte[] bytes, final int payloadOffset) {
+            this.channel = channel;
+            this.type = type;
+            this.count = count;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.bytes = bytes;
+            this.payloadOffset = payloadOffset;
+        }
+
+        void writeTo(final DataOutputStream output) throws IOException {
+            final int payloadLength = this.bytes.length - this.payloadOffset;
+            final ByteArrayOutputStream block = new ByteArrayOutputStream(payloadLength + 64);
+            final DataOutputStream blockOutput = new DataOutputStream(block);
+            blockOutput.writeUTF(this.channel);
+            blockOutput.writeUTF(this.type.name());
+            blockOutput.writeInt(this.count);
+            blockOutput.writeLong(this.firstTimestamp);
+            blockOutput.writeLong(this.lastTimestamp);
+            blockOutput.write(this.bytes, this.payloadOffset, payloadLength);
+            blockOutput.flush();
+
+            final byte[] blockBytes = block.toByteArray();
+            output.writeInt(blockBytes.length);
+            output.writeInt(checksum(blockBytes));
+            output.write(blockBytes);
+            output.flush();
+        }
+
+        static Chunk readFrom(final byte[] block) throws IOException {
+            final ByteArrayInputStream blockStream = new ByteArrayInputStream(block);
+            final DataInputStream blockInput = new DataInputStream(blockStream);
+            final String channel = blockInput.readUTF();
+            final DataType type = DataType.valueOf(blockInput.readUTF());
+            final int count = blockInput.readInt();
+            final long firstTimestamp = blockInput.readLong();
+            final long lastTimestamp = blockInput.readLong();
+            // every point takes at least one bit
+            if (count <= 0 || count > (long) blockStream.available() * 8) {
+                throw new IOException("Corrupt block: invalid point count " + count);
+            }
+            return new Chunk(channel, type, count, firstTimestamp, lastTimestamp, block,
+                    block.length - blockStream.available());
+        }
+
+        void decodeTo(final long from, final long to, final Map<RowKey, Map<String, TypedValue<?>>> rows)
+                throws EOFException {
+            if (this.lastTimestamp < from || this.firstTimestamp > to) {
+                return;
+            }
+            final long[] timestamps = new long[this.count];
+            final int[] sequences = new int[this.count];
+            final Object[] values = new Object[this.count];
+            ChunkCodec.decode(this.type, this.bytes, this.payloadOffset, this.bytes.length - this.payloadOffset,
+                    timestamps, sequences, values, this.count);
+            for (int i = 0; i < this.count; i++) {
+                if (timestamps[i] >= from && timestamps[i] <= to) {
+                    addPoint(rows, timestamps[i], sequences[i], this.channel, values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The key of a record: its timestamp and its sequence within the millisecond.
+     */
+    private static final class RowKey implements Comparable<RowKey> {
+
+        private final long timestamp;
+        private final int sequence;
+
+        RowKey(final long timestamp, final int sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final RowKey other) {
+            final int result = Long.compare(this.timestamp, other.timestamp);
+            return result != 0 ? result : Integer.compare(this.sequence, other.sequence);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof RowKey)) {
+                return false;
+            }
+            final RowKey other = (RowKey) obj;
+            return this.timestamp == other.timestamp && this.sequence == other.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(this.timestamp) + this.sequence;
+        }
+    }
+
+    /**
+     * Visits the valid blocks of a partition file.
+     */
+    private interface BlockVisitor {
+
+        void visit(byte[] block) throws IOException;
+    }
+}
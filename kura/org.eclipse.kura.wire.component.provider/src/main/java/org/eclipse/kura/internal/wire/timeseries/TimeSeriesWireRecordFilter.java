@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.configuration.ConfigurableComponent;
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+import org.eclipse.kura.wire.WireEmitter;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.wireadmin.Wire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class TimeSeriesWireRecordFilter is a wire component which reads the {@link WireRecord}s
+ * written by a {@link TimeSeriesWireRecordStore} in the configured time window before now, and emits
+ * them as a Wire Envelope, every record having a {@code TIMESTAMP} property. The records still
+ * buffered by the store are not read.
+ */
+public final class TimeSeriesWireRecordFilter implements WireEmitter, WireReceiver, ConfigurableComponent {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesWireRecordFilter.class);
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    private List<WireRecord> lastRecords;
+
+    private TimeSeriesWireRecordFilterOptions options;
+
+    private volatile WireHelperService wireHelperService;
+
+    private WireSupport wireSupport;
+
+    private long lastRefreshedTime;
+
+    /**
+     * Binds the Wire Helper Service.
+     *
+     * @param wireHelperService
+     *            the new Wire Helper Service
+     */
+    public void bindWireHelperService(final WireHelperService wireHelperService) {
+        if (isNull(this.wireHelperService)) {
+            this.wireHelperService = wireHelperService;
+        }
+    }
+
+    /**
+     * Unbinds the Wire Helper Service.
+     *
+     * @param wireHelperService
+     *            the new Wire Helper Service
+     */
+    public void unbindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == wireHelperService) {
+            this.wireHelperService = null;
+        }
+    }
+
+    /**
+     * OSGi service component callback for activation
+     *
+     * @param componentContext
+     *            the component context
+     * @param properties
+     *            the properties
+     */
+    protected void activate(final ComponentContext componentContext, final Map<String, Object> properties) {
+        logger.debug(message.activatingTimeSeriesFilter());
+        this.wireSupport = this.wireHelperService.newWireSupport(this);
+        updateOptions(properties);
+        logger.debug(message.activatingTimeSeriesFilterDone());
+    }
+
+    /**
+     * OSGi service component callback for updating
+     *
+     * @param properties
+     *            the updated properties
+     */
+    public void updated(final Map<String, Object> properties) {
+        logger.debug(message.updatingTimeSeriesFilter() + properties);
+        updateOptions(properties);
+        logger.debug(message.updatingTimeSeriesFilterDone());
+    }
+
+    /**
+     * OSGi service component callback for deactivation
+     *
+     * @param componentContext
+     *            the component context
+     */
+    protected void deactivate(final ComponentContext componentContext) {
+        logger.debug(message.deactivatingTimeSeriesFilter());
+
+        logger.debug(message.deactivatingTimeSeriesFilterDone());
+    }
+
+    private synchronized void updateOptions(final Map<String, Object> properties) {
+        this.options = new TimeSeriesWireRecordFilterOptions(properties);
+        // have the cache immediately expired
+        this.lastRecords = null;
+        this.lastRefreshedTime = 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void consumersConnected(final Wire[] wires) {
+        this.wireSupport.consumersConnected(wires);
+    }
+
+    /**
+     * Trigger data emit as soon as new {@link WireEnvelope} is received. The records read are cached
+     * and emitted until the cache expiration interval has elapsed.
+     */
+    @Override
+    public void onWireReceive(final WireEnvelope wireEnvelope) {
+        requireNonNull(wireEnvelope, message.wireEnvelopeNonNull());
+        logger.debug(message.wireEnvelopeReceived(), wireEnvelope);
+
+        List<WireRecord> result;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (isNull(this.lastRecords) || now - this.lastRefreshedTime >= TimeUnit.SECONDS
+                    .toMillis(this.options.getCacheExpirationInterval())) {
+                refreshCachedRecords(now);
+            }
+            result = nonNull(this.lastRecords) ? this.lastRecords : new ArrayList<WireRecord>();
+        }
+        this.wireSupport.emit(Collections.unmodifiableList(result));
+    }
+
+    private void refreshCachedRecords(final long now) {
+        final File directory = new File(this.options.getStorageDirectory());
+        final long from = now - TimeUnit.SECONDS.toMillis(this.options.getQueryWindow());
+        try {
+            this.lastRecords = TimeSeriesStore.query(directory, from, now);
+            this.lastRefreshedTime = now;
+        } catch (final IOException e) {
+            logger.error(message.errorReadingTimeSeries(), e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object polled(final Wire wire) {
+        return this.wireSupport.polled(wire);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void producersConnected(final Wire[] wires) {
+        this.wireSupport.producersConnected(wires);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updated(final Wire wire, final Object value) {
+        this.wireSupport.updated(wire, value);
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+
+/**
+ * The Class TimeSeriesWireRecordFilterOptions is responsible to contain all the Time Series Wire
+ * Record Filter related options
+ */
+final class TimeSeriesWireRecordFilterOptions {
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    private static final String QUERY_WINDOW = "query.window";
+
+    private static final String CACHE_EXPIRATION_INTERVAL = "cache.expiration.interval";
+
+    private static final int DEFAULT_QUERY_WINDOW = 3600;
+
+    private final Map<String, Object> properties;
+
+    /**
+     * Instantiates a new time series wire record filter options.
+     *
+     * @param properties
+     *            the provided properties
+     */
+    TimeSeriesWireRecordFilterOptions(final Map<String, Object> properties) {
+        requireNonNull(properties, message.propertiesNonNull());
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the directory containing the partition files.
+     *
+     * @return the storage directory
+     */
+    String getStorageDirectory() {
+        return TimeSeriesWireRecordStoreOptions.getStorageDirectory(this.properties);
+    }
+
+    /**
+     * Returns the time window of the records to be read, in seconds before now.
+     *
+     * @return the query window
+     */
+    int getQueryWindow() {
+        int queryWindow = DEFAULT_QUERY_WINDOW;
+        final Object window = this.properties.get(QUERY_WINDOW);
+        if (nonNull(window) && window instanceof Integer) {
+            queryWindow = (Integer) window;
+        }
+        return queryWindow;
+    }
+
+    /**
+     * Returns the cache interval as configured.
+     *
+     * @return the configured cache interval
+     */
+    int getCacheExpirationInterval() {
+        int cacheInterval = 0;
+        final Object cacheInt = this.properties.get(CACHE_EXPIRATION_INTERVAL);
+        if (nonNull(cacheInt) && cacheInt instanceof Integer) {
+            cacheInterval = (Integer) cacheInt;
+        }
+        return cacheInterval;
+    }
+}
@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.configuration.ConfigurableComponent;
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+import org.eclipse.kura.wire.WireEmitter;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.wireadmin.Wire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class TimeSeriesWireRecordStore is a wire component which stores the received
+ * {@link WireRecord}s in time partitioned files of compressed channel chunks, as an alternative to
+ * the {@code DbWireRecordStore} for long retention histories.<br/>
+ * <br/>
+ *
+ * The received records are emitted right away, and their properties buffered and written every
+ * flush interval, or when a chunk is full. Partitions older than the retention time are deleted
+ * as a whole. The stored records can be read back by the {@link TimeSeriesWireRecordFilter}.<br/>
+ * <br/>
+ *
+ * A storage directory is written by a single store: a store configured with the directory of
+ * another active store does not store the received records until it is configured with another
+ * directory.
+ */
+public final class TimeSeriesWireRecordStore implements WireEmitter, WireReceiver, ConfigurableComponent {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesWireRecordStore.class);
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long THREAD_TERMINATION_TOUT = 30;
+
+    private volatile WireHelperService wireHelperService;
+
+    private WireSupport wireSupport;
+
+    private TimeSeriesWireRecordStoreOptions options;
+
+    /** The storage directories of the active stores. Guarded by itself. */
+    private static final Set<String> directoriesInUse = new HashSet<>();
+
+    private volatile TimeSeriesStore store;
+
+    /** The storage directory used by this store, null if none. Guarded by this. */
+    private String directory;
+
+    private ScheduledExecutorService flushExecutor;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Binds the Wire Helper Service.
+     *
+     * @param wireHelperService
+     *            the new Wire Helper Service
+     */
+    public void bindWireHelperService(final WireHelperService wireHelperService) {
+        if (isNull(this.wireHelperService)) {
+            this.wireHelperService = wireHelperService;
+        }
+    }
+
+    /**
+     * Unbinds the Wire Helper Service.
+     *
+     * @param wireHelperService
+     *            the new Wire Helper Service
+     */
+    public void unbindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == wireHelperService) {
+            this.wireHelperService = null;
+        }
+    }
+
+    /**
+     * OSGi Service Component callback for activation.
+     *
+     * @param componentContext
+     *            the component context
+     * @param properties
+     *            the properties
+     */
+    protected void activate(final ComponentContext componentContext, final Map<String, Object> properties) {
+        logger.debug(message.activatingTimeSeriesStore());
+        this.wireSupport = this.wireHelperService.newWireSupport(this);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "TimeSeriesWireRecordStore:Flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        configure(properties);
+        logger.debug(message.activatingTimeSeriesStoreDone());
+    }
+
+    /**
+     * OSGi Service Component callback for updating.
+     *
+     * @param properties
+     *            the updated service component properties
+     */
+    public void updated(final Map<String, Object> properties) {
+        logger.debug(message.updatingTimeSeriesStore());
+        synchronized (this) {
+            // the received records are appended to the new store once it is configured, so that
+            // none is appended to the previous store after its final flush
+            final TimeSeriesStore previousStore = this.store;
+            configure(properties);
+            flush(previousStore);
+        }
+        logger.debug(message.updatingTimeSeriesStoreDone());
+    }
+
+    /**
+     * OSGi Service Component callback for deactivation.
+     *
+     * @param componentContext
+     *            the component context
+     */
+    protected void deactivate(final ComponentContext componentContext) {
+        logger.debug(message.deactivatingTimeSeriesStore());
+        if (nonNull(this.flushExecutor)) {
+            // interrupting a write would close the partition file channel
+            this.flushExecutor.shutdown();
+            try {
+                this.flushExecutor.awaitTermination(THREAD_TERMINATION_TOUT, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        releaseDirectory();
+        logger.debug(message.deactivatingTimeSeriesStoreDone());
+    }
+
+    private synchronized void configure(final Map<String, Object> properties) {
+        this.options = new TimeSeriesWireRecordStoreOptions(properties);
+        final File storageDirectory = new File(this.options.getStorageDirectory());
+        if (claimDirectory(storageDirectory)) {
+            this.store = new TimeSeriesStore(storageDirectory, this.options.getPartitionDuration() * MINUTE,
+                    this.options.getRetentionTime() * HOUR, this.options.getChunkSize());
+        } else {
+            logger.error(message.errorTimeSeriesDirectoryInUse(storageDirectory.getPath()));
+            this.store = null;
+        }
+
+        if (nonNull(this.flushTask)) {
+            this.flushTask.cancel(false);
+        }
+        final long flushInterval = Math.max(this.options.getFlushInterval(), 1);
+        this.flushTask = this.flushExecutor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+                dropExpiredPartitions();
+            }
+        }, flushInterval, flushInterval, TimeUnit.SECONDS);
+    }
+
+    private boolean claimDirectory(final File storageDirectory) {
+        String path;
+        try {
+            path = storageDirectory.getCanonicalPath();
+        } catch (final IOException e) {
+            path = storageDirectory.getAbsolutePath();
+        }
+        if (path.equals(this.directory)) {
+            return true;
+        }
+        releaseDirectory();
+        synchronized (directoriesInUse) {
+            if (!directoriesInUse.add(path)) {
+                return false;
+            }
+        }
+        this.directory = path;
+        return true;
+    }
+
+    private synchronized void releaseDirectory() {
+        if (nonNull(this.directory)) {
+            synchronized (directoriesInUse) {
+                directoriesInUse.remove(this.directory);
+            }
+            this.directory = null;
+        }
+    }
+
+    private synchronized void flush() {
+        flush(this.store);
+    }
+
+    private static void flush(final TimeSeriesStore store) {
+        if (isNull(store)) {
+            return;
+        }
+        try {
+            store.flush();
+        } catch (final IOException e) {
+            logger.error(message.errorWritingTimeSeries(), e);
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        final TimeSeriesStore currentStore = this.store;
+        if (isNull(currentStore)) {
+            return;
+        }
+        final int dropped = currentStore.dropExpiredPartitions(System.currentTimeMillis());
+        if (dropped > 0) {
+            logger.info(message.droppedTimeSeriesPartitions(dropped));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void consumersConnected(final Wire[] wires) {
+        this.wireSupport.consumersConnected(wires);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onWireReceive(final WireEnvelope wireEnvelope) {
+        requireNonNull(wireEnvelope, message.wireEnvelopeNonNull());
+        logger.debug(message.wireEnvelopeReceived() + this.wireSupport);
+
+        final List<WireRecord> records = wireEnvelope.getRecords();
+        final long timestamp = System.currentTimeMillis();
+        synchronized (this) {
+            for (final WireRecord wireRecord : records) {
+                requireNonNull(wireRecord, message.wireRecordNonNull());
+                if (nonNull(this.store)) {
+                    this.store.append(timestamp, wireRecord.getProperties());
+                }
+            }
+        }
+
+        // emit the list of Wire Records to the downstream components
+        this.wireSupport.emit(records);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object polled(final Wire wire) {
+        return this.wireSupport.polled(wire);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void producersConnected(final Wire[] wires) {
+        this.wireSupport.producersConnected(wires);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updated(final Wire wire, final Object value) {
+        this.wireSupport.updated(wire, value);
+    }
+}
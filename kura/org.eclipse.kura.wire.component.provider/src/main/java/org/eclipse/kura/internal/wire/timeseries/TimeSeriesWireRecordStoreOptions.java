@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+
+/**
+ * The Class TimeSeriesWireRecordStoreOptions is responsible to contain all the Time Series Wire
+ * Record Store related options
+ */
+final class TimeSeriesWireRecordStoreOptions {
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    static final String STORAGE_DIRECTORY = "storage.directory";
+
+    private static final String PARTITION_DURATION = "partition.duration";
+
+    private static final String RETENTION_TIME = "retention.time";
+
+    private static final String CHUNK_SIZE = "chunk.size";
+
+    private static final String FLUSH_INTERVAL = "flush.interval";
+
+    static final String DEFAULT_STORAGE_DIRECTORY = "/opt/eclipse/kura/data/timeseries/WR_data";
+
+    private static final int DEFAULT_PARTITION_DURATION = 60;
+
+    private static final int DEFAULT_RETENTION_TIME = 168;
+
+    private static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private static final int DEFAULT_FLUSH_INTERVAL = 10;
+
+    private final Map<String, Object> properties;
+
+    /**
+     * Instantiates a new time series wire record store options.
+     *
+     * @param properties
+     *            the configured properties
+     */
+    TimeSeriesWireRecordStoreOptions(final Map<String, Object> properties) {
+        requireNonNull(properties, message.propertiesNonNull());
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the directory containing the partition files.
+     *
+     * @return the storage directory
+     */
+    String getStorageDirectory() {
+        return getStorageDirectory(this.properties);
+    }
+
+    /**
+     * Returns the duration of a partition, in minutes.
+     *
+     * @return the partition duration
+     */
+    int getPartitionDuration() {
+        int partitionDuration = DEFAULT_PARTITION_DURATION;
+        final Object duration = this.properties.get(PARTITION_DURATION);
+        if (nonNull(duration) && duration instanceof Integer && (Integer) duration > 0) {
+            partitionDuration = (Integer) duration;
+        }
+        return partitionDuration;
+    }
+
+    /**
+     * Returns the time after which the partitions are deleted, in hours, 0 to keep them forever.
+     *
+     * @return the retention time
+     */
+    int getRetentionTime() {
+        int retentionTime = DEFAULT_RETENTION_TIME;
+        final Object retention = this.properties.get(RETENTION_TIME);
+        if (nonNull(retention) && retention instanceof Integer) {
+            retentionTime = (Integer) retention;
+        }
+        return retentionTime;
+    }
+
+    /**
+     * Returns the maximum number of points of a channel encoded together.
+     *
+     * @return the chunk size
+     */
+    int getChunkSize() {
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        final Object size = this.properties.get(CHUNK_SIZE);
+        if (nonNull(size) && size instanceof Integer && (Integer) size > 0) {
+            chunkSize = (Integer) size;
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Returns the interval between the writes of the buffered points and the deletions of the
+     * expired partitions, in seconds.
+     *
+     * @return the flush interval
+     */
+    int getFlushInterval() {
+        int flushInterval = DEFAULT_FLUSH_INTERVAL;
+        final Object interval = this.properties.get(FLUSH_INTERVAL);
+        if (nonNull(interval) && interval instanceof Integer) {
+            flushInterval = (Integer) interval;
+        }
+        return flushInterval;
+    }
+
+    /**
+     * Returns the configured storage directory.
+     *
+     * @param properties
+     *            the configured properties
+     * @return the storage directory
+     */
+    static String getStorageDirectory(final Map<String, Object> properties) {
+        String storageDirectory = DEFAULT_STORAGE_DIRECTORY;
+        final Object directory = properties.get(STORAGE_DIRECTORY);
+        if (nonNull(directory) && directory instanceof String && !((String) directory).trim().isEmpty()) {
+            storageDirectory = ((String) directory).trim();
+        }
+        return storageDirectory;
+    }
+}
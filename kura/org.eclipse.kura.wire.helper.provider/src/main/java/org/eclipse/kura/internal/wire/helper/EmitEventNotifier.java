@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+import org.eclipse.kura.util.collection.CollectionUtil;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * The Class EmitEventNotifier posts the {@link org.eclipse.kura.wire.WireSupport#EMIT_EVENT_TOPIC} events.<br/>
+ * <br/>
+ *
+ * The emissions are coalesced: at most one event per emitter is posted per interval, whatever the
+ * number of emissions in it. No event is posted, and the emissions are not even recorded, while
+ * no {@link EventHandler} is registered for the topic.
+ */
+final class EmitEventNotifier {
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    private final EventAdmin eventAdmin;
+
+    private final ServiceTracker<EventHandler, EventHandler> eventHandlerTracker;
+
+    /** The PIDs of the emitters since the last events were posted. */
+    private final Set<String> pendingEmitters = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> postTask;
+
+    /**
+     * Instantiates a new notifier and starts tracking the event handlers.
+     *
+     * @param bundleContext
+     *            the bundle context
+     * @param eventAdmin
+     *            the Event Admin service
+     * @throws NullPointerException
+     *             if any of the provided arguments is null
+     */
+    EmitEventNotifier(final BundleContext bundleContext, final EventAdmin eventAdmin) {
+        requireNonNull(eventAdmin, message.eventAdminNonNull());
+        this.eventAdmin = eventAdmin;
+
+        Filter filter = null;
+        try {
+            filter = bundleContext.createFilter(buildEventHandlerFilter());
+        } catch (final InvalidSyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+        this.eventHandlerTracker = new ServiceTracker<>(bundleContext, filter, null);
+        this.eventHandlerTracker.open();
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "EmitEventNotifier");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Builds the filter matching the event handlers of the emit topic, including the ones
+     * registered with a wildcard topic.
+     */
+    private static String buildEventHandlerFilter() {
+        final String topics = EventConstants.EVENT_TOPIC;
+        final StringBuilder filter = new StringBuilder();
+        filter.append("(&(").append(Constants.OBJECTCLASS).append('=').append(EventHandler.class.getName())
+                .append(")(|(").append(topics).append("=\\*)");
+        int index = EMIT_EVENT_TOPIC.indexOf('/');
+        while (index >= 0) {
+            filter.append('(').append(topics).append('=').append(EMIT_EVENT_TOPIC.substring(0, index))
+                    .append("/\\*)");
+            index = EMIT_EVENT_TOPIC.indexOf('/', index + 1);
+        }
+        filter.append('(').append(topics).append('=').append(EMIT_EVENT_TOPIC).append(")))");
+        return filter.toString();
+    }
+
+    /**
+     * Sets the interval between the posting of the events.
+     *
+     * @param interval
+     *            the interval in milliseconds
+     */
+    synchronized void setInterval(final long interval) {
+        if (nonNull(this.postTask)) {
+            this.postTask.cancel(false);
+        }
+        this.postTask = this.executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                postEvents();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records an emission of the provided emitter.
+     *
+     * @param emitterPid
+     *            the PID of the emitter
+     */
+    void emitted(final String emitterPid) {
+        if (isNull(emitterPid) || this.eventHandlerTracker.isEmpty()) {
+            return;
+        }
+        this.pendingEmitters.add(emitterPid);
+    }
+
+    private void postEvents() {
+        final Iterator<String> iterator = this.pendingEmitters.iterator();
+        while (iterator.hasNext()) {
+            final String emitterPid = iterator.next();
+            iterator.remove();
+
+            final Map<String, Object> properties = CollectionUtil.newHashMap();
+            properties.put("emitter", emitterPid);
+            this.eventAdmin.postEvent(new Event(EMIT_EVENT_TOPIC, properties));
+        }
+    }
+
+    /**
+     * Stops posting the events and tracking the event handlers.
+     */
+    void close() {
+        this.executor.shutdownNow();
+        this.eventHandlerTracker.close();
+        this.pendingEmitters.clear();
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.localization.LocalizationAdapter;
+import org.eclipse.kura.localization.resources.WireMessages;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.osgi.service.wireadmin.Wire;
+import org.osgi.service.wireadmin.WireConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class WireDelivery updates a single outgoing {@link Wire} with the emitted {@link WireEnvelope}s.<br/>
+ * <br/>
+ *
+ * With a queue size of 0 the wire is updated on the emitting thread. Otherwise the envelopes are
+ * queued and the wire is updated by a thread of its own, so that a slow consumer does not hold
+ * the emitter up until its queue is full. When the queue is full the emitter waits for room.
+ */
+final class WireDelivery implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireDelivery.class);
+
+    private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
+
+    /** The time in seconds after which the thread of an idle wire is released. */
+    private static final long KEEP_ALIVE = 60;
+
+    private final Wire wire;
+
+    private final int queueSize;
+
+    private final ThreadPoolExecutor executor;
+
+    /** The queued envelopes. Guarded by this, like the fields below. */
+    private final Deque<WireEnvelope> queue = new ArrayDeque<>();
+
+    private Thread worker;
+
+    private boolean draining;
+
+    private boolean shutdown;
+
+    /**
+     * Instantiates a new delivery for the provided wire.
+     *
+     * @param wire
+     *            the outgoing wire
+     * @param queueSize
+     *            the maximum number of envelopes waiting to be delivered, 0 to deliver them synchronously
+     * @throws NullPointerException
+     *             if the wire is null
+     */
+    WireDelivery(final Wire wire, final int queueSize) {
+        requireNonNull(wire, message.wireNonNull());
+        this.wire = wire;
+        this.queueSize = queueSize;
+        if (queueSize > 0) {
+            final String threadName = "WireDelivery:" + wire.getProperties().get(WireConstants.WIREADMIN_PID);
+            this.executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable, threadName);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Delivers the provided envelope to the wire, waiting for room if the queue is full.
+     * The envelopes emitted after the shutdown are discarded.
+     *
+     * @param wireEnvelope
+     *            the emitted envelope
+     */
+    void deliver(final WireEnvelope wireEnvelope) {
+        if (isNull(this.executor)) {
+            this.wire.update(wireEnvelope);
+            return;
+        }
+        synchronized (this) {
+            // A wire looping back to its emitter does not wait for its own thread
+            while (this.queue.size() >= this.queueSize && !this.shutdown && this.worker != Thread.currentThread()) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (this.shutdown) {
+                return;
+            }
+            this.queue.add(wireEnvelope);
+            if (!this.draining) {
+                this.draining = true;
+                this.executor.execute(this);
+            }
+        }
+    }
+
+    /**
+     * Gets the wire.
+     *
+     * @return the wire
+     */
+    Wire getWire() {
+        return this.wire;
+    }
+
+    /**
+     * Updates the wire with the queued envelopes, until the queue is empty.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            this.worker = Thread.currentThread();
+        }
+        while (true) {
+            final WireEnvelope wireEnvelope;
+            synchronized (this) {
+                wireEnvelope = this.queue.poll();
+                notifyAll();
+                if (isNull(wireEnvelope)) {
+                    this.worker = null;
+                    this.draining = false;
+                    return;
+                }
+            }
+            try {
+                this.wire.update(wireEnvelope);
+            } catch (final RuntimeException e) {
+                logger.warn("Unexpected exception while updating wire", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the delivery thread once the queued envelopes have been delivered.
+     */
+    void shutdown() {
+        if (nonNull(this.executor)) {
+            synchronized (this) {
+                this.shutdown = true;
+                notifyAll();
+            }
+            this.executor.shutdown();
+        }
+    }
+}
@@ -17,6 +17,9 @@ import static java.util.Objects.requireNonNull;
 import static org.eclipse.kura.configuration.ConfigurationService.KURA_SERVICE_PID;
 import static org.osgi.framework.Constants.SERVICE_PID;
 
+import java.util.Map;
+
+import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.localization.LocalizationAdapter;
 import org.eclipse.kura.localization.resources.WireMessages;
 import org.eclipse.kura.util.service.ServiceUtil;
@@ -28,18 +31,24 @@ import org.eclipse.kura.wire.WireSupport;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.EventAdmin;
 
 /**
  * The Class WireHelperServiceImpl is the implementation of
- * {@link WireHelperService}
+ * {@link WireHelperService}. Its configuration sets how the {@link WireSupport}s it creates
+ * deliver the emitted envelopes and notify the emissions.
  */
-public final class WireHelperServiceImpl implements WireHelperService {
+public final class WireHelperServiceImpl implements WireHelperService, ConfigurableComponent {
 
     private static final WireMessages wireMessages = LocalizationAdapter.adapt(WireMessages.class);
 
     private volatile EventAdmin eventAdmin;
 
+    private volatile WireHelperServiceOptions options = new WireHelperServiceOptions(null);
+
+    private EmitEventNotifier emitEventNotifier;
+
     /**
      * Binds the Event Admin Service.
      *
@@ -64,6 +73,50 @@ public final class WireHelperServiceImpl implements WireHelperService {
         }
     }
 
+    /**
+     * OSGi Service Component callback for activation.
+     *
+     * @param componentContext
+     *            the component context
+     * @param properties
+     *            the properties
+     */
+    protected void activate(final ComponentContext componentContext, final Map<String, Object> properties) {
+        this.emitEventNotifier = new EmitEventNotifier(componentContext.getBundleContext(), this.eventAdmin);
+        updated(properties);
+    }
+
+    /**
+     * OSGi Service Component callback for updating. The delivery queue size applies to the
+     * wires connected after the update.
+     *
+     * @param properties
+     *            the updated properties
+     */
+    public void updated(final Map<String, Object> properties) {
+        this.options = new WireHelperServiceOptions(properties);
+        this.emitEventNotifier.setInterval(this.options.getEmitEventInterval());
+    }
+
+    /**
+     * OSGi Service Component callback for deactivation.
+     *
+     * @param componentContext
+     *            the component context
+     */
+    protected void deactivate(final ComponentContext componentContext) {
+        this.emitEventNotifier.close();
+    }
+
+    /**
+     * Returns the maximum number of envelopes waiting to be delivered on every outgoing wire.
+     *
+     * @return the queue size, 0 if the wires are updated on the emitting thread
+     */
+    int getDeliveryQueueSize() {
+        return this.options.getDeliveryQueueSize();
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getPid(final WireComponent wireComponent) {
@@ -161,6 +214,6 @@ public final class WireHelperServiceImpl implements WireHelperService {
     /** {@inheritDoc} */
     @Override
     public WireSupport newWireSupport(final WireComponent wireComponent) {
-        return new WireSupportImpl(wireComponent, this, this.eventAdmin);
+        return new WireSupportImpl(wireComponent, this, this.emitEventNotifier);
     }
 }
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static java.util.Objects.nonNull;
+
+import java.util.Map;
+
+/**
+ * The Class WireHelperServiceOptions is responsible to contain all the Wire Helper Service related
+ * configurations
+ */
+final class WireHelperServiceOptions {
+
+    /** The Constant denoting the size of the queue of every outgoing wire. */
+    private static final String CONF_DELIVERY_QUEUE_SIZE = "delivery.queue-size";
+
+    /** The Constant denoting the interval between the emit events. */
+    private static final String CONF_EMIT_EVENT_INTERVAL = "emit.event.interval";
+
+    /** The Constant denoting the default queue size, that updates the wires on the emitting thread. */
+    private static final int DEFAULT_DELIVERY_QUEUE_SIZE = 0;
+
+    private static final int DEFAULT_EMIT_EVENT_INTERVAL = 500;
+
+    private final Map<String, Object> properties;
+
+    /**
+     * Instantiates a new Wire Helper Service options.
+     *
+     * @param properties
+     *            the properties
+     */
+    WireHelperServiceOptions(final Map<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the maximum number of envelopes waiting to be delivered on every outgoing wire.
+     *
+     * @return the queue size, 0 if the wires are updated on the emitting thread
+     */
+    int getDeliveryQueueSize() {
+        int deliveryQueueSize = DEFAULT_DELIVERY_QUEUE_SIZE;
+        final Object queueSize = nonNull(this.properties) ? this.properties.get(CONF_DELIVERY_QUEUE_SIZE) : null;
+        if (nonNull(queueSize) && queueSize instanceof Integer) {
+            deliveryQueueSize = (Integer) queueSize;
+        }
+        return deliveryQueueSize;
+    }
+
+    /**
+     * Returns the minimum interval, in milliseconds, between two emit events of the same emitter.
+     *
+     * @return the emit event interval
+     */
+    int getEmitEventInterval() {
+        int emitEventInterval = DEFAULT_EMIT_EVENT_INTERVAL;
+        final Object interval = nonNull(this.properties) ? this.properties.get(CONF_EMIT_EVENT_INTERVAL) : null;
+        if (nonNull(interval) && interval instanceof Integer && (Integer) interval > 0) {
+            emitEventInterval = (Integer) interval;
+        }
+        return emitEventInterval;
+    }
+}
@@ -13,10 +13,13 @@
  *******************************************************************************/
 package org.eclipse.kura.internal.wire.helper;
 
+import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,32 +29,38 @@ import org.eclipse.kura.util.collection.CollectionUtil;
 import org.eclipse.kura.wire.WireComponent;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
-import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
 import org.eclipse.kura.wire.WireSupport;
-import org.osgi.service.event.Event;
-import org.osgi.service.event.EventAdmin;
 import org.osgi.service.wireadmin.Wire;
 
 /**
- * The Class WireSupportImpl implements {@link WireSupport}
+ * The Class WireSupportImpl implements {@link WireSupport}.<br/>
+ * <br/>
+ *
+ * The outgoing wires are kept in an immutable snapshot replaced as a whole when the consumers
+ * change, so that emitting requires no locking. Every outgoing wire is updated through a
+ * {@link WireDelivery}, synchronously or from its own queue as configured in the Wire Helper Service.
  */
 final class WireSupportImpl implements WireSupport {
 
     private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
 
-    private final EventAdmin eventAdmin;
+    private static final WireDelivery[] NO_DELIVERIES = new WireDelivery[0];
+
+    private final WireHelperServiceImpl wireHelperService;
 
-    private List<Wire> incomingWires;
+    private final EmitEventNotifier emitEventNotifier;
 
-    private List<Wire> outgoingWires;
+    private volatile List<Wire> incomingWires;
+
+    private volatile WireDelivery[] outgoingDeliveries = NO_DELIVERIES;
 
     private final WireComponent wireSupporter;
 
-    private String emitterPid;
+    private final String emitterPid;
 
-    private String pid;
+    private final String pid;
 
     /**
      * Instantiates a new wire support implementation.
@@ -60,43 +69,65 @@ final class WireSupportImpl implements WireSupport {
      *            the wire supporter
      * @param wireHelperService
      *            the Wire Helper service
-     * @param eventAdmin
-     *            the Event Admin service
+     * @param emitEventNotifier
+     *            the notifier of the emit events
      * @throws NullPointerException
      *             if any of the provided arguments is null
      */
-    WireSupportImpl(final WireComponent wireSupporter, final WireHelperService wireHelperService,
-            final EventAdmin eventAdmin) {
+    WireSupportImpl(final WireComponent wireSupporter, final WireHelperServiceImpl wireHelperService,
+            final EmitEventNotifier emitEventNotifier) {
         requireNonNull(wireSupporter, message.wireSupportedComponentNonNull());
         requireNonNull(wireHelperService, message.wireHelperServiceNonNull());
-        requireNonNull(eventAdmin, message.eventAdminNonNull());
+        requireNonNull(emitEventNotifier, message.eventAdminNonNull());
 
-        this.outgoingWires = CollectionUtil.newArrayList();
         this.incomingWires = CollectionUtil.newArrayList();
         this.emitterPid = wireHelperService.getServicePid(wireSupporter);
         this.pid = wireHelperService.getPid(wireSupporter);
         this.wireSupporter = wireSupporter;
-        this.eventAdmin = eventAdmin;
+        this.wireHelperService = wireHelperService;
+        this.emitEventNotifier = emitEventNotifier;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}<br/>
+     * <br/>
+     * The deliveries of the wires still connected are kept, together with the envelopes they have queued.
+     * Only the deliveries of the added wires are created and only those of the removed wires are shut down.
+     */
     @Override
     public synchronized void consumersConnected(final Wire[] wires) {
-        this.outgoingWires = Arrays.asList(wires);
+        final Map<Wire, WireDelivery> previousDeliveries = new IdentityHashMap<>();
+        for (final WireDelivery delivery : this.outgoingDeliveries) {
+            previousDeliveries.put(delivery.getWire(), delivery);
+        }
+
+        if (isNull(wires) || wires.length == 0) {
+            this.outgoingDeliveries = NO_DELIVERIES;
+        } else {
+            final int queueSize = this.wireHelperService.getDeliveryQueueSize();
+            final WireDelivery[] deliveries = new WireDelivery[wires.length];
+            for (int i = 0; i < wires.length; i++) {
+                final WireDelivery delivery = previousDeliveries.remove(wires[i]);
+                deliveries[i] = isNull(delivery) ? new WireDelivery(wires[i], queueSize) : delivery;
+            }
+            this.outgoingDeliveries = deliveries;
+        }
+
+        for (final WireDelivery delivery : previousDeliveries.values()) {
+            delivery.shutdown();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void emit(final List<WireRecord> wireRecords) {
+    public void emit(final List<WireRecord> wireRecords) {
         requireNonNull(wireRecords, message.wireRecordsNonNull());
         if (this.wireSupporter instanceof WireEmitter) {
-            final WireEnvelope wei = new WireEnvelope(emitterPid, wireRecords);
-            for (final Wire wire : this.outgoingWires) {
-                wire.update(wei);
+            final WireEnvelope wei = new WireEnvelope(this.emitterPid, wireRecords);
+            for (final WireDelivery delivery : this.outgoingDeliveries) {
+                delivery.deliver(wei);
             }
-            final Map<String, Object> properties = CollectionUtil.newHashMap();
-            properties.put("emitter", pid);
-            this.eventAdmin.postEvent(new Event(WireSupport.EMIT_EVENT_TOPIC, properties));
+            this.emitEventNotifier.emitted(this.pid);
         }
     }
 
@@ -115,12 +146,16 @@ final class WireSupportImpl implements WireSupport {
      * @return the outgoing wires
      */
     List<Wire> getOutgoingWires() {
-        return Collections.unmodifiableList(this.outgoingWires);
+        final List<Wire> outgoingWires = new ArrayList<>();
+        for (final WireDelivery delivery : this.outgoingDeliveries) {
+            outgoingWires.add(delivery.getWire());
+        }
+        return Collections.unmodifiableList(outgoingWires);
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized Object polled(final Wire wire) {
+    public Object polled(final Wire wire) {
         return wire.getLastValue();
     }
 
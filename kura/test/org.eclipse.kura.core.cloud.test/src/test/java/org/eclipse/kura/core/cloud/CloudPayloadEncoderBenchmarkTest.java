@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the rate of the direct protobuf encoding of a typical wire record payload with the encoding through the
+ * generated message builders. Not run with the unit tests, it only logs the rates.
+ */
+@Ignore("Benchmark, to be run manually")
+public class CloudPayloadEncoderBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudPayloadEncoderBenchmarkTest.class);
+
+    private static final int WARMUP_ENCODINGS = 20000;
+    private static final int ENCODINGS = 100000;
+    private static final int METRICS = 20;
+
+    @Test
+    public void testEncodingRate() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date());
+        for (int i = 0; i < METRICS; i++) {
+            payload.addMetric("channel" + i, (double) i);
+            payload.addMetric("channel" + i + "_assetName", "asset");
+        }
+
+        long size = 0;
+        for (int i = 0; i < WARMUP_ENCODINGS; i++) {
+            size += new CloudPayloadProtoBufEncoderImpl(payload).getBytes().length;
+            size += CloudPayloadProtoBufEncoderImplTest.encodeWithBuilder(payload).length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ENCODINGS; i++) {
+            size += new CloudPayloadProtoBufEncoderImpl(payload).getBytes().length;
+        }
+        log("direct", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < ENCODINGS; i++) {
+            size += CloudPayloadProtoBufEncoderImplTest.encodeWithBuilder(payload).length;
+        }
+        log("builder", System.nanoTime() - start);
+        logger.debug("{} bytes encoded", size);
+    }
+
+    private static void log(String mode, long elapsed) {
+        logger.info("{}: {} encodings in {} ms, {} encodings/s", mode, ENCODINGS,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), ENCODINGS * TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+}
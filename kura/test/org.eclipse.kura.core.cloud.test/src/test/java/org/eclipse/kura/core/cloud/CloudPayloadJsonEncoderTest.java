@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+import org.junit.Test;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonObject;
+
+public class CloudPayloadJsonEncoderTest {
+
+    @Test
+    public void testEmptyPayload() throws Exception {
+        KuraPayload payload = new KuraPayload();
+
+        assertArrayEquals(encodeWithJsonTree(payload), CloudPayloadJsonEncoder.getBytes(payload));
+    }
+
+    @Test
+    public void testSameBytesAsJsonTree() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1489000000000L));
+
+        KuraPosition position = new KuraPosition();
+        position.setLatitude(45.5);
+        position.setLongitude(13.0);
+        position.setAltitude(1.0E20);
+        position.setSpeed(-0.0);
+        position.setTimestamp(new Date(1489000000001L));
+        position.setSatellites(7);
+        position.setStatus(4);
+        payload.setPosition(position);
+
+        payload.addMetric("string", "värde € 😀 \"q\" \\ / \n\r\t\b\f\u0001 \u2028\u2029");
+        payload.addMetric("surrogate", "\uD800");
+        payload.addMetric("double", 1.5d);
+        payload.addMetric("float", -3.0f);
+        payload.addMetric("long", Long.MIN_VALUE);
+        payload.addMetric("int", -1);
+        payload.addMetric("bool", true);
+        payload.addMetric("bytes1", new byte[] { -1 });
+        payload.addMetric("bytes2", new byte[] { -1, 0 });
+        payload.addMetric("bytes3", new byte[] { -1, 0, 1 });
+        payload.addMetric("nämn", "");
+        payload.setBody(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+        byte[] bytes = CloudPayloadJsonEncoder.getBytes(payload);
+        assertArrayEquals(encodeWithJsonTree(payload), bytes);
+
+        KuraPayload decoded = CloudPayloadJsonDecoder.buildFromByteArray(bytes);
+        assertEquals(payload.getTimestamp(), decoded.getTimestamp());
+        assertEquals(payload.getMetric("string"), decoded.getMetric("string"));
+        assertEquals(Long.MIN_VALUE, decoded.getMetric("long"));
+        assertEquals(1.5d, decoded.getMetric("double"));
+        assertEquals(-3L, decoded.getMetric("float"));
+        assertEquals(true, decoded.getMetric("bool"));
+        assertEquals("", decoded.getMetric("nämn"));
+        assertArrayEquals(payload.getBody(), decoded.getBody());
+        assertEquals(1.0E20, decoded.getPosition().getAltitude(), 0.0);
+        assertEquals(7, (int) decoded.getPosition().getSatellites());
+        assertEquals(1489000000001L, decoded.getPosition().getTimestamp().getTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMetricType() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("date", new Date());
+
+        CloudPayloadJsonEncoder.getBytes(payload);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNaN() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("nan", Double.NaN);
+
+        CloudPayloadJsonEncoder.getBytes(payload);
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        String json = " { \"SENTON\" : 1, \"metrics\": {\"a\\u00e8\\/\":\"x\\ty\", \"b\": 1e3, \"c\": false},"
+                + "\"body\": \"AQI=\" }\n";
+        KuraPayload decoded = CloudPayloadJsonDecoder.buildFromByteArray(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1L, decoded.getTimestamp().getTime());
+        assertEquals("x\ty", decoded.getMetric("aè/"));
+        assertEquals(1000.0d, decoded.getMetric("b"));
+        assertEquals(false, decoded.getMetric("c"));
+        assertArrayEquals(new byte[] { 1, 2 }, decoded.getBody());
+    }
+
+    @Test
+    public void testDecodeFallbackToBody() throws Exception {
+        String[] invalid = { "", "[]", "{\"unknown\": 1}", "{\"metrics\": {\"a\": null}}", "{\"metrics\": []}",
+                "{\"position\": {\"latitude\": \"1\"}}", "{\"sentOn\": 1,}", "{\"sentOn\": 01}", "{} {}",
+                "{\"metrics\": {\"a\": \"\u0001\"}}", "{\"metrics\": {\"a\": 1" };
+        for (String json : invalid) {
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            KuraPayload decoded = CloudPayloadJsonDecoder.buildFromByteArray(bytes);
+
+            assertArrayEquals(json, bytes, decoded.getBody());
+            assertTrue(json, decoded.metrics().isEmpty());
+        }
+    }
+
+    // The reference encoding, through the minimal-json object tree
+    private static byte[] encodeWithJsonTree(KuraPayload payload) {
+        JsonObject json = Json.object();
+        if (payload.getTimestamp() != null) {
+            json.add("sentOn", payload.getTimestamp().getTime());
+        }
+
+        KuraPosition position = payload.getPosition();
+        if (position != null) {
+            JsonObject jsonPosition = Json.object();
+            jsonPosition.add("latitude", position.getLatitude());
+            jsonPosition.add("longitude", position.getLongitude());
+            jsonPosition.add("altitude", position.getAltitude());
+            jsonPosition.add("satellites", position.getSatellites());
+            jsonPosition.add("speed", position.getSpeed());
+            jsonPosition.add("timestamp", position.getTimestamp().getTime());
+            jsonPosition.add("status", position.getStatus());
+            json.add("position", jsonPosition);
+        }
+
+        JsonObject jsonMetrics = Json.object();
+        for (String name : payload.metricNames()) {
+            Object value = payload.getMetric(name);
+            if (value instanceof Boolean) {
+                jsonMetrics.add(name, (Boolean) value);
+            } else if (value instanceof Double) {
+                jsonMetrics.add(name, (Double) value);
+            } else if (value instanceof Float) {
+                jsonMetrics.add(name, (Float) value);
+            } else if (value instanceof Integer) {
+                jsonMetrics.add(name, (Integer) value);
+            } else if (value instanceof Long) {
+                jsonMetrics.add(name, (Long) value);
+            } else if (value instanceof String) {
+                jsonMetrics.add(name, (String) value);
+            } else {
+                jsonMetrics.add(name, Base64.getEncoder().encodeToString((byte[]) value));
+            }
+        }
+        json.add("metrics", jsonMetrics);
+
+        if (payload.getBody() != null) {
+            json.add("body", Base64.getEncoder().encodeToString(payload.getBody()));
+        }
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class CloudPayloadProtoBufEncoderImplTest {
+
+    @Test
+    public void testEmptyPayload() throws Exception {
+        KuraPayload payload = new KuraPayload();
+
+        assertArrayEquals(encodeWithBuilder(payload), new CloudPayloadProtoBufEncoderImpl(payload).getBytes());
+    }
+
+    @Test
+    public void testSameBytesAsBuilder() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1489000000000L));
+
+        KuraPosition position = new KuraPosition();
+        position.setLatitude(45.5);
+        position.setLongitude(13.1);
+        position.setAltitude(-2.0);
+        position.setTimestamp(new Date(1489000000001L));
+        position.setSatellites(7);
+        position.setStatus(4);
+        payload.setPosition(position);
+
+        payload.addMetric("string", "värde €");
+        payload.addMetric("double", 1.5d);
+        payload.addMetric("float", -3.25f);
+        payload.addMetric("long", Long.MIN_VALUE);
+        payload.addMetric("int", -1);
+        payload.addMetric("bool", true);
+        payload.addMetric("bytes", new byte[] { 0, 1, 2 });
+        payload.addMetric("null", null);
+        payload.setBody(new byte[300]);
+
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+        assertArrayEquals(encodeWithBuilder(payload), bytes);
+
+        KuraPayload decoded = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+        assertEquals("värde €", decoded.getMetric("string"));
+        assertEquals(Long.MIN_VALUE, decoded.getMetric("long"));
+        assertArrayEquals(new byte[] { 0, 1, 2 }, (byte[]) decoded.getMetric("bytes"));
+        assertEquals(7, (int) decoded.getPosition().getSatellites());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidMetricType() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("date", new Date());
+
+        new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+    }
+
+    // The reference encoding, through the generated message builders
+    static byte[] encodeWithBuilder(KuraPayload payload) {
+        KuraPayloadProto.KuraPayload.Builder protoMsg = KuraPayloadProto.KuraPayload.newBuilder();
+        if (payload.getTimestamp() != null) {
+            protoMsg.setTimestamp(payload.getTimestamp().getTime());
+        }
+
+        KuraPosition position = payload.getPosition();
+        if (position != null) {
+            KuraPayloadProto.KuraPayload.KuraPosition.Builder protoPos = KuraPayloadProto.KuraPayload.KuraPosition
+                    .newBuilder().setLatitude(position.getLatitude()).setLongitude(position.getLongitude());
+            if (position.getAltitude() != null) {
+                protoPos.setAltitude(position.getAltitude());
+            }
+            if (position.getTimestamp() != null) {
+                protoPos.setTimestamp(position.getTimestamp().getTime());
+            }
+            if (position.getSatellites() != null) {
+                protoPos.setSatellites(position.getSatellites());
+            }
+            if (position.getStatus() != null) {
+                protoPos.setStatus(position.getStatus());
+            }
+            protoMsg.setPosition(protoPos);
+        }
+
+        for (Map.Entry<String, Object> entry : payload.metrics().entrySet()) {
+            Object value = entry.getValue();
+            KuraMetric.Builder metric = KuraMetric.newBuilder().setName(entry.getKey());
+            if (value instanceof String) {
+                metric.setType(KuraMetric.ValueType.STRING).setStringValue((String) value);
+            } else if (value instanceof Double) {
+                metric.setType(KuraMetric.ValueType.DOUBLE).setDoubleValue((Double) value);
+            } else if (value instanceof Integer) {
+                metric.setType(KuraMetric.ValueType.INT32).setIntValue((Integer) value);
+            } else if (value instanceof Float) {
+                metric.setType(KuraMetric.ValueType.FLOAT).setFloatValue((Float) value);
+            } else if (value instanceof Long) {
+                metric.setType(KuraMetric.ValueType.INT64).setLongValue((Long) value);
+            } else if (value instanceof Boolean) {
+                metric.setType(KuraMetric.ValueType.BOOL).setBoolValue((Boolean) value);
+            } else if (value instanceof byte[]) {
+                metric.setType(KuraMetric.ValueType.BYTES).setBytesValue(ByteString.copyFrom((byte[]) value));
+            } else {
+                continue;
+            }
+            protoMsg.addMetric(metric);
+        }
+
+        if (payload.getBody() != null) {
+            protoMsg.setBody(ByteString.copyFrom(payload.getBody()));
+        }
+        return protoMsg.build().toByteArray();
+    }
+}
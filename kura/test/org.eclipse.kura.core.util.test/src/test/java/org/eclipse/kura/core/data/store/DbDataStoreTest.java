@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.db.HsqlDbServiceImpl;
+import org.junit.Test;
+
+public class DbDataStoreTest {
+
+    private static final int PURGE_AGE = 3600;
+
+    @Test
+    public void testGetNextMessagesWithinByteLimit() throws Exception {
+        DbDataStore store = start("window", 1);
+        try {
+            DataMessage message1 = store.store("a/b", new byte[100], 1, false, 5);
+            DataMessage message2 = store.store("a/c", null, 1, false, 5);
+            DataMessage message3 = store.store("a/d", new byte[100], 1, false, 5);
+            DataMessage message4 = store.store("a/e", new byte[100], 1, false, 2);
+
+            // ordered by priority, then by creation
+            List<DataMessage> next = store.getNextMessages(10, Integer.MAX_VALUE);
+            assertEquals(4, next.size());
+            assertEquals(message4.getId(), next.get(0).getId());
+            assertEquals(message1.getId(), next.get(1).getId());
+            assertEquals(message2.getId(), next.get(2).getId());
+            assertEquals(message3.getId(), next.get(3).getId());
+            assertEquals(100, next.get(1).getPayload().length);
+            assertNull(next.get(2).getPayload());
+
+            // the limit is checked before each message, the first one is always returned
+            next = store.getNextMessages(10, 150);
+            assertEquals(2, next.size());
+            assertEquals(message1.getId(), next.get(1).getId());
+            next = store.getNextMessages(10, 1);
+            assertEquals(1, next.size());
+            assertEquals(message4.getId(), next.get(0).getId());
+
+            next = store.getNextMessages(3, Integer.MAX_VALUE);
+            assertEquals(3, next.size());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testGroupCommitSingleWriter() throws Exception {
+        // a single writer does not wait for the group delay
+        DbDataStore store = start("single", 10, 60000);
+        try {
+            long start = System.nanoTime();
+            DataMessage message = store.store("a/b", new byte[10], 1, false, 5);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+            assertEquals(message.getId(), store.get(message.getId()).getId());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testGroupCommitConcurrentWriters() throws Exception {
+        final DbDataStore store = start("concurrent", 10, 50);
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DataMessage>> results = new ArrayList<Future<DataMessage>>();
+            for (int i = 0; i < 100; i++) {
+                results.add(writers.submit(new Callable<DataMessage>() {
+
+                    @Override
+                    public DataMessage call() throws Exception {
+                        return store.store("a/b", new byte[10], 1, false, 5);
+                    }
+                }));
+            }
+            Set<Integer> ids = new HashSet<Integer>();
+            for (Future<DataMessage> result : results) {
+                ids.add(result.get().getId());
+            }
+            assertEquals(100, ids.size());
+            assertEquals(100, store.getNextMessages(1000, Integer.MAX_VALUE).size());
+        } finally {
+            writers.shutdown();
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testGroupCommitInterruptedWriter() throws Exception {
+        DbDataStore store = start("interrupted", 10, 50);
+        try {
+            // the interrupted writer still gets the committed message
+            Thread.currentThread().interrupt();
+            DataMessage message = store.store("a/b", new byte[10], 1, false, 5);
+            assertTrue(Thread.interrupted());
+            assertEquals(message.getId(), store.get(message.getId()).getId());
+        } finally {
+            Thread.interrupted();
+            store.stop();
+        }
+    }
+
+    static DbDataStore start(String database, int groupCommitSize) throws KuraStoreException {
+        return start(database, groupCommitSize, 50);
+    }
+
+    static DbDataStore start(String database, int groupCommitSize, int groupCommitDelay) throws KuraStoreException {
+        DbDataStore store = new DbDataStore("ds_messages");
+        store.start(new MemoryDbService(database), 3600, PURGE_AGE, 1000, groupCommitSize, groupCommitDelay);
+        return store;
+    }
+
+    // An in-memory database, without the system service of the HsqlDbServiceImpl
+    static class MemoryDbService extends HsqlDbServiceImpl {
+
+        private final String url;
+
+        MemoryDbService(String database) {
+            this.url = "jdbc:hsqldb:mem:" + database + System.nanoTime();
+        }
+
+        @Override
+        public synchronized Connection getConnection() throws SQLException {
+            return DriverManager.getConnection(this.url, "SA", "");
+        }
+
+        @Override
+        public boolean isLogDataEnabled() {
+            return true;
+        }
+    }
+}
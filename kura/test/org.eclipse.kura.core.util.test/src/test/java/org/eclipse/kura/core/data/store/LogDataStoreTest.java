@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.junit.Test;
+
+public class LogDataStoreTest {
+
+    private static final int PURGE_AGE = 3600;
+
+    @Test
+    public void testStoreConfirmPurge() throws Exception {
+        LogDataStore store = start(Files.createTempDirectory("logstore").toFile());
+        try {
+            DataMessage message1 = store.store("a/b", "1".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+            DataMessage message2 = store.store("a/c", null, 0, true, 5);
+            DataMessage message3 = store.store("a/d", "3".getBytes(StandardCharsets.UTF_8), 1, false, 2);
+
+            // ordered by priority, then by ID
+            List<DataMessage> next = store.getNextMessages(10, Integer.MAX_VALUE);
+            assertEquals(3, next.size());
+            assertEquals(message3.getId(), next.get(0).getId());
+            assertEquals(message1.getId(), next.get(1).getId());
+            assertArrayEquals("1".getBytes(StandardCharsets.UTF_8), next.get(1).getPayload());
+            assertNull(next.get(2).getPayload());
+            assertTrue(next.get(2).isRetain());
+
+            store.published(message1.getId(), 11, "session");
+            store.published(message2.getId());
+            store.published(message3.getId(), 12, "session");
+            assertNull(store.getNextMessage());
+            assertEquals(2, store.allInFlightMessagesNoPayload().size());
+
+            store.confirmed(message1.getId());
+            assertEquals(1, store.allInFlightMessagesNoPayload().size());
+            assertEquals("session", store.get(message3.getId()).getSessionId());
+            assertEquals(12, store.get(message3.getId()).getPublishedMessageId());
+
+            // the confirmed and the published QoS 0 messages are purged
+            Thread.sleep(2);
+            store.deleteStaleMessages(0);
+            assertNull(store.get(message1.getId()));
+            assertNull(store.get(message2.getId()));
+            assertNotNull(store.get(message3.getId()));
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterRestart() throws Exception {
+        File directory = Files.createTempDirectory("logstore").toFile();
+        LogDataStore store = start(directory);
+        DataMessage published = store.store("a/b", "1".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+        DataMessage unpublished = store.store("a/c", "2".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+        store.published(published.getId(), 11, "session");
+        store.stop();
+
+        // a record partially appended before a crash is discarded
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "segment-0.log"), true)) {
+            out.write(new byte[] { 0, 0, 0, 3, 0 });
+        }
+
+        store = start(directory);
+        try {
+            assertEquals(1, store.allInFlightMessagesNoPayload().size());
+            assertEquals("session", store.allInFlightMessagesNoPayload().get(0).getSessionId());
+            DataMessage next = store.getNextMessage();
+            assertEquals(unpublished.getId(), next.getId());
+            assertEquals("a/c", next.getTopic());
+            assertArrayEquals("2".getBytes(StandardCharsets.UTF_8), next.getPayload());
+
+            DataMessage stored = store.store("a/d", "3".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+            assertEquals(unpublished.getId() + 1, stored.getId());
+            assertArrayEquals("3".getBytes(StandardCharsets.UTF_8), store.get(stored.getId()).getPayload());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testCorruptedRecords() throws Exception {
+        File directory = Files.createTempDirectory("logstore").toFile();
+        LogDataStore store = start(directory);
+        DataMessage message1 = store.store("a/b", "1".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+        store.store("a/c", "2".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+        DataMessage message3 = store.store("a/d", "3".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+        store.stop();
+
+        // records of 16 bytes: the header of the second one is overwritten and the last one is truncated
+        File segmentFile = new File(directory, "segment-0.log");
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.seek(16);
+            file.write(new byte[8]);
+            file.setLength(44);
+        }
+
+        store = start(directory);
+        try {
+            List<DataMessage> next = store.getNextMessages(10, Integer.MAX_VALUE);
+            assertEquals(1, next.size());
+            assertEquals(message1.getId(), next.get(0).getId());
+
+            DataMessage stored = store.store("a/e", "4".getBytes(StandardCharsets.UTF_8), 1, false, 5);
+            assertTrue(stored.getId() > message3.getId());
+
+            // a record damaged while the store is open is deleted instead of blocking the next ones
+            try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+                file.write(new byte[8]);
+            }
+            next = store.getNextMessages(10, Integer.MAX_VALUE);
+            assertEquals(1, next.size());
+            assertEquals(stored.getId(), next.get(0).getId());
+            assertArrayEquals("4".getBytes(StandardCharsets.UTF_8), next.get(0).getPayload());
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testDefragPastUnconfirmedMessages() throws Exception {
+        File directory = Files.createTempDirectory("logstore").toFile();
+        LogDataStore store = start(directory);
+        byte[] payload = new byte[64 * 1024];
+        int[] stuck = new int[2];
+        try {
+            // two messages never confirmed among enough messages to fill more than one segment
+            for (int i = 0; i < 24; i++) {
+                DataMessage message = store.store("a/b", payload, 1, false, 5);
+                store.published(message.getId(), i, "session");
+                if (i == 0 || i == 4) {
+                    stuck[i == 0 ? 0 : 1] = message.getId();
+                } else {
+                    store.confirmed(message.getId());
+                }
+            }
+            assertTrue(new File(directory, "segment-1.log").exists());
+
+            Thread.sleep(2);
+            store.deleteStaleMessages(0);
+            store.defrag();
+
+            // the records have been copied out of the first segment
+            assertFalse(new File(directory, "segment-0.log").exists());
+            assertEquals(2, store.allInFlightMessagesNoPayload().size());
+            assertArrayEquals(payload, store.get(stuck[0]).getPayload());
+            assertArrayEquals(payload, store.get(stuck[1]).getPayload());
+
+            // IDs are not reused after the index compaction
+            DataMessage stored1 = store.store("a/c", null, 1, false, 5);
+            DataMessage stored2 = store.store("a/d", null, 1, false, 5);
+            assertTrue(stored1.getId() > stuck[1] + 19);
+            assertEquals(stored1.getId() + 1, stored2.getId());
+            assertArrayEquals(payload, store.get(stuck[1]).getPayload());
+            assertEquals("a/c", store.get(stored1.getId()).getTopic());
+        } finally {
+            store.stop();
+        }
+
+        store = start(directory);
+        try {
+            assertEquals(Arrays.asList(stuck[0], stuck[1]), Arrays.asList(
+                    store.allInFlightMessagesNoPayload().get(0).getId(),
+                    store.allInFlightMessagesNoPayload().get(1).getId()));
+            assertArrayEquals(payload, store.get(stuck[1]).getPayload());
+            assertEquals(2, store.allUnpublishedMessagesNoPayload().size());
+
+            store.confirmed(stuck[0]);
+            store.confirmed(stuck[1]);
+            assertTrue(store.allInFlightMessagesNoPayload().isEmpty());
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static LogDataStore start(File directory) throws KuraStoreException {
+        LogDataStore store = new LogDataStore(directory);
+        store.start(null, 3600, PURGE_AGE, 1000, 0, 0);
+        return store;
+    }
+}
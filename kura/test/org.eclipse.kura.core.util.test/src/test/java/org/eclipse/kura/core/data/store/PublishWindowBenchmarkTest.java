@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the heap allocated by the publisher thread per MB of payload drained from a store backlog,
+ * reading the messages in windows as the DataService does. Not run with the unit tests, it only logs the figures.
+ */
+@Ignore("Benchmark, to be run manually")
+public class PublishWindowBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishWindowBenchmarkTest.class);
+
+    private static final int PAYLOAD_SIZE = 256 * 1024;
+    private static final int MESSAGES = 200;
+    private static final int WINDOW_SIZE = 50;
+    private static final int WINDOW_MAX_BYTES = 1024 * 1024;
+
+    @Test
+    public void testLogDataStoreAllocation() throws Exception {
+        LogDataStore store = new LogDataStore(Files.createTempDirectory("logstore").toFile());
+        store.start(null, 3600, 3600, MESSAGES * 2, 0, 0);
+        try {
+            drain("log", store);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testDbDataStoreAllocation() throws Exception {
+        DbDataStore store = DbDataStoreTest.start("benchmark", 1);
+        try {
+            drain("db", store);
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static void drain(String name, DataStore store) throws KuraStoreException {
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        for (int i = 0; i < MESSAGES; i++) {
+            store.store("a/b", payload, 1, false, 5);
+        }
+
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        int published = 0;
+        List<DataMessage> messages;
+        while (!(messages = store.getNextMessages(WINDOW_SIZE, WINDOW_MAX_BYTES)).isEmpty()) {
+            store.published(messages);
+            published += messages.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = getAllocatedBytes() - allocated;
+        assertEquals(MESSAGES, published);
+
+        double megabytes = (double) MESSAGES * PAYLOAD_SIZE / (1024 * 1024);
+        logger.info("{}: {} MB drained in {} ms, {} bytes allocated per MB", name, megabytes, elapsed / 1000000,
+                (long) (allocated / megabytes));
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class GZipUtilTest {
+
+    @Test
+    public void testSameBytesAsGZIPOutputStream() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append("{\"temperature\":").append(20 + i % 7).append(",\"assetName\":\"asset").append(i % 3)
+                    .append("\"}");
+        }
+        byte[] source = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Twice, to check that the reused Deflater is properly reset
+        for (int i = 0; i < 2; i++) {
+            byte[] compressed = GZipUtil.compress(source);
+
+            assertTrue(GZipUtil.isCompressed(compressed));
+            assertArrayEquals(compressWithStream(source), compressed);
+            assertArrayEquals(source, GZipUtil.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void testEmptySource() throws IOException {
+        byte[] compressed = GZipUtil.compress(new byte[0]);
+
+        assertArrayEquals(compressWithStream(new byte[0]), compressed);
+        assertEquals(0, GZipUtil.decompress(compressed).length);
+    }
+
+    @Test
+    public void testMaxLength() throws IOException {
+        byte[] random = new byte[10000];
+        new Random(1).nextBytes(random);
+
+        assertNull(GZipUtil.compress(random, random.length));
+        assertNull(GZipUtil.compress(new byte[100], 10));
+
+        byte[] compressed = GZipUtil.compress(new byte[10000], 10000);
+        assertNotNull(compressed);
+        assertArrayEquals(compressed, GZipUtil.compress(new byte[10000], compressed.length + 1));
+        assertNull(GZipUtil.compress(new byte[10000], compressed.length));
+        assertArrayEquals(new byte[10000], GZipUtil.decompress(compressed));
+    }
+
+    private static byte[] compressWithStream(byte[] source) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipos = new GZIPOutputStream(baos)) {
+            gzipos.write(source);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.kura.internal.driver.modbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolErrorCode;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolException;
+import org.junit.Test;
+
+public class ModbusConnectionManagerTest {
+
+    @Test
+    public void testEndpointShared() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            final AtomicInteger connections = new AtomicInteger();
+            startServer(serverSocket, connections);
+
+            ModbusDriverOptions options1 = getOptions(serverSocket.getLocalPort(), 1000);
+            ModbusDriverOptions options2 = getOptions(serverSocket.getLocalPort(), 2000);
+            assertEquals(options1.getEndpointKey(), options2.getEndpointKey());
+            assertNotEquals(options1.getEndpointKey(),
+                    getOptions(serverSocket.getLocalPort() + 1, 1000).getEndpointKey());
+
+            ModbusConnectionManager manager = new ModbusConnectionManager();
+            ModbusEndpoint endpoint1 = manager.acquire(options1.getEndpointKey(), options1.getConnectionConfig(), null,
+                    null);
+            ModbusEndpoint endpoint2 = manager.acquire(options2.getEndpointKey(), options2.getConnectionConfig(), null,
+                    null);
+            assertSame(endpoint1, endpoint2);
+
+            manager.release(endpoint1);
+            assertEquals("open", endpoint2.submit(this, 0, device -> CompletableFuture.completedFuture("open")).get());
+
+            manager.release(endpoint2);
+            try {
+                endpoint2.submit(this, 0, device -> CompletableFuture.completedFuture("open")).get();
+                fail("Expected closed endpoint");
+            } catch (ExecutionException e) {
+                assertEquals(ModbusProtocolErrorCode.NOT_CONNECTED, ((ModbusProtocolException) e.getCause()).getCode());
+            }
+            for (int i = 0; i < 100 && connections.get() == 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, connections.get());
+        }
+    }
+
+    @Test
+    public void testEndpointReopened() throws Exception {
+        ModbusConnectionManager manager = new ModbusConnectionManager();
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        ModbusDriverOptions options = getOptions(port, 1000);
+        try {
+            manager.acquire(options.getEndpointKey(), options.getConnectionConfig(), null, null);
+            fail("Expected connection failure");
+        } catch (ModbusProtocolException e) {
+            // nothing listening yet
+        }
+
+        // the failed connection is not kept, nor the endpoint released by all its drivers
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            final AtomicInteger connections = new AtomicInteger();
+            startServer(serverSocket, connections);
+
+            ModbusEndpoint endpoint1 = manager.acquire(options.getEndpointKey(), options.getConnectionConfig(), null,
+                    null);
+            manager.release(endpoint1);
+            ModbusEndpoint endpoint2 = manager.acquire(options.getEndpointKey(), options.getConnectionConfig(), null,
+                    null);
+            assertNotSame(endpoint1, endpoint2);
+            assertEquals("open", endpoint2.submit(this, 0, device -> CompletableFuture.completedFuture("open")).get());
+            manager.release(endpoint2);
+
+            for (int i = 0; i < 100 && connections.get() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, connections.get());
+        }
+    }
+
+    @Test
+    public void testSchedulingAndMetrics() throws Exception {
+        ModbusEndpoint endpoint = new ModbusEndpoint("test", new ModbusProtocolDevice());
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+            // holds the worker until all the requests are queued
+            endpoint.submit("blocker", 0, device -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return CompletableFuture.completedFuture(null);
+            });
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            results.add(endpoint.submit("a", 0, record(order, "a1")));
+            results.add(endpoint.submit("a", 0, record(order, "a2")));
+            results.add(endpoint.submit("a", 0, record(order, "a3")));
+            results.add(endpoint.submit("b", 0, record(order, "b1")));
+            results.add(endpoint.submit("c", 5, record(order, "c1")));
+            results.add(endpoint.submit("b", 0, device -> {
+                throw new ModbusProtocolException(ModbusProtocolErrorCode.TRANSACTION_FAILURE);
+            }));
+            release.countDown();
+
+            for (CompletableFuture<String> result : results.subList(0, 5)) {
+                result.get(1, TimeUnit.SECONDS);
+            }
+            try {
+                results.get(5).get(1, TimeUnit.SECONDS);
+                fail("Expected failure");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ModbusProtocolException);
+            }
+
+            // highest priority first, then round-robin between the clients
+            assertEquals(Arrays.asList("c1", "a1", "b1", "a2", "a3"), order);
+            assertEquals(7, endpoint.getTransactionCount());
+            assertEquals(1, endpoint.getErrorCount());
+            assertTrue(endpoint.getMaxLatency() >= endpoint.getAverageLatency());
+        } finally {
+            endpoint.close();
+        }
+    }
+
+    private static ModbusEndpoint.Operation<String> record(final List<String> order, final String name) {
+        return device -> {
+            order.add(name);
+            return CompletableFuture.completedFuture(name);
+        };
+    }
+
+    private static ModbusDriverOptions getOptions(int port, int timeout) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("connection.type", ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_ETHER_TCP);
+        properties.put("ip.address", "127.0.0.1");
+        properties.put("ip.port", port);
+        properties.put("response.timeout", timeout);
+        return new ModbusDriverOptions(properties);
+    }
+
+    private static void startServer(final ServerSocket serverSocket, final AtomicInteger connections) {
+        Thread server = new Thread() {
+
+            @Override
+            public void run() {
+                List<Socket> sockets = new ArrayList<>();
+                try {
+                    while (true) {
+                        sockets.add(serverSocket.accept());
+                        connections.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    // server socket closed by the test
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+    }
+}
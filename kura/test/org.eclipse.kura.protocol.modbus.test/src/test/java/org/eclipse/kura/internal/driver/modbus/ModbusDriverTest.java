@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.kura.internal.driver.modbus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.channel.ChannelFlag;
+import org.eclipse.kura.channel.ChannelRecord;
+import org.eclipse.kura.protocol.modbus.ModbusProtocolDevice;
+import org.eclipse.kura.type.DataType;
+import org.junit.Test;
+
+public class ModbusDriverTest {
+
+    // the holding register the device refuses to read
+    private static final int ILLEGAL_ADDRESS = 5;
+
+    @Test
+    public void testRefusedBlockSplit() throws Exception {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            startServer(serverSocket, requests);
+
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("connection.type", ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_ETHER_TCP);
+            properties.put("ip.address", "127.0.0.1");
+            properties.put("ip.port", serverSocket.getLocalPort());
+            properties.put("response.timeout", 1000);
+            properties.put("read.gap.tolerance", 1);
+            ModbusDriver driver = new ModbusDriver();
+            driver.activate(properties);
+            try {
+                // the gap between the channels is not readable
+                List<ChannelRecord> records = Arrays.asList(record(4), record(6));
+                driver.read(records);
+                assertValues(records);
+                assertEquals(Arrays.asList("4:3", "4:1", "6:1"), requests);
+
+                // the split is remembered
+                requests.clear();
+                records = Arrays.asList(record(4), record(6));
+                driver.read(records);
+                assertValues(records);
+                assertEquals(Arrays.asList("4:1", "6:1"), requests);
+            } finally {
+                driver.deactivate();
+            }
+        }
+    }
+
+    private static void assertValues(List<ChannelRecord> records) {
+        for (ChannelRecord record : records) {
+            assertEquals(ChannelFlag.SUCCESS, record.getChannelStatus().getChannelFlag());
+            assertEquals(record.getChannelConfig().get("memory.address"), record.getValue().getValue());
+        }
+    }
+
+    private static ChannelRecord record(int address) {
+        ChannelRecord record = ChannelRecord.createReadRecord("channel" + address, DataType.INTEGER);
+        Map<String, Object> channelConfig = new HashMap<>();
+        channelConfig.put("unit.id", 1);
+        channelConfig.put("primary.table", ModbusTable.HOLDING_REGISTERS.name());
+        channelConfig.put("memory.address", address);
+        record.setChannelConfig(channelConfig);
+        return record;
+    }
+
+    // serves the holding registers, whose value is their address, recording the requested ranges
+    private static void startServer(final ServerSocket serverSocket, final List<String> requests) {
+        Thread server = new Thread() {
+
+            @Override
+            public void run() {
+                try (Socket socket = serverSocket.accept();
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+                    while (true) {
+                        int transactionId = in.readUnsignedShort();
+                        in.readUnsignedShort();
+                        in.readUnsignedShort();
+                        int unitId = in.readUnsignedByte();
+                        int functionCode = in.readUnsignedByte();
+                        int start = in.readUnsignedShort();
+                        int count = in.readUnsignedShort();
+                        requests.add(start + ":" + count);
+
+                        out.writeShort(transactionId);
+                        out.writeShort(0);
+                        if (start <= ILLEGAL_ADDRESS && ILLEGAL_ADDRESS < start + count) {
+                            // illegal data address exception
+                            out.writeShort(3);
+                            out.writeByte(unitId);
+                            out.writeByte(functionCode | 0x80);
+                            out.writeByte(2);
+                        } else {
+                            out.writeShort(3 + count * 2);
+                            out.writeByte(unitId);
+                            out.writeByte(functionCode);
+                            out.writeByte(count * 2);
+                            for (int i = 0; i < count; i++) {
+                                out.writeShort(start + i);
+                            }
+                        }
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+    }
+}
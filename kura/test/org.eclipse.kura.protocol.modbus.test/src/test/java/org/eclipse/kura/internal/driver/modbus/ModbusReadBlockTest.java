@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.driver.modbus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.kura.channel.ChannelRecord;
+import org.eclipse.kura.type.DataType;
+import org.junit.Test;
+
+public class ModbusReadBlockTest {
+
+    @Test
+    public void testAdjacentChannelsMerged() {
+        List<ModbusRequestInfo> infos = Arrays.asList(info(1, ModbusTable.HOLDING_REGISTERS, 10, ModbusValueType.INT16),
+                info(1, ModbusTable.HOLDING_REGISTERS, 11, ModbusValueType.FLOAT),
+                info(1, ModbusTable.HOLDING_REGISTERS, 13, ModbusValueType.INT16),
+                info(1, ModbusTable.HOLDING_REGISTERS, 20, ModbusValueType.INT16));
+
+        List<ModbusReadBlock> blocks = ModbusReadBlock.coalesce(infos, 0, 125, 2000);
+
+        assertEquals(2, blocks.size());
+        assertEquals(10, blocks.get(0).getStartAddress());
+        assertEquals(4, blocks.get(0).getCount());
+        assertEquals(3, blocks.get(0).getRequestInfos().size());
+        assertEquals(20, blocks.get(1).getStartAddress());
+        assertEquals(1, blocks.get(1).getCount());
+    }
+
+    @Test
+    public void testGapTolerance() {
+        List<ModbusRequestInfo> infos = Arrays.asList(info(1, ModbusTable.INPUT_REGISTERS, 20, ModbusValueType.INT16),
+                info(1, ModbusTable.INPUT_REGISTERS, 10, ModbusValueType.INT16));
+
+        assertEquals(2, ModbusReadBlock.coalesce(infos, 8, 125, 2000).size());
+
+        List<ModbusReadBlock> blocks = ModbusReadBlock.coalesce(infos, 9, 125, 2000);
+        assertEquals(1, blocks.size());
+        assertEquals(10, blocks.get(0).getStartAddress());
+        assertEquals(11, blocks.get(0).getCount());
+    }
+
+    @Test
+    public void testMaximumCount() {
+        List<ModbusRequestInfo> infos = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            infos.add(info(1, ModbusTable.HOLDING_REGISTERS, i, ModbusValueType.INT16));
+        }
+
+        List<ModbusReadBlock> blocks = ModbusReadBlock.coalesce(infos, 0, 125, 2000);
+
+        assertEquals(2, blocks.size());
+        assertEquals(125, blocks.get(0).getCount());
+        assertEquals(125, blocks.get(1).getStartAddress());
+        assertEquals(75, blocks.get(1).getCount());
+    }
+
+    @Test
+    public void testGroupedByUnitAndTable() {
+        List<ModbusRequestInfo> infos = Arrays.asList(info(2, ModbusTable.HOLDING_REGISTERS, 1, ModbusValueType.INT16),
+                info(1, ModbusTable.HOLDING_REGISTERS, 0, ModbusValueType.INT16),
+                info(1, ModbusTable.INPUT_REGISTERS, 1, ModbusValueType.INT16),
+                info(1, ModbusTable.COILS, 0, ModbusValueType.INT32),
+                info(1, ModbusTable.COILS, 1, ModbusValueType.INT16));
+
+        List<ModbusReadBlock> blocks = ModbusReadBlock.coalesce(infos, 0, 125, 2000);
+
+        assertEquals(4, blocks.size());
+        for (ModbusReadBlock block : blocks) {
+            if (block.getTable() == ModbusTable.COILS) {
+                // bit tables ignore the value type
+                assertEquals(2, block.getCount());
+            } else {
+                assertEquals(1, block.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void testValueTypes() {
+        assertEquals(-2, ModbusValueType.INT16.decode(ModbusValueType.INT16.encode(-2), 0).intValue());
+        assertEquals(65534, ModbusValueType.UINT16.decode(new int[] { 0xfffe }, 0).intValue());
+        assertArrayEquals(new int[] { 0x0001, 0x0002 }, ModbusValueType.INT32.encode(0x00010002));
+        assertEquals(4294967295L, ModbusValueType.UINT32.decode(new int[] { 0xffff, 0xffff }, 0).longValue());
+        assertEquals(-123456789012L,
+                ModbusValueType.INT64.decode(ModbusValueType.INT64.encode(-123456789012L), 0).longValue());
+        assertEquals(1.5f, ModbusValueType.FLOAT.decode(new int[] { 0, 0x3fc0, 0 }, 1).floatValue(), 0);
+        assertEquals(Math.PI, ModbusValueType.DOUBLE.decode(ModbusValueType.DOUBLE.encode(Math.PI), 0).doubleValue(),
+                0);
+    }
+
+    private static ModbusRequestInfo info(int unitId, ModbusTable table, int address, ModbusValueType valueType) {
+        ChannelRecord record = ChannelRecord.createReadRecord("channel" + address, DataType.INTEGER);
+        return new ModbusRequestInfo(record, unitId, table, address, valueType);
+    }
+}
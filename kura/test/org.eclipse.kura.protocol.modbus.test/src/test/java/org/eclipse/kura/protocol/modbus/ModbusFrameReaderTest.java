@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.kura.protocol.modbus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ModbusFrameReaderTest {
+
+    @Test
+    public void testReadRtuFrame() throws IOException {
+        byte[] frame = withCrc(1, 3, 2, 0, 5);
+        ModbusFrameReader reader = new ModbusFrameReader(ModbusFrameReader.MAX_RTU_FRAME_LENGTH);
+        reader.readRtuFrame(new ByteArrayInputStream(frame), (byte) 1, 1000);
+
+        assertEquals(frame.length, reader.getLength());
+        assertArrayEquals(frame, Arrays.copyOf(reader.getBuffer(), reader.getLength()));
+    }
+
+    @Test
+    public void testReadRtuFrameAfterBadCrc() throws IOException {
+        byte[] frame = withCrc(1, 3, 4, 0, 1, 0, 2);
+
+        // a bad frame whose announced length covers the whole good frame
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[] { 9, 1, 3, (byte) frame.length });
+        stream.write(frame);
+        stream.write(new byte[] { 0, 0 });
+
+        // the good frame is found among the bytes buffered before the CRC failure
+        ModbusFrameReader reader = new ModbusFrameReader(ModbusFrameReader.MAX_RTU_FRAME_LENGTH);
+        reader.readRtuFrame(new ByteArrayInputStream(stream.toByteArray()), (byte) 1, 1000);
+
+        assertEquals(frame.length, reader.getLength());
+        assertArrayEquals(frame, Arrays.copyOf(reader.getBuffer(), reader.getLength()));
+    }
+
+    private static byte[] withCrc(int... bytes) {
+        byte[] frame = new byte[bytes.length + 2];
+        for (int i = 0; i < bytes.length; i++) {
+            frame[i] = (byte) bytes[i];
+        }
+        int crc = Crc16.getCrc16(frame, bytes.length, 0x0ffff);
+        frame[bytes.length] = (byte) crc;
+        frame[bytes.length + 1] = (byte) (crc >> 8);
+        return frame;
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.kura.protocol.modbus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class ModbusTcpPipelineTest {
+
+    @Test
+    public void testResponsesMatchedByTransactionId() throws Exception {
+        // answers a batch of 4 requests in reverse order, with the requested address as register value
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            startServer(serverSocket, 4);
+
+            ModbusProtocolDevice modbusDevice = connect(serverSocket.getLocalPort(), 4, 10000);
+            try {
+                List<CompletableFuture<int[]>> futures = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    futures.add(modbusDevice.readHoldingRegistersAsync(1, 10 + i, 1));
+                }
+                for (int i = 0; i < 4; i++) {
+                    assertArrayEquals(new int[] { 10 + i }, futures.get(i).get());
+                }
+            } finally {
+                modbusDevice.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testTimeoutReleasesWindow() throws Exception {
+        // the requests to address 99 are never answered
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            startServer(serverSocket, 1);
+
+            ModbusProtocolDevice modbusDevice = connect(serverSocket.getLocalPort(), 2, 200);
+            try {
+                CompletableFuture<int[]> lost1 = modbusDevice.readInputRegistersAsync(1, 99, 1);
+                CompletableFuture<int[]> lost2 = modbusDevice.readInputRegistersAsync(1, 99, 1);
+                // waits for room in the window
+                assertArrayEquals(new int[] { 5 }, modbusDevice.readInputRegisters(1, 5, 1));
+
+                for (CompletableFuture<int[]> lost : new CompletableFuture[] { lost1, lost2 }) {
+                    try {
+                        lost.get();
+                        fail("Expected timeout");
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof ModbusProtocolException);
+                        assertEquals(ModbusProtocolErrorCode.RESPONSE_TIMEOUT,
+                                ((ModbusProtocolException) e.getCause()).getCode());
+                    }
+                }
+            } finally {
+                modbusDevice.disconnect();
+            }
+        }
+    }
+
+    private static ModbusProtocolDevice connect(int port, int window, int timeout) throws ModbusProtocolException {
+        ModbusProtocolDevice modbusDevice = new ModbusProtocolDevice();
+        Properties connectionConfig = new Properties();
+        connectionConfig.setProperty("connectionType", ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_ETHER_TCP);
+        connectionConfig.setProperty("ipAddress", "127.0.0.1");
+        connectionConfig.setProperty("ethport", Integer.toString(port));
+        connectionConfig.setProperty("respTimeout", Integer.toString(timeout));
+        connectionConfig.setProperty("transmissionMode", ModbusTransmissionMode.RTU);
+        connectionConfig.setProperty("pipelineWindow", Integer.toString(window));
+        modbusDevice.configureConnection(connectionConfig);
+        modbusDevice.connect();
+        return modbusDevice;
+    }
+
+    private static void startServer(final ServerSocket serverSocket, final int batchSize) {
+        Thread server = new Thread() {
+
+            @Override
+            public void run() {
+                try (Socket socket = serverSocket.accept();
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream()) {
+                    List<byte[]> batch = new ArrayList<>();
+                    while (true) {
+                        byte[] request = new byte[12];
+                        for (int index = 0; index < request.length;) {
+                            int read = in.read(request, index, request.length - index);
+                            if (read < 0) {
+                                return;
+                            }
+                            index += read;
+                        }
+                        if (request[9] == 99) {
+                            continue;
+                        }
+                        // register value: the requested address
+                        batch.add(new byte[] { request[0], request[1], 0, 0, 0, 5, request[6], request[7], 2,
+                                request[8], request[9] });
+                        if (batch.size() == batchSize) {
+                            Collections.reverse(batch);
+                            for (byte[] response : batch) {
+                                out.write(response);
+                            }
+                            out.flush();
+                            batch.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    // connection closed by the test
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+
+package org.eclipse.kura.protocol.modbus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.protocol.modbus.test.ModbusServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the rate of the transactions on a single connection to the local Modbus TCP stub server,
+ * waiting for each response or with pipelined requests. Not run with the unit tests, it only logs the rates.
+ */
+@Ignore("Benchmark, to be run manually")
+public class ModbusTransactionBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModbusTransactionBenchmarkTest.class);
+
+    private static final int WARMUP_TRANSACTIONS = 1000;
+    private static final int TRANSACTIONS = 5000;
+    private static final int PIPELINE_WINDOW = 8;
+
+    private static ModbusServer modbusServer;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        modbusServer = new ModbusServer();
+        modbusServer.start(0);
+    }
+
+    @AfterClass
+    public static void stopServer() throws IOException {
+        modbusServer.stop();
+    }
+
+    @Test
+    public void testReadHoldingRegistersRate() throws ModbusProtocolException {
+        ModbusProtocolDevice modbusDevice = connect(1);
+        try {
+            for (int i = 0; i < WARMUP_TRANSACTIONS; i++) {
+                modbusDevice.readHoldingRegisters(1, 0, 1);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                int[] holdingReg = modbusDevice.readHoldingRegisters(1, 0, 1);
+                assertEquals(2, holdingReg[0]);
+            }
+            log("sequential", System.nanoTime() - start);
+        } finally {
+            modbusDevice.disconnect();
+        }
+    }
+
+    @Test
+    public void testPipelinedReadHoldingRegistersRate() throws Exception {
+        ModbusProtocolDevice modbusDevice = connect(PIPELINE_WINDOW);
+        try {
+            for (int i = 0; i < WARMUP_TRANSACTIONS; i++) {
+                modbusDevice.readHoldingRegistersAsync(1, 0, 1);
+            }
+
+            long start = System.nanoTime();
+            List<CompletableFuture<int[]>> futures = new ArrayList<>(TRANSACTIONS);
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                futures.add(modbusDevice.readHoldingRegistersAsync(1, 0, 1));
+            }
+            for (CompletableFuture<int[]> future : futures) {
+                assertEquals(2, future.get()[0]);
+            }
+            log("pipelined", System.nanoTime() - start);
+        } finally {
+            modbusDevice.disconnect();
+        }
+    }
+
+    private static ModbusProtocolDevice connect(int pipelineWindow) throws ModbusProtocolException {
+        ModbusProtocolDevice modbusDevice = new ModbusProtocolDevice();
+        Properties connectionConfig = new Properties();
+        connectionConfig.setProperty("connectionType", ModbusProtocolDevice.PROTOCOL_CONNECTION_TYPE_ETHER_TCP);
+        connectionConfig.setProperty("ipAddress", "127.0.0.1");
+        connectionConfig.setProperty("ethport", Integer.toString(modbusServer.getPort()));
+        connectionConfig.setProperty("respTimeout", "10000");
+        connectionConfig.setProperty("transmissionMode", ModbusTransmissionMode.RTU);
+        connectionConfig.setProperty("pipelineWindow", Integer.toString(pipelineWindow));
+        modbusDevice.configureConnection(connectionConfig);
+        modbusDevice.connect();
+        return modbusDevice;
+    }
+
+    private static void log(String mode, long elapsed) {
+        logger.info("{}: {} transactions in {} ms, {} transactions/s", mode, TRANSACTIONS,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), TRANSACTIONS * TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+}
@@ -30,10 +30,19 @@ public class ModbusHandler extends Thread {
 
     public void run() {
         try (OutputStream out = socket.getOutputStream(); InputStream in = socket.getInputStream()) {
-            byte[] input = new byte[256];
-            int length = in.read(input);
-            byte[] output = handleRequest(input);
-            out.write(output);
+            byte[] input = new byte[260];
+            // serve the requests until the client disconnects
+            while (readFrame(in, input)) {
+                byte[] output = handleRequest(input);
+                if (output.length == 0) {
+                    continue;
+                }
+                // echo the transaction identifier and send the frame length announced by the header
+                output[0] = input[0];
+                output[1] = input[1];
+                out.write(output, 0, Math.min(output.length, 6 + ((output[4] & 0xff) << 8 | output[5] & 0xff)));
+                out.flush();
+            }
         } catch (IOException e) {
             logger.error("ModbusHandler", e);
             throw new RuntimeException(e);
@@ -46,6 +55,21 @@ public class ModbusHandler extends Thread {
         }
     }
 
+    private boolean readFrame(InputStream in, byte[] input) throws IOException {
+        int length = 6;
+        for (int index = 0; index < length;) {
+            int read = in.read(input, index, length - index);
+            if (read < 0) {
+                return false;
+            }
+            index += read;
+            if (index == 6) {
+                length += (input[4] & 0xff) << 8 | input[5] & 0xff;
+            }
+        }
+        return true;
+    }
+
     private byte[] handleRequest(byte[] input) {
         byte command = input[7];
         switch (command) {
@@ -62,9 +86,9 @@ public class ModbusHandler extends Thread {
         case 16:
             return new byte[] { 0, 1, 0, 0, 0, 6, 1, 16, 0, 0, 0, 4, 0, 0, 0, 0, 0, 0 };           // writeMultipleRegisters
         case 2:
-            return new byte[] { 0, 1, 0, 0, 0, 6, 1, 2, 1, 127, 0, 0, 0, 0, 0, 0, 0, 0 };          // readDiscreteInputs
+            return new byte[] { 0, 1, 0, 0, 0, 4, 1, 2, 1, 127, 0, 0, 0, 0, 0, 0, 0, 0 };          // readDiscreteInputs
         case 4:
-            return new byte[] { 0, 1, 0, 0, 0, 6, 1, 4, 2, 0, 10, 0, 0, 0, 0, 0, 0, 0 };           // readInputRegisters
+            return new byte[] { 0, 1, 0, 0, 0, 5, 1, 4, 2, 0, 10, 0, 0, 0, 0, 0, 0, 0 };           // readInputRegisters
         case 11:
             return new byte[] {};                                                                  // getCommEventCouner
         case 7:
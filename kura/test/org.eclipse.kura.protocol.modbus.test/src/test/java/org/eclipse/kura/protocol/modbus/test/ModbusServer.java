@@ -46,6 +46,13 @@ public class ModbusServer {
         latch.await();  // wait for server socket is ready
     }
 
+    /**
+     * Returns the port the server listens on, assigned by the system if started on port 0.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
     public void stop() throws IOException {
         // serverSocket.close();
         listening = false;
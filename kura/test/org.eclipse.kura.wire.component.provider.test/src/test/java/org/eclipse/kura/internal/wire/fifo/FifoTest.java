@@ -11,10 +11,15 @@ package org.eclipse.kura.internal.wire.fifo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -183,6 +188,92 @@ public class FifoTest {
         assertEquals(1, wiresLatch.getCount());
     }
 
+    @Test
+    public void testBatchAndCounters() throws InterruptedException {
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        CountDownLatch recordsLatch = new CountDownLatch(6);
+        List<Integer> emittedSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        Fifo fifo = new Fifo();
+
+        WireHelperService wireHelperServiceMock = mock(WireHelperService.class);
+        fifo.bindWireHelperService(wireHelperServiceMock);
+
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        doAnswer(invocation -> {
+            List<?> wireRecords = invocation.getArgumentAt(0, List.class);
+            startedLatch.countDown();
+            releaseLatch.await();
+            emittedSizes.add(wireRecords.size());
+            for (int i = 0; i < wireRecords.size(); i++) {
+                recordsLatch.countDown();
+            }
+            return null;
+        }).when(wireSupportMock).emit(anyListOf(WireRecord.class));
+        when(wireHelperServiceMock.newWireSupport(fifo)).thenReturn(wireSupportMock);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("discard.envelopes", true);
+        properties.put("queue.capacity", 5);
+        properties.put("batch.size", 4);
+
+        fifo.activate(properties);
+
+        fifo.onWireReceive(createWireEnvelope());
+        assertTrue(startedLatch.await(1000, TimeUnit.MILLISECONDS));
+
+        // the envelope being emitted is not in the queue any more
+        for (int i = 0; i < 7; i++) {
+            fifo.onWireReceive(createWireEnvelope());
+        }
+        assertEquals(5, fifo.getQueueDepth());
+        assertEquals(2, fifo.getDroppedEnvelopes());
+
+        releaseLatch.countDown();
+        assertTrue(recordsLatch.await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(1, 4, 1), emittedSizes);
+        assertEquals(0, fifo.getQueueDepth());
+
+        fifo.deactivate();
+    }
+
+    @Test
+    public void testInvalidCapacityKeepsEmitterThread() throws InterruptedException {
+        CountDownLatch recordsLatch = new CountDownLatch(1);
+
+        Fifo fifo = new Fifo();
+
+        WireHelperService wireHelperServiceMock = mock(WireHelperService.class);
+        fifo.bindWireHelperService(wireHelperServiceMock);
+
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        doAnswer(invocation -> {
+            recordsLatch.countDown();
+            return null;
+        }).when(wireSupportMock).emit(anyListOf(WireRecord.class));
+        when(wireHelperServiceMock.newWireSupport(fifo)).thenReturn(wireSupportMock);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("queue.capacity", 5);
+        fifo.activate(properties);
+
+        for (int capacity : new int[] { 0, FifoOptions.MAX_QUEUE_CAPACITY + 1 }) {
+            properties.put("queue.capacity", capacity);
+            try {
+                fifo.updated(properties);
+                fail("Expected invalid capacity");
+            } catch (IllegalArgumentException e) {
+                // the previous configuration is kept
+            }
+        }
+
+        fifo.onWireReceive(createWireEnvelope());
+        assertTrue(recordsLatch.await(1000, TimeUnit.MILLISECONDS));
+
+        fifo.deactivate();
+    }
+
     private WireEnvelope createWireEnvelope() {
         String emitterPid = "emitter";
         List<WireRecord> wireRecords = new ArrayList<WireRecord>();
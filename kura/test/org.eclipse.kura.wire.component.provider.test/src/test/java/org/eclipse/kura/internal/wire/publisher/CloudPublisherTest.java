@@ -16,6 +16,7 @@ import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,12 +31,14 @@ import org.eclipse.kura.cloud.CloudClient;
 import org.eclipse.kura.cloud.CloudService;
 import org.eclipse.kura.core.testutil.TestUtil;
 import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.type.IntegerValue;
 import org.eclipse.kura.type.StringValue;
 import org.eclipse.kura.type.TypedValue;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireRecord;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
@@ -210,4 +213,74 @@ public class CloudPublisherTest {
         verify(cloudClientMock, times(1)).controlPublish(eq(topic), (KuraPayload) anyObject(), eq(qos), eq(retain),
                 eq(prio));
     }
+
+    @Test
+    public void testOnWireReceiveBatched() throws InvalidSyntaxException, NoSuchFieldException, KuraException {
+        // test accumulating records per topic, publishing when the maximum number of records is reached or on
+        // deactivation
+
+        int prio = 1;
+        int qos = 0;
+        boolean retain = false;
+
+        CloudPublisher cp = new CloudPublisher();
+
+        WireHelperService wireHelperServiceMock = mock(WireHelperService.class);
+        cp.bindWireHelperService(wireHelperServiceMock);
+
+        BundleContext bundleCtxMock = mock(BundleContext.class);
+        Filter filter = mock(Filter.class);
+        when(bundleCtxMock.createFilter(anyString())).thenReturn(filter);
+
+        ComponentContext ctxMock = mock(ComponentContext.class);
+        when(ctxMock.getBundleContext()).thenReturn(bundleCtxMock);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("cloud.service.pid", "cspid");
+        properties.put("publish.priority", prio);
+        properties.put("publish.qos", qos);
+        properties.put("publish.retain", retain);
+        properties.put("publish.topic", "$topic");
+        properties.put("publish.batch.max-records", 3);
+        properties.put("publish.batch.max-delay", 60000);
+
+        cp.activate(ctxMock, properties);
+
+        CloudService cloudServiceMock = mock(CloudService.class);
+        CloudClient cloudClientMock = mock(CloudClient.class);
+
+        TestUtil.setFieldValue(cp, "cloudService", cloudServiceMock);
+        TestUtil.setFieldValue(cp, "cloudClient", cloudClientMock);
+
+        List<WireRecord> wireRecords = new ArrayList<WireRecord>();
+        for (int i = 0; i < 4; i++) {
+            wireRecords.add(buildRecord("a", i));
+        }
+        wireRecords.add(buildRecord("b", 10));
+        cp.onWireReceive(new WireEnvelope("emitter", wireRecords));
+
+        ArgumentCaptor<KuraPayload> captor = ArgumentCaptor.forClass(KuraPayload.class);
+        verify(cloudClientMock, times(1)).publish(eq("a"), captor.capture(), eq(qos), eq(retain), eq(prio));
+        verify(cloudClientMock, never()).publish(eq("b"), (KuraPayload) anyObject(), eq(qos), eq(retain), eq(prio));
+
+        KuraPayload payload = captor.getValue();
+        assertEquals(6, payload.metrics().size());
+        assertEquals(0, payload.getMetric("0.value"));
+        assertEquals(2, payload.getMetric("2.value"));
+        assertEquals("a", payload.getMetric("2.topic"));
+
+        cp.deactivate(ctxMock);
+
+        verify(cloudClientMock, times(2)).publish(eq("a"), captor.capture(), eq(qos), eq(retain), eq(prio));
+        assertEquals(3, captor.getValue().getMetric("0.value"));
+        verify(cloudClientMock, times(1)).publish(eq("b"), captor.capture(), eq(qos), eq(retain), eq(prio));
+        assertEquals(10, captor.getValue().getMetric("0.value"));
+    }
+
+    private static WireRecord buildRecord(String topic, int value) {
+        Map<String, TypedValue<?>> recordProps = new HashMap<String, TypedValue<?>>();
+        recordProps.put("topic", new StringValue(topic));
+        recordProps.put("value", new IntegerValue(value));
+        return new WireRecord(recordProps);
+    }
 }
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.type.IntegerValue;
+import org.eclipse.kura.type.StringValue;
+import org.eclipse.kura.type.TypedValue;
+import org.junit.Test;
+
+public class TopicTemplateTest {
+
+    @Test
+    public void testLiteralTopic() {
+        String topic = "data/topic";
+        TopicTemplate template = new TopicTemplate(topic);
+
+        assertSame(topic, template.render(new HashMap<String, TypedValue<?>>()));
+    }
+
+    @Test
+    public void testPlaceholders() {
+        TopicTemplate template = new TopicTemplate("$assetName/data/$channel/$index/$missing");
+
+        Map<String, TypedValue<?>> properties = new HashMap<>();
+        properties.put("assetName", new StringValue("asset$1\\"));
+        properties.put("channel", new StringValue("ch"));
+        properties.put("index", new IntegerValue(3));
+
+        assertEquals("asset$1\\/data/ch/3/$missing", template.render(properties));
+        // rendered again from the cache
+        assertEquals("asset$1\\/data/ch/3/$missing", template.render(properties));
+
+        properties.put("index", new IntegerValue(4));
+        assertEquals("asset$1\\/data/ch/4/$missing", template.render(properties));
+
+        properties.remove("channel");
+        assertEquals("asset$1\\/data/$channel/4/$missing", template.render(properties));
+    }
+}
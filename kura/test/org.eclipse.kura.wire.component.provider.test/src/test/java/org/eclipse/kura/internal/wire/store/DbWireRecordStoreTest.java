@@ -10,7 +10,10 @@ package org.eclipse.kura.internal.wire.store;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
@@ -19,6 +22,7 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -226,4 +230,116 @@ public class DbWireRecordStoreTest {
         connection.prepareStatement("SHUTDOWN").execute();
     }
 
+    @Test
+    public void testFlushInterval() throws SQLException, InterruptedException {
+        // records are emitted right away and written to the DB in the background
+        DbWireRecordStore store = new DbWireRecordStore();
+
+        Connection connection = getConnection();
+
+        DbService dbServiceMock = mock(DbService.class);
+        when(dbServiceMock.getConnection()).thenReturn(connection);
+
+        WireHelperService whsMock = mock(WireHelperService.class);
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        when(whsMock.newWireSupport(store)).thenReturn(wireSupportMock);
+
+        store.bindDbService(dbServiceMock);
+        store.bindWireHelperService(whsMock);
+
+        ComponentContext ctx = mock(ComponentContext.class);
+        Map<String, Object> props = new HashMap<String, Object>();
+        String tableName = "STORE_FLUSH_TEST";
+        props.put("table.name", tableName);
+        props.put("flush.interval", 300);
+
+        // init
+        store.activate(ctx, props);
+
+        List<WireRecord> wireRecords = new ArrayList<WireRecord>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, TypedValue<?>> recordProps = new HashMap<String, TypedValue<?>>();
+            recordProps.put("key", new IntegerValue(i));
+            wireRecords.add(new WireRecord(recordProps));
+        }
+        WireEnvelope wireEvelope = new WireEnvelope("emitter", wireRecords);
+
+        store.onWireReceive(wireEvelope);
+        store.onWireReceive(wireEvelope);
+        verify(wireSupportMock, times(2)).emit(wireRecords);
+
+        assertEquals("Unexpected number of records", 6, awaitCount(connection, tableName, 6));
+
+        // the pending records are written on deactivation
+        store.onWireReceive(wireEvelope);
+        store.deactivate(null);
+
+        ResultSet resultSet = connection.prepareStatement("SELECT count(*) FROM " + tableName).executeQuery();
+        resultSet.next();
+        assertEquals("Unexpected number of records", 9, resultSet.getInt(1));
+
+        connection.prepareStatement("SHUTDOWN").execute();
+    }
+
+    @Test
+    public void testFailingRecordInBatch() throws SQLException {
+        // a record that cannot be inserted does not discard the others written in the same batch
+        DbWireRecordStore store = new DbWireRecordStore();
+
+        final Connection connection = getConnection();
+
+        DbService dbServiceMock = mock(DbService.class);
+        when(dbServiceMock.getConnection()).thenReturn(connection);
+        doAnswer(invocation -> {
+            connection.rollback();
+            return null;
+        }).when(dbServiceMock).rollback(connection);
+
+        WireHelperService whsMock = mock(WireHelperService.class);
+        when(whsMock.newWireSupport(store)).thenReturn(mock(WireSupport.class));
+
+        store.bindDbService(dbServiceMock);
+        store.bindWireHelperService(whsMock);
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        String tableName = "STORE_FAILING_TEST";
+        props.put("table.name", tableName);
+        props.put("flush.interval", 60000);
+        store.activate(mock(ComponentContext.class), props);
+
+        char[] tooLong = new char[102401];
+        Arrays.fill(tooLong, 'x');
+        List<WireRecord> wireRecords = new ArrayList<WireRecord>();
+        for (String value : Arrays.asList("a", new String(tooLong), "c")) {
+            Map<String, TypedValue<?>> recordProps = new HashMap<String, TypedValue<?>>();
+            recordProps.put("key", new StringValue(value));
+            wireRecords.add(new WireRecord(recordProps));
+        }
+        store.onWireReceive(new WireEnvelope("emitter", wireRecords));
+        store.deactivate(null);
+
+        ResultSet resultSet = connection
+                .prepareStatement("SELECT \"key\" FROM " + tableName + " ORDER BY \"key\"").executeQuery();
+        List<String> stored = new ArrayList<String>();
+        while (resultSet.next()) {
+            stored.add(resultSet.getString(1));
+        }
+        assertEquals(Arrays.asList("a", "c"), stored);
+
+        connection.prepareStatement("SHUTDOWN").execute();
+    }
+
+    private static int awaitCount(Connection connection, String tableName, int expected)
+            throws SQLException, InterruptedException {
+        int count = -1;
+        for (int i = 0; i < 100 && count != expected; i++) {
+            if (i > 0) {
+                Thread.sleep(100);
+            }
+            ResultSet resultSet = connection.prepareStatement("SELECT count(*) FROM " + tableName).executeQuery();
+            resultSet.next();
+            count = resultSet.getInt(1);
+        }
+        return count;
+    }
 }
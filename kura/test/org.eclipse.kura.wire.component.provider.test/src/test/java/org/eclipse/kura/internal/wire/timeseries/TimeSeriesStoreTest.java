@@ -0,0 +1,289 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireRecord;
+import org.junit.Test;
+
+public class TimeSeriesStoreTest {
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void testCodecRoundTrip() throws IOException {
+        final long[] timestamps = { 1000L, 2000L, 3000L, 4000L, 4000L, 9000000L, Long.MAX_VALUE / 2 };
+        final int[] sequences = { 0, 0, 2, 0, 1, 0, 5000 };
+        final int count = timestamps.length;
+
+        assertRoundTrip(DataType.DOUBLE, timestamps, sequences,
+                new Object[] { 1.5, 1.5, 1.25, -3.0e100, Double.NaN, 0.0, Double.MIN_VALUE });
+        assertRoundTrip(DataType.FLOAT, timestamps, sequences,
+                new Object[] { 1.5f, 1.5f, 2.75f, -1.0e30f, Float.NaN, 0.0f, Float.MAX_VALUE });
+        assertRoundTrip(DataType.LONG, timestamps, sequences,
+                new Object[] { 10L, 11L, 11L, Long.MIN_VALUE, Long.MAX_VALUE, -200L, 3000L });
+        assertRoundTrip(DataType.INTEGER, timestamps, sequences,
+                new Object[] { 10, 11, 11, Integer.MIN_VALUE, Integer.MAX_VALUE, -200, 3000 });
+        assertRoundTrip(DataType.BOOLEAN, timestamps, sequences,
+                new Object[] { true, false, false, true, true, false, true });
+        assertRoundTrip(DataType.STRING, timestamps, sequences,
+                new Object[] { "a", "", null, "\u00e8t\u00e9", "b", "c", "d" });
+
+        final byte[][] arrays = { {}, { 1, 2 }, { -1 }, null, { 0 }, { 127, -128 }, { 5 } };
+        final byte[] encoded = ChunkCodec.encode(DataType.BYTE_ARRAY, timestamps, sequences, arrays, count);
+        final long[] decodedTimestamps = new long[count];
+        final int[] decodedSequences = new int[count];
+        final Object[] decodedValues = new Object[count];
+        ChunkCodec.decode(DataType.BYTE_ARRAY, encoded, 0, encoded.length, decodedTimestamps, decodedSequences,
+                decodedValues, count);
+        assertArrayEquals(timestamps, decodedTimestamps);
+        assertArrayEquals(sequences, decodedSequences);
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(arrays[i], (byte[]) decodedValues[i]);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testCorruptByteArrayLength() throws IOException {
+        final long[] timestamps = { 1000L };
+        final byte[] encoded = ChunkCodec.encode(DataType.BYTE_ARRAY, timestamps, new int[1],
+                new Object[] { new byte[] { 1 } }, 1);
+        // the length follows the 64 bits of the first timestamp and the bit of its sequence
+        encoded[8] = 0x7f;
+        ChunkCodec.decode(DataType.BYTE_ARRAY, encoded, 0, encoded.length, new long[1], new int[1], new Object[1], 1);
+    }
+
+    @Test
+    public void testRegularSamplesCompression() {
+        final int count = 1000;
+        final long[] timestamps = new long[count];
+        final Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = 1500000000000L + i * 1000L;
+            values[i] = 20.0;
+        }
+        // about 3 bits per point, instead of 16 bytes
+        assertTrue(ChunkCodec.encode(DataType.DOUBLE, timestamps, new int[count], values, count).length < count / 2);
+    }
+
+    @Test
+    public void testStoreAndQuery() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final TimeSeriesStore store = new TimeSeriesStore(directory, HOUR, 0, 3);
+
+        final long start = 10 * HOUR - 2000;
+        for (int i = 0; i < 5; i++) {
+            final Map<String, TypedValue<?>> properties = new HashMap<>();
+            properties.put("temperature", TypedValues.newDoubleValue(20.0 + i));
+            if (i % 2 == 0) {
+                properties.put("state", TypedValues.newStringValue("s" + i));
+            }
+            assertEquals(start + i * 1000, store.append(start + i * 1000, properties));
+        }
+        // a record received in the same millisecond keeps its timestamp
+        assertEquals(start + 4000, store.append(start + 4000, new HashMap<String, TypedValue<?>>()));
+
+        // buffered records are returned as well
+        assertEquals(5, store.query(0, Long.MAX_VALUE).size());
+        store.flush();
+
+        // the records span over two partitions
+        assertTrue(new File(directory, 9 * HOUR + ".tsp").exists());
+        assertTrue(new File(directory, 10 * HOUR + ".tsp").exists());
+
+        final List<WireRecord> records = TimeSeriesStore.query(directory, start + 1000, start + 4000);
+        assertEquals(4, records.size());
+        final Map<String, TypedValue<?>> first = records.get(0).getProperties();
+        assertEquals(start + 1000, first.get(TimeSeriesStore.TIMESTAMP).getValue());
+        assertEquals(21.0, first.get("temperature").getValue());
+        assertFalse(first.containsKey("state"));
+        assertEquals("s2", records.get(1).getProperties().get("state").getValue());
+        assertEquals(24.0, records.get(3).getProperties().get("temperature").getValue());
+
+        // a block truncated by an interrupted write is ignored
+        try (FileOutputStream output = new FileOutputStream(new File(directory, 10 * HOUR + ".tsp"), true)) {
+            output.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+        }
+        assertEquals(5, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testAppendAfterTornBlock() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final File partition = new File(directory, 10 * HOUR + ".tsp");
+        TimeSeriesStore store = new TimeSeriesStore(directory, HOUR, 0, 1024);
+        store.append(10 * HOUR, singleValue(1));
+        store.flush();
+        final byte[] valid = Files.readAllBytes(partition.toPath());
+
+        // block torn by an interrupted write
+        try (FileOutputStream output = new FileOutputStream(partition, true)) {
+            output.write(new byte[] { 0, 0, 0, 40, 1, 2, 3, 4, 5, 6, 7 });
+        }
+        assertEquals(1, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+
+        // corrupt length, which must not be allocated
+        try (FileOutputStream output = new FileOutputStream(partition)) {
+            output.write(valid);
+            output.write(new byte[] { 127, -1, -1, -1, 0, 0, 0, 0, 1, 2, 3 });
+        }
+        assertEquals(1, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+
+        // a restarted store truncates the torn block before appending
+        store = new TimeSeriesStore(directory, HOUR, 0, 1024);
+        store.append(10 * HOUR + 1000, singleValue(2));
+        store.append(10 * HOUR + 2000, singleValue(3));
+        store.flush();
+
+        final List<WireRecord> records = TimeSeriesStore.query(directory, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(3L, records.get(2).getProperties().get("value").getValue());
+    }
+
+    @Test
+    public void testRecordsInSameMillisecond() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final TimeSeriesStore store = new TimeSeriesStore(directory, HOUR, 0, 1024);
+
+        store.append(10 * HOUR, singleValue(1));
+        store.append(10 * HOUR, singleValue(2));
+        final Map<String, TypedValue<?>> properties = new HashMap<>();
+        properties.put("other", TypedValues.newLongValue(3));
+        store.append(10 * HOUR, properties);
+        // received before the previous record, after a clock adjustment
+        assertEquals(10 * HOUR, store.append(10 * HOUR - 5, singleValue(4)));
+        store.append(10 * HOUR + 1, singleValue(5));
+
+        assertSameMillisecondRecords(store.query(0, Long.MAX_VALUE));
+        store.flush();
+        assertSameMillisecondRecords(TimeSeriesStore.query(directory, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCorruptedBlocks() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final File partition = new File(directory, 10 * HOUR + ".tsp");
+        TimeSeriesStore store = new TimeSeriesStore(directory, HOUR, 0, 1);
+        for (int i = 0; i < 3; i++) {
+            store.append(10 * HOUR + i * 1000, singleValue(i));
+        }
+        store.flush();
+
+        // a block in the middle with a checksum mismatch is skipped
+        final long secondBlockEnd = getBlockEnd(partition, 1);
+        corrupt(partition, secondBlockEnd - 1);
+        assertValues(directory, 0L, 2L);
+
+        // and kept by a restarted store, while a last block with a checksum mismatch is truncated
+        corrupt(partition, partition.length() - 1);
+        assertValues(directory, 0L);
+        store = new TimeSeriesStore(directory, HOUR, 0, 1);
+        store.append(10 * HOUR + 3000, singleValue(3));
+        store.flush();
+        assertValues(directory, 0L, 3L);
+        assertEquals(secondBlockEnd, getBlockEnd(partition, 1));
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final TimeSeriesStore store = new TimeSeriesStore(directory, HOUR, 2 * HOUR, 1024);
+        for (int i = 0; i < 5; i++) {
+            final Map<String, TypedValue<?>> properties = new HashMap<>();
+            properties.put("value", TypedValues.newLongValue(i));
+            store.append(i * HOUR, properties);
+        }
+        store.flush();
+        assertEquals(5, directory.list().length);
+
+        // partitions ending 2 hours before now or earlier are dropped
+        assertEquals(2, store.dropExpiredPartitions(4 * HOUR + 1));
+        final List<WireRecord> records = store.query(0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(2L, records.get(0).getProperties().get("value").getValue());
+    }
+
+    private static Map<String, TypedValue<?>> singleValue(final long value) {
+        final Map<String, TypedValue<?>> properties = new HashMap<>();
+        properties.put("value", TypedValues.newLongValue(value));
+        return properties;
+    }
+
+    private static void assertSameMillisecondRecords(final List<WireRecord> records) {
+        assertEquals(5, records.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(10 * HOUR, records.get(i).getProperties().get(TimeSeriesStore.TIMESTAMP).getValue());
+        }
+        assertEquals(1L, records.get(0).getProperties().get("value").getValue());
+        assertEquals(2L, records.get(1).getProperties().get("value").getValue());
+        assertEquals(3L, records.get(2).getProperties().get("other").getValue());
+        assertEquals(4L, records.get(3).getProperties().get("value").getValue());
+        assertEquals(10 * HOUR + 1, records.get(4).getProperties().get(TimeSeriesStore.TIMESTAMP).getValue());
+    }
+
+    private static void assertValues(final File directory, final Long... values) throws IOException {
+        final List<WireRecord> records = TimeSeriesStore.query(directory, 0, Long.MAX_VALUE);
+        assertEquals(values.length, records.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], records.get(i).getProperties().get("value").getValue());
+        }
+    }
+
+    // the blocks are prefixed by their length and checksum
+    private static long getBlockEnd(final File partition, final int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(partition, "r")) {
+            long position = 0;
+            for (int i = 0; i <= index; i++) {
+                file.seek(position);
+                position += 8 + file.readInt();
+            }
+            return position;
+        }
+    }
+
+    private static void corrupt(final File partition, final long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(partition, "rw")) {
+            file.seek(position);
+            final int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xff);
+        }
+    }
+
+    private static void assertRoundTrip(final DataType type, final long[] timestamps, final int[] sequences,
+            final Object[] values) throws IOException {
+        final int count = timestamps.length;
+        final byte[] encoded = ChunkCodec.encode(type, timestamps, sequences, values, count);
+        final long[] decodedTimestamps = new long[count];
+        final int[] decodedSequences = new int[count];
+        final Object[] decodedValues = new Object[count];
+        ChunkCodec.decode(type, encoded, 0, encoded.length, decodedTimestamps, decodedSequences, decodedValues,
+                count);
+        assertArrayEquals(timestamps, decodedTimestamps);
+        assertArrayEquals(sequences, decodedSequences);
+        assertArrayEquals(values, decodedValues);
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.junit.Test;
+
+public class TimeSeriesWireRecordStoreTest {
+
+    @Test
+    public void testDirectoryInUse() throws IOException, InterruptedException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+
+        final TimeSeriesWireRecordStore store1 = activate(directory);
+        final TimeSeriesWireRecordStore store2 = activate(directory);
+        try {
+            store1.onWireReceive(createWireEnvelope(1));
+            store2.onWireReceive(createWireEnvelope(2));
+        } finally {
+            store2.deactivate(null);
+            store1.deactivate(null);
+        }
+
+        // only the first store writes to the directory
+        assertEquals(1, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+
+        // the directory is released on deactivation
+        Thread.sleep(2);
+        final TimeSeriesWireRecordStore store3 = activate(directory);
+        store3.onWireReceive(createWireEnvelope(3));
+        store3.deactivate(null);
+        assertEquals(2, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testUpdatedKeepsBufferedRecords() throws IOException {
+        final File directory = Files.createTempDirectory("timeseries").toFile();
+        final File otherDirectory = Files.createTempDirectory("timeseries").toFile();
+
+        final TimeSeriesWireRecordStore store = activate(directory);
+        store.onWireReceive(createWireEnvelope(1));
+        // written to the previous directory on update
+        store.updated(getProperties(otherDirectory));
+        assertEquals(1, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+
+        store.onWireReceive(createWireEnvelope(2));
+        store.deactivate(null);
+        assertEquals(1, TimeSeriesStore.query(directory, 0, Long.MAX_VALUE).size());
+        assertEquals(2L, TimeSeriesStore.query(otherDirectory, 0, Long.MAX_VALUE).get(0).getProperties()
+                .get("value").getValue());
+    }
+
+    private static TimeSeriesWireRecordStore activate(final File directory) {
+        final TimeSeriesWireRecordStore store = new TimeSeriesWireRecordStore();
+        final WireHelperService wireHelperServiceMock = mock(WireHelperService.class);
+        when(wireHelperServiceMock.newWireSupport(any(TimeSeriesWireRecordStore.class)))
+                .thenReturn(mock(WireSupport.class));
+        store.bindWireHelperService(wireHelperServiceMock);
+        store.activate(null, getProperties(directory));
+        return store;
+    }
+
+    private static Map<String, Object> getProperties(final File directory) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("storage.directory", directory.getPath());
+        properties.put("retention.time", 0);
+        return properties;
+    }
+
+    private static WireEnvelope createWireEnvelope(final long value) {
+        final Map<String, TypedValue<?>> properties = new HashMap<>();
+        properties.put("value", TypedValues.newLongValue(value));
+        return new WireEnvelope("emitter", Collections.singletonList(new WireRecord(properties)));
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireRecord;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.service.wireadmin.Wire;
+
+public class WireDeliveryTest {
+
+    @Test
+    public void testOrderAndBackPressure() throws InterruptedException {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch updating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WireDelivery delivery = new WireDelivery(mockWire(delivered, updating, release), 2);
+
+        // the first envelope holds the delivery thread, the next two fill the queue
+        delivery.deliver(createWireEnvelope("1"));
+        assertTrue(updating.await(1, TimeUnit.SECONDS));
+        delivery.deliver(createWireEnvelope("2"));
+        delivery.deliver(createWireEnvelope("3"));
+
+        final Thread emitter = new Thread() {
+
+            @Override
+            public void run() {
+                delivery.deliver(createWireEnvelope("4"));
+            }
+        };
+        emitter.start();
+        emitter.join(200);
+        assertTrue(emitter.isAlive());
+
+        release.countDown();
+        emitter.join(1000);
+        assertFalse(emitter.isAlive());
+
+        delivery.shutdown();
+        awaitDelivered(delivered, 4);
+        assertEquals(Arrays.asList("1", "2", "3", "4"), delivered);
+    }
+
+    @Test
+    public void testDeliveryAfterIdle() throws InterruptedException {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch release = new CountDownLatch(0);
+        final WireDelivery delivery = new WireDelivery(mockWire(delivered, new CountDownLatch(1), release), 1);
+
+        delivery.deliver(createWireEnvelope("1"));
+        awaitDelivered(delivered, 1);
+        // the delivery task has ended with the empty queue
+        Thread.sleep(50);
+        delivery.deliver(createWireEnvelope("2"));
+        awaitDelivered(delivered, 2);
+
+        // the envelopes emitted after the shutdown are discarded
+        delivery.shutdown();
+        delivery.deliver(createWireEnvelope("3"));
+        Thread.sleep(50);
+        assertEquals(Arrays.asList("1", "2"), delivered);
+    }
+
+    private static Wire mockWire(final List<String> delivered, final CountDownLatch updating,
+            final CountDownLatch release) {
+        final Wire wire = mock(Wire.class);
+        when(wire.getProperties()).thenReturn(new Hashtable<String, Object>());
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                updating.countDown();
+                release.await();
+                delivered.add(((WireEnvelope) invocation.getArguments()[0]).getEmitterPid());
+                return null;
+            }
+        }).when(wire).update(any());
+        return wire;
+    }
+
+    private static void awaitDelivered(final List<String> delivered, final int count) throws InterruptedException {
+        for (int i = 0; i < 100 && delivered.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, delivered.size());
+    }
+
+    private static WireEnvelope createWireEnvelope(final String emitterPid) {
+        return new WireEnvelope(emitterPid, Collections.<WireRecord> emptyList());
+    }
+}